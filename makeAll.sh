@@ -43,3 +43,17 @@ pushd shipment
 make all
 popd
 
+if [ "$VERSION" == "v2" ];
+then
+    pushd readModel
+    make all
+    popd
+
+    pushd exporter
+    make all
+    popd
+
+    pushd recordingReport
+    make all
+    popd
+fi
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+
+@DataType()
+public class ACLRule {
+
+    @Property()
+    private String mspId;
+
+    @Property()
+    private String role;
+
+    @Property()
+    private String[] functions;
+
+    public ACLRule() {
+    }
+
+    public ACLRule(@JsonProperty("mspId") String mspId, @JsonProperty("role") String role, @JsonProperty("functions") String[] functions) {
+        this.mspId = mspId;
+        this.role = role;
+        this.functions = functions;
+    }
+
+    public String getMspId() {
+        return mspId;
+    }
+
+    public void setMspId(String mspId) {
+        this.mspId = mspId;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String[] getFunctions() {
+        return functions;
+    }
+
+    public void setFunctions(String[] functions) {
+        this.functions = functions;
+    }
+}
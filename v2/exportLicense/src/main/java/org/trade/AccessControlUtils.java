@@ -4,94 +4,157 @@
 
 package org.trade;
 
-import java.util.Arrays;
-import java.util.Map;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.hyperledger.fabric.contract.annotation.DataType;
-import org.hyperledger.fabric.contract.annotation.Property;
-import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeStub;
 
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.JsonStreamException;
 
-@DataType()
-class ACLSubject {
-    @Property()
-    private String mspId;
+/*
+    Access control. The policy is stored on the ledger by 'updateACLPolicy', with its version under a key of its own.
+    Until a policy is stored, the built-in policy below applies as version 0.
+    Each channel's policy is compiled into per-MSP, per-role sets of transaction names and cached across transactions.
+    A transaction only reads the version key, and the policy is loaded and compiled again when the version changes.
+*/
 
-    @Property()
-    private String role;
+public class AccessControlUtils {
+    public final static String BUSINESS_ROLE_ATTR = "BUSINESS_ROLE";
+    public final static String UPDATE_ACL_POLICY_FUNC = "updateACLPolicy";
 
-    public ACLSubject(String mspId, String role) {
-        this.mspId = mspId;
-        this.role = role;
-    }
+    // Compiled policies by channel. A compiled policy is never modified, so that concurrently running transactions can share it.
+    private final static Map<String, CompiledPolicy> compiledPolicies = new ConcurrentHashMap<String, CompiledPolicy>();
 
-    public String getMspId() {
-        return mspId;
-    }
+    private static final class CompiledPolicy {
+        private final long version;
+        private final Map<String, Map<String, Set<String>>> functions;
 
-    public void setMspId(String mspId) {
-        this.mspId = mspId;
+        private CompiledPolicy(long version, Map<String, Map<String, Set<String>>> functions) {
+            this.version = version;
+            this.functions = functions;
+        }
     }
 
-    public String getRole() {
-        return role;
+    public static ACLPolicy defaultPolicy() {
+        return new ACLPolicy(0, new ACLRule[] {
+            new ACLRule(Constants.regulatorOrgMsp, Constants.ANY_ROLE, new String[] { "init" }),
+            new ACLRule(Constants.exporterOrgMsp, Constants.ANY_ROLE, new String[] { "init" }),
+            new ACLRule(Constants.exportingEntityOrgMSP, Constants.ANY_ROLE, new String[] { "init" }),
+            new ACLRule(Constants.exporterOrgMsp, Constants.EXPORTER_ROLE, new String[] { "existsEL", "getEL", "getELFields", "getELStatus", "getELs", "getELStatuses" }),
+            new ACLRule(Constants.exportingEntityOrgMSP, Constants.EXPORTER_ROLE, new String[] { "requestEL", "existsEL", "getEL", "getELFields", "getELStatus", "getELs", "getELStatuses" }),
+            new ACLRule(Constants.regulatorOrgMsp, Constants.REGULATOR_ROLE, new String[] { "issueEL", "issueELBatch", "getPendingELs", "expireELs", "existsEL", "getEL", "getELFields", "getELStatus", "getELs", "getELStatuses", "getELHistory" }),
+            new ACLRule(Constants.regulatorOrgMsp, Constants.ACL_ADMIN_ROLE, new String[] { "updateACLPolicy", "getACLPolicy", "getMigrationBatch", "migrate" })
+        });
     }
 
-    public void setRole(String role) {
-        this.role = role;
+    public static String GetClientMspId(Context ctx) {
+        return ctx.getClientIdentity().getMSPID();
     }
 
-    @Override
-    public boolean equals(Object obj) {
-        if (obj.getClass() == ACLSubject.class) {
-            ACLSubject aclSubject = (ACLSubject) obj;
-            return aclSubject.getMspId().equals(this.getMspId()) && aclSubject.getRole().equals(this.getRole());
-        }
-        return false;
+    public static String GetClientRole(Context ctx) {
+        return ctx.getClientIdentity().getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR);
     }
 
-    @Override
-    public int hashCode() {
-        return (this.getMspId() + "," + this.getRole()).hashCode();
+    public static boolean checkAccess(Context ctx, String mspId, String role, String function) {
+        Map<String, Set<String>> roles = getCompiledPolicy(ctx.getStub()).functions.get(mspId);
+        Set<String> functions = roles == null ? null : roles.get(role);
+        if (functions == null) {
+            throw RejectionCode.UNKNOWN_ROLE.reject(mspId, role);
+        }
+        return !functions.contains(function);
     }
 
-    @Override
-    public String toString() {
-        return "MSP ID: " + this.getMspId() + ", Role: " + this.getRole();
+    public static long getPolicyVersion(ChaincodeStub stub) {
+        byte[] versionBytes = stub.getState(Constants.aclPolicyVersionKey);
+        if (versionBytes == null || versionBytes.length == 0) {
+            return 0;
+        }
+        return Long.parseLong(new String(versionBytes, UTF_8));
     }
- }
 
-public class AccessControlUtils {
-    public final static String BUSINESS_ROLE_ATTR = "BUSINESS_ROLE";
-    private final static Map<ACLSubject,String[]> aclRules = new HashMap<ACLSubject,String[]>();
-
-    static {
-        aclRules.put(new ACLSubject(Constants.regulatorOrgMsp, Constants.ANY_ROLE), new String[]{ "init" });
-        aclRules.put(new ACLSubject(Constants.exporterOrgMsp, Constants.ANY_ROLE), new String[]{ "init" });
-        aclRules.put(new ACLSubject(Constants.exportingEntityOrgMSP, Constants.ANY_ROLE), new String[]{ "init" });
-        aclRules.put(new ACLSubject(Constants.exporterOrgMsp, Constants.EXPORTER_ROLE), new String[]{ "existsEL", "getEL", "getELStatus" });
-        aclRules.put(new ACLSubject(Constants.exportingEntityOrgMSP, Constants.EXPORTER_ROLE), new String[]{ "requestEL", "existsEL", "getEL", "getELStatus" });
-        aclRules.put(new ACLSubject(Constants.regulatorOrgMsp, Constants.REGULATOR_ROLE), new String[]{ "issueEL", "existsEL", "getEL", "getELStatus" });
+    public static ACLPolicy getPolicy(ChaincodeStub stub) {
+        if (getPolicyVersion(stub) == 0) {
+            return defaultPolicy();
+        }
+        return ACLPolicy.fromJSONString(new String(stub.getState(Constants.aclPolicyKey), UTF_8));
     }
 
-    public static String GetClientMspId(Context ctx) {
-        return ctx.getClientIdentity().getMSPID();
+    // Validates the given policy as the successor of the current one, and records it with its version. The caller may
+    // change the rules of its own MSP and add rules for MSPs that have none yet, e.g. to onboard a bank. The rules of
+    // every other MSP must be carried over unchanged, so that no organization can revoke another's access.
+    public static ACLPolicy updatePolicy(ChaincodeStub stub, String callerMspId, String policyJson) {
+        ACLPolicy policy;
+        try {
+            policy = ACLPolicy.fromJSONString(policyJson);
+        } catch (JsonBindingException | JsonStreamException e) {
+            throw RejectionCode.INVALID_ACL_POLICY.reject("it is not a valid policy document");
+        }
+        if (policy == null || policy.getRules() == null) {
+            throw RejectionCode.INVALID_ACL_POLICY.reject("it has no rules");
+        }
+        long currentVersion = getPolicyVersion(stub);
+        if (policy.getVersion() != currentVersion + 1) {
+            throw RejectionCode.ACL_POLICY_VERSION_MISMATCH.reject(policy.getVersion(), currentVersion);
+        }
+        // Compiling checks each rule. A policy nobody can update would need a chaincode upgrade to undo.
+        CompiledPolicy compiled = compile(policy);
+        boolean updatable = false;
+        for (Map<String, Set<String>> roles : compiled.functions.values()) {
+            for (Set<String> functions : roles.values()) {
+                updatable |= functions.contains(UPDATE_ACL_POLICY_FUNC);
+            }
+        }
+        if (!updatable) {
+            throw RejectionCode.INVALID_ACL_POLICY.reject("no participant could update it");
+        }
+        for (Map.Entry<String, Map<String, Set<String>>> current : getCompiledPolicy(stub).functions.entrySet()) {
+            if (!current.getKey().equals(callerMspId) && !current.getValue().equals(compiled.functions.get(current.getKey()))) {
+                throw RejectionCode.ACL_POLICY_ALTERS_OTHER_MSP.reject(current.getKey(), callerMspId);
+            }
+        }
+        String version = Long.toString(policy.getVersion());
+        stub.putState(Constants.aclPolicyKey, policy.toJSONString().getBytes(UTF_8));
+        stub.putState(Constants.aclPolicyVersionKey, version.getBytes(UTF_8));
+        return policy;
     }
 
-    public static String GetClientRole(Context ctx) {
-        return ctx.getClientIdentity().getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR);
+    private static CompiledPolicy getCompiledPolicy(ChaincodeStub stub) {
+        String channel = stub.getChannelId() == null ? "" : stub.getChannelId();
+        long version = getPolicyVersion(stub);
+        CompiledPolicy compiled = compiledPolicies.get(channel);
+        if (compiled == null || compiled.version != version) {
+            compiled = compile(getPolicy(stub));
+            compiledPolicies.put(channel, compiled);
+        }
+        return compiled;
     }
 
-    public static boolean checkAccess(Context ctx, String mspId, String role, String function) {
-        ACLSubject aclSubject = new ACLSubject(mspId, role);
-        if (!aclRules.containsKey(aclSubject)) {
-            throw new ChaincodeException("The participant " + mspId + " role " + role + " is not recognized");
-        } else {
-            return !Arrays.asList(aclRules.get(aclSubject)).contains(function);
+    private static CompiledPolicy compile(ACLPolicy policy) {
+        Map<String, Map<String, Set<String>>> functions = new HashMap<String, Map<String, Set<String>>>();
+        for (ACLRule rule : policy.getRules()) {
+            if (rule == null || isBlank(rule.getMspId()) || isBlank(rule.getRole()) || rule.getFunctions() == null) {
+                throw RejectionCode.INVALID_ACL_POLICY.reject("a rule has no MSP ID, role or functions");
+            }
+            Map<String, Set<String>> roles = functions.computeIfAbsent(rule.getMspId(), (mspId) -> new HashMap<String, Set<String>>());
+            if (roles.containsKey(rule.getRole())) {
+                throw RejectionCode.INVALID_ACL_POLICY.reject("MSP ID " + rule.getMspId() + " with role " + rule.getRole() + " has more than one rule");
+            }
+            Set<String> ruleFunctions = new HashSet<String>();
+            Collections.addAll(ruleFunctions, rule.getFunctions());
+            roles.put(rule.getRole(), Collections.unmodifiableSet(ruleFunctions));
         }
+        return new CompiledPolicy(policy.getVersion(), functions);
     }
 
-}
\ No newline at end of file
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+}
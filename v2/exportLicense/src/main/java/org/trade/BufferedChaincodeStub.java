@@ -0,0 +1,322 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/*
+    Chaincode stub that buffers the state and private data writes of a transaction until 'flush' is called.
+    - Reads see the transaction's own writes. Every other read of a key is served from the buffer after the first.
+    - Repeated writes to a key are coalesced into the last one.
+    - A delete of a key that was read as absent in this transaction cancels out any write before it.
+    - A write of the value that was read for the key is dropped.
+    Range, partial composite key, rich and history queries, and private data hashes, go to the wrapped stub, so,
+    as with the plain stub, they only see state committed before the transaction.
+    Nothing reaches the wrapped stub if 'flush' is never called, which is what a failed transaction needs anyway.
+*/
+
+public final class BufferedChaincodeStub implements ChaincodeStub {
+
+    private static final class Entry {
+        // Value committed before the transaction, if it has been read. Absent keys read as an empty value.
+        private byte[] committed;
+        // Value written by the transaction, if it has written the key. A delete is written as null.
+        private boolean written;
+        private byte[] value;
+    }
+
+    private final ChaincodeStub stub;
+    // Buffered keys by private data collection. Channel state is buffered under a null collection.
+    private final Map<String, Map<String, Entry>> entries = new HashMap<String, Map<String, Entry>>();
+
+    public BufferedChaincodeStub(ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    // Writes the buffered changes to the wrapped stub, and starts a new buffer
+    public void flush() {
+        for (Map.Entry<String, Map<String, Entry>> collection : entries.entrySet()) {
+            for (Map.Entry<String, Entry> keyEntry : collection.getValue().entrySet()) {
+                Entry entry = keyEntry.getValue();
+                if (!entry.written) {
+                    continue;
+                }
+                if (entry.value == null) {
+                    if (entry.committed == null || entry.committed.length > 0) {
+                        delete(collection.getKey(), keyEntry.getKey());
+                    }
+                } else if (entry.committed == null || !Arrays.equals(entry.committed, entry.value)) {
+                    write(collection.getKey(), keyEntry.getKey(), entry.value);
+                }
+            }
+        }
+        entries.clear();
+    }
+
+    private Entry entry(String collection, String key) {
+        return entries.computeIfAbsent(collection, (c) -> new LinkedHashMap<String, Entry>()).computeIfAbsent(key, (k) -> new Entry());
+    }
+
+    private byte[] read(String collection, String key) {
+        Entry entry = entry(collection, key);
+        if (entry.written) {
+            return entry.value == null ? new byte[] {} : entry.value;
+        }
+        if (entry.committed == null) {
+            entry.committed = collection == null ? stub.getState(key) : stub.getPrivateData(collection, key);
+            if (entry.committed == null) {
+                entry.committed = new byte[] {};
+            }
+        }
+        return entry.committed;
+    }
+
+    private void buffer(String collection, String key, byte[] value) {
+        Entry entry = entry(collection, key);
+        entry.written = true;
+        entry.value = value;
+    }
+
+    private void write(String collection, String key, byte[] value) {
+        if (collection == null) {
+            stub.putState(key, value);
+        } else {
+            stub.putPrivateData(collection, key, value);
+        }
+    }
+
+    private void delete(String collection, String key) {
+        if (collection == null) {
+            stub.delState(key);
+        } else {
+            stub.delPrivateData(collection, key);
+        }
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return stub.getArgs();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return stub.getStringArgs();
+    }
+
+    @Override
+    public String getFunction() {
+        return stub.getFunction();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return stub.getParameters();
+    }
+
+    @Override
+    public String getTxId() {
+        return stub.getTxId();
+    }
+
+    @Override
+    public String getChannelId() {
+        return stub.getChannelId();
+    }
+
+    @Override
+    public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        return stub.invokeChaincode(chaincodeName, args, channel);
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        return read(null, key);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        return stub.getStateValidationParameter(key);
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        buffer(null, key, value);
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        stub.setStateValidationParameter(key, value);
+    }
+
+    @Override
+    public void delState(String key) {
+        buffer(null, key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        return stub.getStateByRange(startKey, endKey);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark) {
+        return stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        return stub.getStateByPartialCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        return stub.getStateByPartialCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize, String bookmark) {
+        return stub.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return stub.createCompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return stub.splitCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        return stub.getQueryResult(query);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        return stub.getQueryResultWithPagination(query, pageSize, bookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        return stub.getHistoryForKey(key);
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        return read(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        return stub.getPrivateDataHash(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        return stub.getPrivateDataValidationParameter(collection, key);
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        buffer(collection, key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        stub.setPrivateDataValidationParameter(collection, key, value);
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        buffer(collection, key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        return stub.getPrivateDataByRange(collection, startKey, endKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        return stub.getPrivateDataQueryResult(collection, query);
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        stub.setEvent(name, payload);
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return stub.getEvent();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return stub.getSignedProposal();
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return stub.getTxTimestamp();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return stub.getCreator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return stub.getTransient();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return stub.getBinding();
+    }
+
+    @Override
+    public String getMspId() {
+        return stub.getMspId();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+    Flight Recorder event for one chaincode-to-chaincode call (trade, shipment), including the round trip to the peer.
+*/
+
+@Name("org.trade.ChaincodeInvocation")
+@Label("Chaincode Invocation")
+@Category({ "Trade", "Chaincode" })
+@Description("Call from a contract to another chaincode")
+@Enabled(false)
+@StackTrace(false)
+public class ChaincodeInvocationEvent extends jdk.jfr.Event {
+
+    @Label("Target Chaincode")
+    public String chaincode;
+
+    @Label("Function")
+    public String function;
+
+    @Label("Channel")
+    @Description("Target channel, or empty for the calling transaction's channel")
+    public String channel;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestSize;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseSize;
+
+    @Label("Status")
+    public int status;
+}
@@ -11,6 +11,10 @@ public class Constants {
     public static final String tradeContractIdKey = "tradeContractId";
     public static final String carrierMSPAttr = "carrierMSP";
     public static final String regulatoryAuthorityMSPAttr = "regulatoryAuthorityMSP";
+    public static final String contractConfigKey = "contractConfig";
+    public static final String aclPolicyKey = "aclPolicy";
+    public static final String aclPolicyVersionKey = "aclPolicyVersion";
+    public static final String migrationStateKey = "migrationState";
 
     // Remote contract functions names
     public static final String getTradeFunc = "getTrade";
@@ -31,6 +35,9 @@ public class Constants {
     public static final String lcAmountsAttr = "amount";
     public static final String lcDocumentsAttr = "documents";
 
+    // E/L object attributes
+    public static final String elExporterAttr = "exporter";
+
     // MSP Ids
     public static final String exporterOrgMsp = "ExporterOrgMSP";
     public static final String regulatorOrgMsp = "RegulatorOrgMSP";
@@ -38,14 +45,34 @@ public class Constants {
 
     // Business roles
     public static final String ANY_ROLE = "any";
+    public static final String ACL_ADMIN_ROLE = "acl_admin";
     public static final String EXPORTER_ROLE = "exporter";
     public static final String REGULATOR_ROLE = "regulator";
 
     // Response keywords
     public static final String StatusKey = "Status";
+    public static final String TradeIdKey = "TradeId";
+    public static final String ExportLicenseKey = "ExportLicense";
+    public static final String RecordsKey = "Records";
+    public static final String CursorKey = "Cursor";
+    public static final String MoreKey = "More";
+    public static final String BookmarkKey = "Bookmark";
+    public static final String VersionKey = "Version";
+    public static final String MigratedKey = "Migrated";
+    public static final String PositionKey = "Position";
+    public static final String KeysKey = "Keys";
+    public static final String FetchedKey = "Fetched";
+
+    // Largest response written by a paged query
+    public static final int maxPageBytes = 1024 * 1024;
+
+    // Tracing: span file named by the environment, W3C trace context passed by clients in the transient map
+    public static final String traceFileEnv = "TRADE_TRACE_FILE";
+    public static final String traceparentKey = "traceparent";
 
     // Asset status types
     public static final String REQUESTED = "REQUESTED";
     public static final String ISSUED = "ISSUED";
     public static final String ACCEPTED = "ACCEPTED";
+    public static final String EXPIRED = "EXPIRED";
 }
\ No newline at end of file
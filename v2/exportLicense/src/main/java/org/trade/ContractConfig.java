@@ -0,0 +1,157 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/*
+    Contract configuration record, stored under a single ledger key:
+    [ version: 1 byte ][ tradeChannelName ][ tradeContractId ][ carrierMSP ][ regulatorMSP ]
+    Each string is encoded as a 2-byte big-endian unsigned length followed by its standard UTF-8 bytes, so any tool can
+    decode it. An absent value is encoded as an empty string.
+*/
+
+public class ContractConfig {
+
+    public static final byte VERSION = 1;
+
+    private String tradeChannelName;
+
+    private String tradeContractId;
+
+    private String carrierMSP;
+
+    private String regulatorMSP;
+
+    public ContractConfig() {
+    }
+
+    public ContractConfig(String tradeChannelName, String tradeContractId, String carrierMSP, String regulatorMSP) {
+        this.tradeChannelName = tradeChannelName;
+        this.tradeContractId = tradeContractId;
+        this.carrierMSP = carrierMSP;
+        this.regulatorMSP = regulatorMSP;
+    }
+
+    public String getTradeChannelName() {
+        return tradeChannelName;
+    }
+
+    public void setTradeChannelName(String tradeChannelName) {
+        this.tradeChannelName = tradeChannelName;
+    }
+
+    public String getTradeContractId() {
+        return tradeContractId;
+    }
+
+    public void setTradeContractId(String tradeContractId) {
+        this.tradeContractId = tradeContractId;
+    }
+
+    public String getCarrierMSP() {
+        return carrierMSP;
+    }
+
+    public void setCarrierMSP(String carrierMSP) {
+        this.carrierMSP = carrierMSP;
+    }
+
+    public String getRegulatorMSP() {
+        return regulatorMSP;
+    }
+
+    public void setRegulatorMSP(String regulatorMSP) {
+        this.regulatorMSP = regulatorMSP;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeString(out, tradeChannelName);
+            writeString(out, tradeContractId);
+            writeString(out, carrierMSP);
+            writeString(out, regulatorMSP);
+        } catch (IOException e) {
+            throw new ChaincodeException("Unable to encode contract configuration: " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ContractConfig fromBytes(byte[] configBytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(configBytes))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new ChaincodeException("Unsupported contract configuration version " + version + ". Expected " + VERSION);
+            }
+            ContractConfig config = new ContractConfig();
+            config.setTradeChannelName(readString(in));
+            config.setTradeContractId(readString(in));
+            config.setCarrierMSP(readString(in));
+            config.setRegulatorMSP(readString(in));
+            return config;
+        } catch (IOException e) {
+            throw new ChaincodeException("Unable to decode contract configuration: " + e.getMessage());
+        }
+    }
+
+    // Load the configuration record with a single ledger read. Ledgers written before the record existed
+    // only hold the four legacy keys, so fall back to those until 'init' migrates them.
+    public static ContractConfig load(ChaincodeStub stub) {
+        byte[] configBytes = stub.getState(Constants.contractConfigKey);
+        if (configBytes != null && configBytes.length > 0) {
+            return fromBytes(configBytes);
+        }
+        return loadLegacy(stub);
+    }
+
+    public static ContractConfig loadLegacy(ChaincodeStub stub) {
+        return new ContractConfig(readLegacyKey(stub, Constants.tradeChannelNameKey), readLegacyKey(stub, Constants.tradeContractIdKey),
+                                    readLegacyKey(stub, Constants.carrierMSPAttr), readLegacyKey(stub, Constants.regulatoryAuthorityMSPAttr));
+    }
+
+    public void save(ChaincodeStub stub) {
+        stub.putState(Constants.contractConfigKey, toBytes());
+    }
+
+    @Override
+    public String toString() {
+        return "Trade channel: " + tradeChannelName + ", Trade contract: " + tradeContractId + ", Carrier (MSP): " + carrierMSP + ", Regulatory Authority (MSP): " + regulatorMSP;
+    }
+
+    private static String readLegacyKey(ChaincodeStub stub, String key) {
+        byte[] valueBytes = stub.getState(key);
+        if (valueBytes == null || valueBytes.length == 0) {
+            return null;
+        }
+        return new String(valueBytes, UTF_8);
+    }
+
+    // Unlike DataOutputStream.writeUTF, which writes modified UTF-8, this writes the standard UTF-8 encoding
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] valueBytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+        if (valueBytes.length > 0xFFFF) {
+            throw new ChaincodeException("Unable to encode contract configuration: a value exceeds 65535 bytes");
+        }
+        out.writeShort(valueBytes.length);
+        out.write(valueBytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] valueBytes = new byte[in.readUnsignedShort()];
+        in.readFully(valueBytes);
+        return valueBytes.length == 0 ? null : new String(valueBytes, UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+import com.owlike.genson.Genson;
+/*
+    E/L issuance JSON format, as passed to 'issueELBatch' in an array:
+    {
+        "tradeId": <string>,
+        "exportLicenseId": <string>,
+        "expirationDate": <string>
+    }
+*/
+
+@DataType()
+public class ELIssuance {
+
+    private static final Genson genson = new Genson();
+
+    @Property()
+    private String tradeId;
+
+    @Property()
+    private String exportLicenseId;
+
+    @Property()
+    private String expirationDate;
+
+    public ELIssuance() {
+    }
+
+    public ELIssuance(@JsonProperty("tradeId") String tradeId, @JsonProperty("exportLicenseId") String exportLicenseId, @JsonProperty("expirationDate") String expirationDate) {
+        this.tradeId = tradeId;
+        this.exportLicenseId = exportLicenseId;
+        this.expirationDate = expirationDate;
+    }
+
+    public String getTradeId() {
+        return tradeId;
+    }
+
+    public void setTradeId(String tradeId) {
+        this.tradeId = tradeId;
+    }
+
+    public String getExportLicenseId() {
+        return exportLicenseId;
+    }
+
+    public void setExportLicenseId(String exportLicenseId) {
+        this.exportLicenseId = exportLicenseId;
+    }
+
+    public String getExpirationDate() {
+        return expirationDate;
+    }
+
+    public void setExpirationDate(String expirationDate) {
+        this.expirationDate = expirationDate;
+    }
+
+    public static String toJSONString(ELIssuance[] issuances) {
+        return genson.serialize(issuances);
+    }
+
+    public static ELIssuance[] fromJSONString(String json) {
+        return genson.deserialize(json, ELIssuance[].class);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/*
+    Expiration dates are accepted as MM/dd/yyyy (as clients have always sent them) or yyyy-MM-dd, and normalized to
+    yyyy-MM-dd for the expiry index, where string order is date order.
+*/
+
+public final class ExpiryDate {
+
+    private static final DateTimeFormatter usDate = DateTimeFormatter.ofPattern("MM/dd/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    private static final DateTimeFormatter isoDate = DateTimeFormatter.ofPattern("uuuu-MM-dd").withResolverStyle(ResolverStyle.STRICT);
+
+    private ExpiryDate() {
+    }
+
+    // Returns the date as yyyy-MM-dd, or null if it isn't a valid date in either accepted format
+    public static String normalize(String date) {
+        if (date == null) {
+            return null;
+        }
+        String trimmed = date.trim();
+        try {
+            return LocalDate.parse(trimmed, trimmed.indexOf('/') >= 0 ? usDate : isoDate).format(isoDate);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // The UTC date of a transaction timestamp, as yyyy-MM-dd
+    public static String of(Instant timestamp) {
+        return timestamp.atOffset(ZoneOffset.UTC).toLocalDate().format(isoDate);
+    }
+}
@@ -7,6 +7,7 @@ package org.trade;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import com.owlike.genson.annotation.JsonIgnore;
 import com.owlike.genson.annotation.JsonProperty;
 import com.owlike.genson.Genson;
 /*
@@ -18,7 +19,7 @@ import com.owlike.genson.Genson;
         "carrier": <string>,
         "descriptionOfGoods": <string>,
         "approver": <string>,
-        "status": <string>
+        "status": <LifecycleState name>
     }
 */
 
@@ -114,6 +115,15 @@ public class ExportLicense {
         this.status = status;
     }
 
+    @JsonIgnore
+    public LifecycleState getState() {
+        return LifecycleState.parse(status);
+    }
+
+    public void setState(LifecycleState state) {
+        this.status = state.name();
+    }
+
     public String toJSONString() {
         return genson.serialize(this);
     }
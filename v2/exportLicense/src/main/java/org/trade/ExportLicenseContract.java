@@ -6,6 +6,7 @@ package org.trade;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContextFactory;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.Contract;
 import org.hyperledger.fabric.contract.annotation.Default;
@@ -14,15 +15,26 @@ import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.Chaincode.Response;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 import org.hyperledger.fabric.contract.annotation.Contact;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 
 import com.owlike.genson.Genson;
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.JsonStreamException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+
+import org.trade.ValidationPipeline.Stage;
 
 @Contract(name = "ExportLicenseContract",
     info = @Info(title = "ExportLicense contract",
@@ -40,11 +52,32 @@ public class ExportLicenseContract implements ContractInterface {
 
     private final Genson genson = new Genson();
 
+    // Object type of the expiry index keys: ELExpiry~<yyyy-MM-dd>~<tradeId>
+    private static final String elExpiryIndex = "ELExpiry";
+
+    // Object type of the approvers' pending E/L queue keys: ELPending~<approverMSP>~<tradeId>
+    private static final String elPendingIndex = "ELPending";
+
+    // Fabric deletes keys written with an empty value, so index entries carry a single zero byte
+    private static final byte[] indexEntry = new byte[] { 0 };
+
+    // Upgrades of the records written by earlier versions of the contract, in schema version order
+    private final Migrator migrator = new Migrator(Constants.migrationStateKey)
+                                            .register(1, "ExportLicense", this::migrateEL);
+
     public  ExportLicenseContract() {
     }
 
+    // Ledger accesses and chaincode invocations are visible to Flight Recorder when their events are enabled.
+    // Writes are buffered for the whole transaction and reach the ledger in 'afterTransaction'.
+    @Override
+    public Context createContext(ChaincodeStub stub) {
+        return ContextFactory.getInstance().createContext(new BufferedChaincodeStub(RecordingChaincodeStub.wrap(stub)));
+    }
+
     @Override
     public void beforeTransaction(Context ctx) {
+        TransactionRecorder.begin("ExportLicenseContract", ctx);
         String mspId = AccessControlUtils.GetClientMspId(ctx);
         String role = AccessControlUtils.GetClientRole(ctx);
         if (role == null) {
@@ -53,10 +86,18 @@ public class ExportLicenseContract implements ContractInterface {
         String function = ctx.getStub().getFunction();
 
         if (AccessControlUtils.checkAccess(ctx, mspId, role, function)) {
-            throw new ChaincodeException("The participant " + mspId + " cannot invoke transaction " + function);
+            throw RejectionCode.ACCESS_DENIED.reject(mspId, function);
         }
     }
 
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        if (ctx.getStub() instanceof BufferedChaincodeStub) {
+            ((BufferedChaincodeStub) ctx.getStub()).flush();
+        }
+        TransactionRecorder.end("OK");
+    }
+
     public String getKey(ChaincodeStub stub, String id) {
         CompositeKey ck = stub.createCompositeKey("ExportLicense", id);
         if (ck == null) {
@@ -66,34 +107,96 @@ public class ExportLicenseContract implements ContractInterface {
         return ck.toString();
     }
 
+    public String getExpiryKey(ChaincodeStub stub, String expiryDate, String id) {
+        CompositeKey ck = stub.createCompositeKey(elExpiryIndex, expiryDate, id);
+        if (ck == null) {
+            System.out.println("getExpiryKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(elExpiryIndex, expiryDate, id);
+        }
+        return ck.toString();
+    }
+
+    public String getPendingKey(ChaincodeStub stub, String approver, String id) {
+        CompositeKey ck = stub.createCompositeKey(elPendingIndex, approver, id);
+        if (ck == null) {
+            System.out.println("getPendingKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(elPendingIndex, approver, id);
+        }
+        return ck.toString();
+    }
+
     @Transaction()
     public void init(Context ctx, String ...params) {
         ChaincodeStub stub = ctx.getStub();
         if (params.length == 0) {
-            byte[] tchBytes = stub.getState(Constants.tradeChannelNameKey);
-            if (tchBytes == null || tchBytes.length == 0) {
+            byte[] configBytes = stub.getState(Constants.contractConfigKey);
+            boolean migrate = (configBytes == null || configBytes.length == 0);
+            ContractConfig config = migrate ? ContractConfig.loadLegacy(stub) : ContractConfig.fromBytes(configBytes);
+            if (config.getTradeChannelName() == null) {
                 throw new ChaincodeException("No trade channel id recorded on ledger");
             }
-            byte[] tcBytes = stub.getState(Constants.tradeContractIdKey);
-            if (tcBytes == null || tcBytes.length == 0) {
+            if (config.getTradeContractId() == null) {
                 throw new ChaincodeException("No trade contract id recorded on ledger");
             }
-            System.out.println("No prameters provided. Reusing from ledger: Trade channel '" + new String(tchBytes)+ "' and trade contract '" + new String(tcBytes) + "'");
+            if (migrate) {
+                // Consolidate the legacy per-attribute keys into a single configuration record
+                config.save(stub);
+                System.out.println("Migrated legacy configuration keys to configuration record: " + config);
+            }
+            System.out.println("No prameters provided. Reusing from ledger: Trade channel '" + config.getTradeChannelName() + "' and trade contract '" + config.getTradeContractId() + "'");
             return;
         }
         if (params.length < 2) {
             throw new ChaincodeException("Expected 2 parameters, found " + params.length);
         }
+        // Parameters override the values already recorded on the ledger; blank parameters keep them
+        ContractConfig config = ContractConfig.load(stub);
         String tradeChannelName = params[0];
         if (tradeChannelName != null && tradeChannelName.length() > 0) {
-            stub.putState(Constants.tradeChannelNameKey, tradeChannelName.getBytes(UTF_8));
+            config.setTradeChannelName(tradeChannelName);
             System.out.println("E/L contract initialized with Trade channel '" + tradeChannelName);
         }
         String tradeContractId = params[1];
         if (tradeContractId != null && tradeContractId.length() > 0) {
-            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            config.setTradeContractId(tradeContractId);
             System.out.println("E/L contract initialized with Trade contract '" + tradeContractId);
         }
+        // Optional carrier and regulatory authority MSPs
+        if (params.length > 2 && params[2] != null && params[2].length() > 0) {
+            config.setCarrierMSP(params[2]);
+            System.out.println("E/L contract initialized with Carrier (MSP) '" + params[2]);
+        }
+        if (params.length > 3 && params[3] != null && params[3].length() > 0) {
+            config.setRegulatorMSP(params[3]);
+            System.out.println("E/L contract initialized with Regulatory Authority (MSP) '" + params[3]);
+        }
+        config.save(stub);
+    }
+
+    @Transaction()
+    public void updateACLPolicy(Context ctx, String policyJson) {
+        // Record the new access control policy. Its version must follow the current one, so concurrent updates can't overwrite each other.
+        ACLPolicy policy = AccessControlUtils.updatePolicy(ctx.getStub(), AccessControlUtils.GetClientMspId(ctx), policyJson);
+        System.out.println("ACL policy version " + policy.getVersion() + " recorded with " + policy.getRules().length + " rules");
+    }
+
+    @Transaction()
+    public String getACLPolicy(Context ctx) {
+        return AccessControlUtils.getPolicy(ctx.getStub()).toJSONString();
+    }
+
+    @Transaction()
+    public String getMigrationBatch(Context ctx, int batchSize) {
+        // Plan the next batch of up to 'batchSize' records written by earlier versions of the contract, for 'migrate'.
+        // Paginated queries are only allowed in read-only transactions, so this transaction must not be submitted.
+        return genson.serialize(migrator.nextBatch(ctx, batchSize));
+    }
+
+    @Transaction()
+    public String migrate(Context ctx, String batchJson) {
+        // Upgrade the records of a batch returned by 'getMigrationBatch'. Plan and migrate batches until 'More' is false.
+        // Other transactions read records in either format in the meantime.
+        return genson.serialize(migrator.migrate(ctx, batchJson));
     }
 
     @Transaction()
@@ -105,132 +208,215 @@ public class ExportLicenseContract implements ContractInterface {
 
     @Transaction()
     public void requestEL(Context ctx, String tradeId) {
-        // Lookup trade channel id
         ChaincodeStub stub = ctx.getStub();
-        byte[] tchBytes = stub.getState(Constants.tradeChannelNameKey);
-        if (tchBytes == null || tchBytes.length == 0) {
-            throw new ChaincodeException("No trade channel name recorded on ledger");
-        }
-        String tradeChannel = new String(tchBytes);
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        ValidationPipeline validation = new ValidationPipeline();
 
-        // Lookup trade contract ID
-        byte[] tcBytes = stub.getState(Constants.tradeContractIdKey);
-        if (tcBytes == null || tcBytes.length == 0) {
-            throw new ChaincodeException("No trade contract id recorded on ledger");
-        }
-        String tradeContractId = new String(tcBytes);
+        // Lookup trade channel id, trade contract ID, carrier and approver from configuration
+        ValidationPipeline.Value<ContractConfig> config = validation.lookup(Stage.LOCAL, () -> ContractConfig.load(stub));
+        validation.check(Stage.LOCAL, () -> {
+            if (config.get().getTradeChannelName() == null) {
+                throw new ChaincodeException("No trade channel name recorded on ledger");
+            }
+            if (config.get().getTradeContractId() == null) {
+                throw new ChaincodeException("No trade contract id recorded on ledger");
+            }
+            if (config.get().getCarrierMSP() == null) {
+                throw new ChaincodeException("No Carrier recorded on ledger");
+            }
+            if (config.get().getRegulatorMSP() == null) {
+                throw new ChaincodeException("No Approver recorded on ledger");
+            }
+        });
 
         // Lookup trade agreemeent by invoking the trade chaincode
-        ArrayList<String> tradeArgs = new ArrayList<String>();
-        tradeArgs.add(Constants.getTradeFunc);
-        tradeArgs.add(tradeId);
-        Response tradeResp = stub.invokeChaincodeWithStringArgs(tradeContractId, tradeArgs, tradeChannel);
-        String trade = tradeResp.getStringPayload();
-        if (tradeResp.getStatus() != Response.Status.SUCCESS) {
-            throw new ChaincodeException("Error invoking '" + tradeContractId + "' chaincode, function '" + Constants.getTradeFunc + "': " + trade);
+        ValidationPipeline.Value<Map<String, String>> trade = validation.lookup(Stage.REMOTE, () -> getTrade(stub, config.get(), tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            String tradeStatus = trade.get().get(Constants.tradeStatusAttr);
+            if (!tradeStatus.equals(Constants.ACCEPTED)) {
+                throw RejectionCode.TRADE_NOT_ACCEPTED.reject(tradeId, tradeStatus, Constants.ACCEPTED);
+            }
+        });
+        validation.check(Stage.REMOTE, () -> {
+            // Exporter, represented by an exporter entity org MSP associated with this trade, must match the caller's MSP
+            if (!trade.get().get(Constants.exporterMSPAttr).equals(callerMspId)) {
+                throw RejectionCode.EL_REQUESTER_NOT_EXPORTER.reject(tradeId, callerMspId);
+            }
+        });
+        validation.run();
+
+        // Create E/L object and record it on the ledger
+        Map<String, String> tradeObj = trade.get();
+        ExportLicense el = new ExportLicense("", "", tradeObj.get(Constants.exporterMSPAttr), config.get().getCarrierMSP(), tradeObj.get(Constants.tradeDescOfGoodsAttr),
+                                            config.get().getRegulatorMSP(), StateMachine.EXPORT_LICENSE.transition(LifecycleState.NONE, LifecycleEvent.REQUEST).name());
+        String elKey = getKey(stub, tradeId);
+        String elStr = el.toJSONString();
+        stub.putState(elKey, elStr.getBytes(UTF_8));
+        // Queue the request for its approver
+        stub.putState(getPendingKey(stub, el.getApprover(), tradeId), indexEntry);
+        System.out.println("E/L issuance recorded with key '" + elKey + "' and value : " + elStr);
+    }
+
+    @Transaction()
+    public void issueEL(Context ctx, String tradeId, String exportLicenseId, String expirationDate) {
+        ChaincodeStub stub = ctx.getStub();
+        issueEL(stub, getRegulator(stub), AccessControlUtils.GetClientMspId(ctx), tradeId, exportLicenseId, expirationDate);
+    }
+
+    @Transaction()
+    public String issueELBatch(Context ctx, String issuancesJson) {
+        // Issue the E/Ls of a batch of issuances, typically for a page of 'getPendingELs', looking up the approver once.
+        // The batch is issued as a whole: if any issuance is rejected, so is the transaction.
+        ChaincodeStub stub = ctx.getStub();
+        ELIssuance[] issuances;
+        try {
+            issuances = ELIssuance.fromJSONString(issuancesJson);
+        } catch (JsonBindingException | JsonStreamException e) {
+            throw RejectionCode.INVALID_EL_ISSUANCES.reject("they are not a JSON array of issuances");
         }
-        if (trade.isEmpty()) {
-            throw new ChaincodeException("Unable to locate trade ': " + trade + "'");
+        if (issuances == null || issuances.length == 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(0);
         }
-        @SuppressWarnings("unchecked")
-        Map<String, String> tradeObj = genson.deserialize(trade, Map.class);
-        String tradeStatus = tradeObj.get(Constants.tradeStatusAttr);
-        String tradeExporterMSP = tradeObj.get(Constants.exporterMSPAttr);
+        String regulator = getRegulator(stub);
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
 
-        if (!tradeStatus.equals(Constants.ACCEPTED)) {
-            throw new ChaincodeException("'" + tradeId + "' is in '" + tradeStatus + "' state. Expected '" + Constants.ACCEPTED + "'");
+        List<String> issued = new ArrayList<String>();
+        for (ELIssuance issuance : issuances) {
+            if (issuance == null || issuance.getTradeId() == null || issuance.getTradeId().isEmpty()) {
+                throw RejectionCode.INVALID_EL_ISSUANCES.reject("an issuance has no trade ID");
+            }
+            if (issueEL(stub, regulator, callerMspId, issuance.getTradeId(), issuance.getExportLicenseId(), issuance.getExpirationDate())) {
+                issued.add(issuance.getTradeId());
+            }
         }
 
-        // Exporter, represented by an exporter entity org MSP associated with this trade, must match the caller's MSP
-        if (!tradeExporterMSP.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporter " + AccessControlUtils.GetClientMspId(ctx) + ". Exporter cannot request EL");
-        }
+        Map<String, Object> result = new HashMap<String, Object>() {
+            private static final long serialVersionUID = 2611586301837564103L;
+            {
+                put(Constants.RecordsKey, issued);
+            }
+        };
+        System.out.println("Issued " + issued.size() + " of " + issuances.length + " E/Ls in batch");
+        return genson.serialize(result);
+    }
 
-        // Lookup carrier name from ledger
-        byte[] carrierBytes = stub.getState(Constants.carrierMSPAttr);
-        if (carrierBytes == null || carrierBytes.length == 0) {
-            throw new ChaincodeException("No Carrier recorded on ledger");
+    @Transaction()
+    public String getPendingELs(Context ctx, int pageSize, String bookmark) {
+        // Page through the E/Ls awaiting the caller's approval, in trade ID order, reading only the caller's slice of the queue
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        return PagedQuery.byPartialCompositeKey(stub, null, new CompositeKey(elPendingIndex, callerMspId), pageSize, bookmark)
+                         .projection((entry) -> {
+                             // Queue entries outlive E/Ls that are no longer on the ledger
+                             String tradeId = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes().get(1);
+                             byte[] elBytes = stub.getState(getKey(stub, tradeId));
+                             if (elBytes == null || elBytes.length == 0) {
+                                 return null;
+                             }
+                             return "{\"" + Constants.TradeIdKey + "\":" + genson.serialize(tradeId) + ",\"" + Constants.ExportLicenseKey + "\":" + new String(elBytes, UTF_8) + "}";
+                         })
+                         .run();
+    }
+
+    @Transaction()
+    public String expireELs(Context ctx, String asOfDate, int limit) {
+        // Expire up to 'limit' issued E/Ls whose expiration date is before 'asOfDate', earliest first.
+        // The expiry index is read in date order and the scan stops at the first entry that isn't due, so only the due slice is read.
+        ChaincodeStub stub = ctx.getStub();
+        if (limit <= 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(limit);
+        }
+        String asOf = ExpiryDate.normalize(asOfDate);
+        if (asOf == null) {
+            throw RejectionCode.INVALID_EXPIRATION_DATE.reject(asOfDate);
+        }
+        // Endorsers agree on the transaction timestamp, so it bounds how far ahead a caller may expire E/Ls
+        String txDate = ExpiryDate.of(stub.getTxTimestamp());
+        if (asOf.compareTo(txDate) > 0) {
+            throw RejectionCode.EXPIRY_DATE_IN_FUTURE.reject(asOf, txDate);
         }
 
-        // Lookup approver name from ledger
-        byte[] approverBytes = stub.getState(Constants.regulatoryAuthorityMSPAttr);
-        if (approverBytes == null || approverBytes.length == 0) {
-            throw new ChaincodeException("No Approver recorded on ledger");
+        List<String> expired = new ArrayList<String>();
+        boolean more = false;
+        int processed = 0;
+        QueryResultsIterator<KeyValue> index = stub.getStateByPartialCompositeKey(new CompositeKey(elExpiryIndex));
+        try {
+            for (KeyValue entry : index) {
+                List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+                if (attributes.get(0).compareTo(asOf) >= 0) {
+                    break;
+                }
+                if (processed++ == limit) {
+                    more = true;
+                    break;
+                }
+                String tradeId = attributes.get(1);
+                if (expireEL(stub, tradeId)) {
+                    expired.add(tradeId);
+                }
+                stub.delState(entry.getKey());
+            }
+        } finally {
+            try {
+                index.close();
+            } catch (Exception e) {
+                throw new ChaincodeException("Unable to close the E/L expiry index iterator: " + e.getMessage());
+            }
         }
 
-        // Create E/L object and record it on the ledger
-        ExportLicense el = new ExportLicense("", "", tradeExporterMSP, new String(carrierBytes), tradeObj.get(Constants.tradeDescOfGoodsAttr),
-                                            new String(approverBytes), Constants.REQUESTED);
-        String elKey = getKey(stub, tradeId);
-        String elStr = el.toJSONString();
-        stub.putState(elKey, elStr.getBytes(UTF_8));
-        System.out.println("E/L issuance recorded with key '" + elKey + "' and value : " + elStr);
+        final boolean hasMore = more;
+        Map<String, Object> result = new HashMap<String, Object>() {
+            private static final long serialVersionUID = -3385941562286315705L;
+            {
+                put(Constants.RecordsKey, expired);
+                put(Constants.MoreKey, hasMore);
+            }
+        };
+        System.out.println("Expired " + expired.size() + " E/Ls due before " + asOf + (hasMore ? ", more are due" : ""));
+        return genson.serialize(result);
     }
 
     @Transaction()
-    public void issueEL(Context ctx, String tradeId, String exportLicenseId, String expirationDate) {
+    public String getEL(Context ctx, String tradeId) {
         // Lookup E/L from given trade ID
         ChaincodeStub stub = ctx.getStub();
         String elKey = getKey(stub, tradeId);
         byte[] elBytes = stub.getState(elKey);
         if (elBytes == null || elBytes.length == 0) {
-            throw new ChaincodeException("No E/L recorded for trade '" + tradeId + "'");
+            throw RejectionCode.EL_NOT_FOUND.reject(tradeId);
         }
 
-        // Lookup approver name from ledger
-        byte[] regulatorBytes = stub.getState(Constants.regulatoryAuthorityMSPAttr);
-        if (regulatorBytes == null || regulatorBytes.length == 0) {
-            throw new ChaincodeException("No Approver recorded on ledger");
-        }
-        String regulator = new String(regulatorBytes);
-
-        // Check E/L status and issue with new attributes if required
-        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes));
-        String elStatus = el.getStatus();
-        String elApprover = el.getApprover();
-
-        if (!elApprover.equals(regulator)) {
-            throw new ChaincodeException("Regulator recorded on ledger '" + regulator + "' does not match E/L approver '" + elApprover + "'");
-        }
-
-        // Regulator, represented by a regulator org MSP (currently, only 'RegulatorOrgMSP'), associated with this trade must match the caller's MSP
-        if (!regulator.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not concern regulator " + AccessControlUtils.GetClientMspId(ctx) + ". Regulator cannot issue EL");
+        // Only the exporter is needed to check visibility, so read it from the stored bytes
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        if (!isELVisible(JsonFields.stringField(elBytes, Constants.elExporterAttr), callerMspId)) {
+            throw RejectionCode.EL_NOT_VISIBLE.reject(tradeId, callerMspId);
         }
 
-        if (elStatus.equals(Constants.ISSUED)) {
-            System.out.println("E/L for trade '" + tradeId + "' has already been issued");
-        } else {
-            el.setId(exportLicenseId);
-            el.setExpirationDate(expirationDate);
-            el.setStatus(Constants.ISSUED);
-            String elStr = el.toJSONString();
-            stub.putState(elKey, elStr.getBytes(UTF_8));
-            System.out.println("E/L issuance recorded with key '" + elKey + "' and value : " + elStr);
-        }
+        System.out.println("Retrieved E/L for trade '" + tradeId + "' from ledger (" + elBytes.length + " bytes)");
+        return new String(elBytes, UTF_8);
     }
 
     @Transaction()
-    public String getEL(Context ctx, String tradeId) {
+    public String getELFields(Context ctx, String tradeId, String... fields) {
         // Lookup E/L from given trade ID
         ChaincodeStub stub = ctx.getStub();
         String elKey = getKey(stub, tradeId);
         byte[] elBytes = stub.getState(elKey);
         if (elBytes == null || elBytes.length == 0) {
-            throw new ChaincodeException("No E/L recorded for trade '" + tradeId + "'");
+            throw RejectionCode.EL_NOT_FOUND.reject(tradeId);
         }
 
-        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes));
-        String elExporterMSP = el.getExporter();
-        // Exporter, represented by an exporter or exporting entity org MSP associated with this E/L, must match the caller's MSP
+        // Visibility is checked as in 'getEL'
         String callerMspId = AccessControlUtils.GetClientMspId(ctx);
-        if ((callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP)) && !elExporterMSP.equals(callerMspId)) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporting entity " + AccessControlUtils.GetClientMspId(ctx));
+        if (!isELVisible(JsonFields.stringField(elBytes, Constants.elExporterAttr), callerMspId)) {
+            throw RejectionCode.EL_NOT_VISIBLE.reject(tradeId, callerMspId);
         }
 
-        String elStr = new String(elBytes);
-        System.out.println("Retrieved E/L from ledger: " + elStr);
-        return elStr;
+        // Copy only the requested fields from the stored bytes
+        List<String> names = Arrays.asList(fields);
+        String selected = JsonFields.selectFields(elBytes, names);
+        System.out.println("Retrieved " + names + " of E/L for trade '" + tradeId + "' from ledger (" + selected.length() + " of " + elBytes.length + " bytes)");
+        return selected;
     }
 
     @Transaction()
@@ -240,15 +426,13 @@ public class ExportLicenseContract implements ContractInterface {
         String elKey = getKey(stub, tradeId);
         byte[] elBytes = stub.getState(elKey);
         if (elBytes == null || elBytes.length == 0) {
-            throw new ChaincodeException("No E/L recorded for trade '" + tradeId + "'");
+            throw RejectionCode.EL_NOT_FOUND.reject(tradeId);
         }
 
-        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes));
-        String elExporterMSP = el.getExporter();
-        // Exporter, represented by an exporter or exporting entity org MSP associated with this E/L, must match the caller's MSP
+        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes, UTF_8));
         String callerMspId = AccessControlUtils.GetClientMspId(ctx);
-        if ((callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP)) && !elExporterMSP.equals(callerMspId)) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporting entity " + AccessControlUtils.GetClientMspId(ctx));
+        if (!isELVisible(el.getExporter(), callerMspId)) {
+            throw RejectionCode.EL_NOT_VISIBLE.reject(tradeId, callerMspId);
         }
 
         Map<String, String> status = new HashMap<String, String>() {
@@ -261,4 +445,250 @@ public class ExportLicenseContract implements ContractInterface {
         return genson.serialize(status);
     }
 
+    @Transaction()
+    public String getELs(Context ctx, String... tradeIds) {
+        // Resolve the caller once for the whole batch
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+
+        // Stream the stored E/Ls into a single JSON array. E/Ls that don't exist or aren't visible to the caller are left out.
+        StringBuilder els = new StringBuilder("[");
+        int count = 0;
+        for (String tradeId : tradeIds) {
+            byte[] elBytes = stub.getState(getKey(stub, tradeId));
+            if (elBytes == null || elBytes.length == 0) {
+                continue;
+            }
+            if (!isELVisible(JsonFields.stringField(elBytes, Constants.elExporterAttr), callerMspId)) {
+                continue;
+            }
+            String elStr = new String(elBytes, UTF_8);
+            if (count++ > 0) {
+                els.append(',');
+            }
+            els.append("{\"").append(Constants.TradeIdKey).append("\":").append(genson.serialize(tradeId))
+               .append(",\"").append(Constants.ExportLicenseKey).append("\":").append(elStr).append('}');
+        }
+        els.append(']');
+        System.out.println("Retrieved " + count + " of " + tradeIds.length + " requested E/Ls from ledger");
+        return els.toString();
+    }
+
+    @Transaction()
+    public String getELStatuses(Context ctx, String... tradeIds) {
+        // Resolve the caller once for the whole batch
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+
+        // Stream the E/L statuses into a single JSON array. E/Ls that don't exist or aren't visible to the caller are left out.
+        StringBuilder statuses = new StringBuilder("[");
+        int count = 0;
+        for (String tradeId : tradeIds) {
+            byte[] elBytes = stub.getState(getKey(stub, tradeId));
+            if (elBytes == null || elBytes.length == 0) {
+                continue;
+            }
+            ExportLicense el = ExportLicense.fromJSONString(new String(elBytes, UTF_8));
+            if (!isELVisible(el.getExporter(), callerMspId)) {
+                continue;
+            }
+            if (count++ > 0) {
+                statuses.append(',');
+            }
+            statuses.append("{\"").append(Constants.TradeIdKey).append("\":").append(genson.serialize(tradeId))
+                    .append(",\"").append(Constants.StatusKey).append("\":").append(genson.serialize(el.getStatus())).append('}');
+        }
+        statuses.append(']');
+        System.out.println("Retrieved " + count + " of " + tradeIds.length + " requested E/L statuses from ledger");
+        return statuses.toString();
+    }
+
+    @Transaction()
+    public String getELHistory(Context ctx, String tradeId, int pageSize, String cursor) {
+        // Stream the modifications of the E/L for the given trade ID, resuming after the transaction ID given as cursor
+        ChaincodeStub stub = ctx.getStub();
+        String elKey = getKey(stub, tradeId);
+        List<HistoryRecord> records = new ArrayList<HistoryRecord>();
+        String nextCursor = getHistoryPage(stub, elKey, pageSize, cursor, (elBytes) -> ExportLicense.fromJSONString(new String(elBytes, UTF_8)).getStatus(), records);
+
+        Map<String, Object> history = new HashMap<String, Object>() {
+            private static final long serialVersionUID = 5183317409244516592L;
+            {
+                put(Constants.RecordsKey, records);
+                put(Constants.CursorKey, nextCursor);
+            }
+        };
+        System.out.println("Retrieved " + records.size() + " E/L history records from ledger for trade '" + tradeId + "'");
+        return genson.serialize(history);
+    }
+
+    private boolean isELVisible(String exporter, String callerMspId) {
+        // Exporter, represented by an exporter or exporting entity org MSP associated with this E/L, must match the caller's MSP
+        boolean isExportOrg = (callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP));
+        return !isExportOrg || callerMspId.equals(exporter);
+    }
+
+    private Map<String, String> getTrade(ChaincodeStub stub, ContractConfig config, String tradeId) {
+        return Tracer.trace("getTrade", () -> fetchTrade(stub, config, tradeId));
+    }
+
+    private Map<String, String> fetchTrade(ChaincodeStub stub, ContractConfig config, String tradeId) {
+        ArrayList<String> tradeArgs = new ArrayList<String>();
+        tradeArgs.add(Constants.getTradeFunc);
+        tradeArgs.add(tradeId);
+        Response tradeResp = Tracer.invokeChaincode(stub, config.getTradeContractId(), tradeArgs, config.getTradeChannelName());
+        String trade = tradeResp.getStringPayload();
+        if (tradeResp.getStatus() != Response.Status.SUCCESS) {
+            throw new ChaincodeException("Error invoking '" + config.getTradeContractId() + "' chaincode, function '" + Constants.getTradeFunc + "': " + trade);
+        }
+        if (trade.isEmpty()) {
+            throw RejectionCode.TRADE_NOT_FOUND.reject(tradeId);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> tradeObj = genson.deserialize(trade, Map.class);
+        return tradeObj;
+    }
+
+    // Issues the E/L for the given trade, and returns whether it was issued by this call
+    private boolean issueEL(ChaincodeStub stub, String regulator, String callerMspId, String tradeId, String exportLicenseId, String expirationDate) {
+        // Lookup E/L from given trade ID
+        String elKey = getKey(stub, tradeId);
+        byte[] elBytes = stub.getState(elKey);
+        if (elBytes == null || elBytes.length == 0) {
+            throw RejectionCode.EL_NOT_FOUND.reject(tradeId);
+        }
+
+        // The expiry index needs a date it can order
+        String expiryDate = ExpiryDate.normalize(expirationDate);
+        if (expiryDate == null) {
+            throw RejectionCode.INVALID_EXPIRATION_DATE.reject(expirationDate);
+        }
+
+        // Check E/L status and issue with new attributes if required
+        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes, UTF_8));
+        LifecycleState elState = el.getState();
+        String elApprover = el.getApprover();
+
+        if (!elApprover.equals(regulator)) {
+            throw RejectionCode.APPROVER_MISMATCH.reject(regulator, elApprover);
+        }
+
+        // Regulator, represented by a regulator org MSP (currently, only 'RegulatorOrgMSP'), associated with this trade must match the caller's MSP
+        if (!regulator.equals(callerMspId)) {
+            throw RejectionCode.EL_ISSUER_NOT_REGULATOR.reject(tradeId, callerMspId);
+        }
+
+        LifecycleState nextState = StateMachine.EXPORT_LICENSE.transition(elState, LifecycleEvent.ISSUE);
+        if (nextState == null) {
+            throw RejectionCode.EL_NOT_ISSUABLE.reject(tradeId, elState);
+        } else if (nextState == elState) {
+            System.out.println("E/L for trade '" + tradeId + "' has already been issued");
+            return false;
+        }
+        el.setId(exportLicenseId);
+        el.setExpirationDate(expirationDate);
+        el.setState(nextState);
+        String elStr = el.toJSONString();
+        stub.putState(elKey, elStr.getBytes(UTF_8));
+        stub.putState(getExpiryKey(stub, expiryDate, tradeId), indexEntry);
+        stub.delState(getPendingKey(stub, elApprover, tradeId));
+        System.out.println("E/L issuance recorded with key '" + elKey + "' and value : " + elStr);
+        return true;
+    }
+
+    // Lookup approver name from configuration
+    private String getRegulator(ChaincodeStub stub) {
+        String regulator = ContractConfig.load(stub).getRegulatorMSP();
+        if (regulator == null) {
+            throw new ChaincodeException("No Approver recorded on ledger");
+        }
+        return regulator;
+    }
+
+    // Schema version 1: requested E/Ls are in their approver's pending queue, and issued E/Ls are in the expiry index.
+    // E/Ls written by the v1 contract are in neither.
+    private boolean migrateEL(Context ctx, String elKey, byte[] elBytes) {
+        ChaincodeStub stub = ctx.getStub();
+        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes, UTF_8));
+        String tradeId = CompositeKey.parseCompositeKey(elKey).getAttributes().get(0);
+        String indexKey;
+        if (el.getState() == LifecycleState.REQUESTED) {
+            indexKey = getPendingKey(stub, el.getApprover(), tradeId);
+        } else if (el.getState() == LifecycleState.ISSUED) {
+            String expiryDate = ExpiryDate.normalize(el.getExpirationDate());
+            if (expiryDate == null) {
+                System.out.println("E/L for trade '" + tradeId + "' has expiration date '" + el.getExpirationDate() + "', which can't be indexed");
+                return false;
+            }
+            indexKey = getExpiryKey(stub, expiryDate, tradeId);
+        } else {
+            return false;
+        }
+        return addIndexEntry(stub, indexKey);
+    }
+
+    // Records the index entry unless it is already recorded, and returns whether it was recorded by this call
+    private static boolean addIndexEntry(ChaincodeStub stub, String indexKey) {
+        byte[] entry = stub.getState(indexKey);
+        if (entry != null && entry.length > 0) {
+            return false;
+        }
+        stub.putState(indexKey, indexEntry);
+        return true;
+    }
+
+    // Moves the E/L for the given trade to EXPIRED, and returns whether it was expired by this call
+    private boolean expireEL(ChaincodeStub stub, String tradeId) {
+        String elKey = getKey(stub, tradeId);
+        byte[] elBytes = stub.getState(elKey);
+        if (elBytes == null || elBytes.length == 0) {
+            return false;
+        }
+        ExportLicense el = ExportLicense.fromJSONString(new String(elBytes, UTF_8));
+        LifecycleState nextState = StateMachine.EXPORT_LICENSE.transition(el.getState(), LifecycleEvent.EXPIRE);
+        if (nextState == null || nextState == el.getState()) {
+            return false;
+        }
+        el.setState(nextState);
+        stub.putState(elKey, el.toJSONString().getBytes(UTF_8));
+        return true;
+    }
+
+    // Fills 'records' with up to 'pageSize' modifications of the given key, decoding them one at a time, and returns
+    // the cursor to resume from (empty if the history has been exhausted)
+    private String getHistoryPage(ChaincodeStub stub, String key, int pageSize, String cursor, Function<byte[], String> statusDecoder, List<HistoryRecord> records) {
+        if (pageSize <= 0) {
+            throw RejectionCode.INVALID_PAGE_SIZE.reject(pageSize);
+        }
+        // Skip over (without decoding) the modifications up to and including the cursor
+        boolean collecting = (cursor == null || cursor.isEmpty());
+        QueryResultsIterator<KeyModification> history = stub.getHistoryForKey(key);
+        try {
+            Iterator<KeyModification> modifications = history.iterator();
+            while (modifications.hasNext()) {
+                KeyModification modification = modifications.next();
+                if (!collecting) {
+                    collecting = modification.getTxId().equals(cursor);
+                    continue;
+                }
+                String status = "";
+                if (!modification.isDeleted()) {
+                    status = statusDecoder.apply(modification.getValue());
+                }
+                records.add(new HistoryRecord(modification.getTxId(), modification.getTimestamp().toString(), status, modification.isDeleted()));
+                if (records.size() == pageSize) {
+                    // Stop early: the page is full
+                    return modifications.hasNext() ? modification.getTxId() : "";
+                }
+            }
+            return "";
+        } finally {
+            try {
+                history.close();
+            } catch (Exception e) {
+                throw new ChaincodeException("Unable to close history iterator for key '" + key + "': " + e.getMessage());
+            }
+        }
+    }
+
 }
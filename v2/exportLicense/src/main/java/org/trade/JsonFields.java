@@ -0,0 +1,245 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/*
+    Reads single top-level fields of a stored JSON object straight from its UTF-8 bytes, without deserializing the
+    object. Fields are looked up by ASCII name, and nested objects, arrays and strings are skipped without being decoded.
+    Malformed JSON is reported as a ChaincodeException, like a failed deserialization would be.
+*/
+
+final class JsonFields {
+
+    private JsonFields() {
+    }
+
+    // The value of the given top-level field if it is a string, or null if the field is absent or holds another type
+    static String stringField(byte[] json, String name) {
+        int value = find(json, name);
+        if (value < 0 || json[value] != '"') {
+            return null;
+        }
+        return readString(json, value);
+    }
+
+    static boolean hasField(byte[] json, String name) {
+        return find(json, name) >= 0;
+    }
+
+    // A JSON object with only the given top-level fields, in stored order. Their keys and values are copied as stored,
+    // without being decoded, and absent fields are left out. The scan stops once every field has been found.
+    static String selectFields(byte[] json, Collection<String> names) {
+        Set<String> pending = new HashSet<String>(names);
+        ByteArrayOutputStream selected = new ByteArrayOutputStream();
+        selected.write('{');
+        int i = skipWhitespace(json, 0);
+        expect(json, i, '{');
+        i = skipWhitespace(json, i + 1);
+        boolean done = pending.isEmpty() || (i < json.length && json[i] == '}');
+        while (!done) {
+            expect(json, i, '"');
+            int keyStart = i;
+            int keyEnd = skipString(json, i);
+            i = skipWhitespace(json, keyEnd);
+            expect(json, i, ':');
+            int valueStart = skipWhitespace(json, i + 1);
+            int valueEnd = skipValue(json, valueStart);
+            if (pending.remove(readString(json, keyStart))) {
+                if (selected.size() > 1) {
+                    selected.write(',');
+                }
+                selected.write(json, keyStart, keyEnd - keyStart);
+                selected.write(':');
+                selected.write(json, valueStart, valueEnd - valueStart);
+            }
+            i = skipWhitespace(json, valueEnd);
+            if (i < json.length && json[i] == ',') {
+                i = skipWhitespace(json, i + 1);
+                done = pending.isEmpty();
+            } else {
+                expect(json, i, '}');
+                done = true;
+            }
+        }
+        selected.write('}');
+        return new String(selected.toByteArray(), UTF_8);
+    }
+
+    // Returns the offset of the value of the given top-level field, or -1 if the object has no such field
+    private static int find(byte[] json, String name) {
+        int i = skipWhitespace(json, 0);
+        expect(json, i, '{');
+        i = skipWhitespace(json, i + 1);
+        if (i < json.length && json[i] == '}') {
+            return -1;
+        }
+        while (true) {
+            expect(json, i, '"');
+            int keyEnd = skipString(json, i);
+            boolean matches = keyEquals(json, i + 1, keyEnd - 1, name);
+            i = skipWhitespace(json, keyEnd);
+            expect(json, i, ':');
+            i = skipWhitespace(json, i + 1);
+            if (matches) {
+                return i;
+            }
+            i = skipWhitespace(json, skipValue(json, i));
+            if (i < json.length && json[i] == ',') {
+                i = skipWhitespace(json, i + 1);
+            } else {
+                expect(json, i, '}');
+                return -1;
+            }
+        }
+    }
+
+    // Compares the raw key bytes in [start, end) with an ASCII name. Keys with escapes are decoded first.
+    private static boolean keyEquals(byte[] json, int start, int end, String name) {
+        for (int i = start; i < end; i++) {
+            if (json[i] == '\\') {
+                return readString(json, start - 1).equals(name);
+            }
+        }
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (json[start + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the offset just after the value starting at the given offset
+    private static int skipValue(byte[] json, int i) {
+        if (i >= json.length) {
+            throw malformed(i);
+        }
+        switch (json[i]) {
+            case '"':
+                return skipString(json, i);
+            case '{':
+            case '[':
+                int depth = 0;
+                while (i < json.length) {
+                    byte b = json[i];
+                    if (b == '"') {
+                        i = skipString(json, i);
+                        continue;
+                    }
+                    if (b == '{' || b == '[') {
+                        depth++;
+                    } else if (b == '}' || b == ']') {
+                        if (--depth == 0) {
+                            return i + 1;
+                        }
+                    }
+                    i++;
+                }
+                throw malformed(i);
+            default:
+                // Numbers, booleans and null run up to the next delimiter
+                while (i < json.length && json[i] != ',' && json[i] != '}' && json[i] != ']' && !isWhitespace(json[i])) {
+                    i++;
+                }
+                return i;
+        }
+    }
+
+    // Returns the offset just after the closing quote of the string starting at the given offset
+    private static int skipString(byte[] json, int i) {
+        for (i = i + 1; i < json.length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return i + 1;
+            }
+        }
+        throw malformed(i);
+    }
+
+    private static String readString(byte[] json, int i) {
+        int end = skipString(json, i);
+        int escape = -1;
+        for (int j = i + 1; j < end - 1; j++) {
+            if (json[j] == '\\') {
+                escape = j;
+                break;
+            }
+        }
+        if (escape < 0) {
+            return new String(json, i + 1, end - i - 2, UTF_8);
+        }
+        StringBuilder value = new StringBuilder(new String(json, i + 1, escape - i - 1, UTF_8));
+        int j = escape;
+        while (j < end - 1) {
+            if (json[j] != '\\') {
+                int run = j;
+                while (j < end - 1 && json[j] != '\\') {
+                    j++;
+                }
+                value.append(new String(json, run, j - run, UTF_8));
+                continue;
+            }
+            char c = (char) json[j + 1];
+            switch (c) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (j + 6 > end - 1) {
+                        throw malformed(j);
+                    }
+                    int code = 0;
+                    for (int k = j + 2; k < j + 6; k++) {
+                        int digit = Character.digit((char) json[k], 16);
+                        if (digit < 0) {
+                            throw malformed(k);
+                        }
+                        code = code * 16 + digit;
+                    }
+                    value.append((char) code);
+                    j += 4;
+                    break;
+                default: value.append(c);
+            }
+            j += 2;
+        }
+        return value.toString();
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (i < json.length && isWhitespace(json[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static void expect(byte[] json, int i, char c) {
+        if (i >= json.length || json[i] != c) {
+            throw malformed(i);
+        }
+    }
+
+    private static ChaincodeException malformed(int i) {
+        return new ChaincodeException("Malformed JSON record at offset " + i);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+    Flight Recorder event for one ledger read, write, delete or query issued through the stub. For queries the
+    duration only covers opening the iterator; results are streamed from the peer as they are consumed.
+*/
+
+@Name("org.trade.LedgerAccess")
+@Label("Ledger Access")
+@Category({ "Trade", "Chaincode" })
+@Description("Ledger read, write, delete or query issued by a contract")
+@Enabled(false)
+@StackTrace(false)
+public class LedgerAccessEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("GET, PUT, DELETE, QUERY or HISTORY")
+    public String operation;
+
+    @Label("Collection")
+    @Description("Private data collection, or empty for the world state")
+    public String collection;
+
+    @Label("Key")
+    @Description("Key, start key or partial composite key")
+    public String key;
+
+    @Label("Value Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,214 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import com.owlike.genson.Genson;
+
+/*
+    Upgrades records written by earlier versions of the contract, a bounded batch per 'migrate' transaction. Each step
+    is registered with the schema version it brings the records to, and visits every record under one composite key
+    object type. Steps run one after the other, in version order.
+    Progress is recorded on the ledger under a single key, as the schema version reached and the position of the running
+    step, which is the bookmark of the next page of its records. Fabric only allows paginated queries in read-only
+    transactions, so a batch is planned by 'nextBatch' in a read-only transaction, which reads one page from the recorded
+    position, and upgraded by 'migrate', which reads only the keys of that page:
+    {
+        "Version": <schema version the batch upgrades to>,
+        "Position": <position the page starts at>,
+        "Keys": [ <key>, ... ],
+        "Bookmark": <position of the next page, empty once the page reached the end of the step's records>
+    }
+    A step is only complete once a page reached the end of its records. Concurrent batches conflict on the progress key,
+    so only one of them commits, and a batch that doesn't start at the recorded position is rejected.
+    Steps must be idempotent and leave records that are already upgraded untouched.
+*/
+
+public class Migrator {
+
+    @FunctionalInterface
+    public interface Step {
+        // Upgrades the record stored under 'key', and returns whether it was rewritten
+        boolean migrate(Context ctx, String key, byte[] value);
+    }
+
+    private static final class RegisteredStep {
+
+        private final int version;
+
+        private final String objectType;
+
+        private final Step step;
+
+        private RegisteredStep(int version, String objectType, Step step) {
+            this.version = version;
+            this.objectType = objectType;
+            this.step = step;
+        }
+    }
+
+    private static final Genson genson = new Genson();
+
+    private final String stateKey;
+
+    private final List<RegisteredStep> steps = new ArrayList<RegisteredStep>();
+
+    public Migrator(String stateKey) {
+        this.stateKey = stateKey;
+    }
+
+    public Migrator register(int version, String objectType, Step step) {
+        int latest = getSchemaVersion();
+        if (version <= latest) {
+            throw new IllegalArgumentException("Migration step for '" + objectType + "' has version " + version + ", expected a version above " + latest);
+        }
+        steps.add(new RegisteredStep(version, objectType, step));
+        return this;
+    }
+
+    public int getSchemaVersion() {
+        return steps.isEmpty() ? 0 : steps.get(steps.size() - 1).version;
+    }
+
+    // Plans the next batch of at most 'batchSize' records. Paginated queries don't stop at the peer's total query limit,
+    // so the bookmark is only empty when the page reached the end of the step's records.
+    public Map<String, Object> nextBatch(Context ctx, int batchSize) {
+        ChaincodeStub stub = ctx.getStub();
+        if (batchSize <= 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(batchSize);
+        }
+        Map<String, Object> state = loadState(stub);
+        int version = ((Number) state.get("version")).intValue();
+        String position = (String) state.get("position");
+        RegisteredStep next = nextStep(version);
+
+        List<String> keys = new ArrayList<String>();
+        String bookmark = "";
+        if (next != null) {
+            version = next.version;
+            QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(new CompositeKey(next.objectType), batchSize, position);
+            try {
+                for (KeyValue entry : results) {
+                    keys.add(entry.getKey());
+                }
+                bookmark = results.getMetadata().getBookmark();
+            } finally {
+                close(results, next);
+            }
+        }
+
+        Map<String, Object> batch = new LinkedHashMap<String, Object>();
+        batch.put(Constants.VersionKey, version);
+        batch.put(Constants.PositionKey, position);
+        batch.put(Constants.KeysKey, keys);
+        batch.put(Constants.BookmarkKey, bookmark);
+        return batch;
+    }
+
+    // Upgrades the records of a batch planned by 'nextBatch'. The batch must start at the position recorded on the
+    // ledger, and its keys must lie between its position and bookmark.
+    public Map<String, Object> migrate(Context ctx, String batchJson) {
+        ChaincodeStub stub = ctx.getStub();
+        @SuppressWarnings("unchecked")
+        Map<String, Object> batch = genson.deserialize(batchJson, Map.class);
+        if (batch == null || !(batch.get(Constants.VersionKey) instanceof Number)) {
+            throw RejectionCode.MIGRATION_BATCH_INVALID.reject(null, "no schema version");
+        }
+        int batchVersion = ((Number) batch.get(Constants.VersionKey)).intValue();
+        String batchPosition = (String) batch.getOrDefault(Constants.PositionKey, "");
+        @SuppressWarnings("unchecked")
+        List<String> keys = (List<String>) batch.getOrDefault(Constants.KeysKey, new ArrayList<String>());
+        String bookmark = (String) batch.getOrDefault(Constants.BookmarkKey, "");
+
+        Map<String, Object> state = loadState(stub);
+        int version = ((Number) state.get("version")).intValue();
+        String position = (String) state.get("position");
+        RegisteredStep next = nextStep(version);
+        if (next == null ? batchVersion != version || !keys.isEmpty() : batchVersion != next.version || !position.equals(batchPosition)) {
+            throw RejectionCode.MIGRATION_BATCH_STALE.reject(batchVersion, batchPosition, version, position);
+        }
+
+        int migrated = 0;
+        if (next != null) {
+            if (keys.isEmpty() && bookmark.length() > 0) {
+                throw RejectionCode.MIGRATION_BATCH_INVALID.reject(batchVersion, "no keys before bookmark '" + bookmark + "'");
+            }
+            for (String key : keys) {
+                if (!stub.splitCompositeKey(key).getObjectType().equals(next.objectType)
+                    || (position.length() > 0 && key.compareTo(position) < 0) || (bookmark.length() > 0 && key.compareTo(bookmark) >= 0)) {
+                    throw RejectionCode.MIGRATION_BATCH_INVALID.reject(batchVersion, "key '" + key + "' is outside of the batch");
+                }
+                // Records deleted since the batch was planned are skipped
+                byte[] value = stub.getState(key);
+                if (value != null && value.length > 0 && next.step.migrate(ctx, key, value)) {
+                    migrated++;
+                }
+            }
+            boolean complete = (bookmark.length() == 0);
+            if (complete) {
+                version = next.version;
+                position = "";
+            } else {
+                position = bookmark;
+            }
+            state.put("version", version);
+            state.put("position", position);
+            stub.putState(stateKey, genson.serialize(state).getBytes(UTF_8));
+            System.out.println("Migrated " + migrated + " of " + keys.size() + " '" + next.objectType + "' records to schema version " + next.version
+                                + (complete ? ", step complete" : ", more remain"));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put(Constants.VersionKey, version);
+        result.put(Constants.BookmarkKey, position);
+        result.put(Constants.MigratedKey, migrated);
+        result.put(Constants.MoreKey, version < getSchemaVersion());
+        return result;
+    }
+
+    private RegisteredStep nextStep(int version) {
+        for (RegisteredStep step : steps) {
+            if (step.version > version) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    private static void close(AutoCloseable results, RegisteredStep step) {
+        try {
+            results.close();
+        } catch (Exception e) {
+            throw new ChaincodeException("Failed to close '" + step.objectType + "' results: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Object> loadState(ChaincodeStub stub) {
+        byte[] stateBytes = stub.getState(stateKey);
+        if (stateBytes == null || stateBytes.length == 0) {
+            Map<String, Object> state = new HashMap<String, Object>();
+            state.put("version", 0);
+            state.put("position", "");
+            return state;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> state = genson.deserialize(new String(stateBytes, UTF_8), Map.class);
+        return state;
+    }
+}
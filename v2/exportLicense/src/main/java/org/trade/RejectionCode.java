@@ -0,0 +1,49 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Machine-readable codes for the business-rule rejections of the E/L contract, with their message templates.
+    Clients should switch on the code carried in the rejection payload rather than parse messages.
+*/
+
+public enum RejectionCode {
+
+    ACCESS_DENIED("The participant %s cannot invoke transaction %s"),
+    UNKNOWN_ROLE("The participant %s role %s is not recognized"),
+    TRADE_NOT_FOUND("Unable to locate trade ': %s'"),
+    TRADE_NOT_ACCEPTED("'%s' is in '%s' state. Expected '%s'"),
+    EL_REQUESTER_NOT_EXPORTER("'%s' does not belong to exporter %s. Exporter cannot request EL"),
+    EL_NOT_FOUND("No E/L recorded for trade '%s'"),
+    EL_NOT_VISIBLE("'%s' does not belong to exporting entity %s"),
+    APPROVER_MISMATCH("Regulator recorded on ledger '%s' does not match E/L approver '%s'"),
+    EL_ISSUER_NOT_REGULATOR("'%s' does not concern regulator %s. Regulator cannot issue EL"),
+    EL_NOT_ISSUABLE("E/L for trade '%s' cannot be issued in state %s"),
+    INVALID_PAGE_SIZE("Page size must be positive, found %s"),
+    PAGE_TOO_LARGE("A page of %s records exceeds the %s byte response budget, request a smaller page"),
+    INVALID_EXPIRATION_DATE("Expiration date '%s' is not a valid MM/dd/yyyy or yyyy-MM-dd date"),
+    EXPIRY_DATE_IN_FUTURE("Cannot expire instruments as of %s, after the transaction date %s"),
+    INVALID_BATCH_SIZE("Batch size must be positive, found %s"),
+    INVALID_ACL_POLICY("ACL policy rejected: %s"),
+    ACL_POLICY_VERSION_MISMATCH("ACL policy version %s does not follow the current version %s"),
+    ACL_POLICY_ALTERS_OTHER_MSP("ACL policy changes the rules of %s, which %s cannot change"),
+    INVALID_EL_ISSUANCES("E/L issuances rejected: %s"),
+    MIGRATION_BATCH_STALE("Migration batch for schema version %s at '%s' doesn't match the progress recorded on the ledger, schema version %s at '%s'"),
+    MIGRATION_BATCH_INVALID("Migration batch for schema version %s is invalid: %s");
+
+    private final String template;
+
+    private RejectionCode(String template) {
+        this.template = template;
+    }
+
+    public Rejection reject(Object... args) {
+        return new Rejection(this, args);
+    }
+
+    String render(Object[] args) {
+        return String.format(template, args);
+    }
+}
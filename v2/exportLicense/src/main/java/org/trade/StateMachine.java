@@ -0,0 +1,36 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Transition table for a document lifecycle, indexed by (current state, event).
+    A transition to the current state means the event has already been applied and the operation is a noop.
+    A missing transition means the event is not permitted in the current state.
+*/
+
+public final class StateMachine {
+
+    public static final StateMachine EXPORT_LICENSE = new StateMachine()
+        .allow(LifecycleState.NONE, LifecycleEvent.REQUEST, LifecycleState.REQUESTED)
+        .allow(LifecycleState.REQUESTED, LifecycleEvent.ISSUE, LifecycleState.ISSUED)
+        .allow(LifecycleState.ISSUED, LifecycleEvent.ISSUE, LifecycleState.ISSUED)
+        .allow(LifecycleState.ISSUED, LifecycleEvent.EXPIRE, LifecycleState.EXPIRED)
+        .allow(LifecycleState.EXPIRED, LifecycleEvent.EXPIRE, LifecycleState.EXPIRED);
+
+    private final LifecycleState[][] transitions = new LifecycleState[LifecycleState.values().length][LifecycleEvent.values().length];
+
+    private StateMachine() {
+    }
+
+    private StateMachine allow(LifecycleState from, LifecycleEvent event, LifecycleState to) {
+        transitions[from.ordinal()][event.ordinal()] = to;
+        return this;
+    }
+
+    // Returns the state reached by applying 'event' in state 'from', or null if the event is not permitted
+    public LifecycleState transition(LifecycleState from, LifecycleEvent event) {
+        return transitions[from.ordinal()][event.ordinal()];
+    }
+}
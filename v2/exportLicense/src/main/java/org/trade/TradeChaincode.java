@@ -0,0 +1,89 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeBase;
+import org.hyperledger.fabric.shim.ChaincodeServer;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+/*
+    Chaincode entry point, which dispatches every transaction to the contract runtime's router. The router only calls
+    the contracts' 'afterTransaction' when a transaction succeeds, and turns failures into error responses, so this is
+    where a failed transaction's Flight Recorder event and trace span are ended: with the code of the rejection in the
+    response payload, or ERROR for other failures.
+*/
+
+public final class TradeChaincode extends ChaincodeBase {
+
+    // Outcome of failures other than rejections
+    static final String ERROR = "ERROR";
+
+    private final Chaincode router;
+
+    TradeChaincode(Chaincode router) {
+        this.router = router;
+    }
+
+    @Override
+    public Response init(ChaincodeStub stub) {
+        return recordFailure(router.init(stub));
+    }
+
+    @Override
+    public Response invoke(ChaincodeStub stub) {
+        return recordFailure(router.invoke(stub));
+    }
+
+    // Ends the transaction left running by a failure. Transactions that succeeded were ended by 'afterTransaction'.
+    private static Response recordFailure(Response response) {
+        if (response.getStatus() != Response.Status.SUCCESS) {
+            TransactionRecorder.end(outcome(response.getPayload()));
+        }
+        return response;
+    }
+
+    // The code of a rejection's payload, which is a JSON object (see Rejection)
+    static String outcome(byte[] payload) {
+        if (payload == null || payload.length == 0 || payload[0] != '{') {
+            return ERROR;
+        }
+        try {
+            String code = JsonFields.stringField(payload, "code");
+            return (code == null) ? ERROR : code;
+        } catch (RuntimeException e) {
+            System.out.println("Unreadable error payload: " + new String(payload, UTF_8));
+            return ERROR;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ContractRouter router = new ContractRouter(args);
+        // Registers the contracts and their metadata. The chaincode server or peer connection is started below instead,
+        // so that it dispatches to this chaincode.
+        router.startRouterWithChaincodeServer(new ChaincodeServer() {
+            @Override
+            public void start() {
+            }
+
+            @Override
+            public void stop() {
+            }
+        });
+
+        TradeChaincode chaincode = new TradeChaincode(router);
+        if (router.isServer()) {
+            chaincode.processEnvironmentOptions();
+            chaincode.processCommandLineOptions(args);
+            new NettyChaincodeServer(chaincode, router.getChaincodeServerConfig()).start();
+        } else {
+            chaincode.start(args);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*
+    Flight Recorder event spanning one contract transaction, from 'beforeTransaction' to 'afterTransaction' or to the
+    failure that ended it. Disabled unless a recording turns it on, e.g.:
+    -XX:StartFlightRecording=settings=profile,org.trade.Transaction#enabled=true
+*/
+
+@Name("org.trade.Transaction")
+@Label("Contract Transaction")
+@Category({ "Trade", "Chaincode" })
+@Description("Invocation of a contract transaction")
+@Enabled(false)
+@StackTrace(false)
+public class TransactionEvent extends jdk.jfr.Event {
+
+    @Label("Contract")
+    public String contract;
+
+    @Label("Function")
+    public String function;
+
+    @Label("Trade ID")
+    @Description("First transaction argument, which is the trade ID for trade-scoped transactions")
+    public String tradeId;
+
+    @Label("Client MSP ID")
+    public String mspId;
+
+    @Label("Outcome")
+    @Description("OK, the code of the rejection that ended the transaction, or ERROR for other failures")
+    public String outcome;
+}
@@ -0,0 +1,55 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.util.List;
+
+import org.hyperledger.fabric.contract.Context;
+
+/*
+    Tracks the Flight Recorder event and the trace span of the transaction running on the current thread. The contract
+    runtime runs each transaction on a single thread. Transactions begin in 'beforeTransaction' and end in
+    'afterTransaction' when they succeed, or in TradeChaincode, which sees the response of those that fail.
+*/
+
+final class TransactionRecorder {
+
+    private static final ThreadLocal<TransactionEvent> current = new ThreadLocal<TransactionEvent>();
+
+    private TransactionRecorder() {
+    }
+
+    static void begin(String contract, Context ctx) {
+        Tracer.startTransaction(contract, ctx.getStub());
+        TransactionEvent event = new TransactionEvent();
+        if (!event.isEnabled()) {
+            current.remove();
+            return;
+        }
+        event.begin();
+        event.contract = contract;
+        event.function = ctx.getStub().getFunction();
+        List<String> params = ctx.getStub().getParameters();
+        if (params != null && !params.isEmpty()) {
+            event.tradeId = params.get(0);
+        }
+        event.mspId = AccessControlUtils.GetClientMspId(ctx);
+        current.set(event);
+    }
+
+    static void end(String outcome) {
+        Tracer.endTransaction(outcome);
+        TransactionEvent event = current.get();
+        if (event == null) {
+            return;
+        }
+        current.remove();
+        event.end();
+        if (event.shouldCommit()) {
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/*
+    Runs a transaction's preconditions in order of cost: checks against the local ledger first, then checks of the
+    caller's identity, then lookups that invoke other chaincodes. Steps within a stage run in the order they were added.
+    The first failing step ends the run, so a request that is bound to be rejected doesn't pay for remote round trips.
+    The time spent in each stage is recorded, and added to the transaction's trace span when tracing is on.
+*/
+
+public class ValidationPipeline {
+
+    public enum Stage {
+        LOCAL,
+        IDENTITY,
+        REMOTE
+    }
+
+    // A value looked up by the pipeline, available to the steps that follow its lookup
+    public static final class Value<T> {
+
+        private final Supplier<T> lookup;
+
+        private T value;
+
+        private boolean fetched;
+
+        private Value(Supplier<T> lookup) {
+            this.lookup = lookup;
+        }
+
+        private void fetch() {
+            value = lookup.get();
+            fetched = true;
+        }
+
+        public T get() {
+            if (!fetched) {
+                throw new IllegalStateException("Value read before the validation stage that looks it up has run");
+            }
+            return value;
+        }
+    }
+
+    private final List<List<Runnable>> steps = new ArrayList<List<Runnable>>();
+
+    private final long[] stageNanos = new long[Stage.values().length];
+
+    public ValidationPipeline() {
+        for (int i = 0 ; i < Stage.values().length ; i++) {
+            steps.add(new ArrayList<Runnable>());
+        }
+    }
+
+    public ValidationPipeline check(Stage stage, Runnable check) {
+        steps.get(stage.ordinal()).add(check);
+        return this;
+    }
+
+    public <T> Value<T> lookup(Stage stage, Supplier<T> lookup) {
+        Value<T> value = new Value<T>(lookup);
+        steps.get(stage.ordinal()).add(value::fetch);
+        return value;
+    }
+
+    public void run() {
+        Stage current = null;
+        try {
+            for (Stage stage : Stage.values()) {
+                current = stage;
+                long start = System.nanoTime();
+                try {
+                    for (Runnable step : steps.get(stage.ordinal())) {
+                        step.run();
+                    }
+                } finally {
+                    stageNanos[stage.ordinal()] = System.nanoTime() - start;
+                }
+            }
+            current = null;
+        } finally {
+            for (Stage stage : Stage.values()) {
+                Tracer.addToAttribute("validation." + stage.name().toLowerCase() + ".us", stageNanos[stage.ordinal()] / 1000);
+            }
+            if (current != null) {
+                Tracer.setAttribute("validation.rejected", current);
+            }
+        }
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+}
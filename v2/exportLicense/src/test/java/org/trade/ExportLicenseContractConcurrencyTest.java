@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/*
+    Invokes a single contract instance from several threads against a shared in-memory ledger, and checks that
+    every transaction sees and produces exactly the state it would have produced if run alone.
+*/
+public final class ExportLicenseContractConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int TRADES_PER_THREAD = 50;
+
+    private final String tradeChannelName = "tradechannel";
+    private final String tradeContractId = "trade";
+    private final String carrierMSP = "CarrierOrgMSP";
+    private final String expirationDate = "12/31/2020";
+
+    @Test
+    public void ELLifecycleUnderParallelInvocation() throws Exception {
+        ExportLicenseContract contract = new ExportLicenseContract();
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+
+        // Trade contract stand-in, serving trades from a thread-safe map
+        Map<String, String> trades = new ConcurrentHashMap<String, String>();
+        ledger.setInvoker((chaincodeName, args, channel) -> {
+            String trade = trades.get(args.get(1));
+            if (!chaincodeName.equals(tradeContractId) || !channel.equals(tradeChannelName) || !args.get(0).equals(Constants.getTradeFunc) || trade == null) {
+                return new Response(Response.Status.INTERNAL_SERVER_ERROR, "Unknown trade", new byte[] {});
+            }
+            return new Response(Response.Status.SUCCESS, "OK", trade.getBytes(UTF_8));
+        });
+        new ContractConfig(tradeChannelName, tradeContractId, carrierMSP, Constants.regulatorOrgMsp).save(ledger);
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                JSONObject tradeObj = new JSONObject();
+                tradeObj.put(Constants.tradeAmountAttr, 1000.0 * (t + 1) + i);
+                tradeObj.put(Constants.importerMSPAttr, "ImporterOrgMSP");
+                tradeObj.put(Constants.exporterMSPAttr, Constants.exportingEntityOrgMSP);
+                tradeObj.put(Constants.tradeDescOfGoodsAttr, goods(t, i));
+                tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                trades.put(tradeId(t, i), tradeObj.toString());
+            }
+        }
+
+        // Each worker gets its own stub and contexts; only the contract instance and the ledger are shared
+        List<Callable<Integer>> workers = new ArrayList<Callable<Integer>>();
+        CountDownLatch startSignal = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            InMemoryChaincodeStub stub = ledger.newTransaction("");
+            Context exportingEntity = context(stub, Constants.exportingEntityOrgMSP, Constants.EXPORTER_ROLE);
+            Context exporter = context(stub, Constants.exporterOrgMsp, Constants.EXPORTER_ROLE);
+            Context regulator = context(stub, Constants.regulatorOrgMsp, Constants.REGULATOR_ROLE);
+            workers.add(() -> {
+                startSignal.await();
+                int completed = 0;
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    String tradeId = tradeId(thread, i);
+
+                    stub.setFunction("requestEL", tradeId);
+                    contract.beforeTransaction(exportingEntity);
+                    contract.requestEL(exportingEntity, tradeId);
+
+                    // ACL decisions must not leak between identities
+                    stub.setFunction("issueEL", tradeId, elId(thread, i), expirationDate);
+                    assertThrows(ChaincodeException.class, () -> contract.beforeTransaction(exportingEntity));
+
+                    contract.beforeTransaction(regulator);
+                    contract.issueEL(regulator, tradeId, elId(thread, i), expirationDate);
+
+                    stub.setFunction("getEL", tradeId);
+                    contract.beforeTransaction(exportingEntity);
+                    assertEL(ExportLicense.fromJSONString(contract.getEL(exportingEntity, tradeId)), thread, i);
+
+                    stub.setFunction("getELStatus", tradeId);
+                    contract.beforeTransaction(regulator);
+                    assertEquals(Constants.ISSUED, new JSONObject(contract.getELStatus(regulator, tradeId)).getString(Constants.StatusKey));
+
+                    // The exporter org is not the exporting entity on these E/Ls, so it must never see them
+                    stub.setFunction("getELs", tradeId);
+                    contract.beforeTransaction(exporter);
+                    assertEquals(0, new JSONArray(contract.getELs(exporter, tradeId)).length());
+                    completed++;
+                }
+
+                // Batch read of everything this worker created
+                String[] tradeIds = new String[TRADES_PER_THREAD];
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    tradeIds[i] = tradeId(thread, i);
+                }
+                stub.setFunction("getELs", tradeIds);
+                contract.beforeTransaction(regulator);
+                JSONArray els = new JSONArray(contract.getELs(regulator, tradeIds));
+                assertEquals(TRADES_PER_THREAD, els.length());
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    assertEquals(tradeIds[i], els.getJSONObject(i).getString(Constants.TradeIdKey));
+                    assertEL(ExportLicense.fromJSONString(els.getJSONObject(i).getJSONObject(Constants.ExportLicenseKey).toString()), thread, i);
+                }
+                return completed;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (Callable<Integer> worker : workers) {
+                results.add(pool.submit(worker));
+            }
+            startSignal.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(TRADES_PER_THREAD, result.get(2, TimeUnit.MINUTES));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Check the final ledger state for lost or corrupted writes
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                byte[] elBytes = ledger.getWorldState().get(contract.getKey(ledger, tradeId(t, i)));
+                assertEL(ExportLicense.fromJSONString(new String(elBytes, UTF_8)), t, i);
+            }
+        }
+    }
+
+    private void assertEL(ExportLicense el, int thread, int index) {
+        assertEquals(elId(thread, index), el.getId());
+        assertEquals(expirationDate, el.getExpirationDate());
+        assertEquals(Constants.exportingEntityOrgMSP, el.getExporter());
+        assertEquals(carrierMSP, el.getCarrier());
+        assertEquals(goods(thread, index), el.getDescriptionOfGoods());
+        assertEquals(Constants.regulatorOrgMsp, el.getApprover());
+        assertEquals(Constants.ISSUED, el.getStatus());
+    }
+
+    private static Context context(InMemoryChaincodeStub stub, String mspId, String role) {
+        Context ctx = mock(Context.class);
+        ClientIdentity clientIdentity = mock(ClientIdentity.class);
+        when(ctx.getStub()).thenReturn(stub);
+        when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+        when(clientIdentity.getMSPID()).thenReturn(mspId);
+        when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(role);
+        return ctx;
+    }
+
+    private static String tradeId(int thread, int index) {
+        return "trade-" + thread + "-" + index;
+    }
+
+    private static String elId(int thread, int index) {
+        return "el-" + thread + "-" + index;
+    }
+
+    private static String goods(int thread, int index) {
+        return "Goods " + thread + "-" + index;
+    }
+}
@@ -7,6 +7,7 @@ package org.trade;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -14,13 +15,20 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -56,26 +64,60 @@ public final class ExportLicenseContractTest {
 
         contract.init(ctx, tradeChannelName, tradeContractId);
 
-        verify(stub).putState(Constants.tradeChannelNameKey, tradeChannelName.getBytes(UTF_8));
-        verify(stub).putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+        ContractConfig config = new ContractConfig(tradeChannelName, tradeContractId, null, null);
+        verify(stub).putState(Constants.contractConfigKey, config.toBytes());
+        verify(stub, never()).putState(Constants.tradeChannelNameKey, tradeChannelName.getBytes(UTF_8));
+        verify(stub, never()).putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
         
         boolean result = contract.existsEL(ctx, tradeId);
         assertFalse(result);
 
-        // Set ledger value for lookup
+        // Set legacy ledger value for lookup
         stub = mock(ChaincodeStub.class);
         when(stub.getState(Constants.tradeContractIdKey)).thenReturn(tradeContractId.getBytes(UTF_8));
         when(ctx.getStub()).thenReturn(stub);
 
-        // Try the init again, this time without any parameters. It should still succeed.
+        // Try the init again, this time with a blank trade contract. The legacy value should be carried over.
         contract.init(ctx, tradeChannelName, "");
-        verify(stub).putState(Constants.tradeChannelNameKey, tradeChannelName.getBytes(UTF_8));
+        verify(stub).putState(Constants.contractConfigKey, config.toBytes());
 
-        // Set ledger value for lookup
+        // Without a trade channel on the ledger, the init without parameters should fail
+        assertThrows(ChaincodeException.class, () -> {
+            contract.init(ctx);
+        });
+
+        // Set legacy ledger values for lookup
         when(stub.getState(Constants.tradeChannelNameKey)).thenReturn(tradeChannelName.getBytes(UTF_8));
+        when(stub.getState(Constants.carrierMSPAttr)).thenReturn(carrierMSP.getBytes(UTF_8));
+        when(stub.getState(Constants.regulatoryAuthorityMSPAttr)).thenReturn(regulatorMSP.getBytes(UTF_8));
+
+        // Try the init again, this time without any parameters. It should succeed and migrate the legacy keys.
+        contract.init(ctx);
+        ContractConfig migratedConfig = new ContractConfig(tradeChannelName, tradeContractId, carrierMSP, regulatorMSP);
+        verify(stub).putState(Constants.contractConfigKey, migratedConfig.toBytes());
 
-        // Try the init again, this time without any parameters. It should still succeed.
+        // Once the configuration record exists, the legacy keys are no longer read
+        stub = mock(ChaincodeStub.class);
+        when(stub.getState(Constants.contractConfigKey)).thenReturn(migratedConfig.toBytes());
+        when(ctx.getStub()).thenReturn(stub);
         contract.init(ctx);
+        verify(stub, never()).getState(Constants.tradeChannelNameKey);
+        verify(stub, never()).putState(Constants.contractConfigKey, migratedConfig.toBytes());
+
+        // Override only the regulator
+        contract.init(ctx, "", "", "", "SomeOtherRegulatorMSP");
+        ContractConfig updatedConfig = new ContractConfig(tradeChannelName, tradeContractId, carrierMSP, "SomeOtherRegulatorMSP");
+        verify(stub).putState(Constants.contractConfigKey, updatedConfig.toBytes());
+        ContractConfig decodedConfig = ContractConfig.fromBytes(updatedConfig.toBytes());
+        assertEquals(decodedConfig.getCarrierMSP(), carrierMSP);
+        assertEquals(decodedConfig.getRegulatorMSP(), "SomeOtherRegulatorMSP");
+
+        // Values are stored as standard UTF-8, including characters that modified UTF-8 encodes differently
+        String channelName = "trade\uD83D\uDCE6channel";
+        byte[] configBytes = new ContractConfig(channelName, null, null, null).toBytes();
+        assertEquals(channelName.getBytes(UTF_8).length, ((configBytes[1] & 0xff) << 8) | (configBytes[2] & 0xff));
+        assertEquals(channelName, ContractConfig.fromBytes(configBytes).getTradeChannelName());
+        assertNull(ContractConfig.fromBytes(configBytes).getCarrierMSP());
     }
 
     @Nested
@@ -111,7 +153,7 @@ public final class ExportLicenseContractTest {
             JSONObject lcStatusObj = new JSONObject();
             lcStatusObj.put(Constants.StatusKey, Constants.ACCEPTED);
 
-            // Test when it cannot access the trade chaincode or the trade is not found
+            // Test that a missing carrier record is caught before the trade chaincode is invoked
             Response r1 = new Response(Response.Status.INTERNAL_SERVER_ERROR, "ERROR", new byte[] {});
             ArrayList<String> tradeArgs = new ArrayList<String>();
             tradeArgs.add(Constants.getTradeFunc);
@@ -121,6 +163,16 @@ public final class ExportLicenseContractTest {
             Exception thrown = assertThrows(ChaincodeException.class, () -> {
                 contract.requestEL(ctx, tradeId);
             });
+            assertEquals(thrown.getMessage(), "No Carrier recorded on ledger");
+            verify(stub, never()).invokeChaincodeWithStringArgs(tradeContractId, tradeArgs, tradeChannelName);
+
+            // Now add carrier record to ledger
+            when(stub.getState(Constants.carrierMSPAttr)).thenReturn(carrierMSP.getBytes(UTF_8));
+
+            // Test when it cannot access the trade chaincode or the trade is not found
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.requestEL(ctx, tradeId);
+            });
             assertEquals(thrown.getMessage(), "Error invoking '" + tradeContractId + "' chaincode, function '" + Constants.getTradeFunc + "': ");
 
             // Test when the status is wrong
@@ -143,14 +195,6 @@ public final class ExportLicenseContractTest {
             r1 = new Response(Response.Status.SUCCESS, "OK", tradeObj.toString().getBytes(UTF_8));
             when(stub.invokeChaincodeWithStringArgs(tradeContractId, tradeArgs, tradeChannelName)).thenReturn(r1);
 
-            thrown = assertThrows(ChaincodeException.class, () -> {
-                contract.requestEL(ctx, tradeId);
-            });
-            assertEquals(thrown.getMessage(), "No Carrier recorded on ledger");
-
-            // Now add carrier record to ledger
-            when(stub.getState(Constants.carrierMSPAttr)).thenReturn(carrierMSP.getBytes(UTF_8));
-
             contract.beforeTransaction(ctx);    // ACL check
             contract.requestEL(ctx, tradeId);
 
@@ -158,6 +202,7 @@ public final class ExportLicenseContractTest {
             ExportLicense el = new ExportLicense("", "", exporterMSP, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.REQUESTED);
             String elJson = el.toJSONString();
             verify(stub).putState(elKey, elJson.getBytes(UTF_8));
+            verify(stub).putState(contract.getPendingKey(stub, regulatorMSP, tradeId), new byte[] { 0 });
 
             // Test failure when the caller is in the wrong org
             when(clientIdentity.getMSPID()).thenReturn(Constants.regulatorOrgMsp);
@@ -178,6 +223,22 @@ public final class ExportLicenseContractTest {
                 contract.beforeTransaction(ctx);    // ACL check
                 contract.requestEL(ctx, tradeId);
             });
+
+            // Test that the configuration record is read instead of the legacy keys
+            ChaincodeStub configStub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(configStub);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            when(configStub.getFunction()).thenReturn("requestEL");
+            when(configStub.getState(Constants.contractConfigKey)).thenReturn(new ContractConfig(tradeChannelName, tradeContractId, carrierMSP, regulatorMSP).toBytes());
+            when(configStub.invokeChaincodeWithStringArgs(tradeContractId, tradeArgs, tradeChannelName)).thenReturn(r1);
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.requestEL(ctx, tradeId);
+            verify(configStub).putState(elKey, elJson.getBytes(UTF_8));
+            verify(configStub).getState(Constants.contractConfigKey);
+            verify(configStub, never()).getState(Constants.tradeChannelNameKey);
+            verify(configStub, never()).getState(Constants.tradeContractIdKey);
+            verify(configStub, never()).getState(Constants.carrierMSPAttr);
+            verify(configStub, never()).getState(Constants.regulatoryAuthorityMSPAttr);
         }
 
         @Test
@@ -228,6 +289,21 @@ public final class ExportLicenseContractTest {
             elJson = el.toJSONString();
             verify(stub).putState(elKey, elJson.getBytes(UTF_8));
 
+            // The status is stored by name
+            assertEquals(Constants.ISSUED, new JSONObject(elJson).getString("status"));
+
+            // The E/L is indexed under its normalized expiration date
+            verify(stub).putState(new CompositeKey("ELExpiry", "2020-12-31", tradeId).toString(), new byte[] { 0 });
+
+            // The E/L no longer awaits its approver
+            verify(stub).delState(new CompositeKey("ELPending", regulatorMSP, tradeId).toString());
+
+            // Test with an expiration date that isn't a date
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.issueEL(ctx, tradeId, elId, "02/30/2021");
+            });
+            assertEquals(RejectionCode.INVALID_EXPIRATION_DATE, ((Rejection) thrown).getCode());
+
             result = contract.existsEL(ctx, tradeId);
             assertTrue(result);
 
@@ -241,6 +317,9 @@ public final class ExportLicenseContractTest {
                 contract.issueEL(ctx, tradeId, elId, expirationDate);
             });
             assertEquals(thrown.getMessage(), "Regulator recorded on ledger '" + regulatorMSP + "' does not match E/L approver '" + someOtherRegulator + "'");
+            JSONObject rejectionObj = new JSONObject(new String(((ChaincodeException) thrown).getPayload(), UTF_8));
+            assertEquals(RejectionCode.APPROVER_MISMATCH.name(), rejectionObj.getString("code"));
+            assertEquals(new JSONArray(new String[] { regulatorMSP, someOtherRegulator }).toString(), rejectionObj.getJSONArray("args").toString());
 
             // Test failure when the caller is in the wrong org
             when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
@@ -263,6 +342,223 @@ public final class ExportLicenseContractTest {
             });
         }
 
+        @Test
+        public void ELExpire() {
+            ExportLicenseContract contract = new ExportLicenseContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.regulatorOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.REGULATOR_ROLE);
+            stub.setFunction("expireELs");
+
+            String[] expirationDates = { "12/30/2020", "12/29/2020", "2021-01-15" };
+            for (int i = 0; i < expirationDates.length; i++) {
+                ExportLicense el = new ExportLicense("el-" + i, expirationDates[i], exporterMSP, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.ISSUED);
+                stub.putState(contract.getKey(stub, "trade-" + i), el.toJSONString().getBytes(UTF_8));
+                stub.putState(contract.getExpiryKey(stub, ExpiryDate.normalize(expirationDates[i]), "trade-" + i), new byte[] { 0 });
+            }
+
+            // E/Ls are expired earliest first
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject batch = new JSONObject(contract.expireELs(ctx, "01/01/2021", 1));
+            assertEquals(Arrays.asList("trade-1"), batch.getJSONArray(Constants.RecordsKey).toList());
+            assertTrue(batch.getBoolean(Constants.MoreKey));
+            batch = new JSONObject(contract.expireELs(ctx, "01/01/2021", 5));
+            assertEquals(Arrays.asList("trade-0"), batch.getJSONArray(Constants.RecordsKey).toList());
+            assertFalse(batch.getBoolean(Constants.MoreKey));
+            assertEquals(Constants.EXPIRED, ExportLicense.fromJSONString(new String(stub.getState(contract.getKey(stub, "trade-0")), UTF_8)).getStatus());
+            assertEquals(Constants.ISSUED, ExportLicense.fromJSONString(new String(stub.getState(contract.getKey(stub, "trade-2")), UTF_8)).getStatus());
+
+            // Invalid batch sizes and dates after the transaction's are rejected
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.expireELs(ctx, "01/01/2021", -1);
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.expireELs(ctx, ExpiryDate.of(Instant.now().plusSeconds(3 * 86400)), 10);
+            });
+            assertEquals(RejectionCode.EXPIRY_DATE_IN_FUTURE, ((Rejection) thrown).getCode());
+
+            // Test failure when the caller is not the regulator
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+        }
+
+        @Test
+        public void ELPendingQueue() {
+            ExportLicenseContract contract = new ExportLicenseContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject tradeObj = new JSONObject();
+                tradeObj.put(Constants.tradeAmountAttr, amount);
+                tradeObj.put(Constants.importerMSPAttr, "importerMSP");
+                tradeObj.put(Constants.exporterMSPAttr, exporterMSP);
+                tradeObj.put(Constants.tradeDescOfGoodsAttr, descriptionOfGoods);
+                tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                return new Response(Response.Status.SUCCESS, "OK", tradeObj.toString().getBytes(UTF_8));
+            });
+            new ContractConfig(tradeChannelName, tradeContractId, carrierMSP, regulatorMSP).save(stub);
+
+            // Requested E/Ls are queued for their approver
+            when(clientIdentity.getMSPID()).thenReturn(exporterMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            stub.setFunction("requestEL");
+            contract.beforeTransaction(ctx);    // ACL check
+            for (int i = 0; i < 5; i++) {
+                contract.requestEL(ctx, "trade-" + i);
+                assertTrue(stub.getWorldState().containsKey(contract.getPendingKey(stub, regulatorMSP, "trade-" + i)));
+            }
+            ExportLicense otherEL = new ExportLicense("", "", exporterMSP, carrierMSP, descriptionOfGoods, "SomeOtherRegulatorMSP", Constants.REQUESTED);
+            stub.putState(contract.getKey(stub, "trade-9"), otherEL.toJSONString().getBytes(UTF_8));
+            stub.putState(contract.getPendingKey(stub, "SomeOtherRegulatorMSP", "trade-9"), new byte[] { 0 });
+
+            // Test failure when the caller isn't a regulator
+            stub.setFunction("getPendingELs");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+
+            // The regulator pages through its own queue only
+            when(clientIdentity.getMSPID()).thenReturn(regulatorMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.REGULATOR_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            List<Object> pending = new ArrayList<Object>();
+            String bookmark = "";
+            int pages = 0;
+            do {
+                JSONObject page = new JSONObject(contract.getPendingELs(ctx, 2, bookmark));
+                JSONArray records = page.getJSONArray(Constants.RecordsKey);
+                assertTrue(records.length() <= 2);
+                for (int i = 0; i < records.length(); i++) {
+                    pending.add(records.getJSONObject(i).getString(Constants.TradeIdKey));
+                    assertEquals(Constants.REQUESTED, ExportLicense.fromJSONString(records.getJSONObject(i).getJSONObject(Constants.ExportLicenseKey).toString()).getStatus());
+                }
+                bookmark = page.getString(Constants.BookmarkKey);
+                pages++;
+            } while (!bookmark.isEmpty());
+            assertEquals(Arrays.asList("trade-0", "trade-1", "trade-2", "trade-3", "trade-4"), pending);
+            assertEquals(3, pages);
+
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.getPendingELs(ctx, 0, "");
+            });
+            assertEquals(RejectionCode.INVALID_PAGE_SIZE, ((Rejection) thrown).getCode());
+
+            // Issuing a batch drains it from the queue. E/Ls that are already issued are left as they are.
+            stub.setFunction("issueELBatch");
+            contract.beforeTransaction(ctx);    // ACL check
+            String batch = ELIssuance.toJSONString(new ELIssuance[] {
+                new ELIssuance("trade-0", "el-0", expirationDate), new ELIssuance("trade-1", "el-1", expirationDate), new ELIssuance("trade-0", "el-0", expirationDate)
+            });
+            JSONObject result = new JSONObject(contract.issueELBatch(ctx, batch));
+            assertEquals(Arrays.asList("trade-0", "trade-1"), result.getJSONArray(Constants.RecordsKey).toList());
+            assertEquals(Constants.ISSUED, ExportLicense.fromJSONString(new String(stub.getState(contract.getKey(stub, "trade-1")), UTF_8)).getStatus());
+            assertFalse(stub.getWorldState().containsKey(contract.getPendingKey(stub, regulatorMSP, "trade-0")));
+            assertFalse(stub.getWorldState().containsKey(contract.getPendingKey(stub, regulatorMSP, "trade-1")));
+            assertTrue(stub.getWorldState().containsKey(contract.getExpiryKey(stub, "2020-12-31", "trade-1")));
+            JSONArray remaining = new JSONObject(contract.getPendingELs(ctx, 10, "")).getJSONArray(Constants.RecordsKey);
+            assertEquals(3, remaining.length());
+            assertEquals("trade-2", remaining.getJSONObject(0).getString(Constants.TradeIdKey));
+
+            // A single rejected issuance rejects the batch, and nothing is recorded once the transaction fails
+            BufferedChaincodeStub txStub = new BufferedChaincodeStub(stub.newTransaction("issueELBatch"));
+            when(ctx.getStub()).thenReturn(txStub);
+            String rejectedBatch = ELIssuance.toJSONString(new ELIssuance[] { new ELIssuance("trade-2", "el-2", expirationDate), new ELIssuance("trade-3", "el-3", "02/30/2021") });
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.issueELBatch(ctx, rejectedBatch);
+            });
+            assertEquals(RejectionCode.INVALID_EXPIRATION_DATE, ((Rejection) thrown).getCode());
+            assertTrue(stub.getWorldState().containsKey(contract.getPendingKey(stub, regulatorMSP, "trade-2")));
+            assertEquals(Constants.REQUESTED, ExportLicense.fromJSONString(new String(stub.getState(contract.getKey(stub, "trade-2")), UTF_8)).getStatus());
+            when(ctx.getStub()).thenReturn(stub);
+
+            // Test failure with issuances that are malformed or missing
+            for (String invalidBatch : new String[] { "[{\"tradeId\":", "[{\"exportLicenseId\":\"el-2\"}]" }) {
+                thrown = assertThrows(ChaincodeException.class, () -> {
+                    contract.issueELBatch(ctx, invalidBatch);
+                });
+                assertEquals(RejectionCode.INVALID_EL_ISSUANCES, ((Rejection) thrown).getCode());
+            }
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.issueELBatch(ctx, "[]");
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+        }
+
+        @Test
+        public void ELMigration() {
+            ExportLicenseContract contract = new ExportLicenseContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(regulatorMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.ACL_ADMIN_ROLE);
+
+            // E/Ls as written by the v1 contract, next to an E/L already in the current format
+            String[] statuses = { Constants.REQUESTED, Constants.ISSUED };
+            for (int i = 0; i < statuses.length; i++) {
+                JSONObject legacyEL = new JSONObject();
+                legacyEL.put("id", i == 1 ? "el-1" : "");
+                legacyEL.put("expirationDate", i == 1 ? "12/31/2020" : "");
+                legacyEL.put("exporter", exporterMSP);
+                legacyEL.put("carrier", carrierMSP);
+                legacyEL.put("descriptionOfGoods", descriptionOfGoods);
+                legacyEL.put("approver", regulatorMSP);
+                legacyEL.put("status", statuses[i]);
+                stub.putState(contract.getKey(stub, "trade-" + i), legacyEL.toString().getBytes(UTF_8));
+            }
+            ExportLicense currentEL = new ExportLicense("", "", exporterMSP, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.REQUESTED);
+            stub.putState(contract.getKey(stub, "trade-2"), currentEL.toJSONString().getBytes(UTF_8));
+            stub.putState(contract.getPendingKey(stub, regulatorMSP, "trade-2"), new byte[] { 0 });
+
+            stub.setFunction("getMigrationBatch");
+            contract.beforeTransaction(ctx);    // ACL check
+            stub.setFunction("migrate");
+            contract.beforeTransaction(ctx);    // ACL check
+            String plannedBatch = contract.getMigrationBatch(ctx, 2);
+            JSONObject batch = new JSONObject(contract.migrate(ctx, plannedBatch));
+            assertEquals(0, batch.getInt(Constants.VersionKey));
+            assertEquals(2, batch.getInt(Constants.MigratedKey));
+            assertTrue(batch.getBoolean(Constants.MoreKey));
+
+            // E/Ls are queued for their approver or indexed for expiry
+            JSONObject elObj = new JSONObject(new String(stub.getState(contract.getKey(stub, "trade-1")), UTF_8));
+            assertEquals(Constants.ISSUED, elObj.getString("status"));
+            assertTrue(stub.getWorldState().containsKey(contract.getPendingKey(stub, regulatorMSP, "trade-0")));
+            assertTrue(stub.getWorldState().containsKey(contract.getExpiryKey(stub, "2020-12-31", "trade-1")));
+
+            // A batch that was already migrated is rejected, and the next one starts at the recorded position
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.migrate(ctx, plannedBatch);
+            });
+            assertEquals(RejectionCode.MIGRATION_BATCH_STALE, ((Rejection) thrown).getCode());
+            JSONObject nextBatch = new JSONObject(contract.getMigrationBatch(ctx, 2));
+            assertEquals(batch.getString(Constants.BookmarkKey), nextBatch.getString(Constants.PositionKey));
+            assertEquals("", nextBatch.getString(Constants.BookmarkKey));
+            batch = new JSONObject(contract.migrate(ctx, nextBatch.toString()));
+            assertEquals(1, batch.getInt(Constants.VersionKey));
+            assertEquals(0, batch.getInt(Constants.MigratedKey));
+            assertFalse(batch.getBoolean(Constants.MoreKey));
+
+            // Test failure when the caller isn't an ACL admin
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.REGULATOR_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+        }
+
         @Test
         public void ELGet() {
             ExportLicenseContract contract = new ExportLicenseContract();
@@ -335,6 +631,31 @@ public final class ExportLicenseContractTest {
             assertEquals(el.getApprover(), elResp.getApprover());
             assertEquals(el.getStatus(), elResp.getStatus());
 
+            // E/Ls are returned as stored, byte for byte, even when the stored JSON isn't laid out the way this contract
+            // would serialize it
+            assertEquals(elJson, contract.getEL(ctx, tradeId));
+            String storedElJson = "{ \"status\": \"ISSUED\", \"exporter\": \"" + Constants.exporterOrgMsp + "\", \"descriptionOfGoods\": \"Wood\\u0020toys\" }";
+            when(stub.getState(contract.getKey(stub, "trade-2"))).thenReturn(storedElJson.getBytes(UTF_8));
+            assertEquals(storedElJson, contract.getEL(ctx, "trade-2"));
+
+            // Test that only the requested fields are returned
+            when(stub.getFunction()).thenReturn("getELFields");
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject fields = new JSONObject(contract.getELFields(ctx, tradeId, "descriptionOfGoods", "status", "unknown"));
+            assertEquals(2, fields.length());
+            assertEquals(descriptionOfGoods, fields.getString("descriptionOfGoods"));
+            assertEquals(Constants.ISSUED, fields.getString("status"));
+            assertEquals("{\"status\":\"ISSUED\",\"descriptionOfGoods\":\"Wood\\u0020toys\"}", contract.getELFields(ctx, "trade-2", "descriptionOfGoods", "status"));
+
+            // Test failure when the E/L belongs to an exporter other than the exporting entity
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            contract.beforeTransaction(ctx);    // ACL check
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.getELFields(ctx, tradeId, "status");
+            });
+            assertEquals(RejectionCode.EL_NOT_VISIBLE, ((Rejection) thrown).getCode());
+            when(stub.getFunction()).thenReturn("getEL");
+
             // Test failure when the caller is in the right org but has not been assigned a role
             when(clientIdentity.getMSPID()).thenReturn(Constants.regulatorOrgMsp);
             when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(null);
@@ -443,6 +764,123 @@ public final class ExportLicenseContractTest {
                 contract.getELStatus(ctx, tradeId);
             });
         }
+
+        @Test
+        public void ELGetBatch() {
+            ExportLicenseContract contract = new ExportLicenseContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.regulatorOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.REGULATOR_ROLE);
+            when(stub.getFunction()).thenReturn("getELs");
+
+            // One E/L for the exporting entity, one for the exporter, and one trade without E/L
+            String otherTradeId = "trade-2";
+            String missingTradeId = "trade-3";
+            ExportLicense el = new ExportLicense(elId, expirationDate, exporterMSP, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.ISSUED);
+            ExportLicense otherEl = new ExportLicense("", "", Constants.exporterOrgMsp, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.REQUESTED);
+            when(stub.getState(contract.getKey(stub, tradeId))).thenReturn(el.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getKey(stub, otherTradeId))).thenReturn(otherEl.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getKey(stub, missingTradeId))).thenReturn(new byte[] {});
+
+            // Test that the regulator sees both E/Ls, in the requested order, and missing E/Ls are left out
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONArray els = new JSONArray(contract.getELs(ctx, tradeId, missingTradeId, otherTradeId));
+            assertEquals(2, els.length());
+            assertEquals(tradeId, els.getJSONObject(0).getString(Constants.TradeIdKey));
+            assertEquals(elId, els.getJSONObject(0).getJSONObject(Constants.ExportLicenseKey).getString("id"));
+            assertEquals(otherTradeId, els.getJSONObject(1).getString(Constants.TradeIdKey));
+
+            JSONArray statuses = new JSONArray(contract.getELStatuses(ctx, tradeId, missingTradeId, otherTradeId));
+            assertEquals(2, statuses.length());
+            assertEquals(Constants.ISSUED, statuses.getJSONObject(0).getString(Constants.StatusKey));
+            assertEquals(Constants.REQUESTED, statuses.getJSONObject(1).getString(Constants.StatusKey));
+
+            // Test that the exporting entity only sees its own E/L
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            els = new JSONArray(contract.getELs(ctx, tradeId, otherTradeId));
+            assertEquals(1, els.length());
+            assertEquals(tradeId, els.getJSONObject(0).getString(Constants.TradeIdKey));
+            statuses = new JSONArray(contract.getELStatuses(ctx, tradeId, otherTradeId));
+            assertEquals(1, statuses.length());
+            assertEquals(tradeId, statuses.getJSONObject(0).getString(Constants.TradeIdKey));
+
+            // Test failure when the caller is in the wrong org
+            when(clientIdentity.getMSPID()).thenReturn("SomeOtherOrgMSP");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+                contract.getELs(ctx, tradeId);
+            });
+        }
+
+        @Test
+        public void ELGetHistory() throws Exception {
+            ExportLicenseContract contract = new ExportLicenseContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.regulatorOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.REGULATOR_ROLE);
+            when(stub.getFunction()).thenReturn("getELHistory");
+
+            String elKey = contract.getKey(stub, tradeId);
+            ExportLicense el = new ExportLicense("", "", exporterMSP, carrierMSP, descriptionOfGoods, regulatorMSP, Constants.REQUESTED);
+            KeyModification requested = mockModification("tx-1", el.toJSONString(), false);
+            el.setStatus(Constants.ISSUED);
+            KeyModification issued = mockModification("tx-2", el.toJSONString(), false);
+            KeyModification deleted = mockModification("tx-3", "", true);
+            @SuppressWarnings("unchecked")
+            QueryResultsIterator<KeyModification> history = mock(QueryResultsIterator.class);
+            when(history.iterator()).thenAnswer(invocation -> Arrays.asList(requested, issued, deleted).iterator());
+            when(stub.getHistoryForKey(elKey)).thenReturn(history);
+
+            // Test first page: iteration stops early and the last modifications are not decoded
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject page = new JSONObject(contract.getELHistory(ctx, tradeId, 1, ""));
+            JSONArray records = page.getJSONArray(Constants.RecordsKey);
+            assertEquals(1, records.length());
+            assertEquals("tx-1", records.getJSONObject(0).getString("txId"));
+            assertEquals(Constants.REQUESTED, records.getJSONObject(0).getString("status"));
+            assertEquals("tx-1", page.getString(Constants.CursorKey));
+            verify(issued, never()).getValue();
+            verify(history).close();
+
+            // Test next page, resuming from the cursor, including a deletion
+            page = new JSONObject(contract.getELHistory(ctx, tradeId, 5, "tx-1"));
+            records = page.getJSONArray(Constants.RecordsKey);
+            assertEquals(2, records.length());
+            assertEquals(Constants.ISSUED, records.getJSONObject(0).getString("status"));
+            assertEquals("tx-3", records.getJSONObject(1).getString("txId"));
+            assertEquals("", records.getJSONObject(1).getString("status"));
+            assertTrue(records.getJSONObject(1).getBoolean("isDelete"));
+            assertEquals("", page.getString(Constants.CursorKey));
+
+            // Test failure when the caller is not the regulator
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+                contract.getELHistory(ctx, tradeId, 1, "");
+            });
+        }
+    }
+
+    private static KeyModification mockModification(String txId, String value, boolean isDeleted) {
+        KeyModification modification = mock(KeyModification.class);
+        when(modification.getTxId()).thenReturn(txId);
+        when(modification.getValue()).thenReturn(value.getBytes(UTF_8));
+        when(modification.getTimestamp()).thenReturn(Instant.ofEpochSecond(Long.parseLong(txId.substring(3))));
+        when(modification.isDeleted()).thenReturn(isDeleted);
+        return modification;
     }
 
 }
@@ -0,0 +1,19 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.io.IOException;
+
+/*
+    Evaluates the letterOfCredit contract's 'exportRecords' transaction.
+    Implementations must evaluate (query) rather than submit it, as Fabric only allows paginated queries in
+    read-only transactions.
+*/
+
+public interface ExportClient {
+
+    // Returns the JSON response: {"Records": [{"Id": ..., "Value": ...}], "Bookmark": ...}. An empty bookmark ends the scan.
+    String exportRecords(String recordType, int pageSize, String bookmark) throws IOException;
+}
@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/*
+    Command line entry point:
+        <snapshot file> <channel> <chaincode> [page size]
+    Exports all L/C, payment and account records through the peer CLI. Run it again with the same snapshot file to
+    resume an interrupted export.
+*/
+
+public final class ExporterMain {
+
+    private ExporterMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: <snapshot file> <channel> <chaincode> [page size]");
+            System.exit(1);
+        }
+        int pageSize = args.length > 3 ? Integer.parseInt(args[3]) : SnapshotExporter.DEFAULT_PAGE_SIZE;
+        SnapshotExporter exporter = new SnapshotExporter(new PeerCliExportClient(args[1], args[2]), Arrays.asList("LetterOfCredit", "LCDocs", "Payment", "Account", "Escrow"), pageSize);
+        long records = exporter.export(Paths.get(args[0]));
+        System.out.println("Snapshot " + args[0] + " holds " + records + " records");
+    }
+}
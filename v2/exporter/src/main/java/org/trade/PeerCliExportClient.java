@@ -0,0 +1,61 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.owlike.genson.Genson;
+
+/*
+    Export client that evaluates the transaction with 'peer chaincode query', using the peer CLI environment
+    (CORE_PEER_ADDRESS, CORE_PEER_MSPCONFIGPATH, TLS settings) of the calling shell. The identity must carry a
+    banker BUSINESS_ROLE to pass the contract's access control.
+*/
+
+public class PeerCliExportClient implements ExportClient {
+
+    private static final Genson genson = new Genson();
+
+    private final String channel;
+
+    private final String chaincode;
+
+    public PeerCliExportClient(String channel, String chaincode) {
+        this.channel = channel;
+        this.chaincode = chaincode;
+    }
+
+    @Override
+    public String exportRecords(String recordType, int pageSize, String bookmark) throws IOException {
+        Map<String, Object> invocation = new LinkedHashMap<String, Object>();
+        invocation.put("function", "exportRecords");
+        invocation.put("Args", Arrays.asList(recordType, Integer.toString(pageSize), bookmark));
+        ProcessBuilder peer = new ProcessBuilder("peer", "chaincode", "query", "-C", channel, "-n", chaincode, "-c", genson.serialize(invocation));
+        peer.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        Process process = peer.start();
+        String response;
+        try (InputStream out = process.getInputStream()) {
+            response = new String(out.readAllBytes(), UTF_8).trim();
+        }
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("peer chaincode query exited with status " + exitCode + " exporting " + recordType + " records");
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting " + recordType + " records");
+        }
+        return response;
+    }
+}
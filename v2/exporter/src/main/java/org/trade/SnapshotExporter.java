@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.owlike.genson.Genson;
+
+/*
+    Exports ledger records page by page into a gzip-compressed NDJSON snapshot, one line per record:
+        {"type": "LetterOfCredit", "id": "trade-1", "value": {...}}
+    Each page is compressed as its own gzip member and appended to the snapshot, so only one page is ever held in
+    memory. Standard gzip readers (zcat, GZIPInputStream) read the concatenated members as a single stream.
+
+    After each page is synced to disk, a progress file next to the snapshot records the snapshot length and the
+    bookmark of the next page. An interrupted export started again with the same snapshot path truncates whatever
+    was written after the last recorded page and resumes from its bookmark, rather than scanning from the start.
+*/
+
+public class SnapshotExporter {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final Genson genson = new Genson();
+
+    private final ExportClient client;
+
+    private final List<String> recordTypes;
+
+    private final int pageSize;
+
+    public SnapshotExporter(ExportClient client, List<String> recordTypes, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.client = client;
+        this.recordTypes = recordTypes;
+        this.pageSize = pageSize;
+    }
+
+    public static Path progressFile(Path snapshot) {
+        return snapshot.resolveSibling(snapshot.getFileName() + ".progress");
+    }
+
+    // Runs or resumes the export, and returns the total number of records in the snapshot
+    public long export(Path snapshot) throws IOException {
+        Path progressFile = progressFile(snapshot);
+        Progress progress = Files.exists(progressFile) ? genson.deserialize(new String(Files.readAllBytes(progressFile), UTF_8), Progress.class) : new Progress(recordTypes.get(0));
+        if (progress.isComplete()) {
+            System.out.println("Snapshot " + snapshot + " is already complete with " + progress.getRecords() + " records");
+            return progress.getRecords();
+        }
+        int typeIndex = recordTypes.indexOf(progress.getRecordType());
+        if (typeIndex < 0) {
+            throw new IllegalStateException("Snapshot " + snapshot + " was started for record type " + progress.getRecordType() + ", which is not being exported");
+        }
+
+        try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (out.size() > progress.getLength()) {
+                System.out.println("Discarding " + (out.size() - progress.getLength()) + " snapshot bytes written after the last completed page");
+            }
+            out.truncate(progress.getLength());
+            out.position(progress.getLength());
+
+            for (; typeIndex < recordTypes.size(); typeIndex++) {
+                String recordType = recordTypes.get(typeIndex);
+                if (!recordType.equals(progress.getRecordType())) {
+                    progress.setRecordType(recordType);
+                    progress.setBookmark("");
+                }
+                do {
+                    Map<String, Object> page = parse(client.exportRecords(recordType, pageSize, progress.getBookmark()));
+                    List<?> records = (List<?>) page.get("Records");
+                    String bookmark = (String) page.get("Bookmark");
+                    if (!records.isEmpty()) {
+                        out.write(ByteBuffer.wrap(compress(recordType, records)));
+                        out.force(false);
+                    }
+                    progress.setRecords(progress.getRecords() + records.size());
+                    progress.setLength(out.position());
+                    // An empty page ends the scan even if a bookmark came back, so a misbehaving peer can't loop us forever
+                    progress.setBookmark(bookmark == null || records.isEmpty() ? "" : bookmark);
+                    save(progressFile, progress);
+                } while (!progress.getBookmark().isEmpty());
+                System.out.println("Exported " + recordType + " records, " + progress.getRecords() + " records in snapshot");
+            }
+        }
+        progress.setComplete(true);
+        save(progressFile, progress);
+        return progress.getRecords();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(String page) {
+        return genson.deserialize(page, Map.class);
+    }
+
+    private static byte[] compress(String recordType, List<?> records) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member)) {
+            for (Object record : records) {
+                Map<?, ?> fields = (Map<?, ?>) record;
+                Map<String, Object> line = new LinkedHashMap<String, Object>();
+                line.put("type", recordType);
+                line.put("id", fields.get("Id"));
+                line.put("value", fields.get("Value"));
+                gzip.write(genson.serialize(line).getBytes(UTF_8));
+                gzip.write('\n');
+            }
+        }
+        return member.toByteArray();
+    }
+
+    // Replaces the progress file atomically, so that a crash leaves either the previous or the new position
+    private static void save(Path progressFile, Progress progress) throws IOException {
+        Path temp = progressFile.resolveSibling(progressFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(genson.serialize(progress).getBytes(UTF_8)));
+            out.force(false);
+        }
+        Files.move(temp, progressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static class Progress {
+
+        private String recordType;
+
+        private String bookmark = "";
+
+        private long records;
+
+        private long length;
+
+        private boolean complete;
+
+        public Progress() {
+        }
+
+        public Progress(String recordType) {
+            this.recordType = recordType;
+        }
+
+        public String getRecordType() {
+            return recordType;
+        }
+
+        public void setRecordType(String recordType) {
+            this.recordType = recordType;
+        }
+
+        public String getBookmark() {
+            return bookmark;
+        }
+
+        public void setBookmark(String bookmark) {
+            this.bookmark = bookmark;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public void setRecords(long records) {
+            this.records = records;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public void setLength(long length) {
+            this.length = length;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public void setComplete(boolean complete) {
+            this.complete = complete;
+        }
+    }
+}
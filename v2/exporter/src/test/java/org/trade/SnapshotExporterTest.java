@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class SnapshotExporterTest {
+
+    private static final List<String> recordTypes = Arrays.asList("LetterOfCredit", "Payment", "Account");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void exportsEveryRecordTypeInPages() throws IOException {
+        LedgerStandIn ledger = new LedgerStandIn(25, 25, 3);
+        Path snapshot = dir.resolve("snapshot.ndjson.gz");
+
+        assertEquals(53, new SnapshotExporter(ledger, recordTypes, 10).export(snapshot));
+
+        List<String> lines = readSnapshot(snapshot);
+        assertEquals(53, lines.size());
+        assertEquals("{\"type\":\"LetterOfCredit\",\"id\":\"trade-00\",\"value\":{\"id\":\"lc-00\",\"status\":2}}", lines.get(0));
+        assertEquals("{\"type\":\"Payment\",\"id\":\"trade-24\",\"value\":2400.0}", lines.get(49));
+        assertEquals("{\"type\":\"Account\",\"id\":\"Org2MSP\",\"value\":{\"balance\":2000.0}}", lines.get(52));
+        // 3 pages of L/Cs and payments, 1 page of accounts
+        assertEquals(7, ledger.calls);
+
+        // A completed snapshot isn't exported again
+        assertEquals(53, new SnapshotExporter(ledger, recordTypes, 10).export(snapshot));
+        assertEquals(7, ledger.calls);
+    }
+
+    @Test
+    public void resumesFromLastCompletedPage() throws IOException {
+        LedgerStandIn ledger = new LedgerStandIn(25, 25, 3);
+        Path snapshot = dir.resolve("snapshot.ndjson.gz");
+
+        // Fail on the fifth page, the second page of payments
+        ledger.failOnCall = 5;
+        assertThrows(IOException.class, () -> new SnapshotExporter(ledger, recordTypes, 10).export(snapshot));
+        assertEquals(35, readSnapshot(snapshot).size());
+        assertFalse(new String(Files.readAllBytes(SnapshotExporter.progressFile(snapshot)), UTF_8).contains("\"complete\":true"));
+
+        // Simulate a page that was partially written when the exporter died
+        Files.write(snapshot, new byte[] { 0x1f, (byte) 0x8b, 8, 0 }, StandardOpenOption.APPEND);
+
+        ledger.failOnCall = 0;
+        ledger.bookmarks.clear();
+        assertEquals(53, new SnapshotExporter(ledger, recordTypes, 10).export(snapshot));
+        // Resumed with the payment page that failed, without going back to the start
+        assertEquals(Arrays.asList("Payment:trade-10", "Payment:trade-20", "Account:"), ledger.bookmarks);
+
+        List<String> lines = readSnapshot(snapshot);
+        assertEquals(53, lines.size());
+        assertEquals(53, lines.stream().distinct().count());
+        assertTrue(new String(Files.readAllBytes(SnapshotExporter.progressFile(snapshot)), UTF_8).contains("\"complete\":true"));
+    }
+
+    private static List<String> readSnapshot(Path snapshot) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(snapshot)), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // Serves 'exportRecords' pages from sorted maps, with bookmarks pointing at the first record of the next page
+    private static final class LedgerStandIn implements ExportClient {
+
+        private final Map<String, TreeMap<String, String>> records = new HashMap<String, TreeMap<String, String>>();
+        private final List<String> bookmarks = new ArrayList<String>();
+        private int calls;
+        private int failOnCall;
+
+        LedgerStandIn(int lcs, int payments, int accounts) {
+            records.put("LetterOfCredit", new TreeMap<String, String>());
+            records.put("Payment", new TreeMap<String, String>());
+            records.put("Account", new TreeMap<String, String>());
+            for (int i = 0; i < lcs; i++) {
+                records.get("LetterOfCredit").put(String.format("trade-%02d", i), String.format("{\"id\":\"lc-%02d\",\"status\":2}", i));
+            }
+            for (int i = 0; i < payments; i++) {
+                records.get("Payment").put(String.format("trade-%02d", i), Double.toString(i * 100.0));
+            }
+            for (int i = 0; i < accounts; i++) {
+                records.get("Account").put("Org" + i + "MSP", "{\"balance\":" + (i * 1000.0) + "}");
+            }
+        }
+
+        @Override
+        public String exportRecords(String recordType, int pageSize, String bookmark) throws IOException {
+            if (++calls == failOnCall) {
+                throw new IOException("Connection reset");
+            }
+            bookmarks.add(recordType + ":" + bookmark);
+            TreeMap<String, String> all = records.get(recordType);
+            StringBuilder page = new StringBuilder("{\"Records\":[");
+            String nextBookmark = "";
+            int count = 0;
+            for (Map.Entry<String, String> record : (bookmark.isEmpty() ? all : all.tailMap(bookmark, true)).entrySet()) {
+                if (count == pageSize) {
+                    nextBookmark = record.getKey();
+                    break;
+                }
+                page.append(count++ > 0 ? "," : "").append("{\"Id\":\"").append(record.getKey()).append("\",\"Value\":").append(record.getValue()).append('}');
+            }
+            return page.append("],\"Bookmark\":\"").append(nextBookmark).append("\"}").toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+import com.owlike.genson.Genson;
+/*
+    Access control policy JSON format:
+    {
+        "version": <number>,
+        "rules": [ { "mspId": <string>, "role": <string>, "functions": [ <string>, ... ] }, ... ]
+    }
+    Each rule lists the transactions that callers from an MSP with a business role may invoke. The role "any" is
+    matched by callers without a business role.
+*/
+
+@DataType()
+public class ACLPolicy {
+
+    private static final Genson genson = new Genson();
+
+    @Property()
+    private long version;
+
+    @Property()
+    private ACLRule[] rules;
+
+    public ACLPolicy() {
+    }
+
+    public ACLPolicy(@JsonProperty("version") long version, @JsonProperty("rules") ACLRule[] rules) {
+        this.version = version;
+        this.rules = rules;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public ACLRule[] getRules() {
+        return rules;
+    }
+
+    public void setRules(ACLRule[] rules) {
+        this.rules = rules;
+    }
+
+    public String toJSONString() {
+        return genson.serialize(this);
+    }
+
+    public static ACLPolicy fromJSONString(String json) {
+        return genson.deserialize(json, ACLPolicy.class);
+    }
+}
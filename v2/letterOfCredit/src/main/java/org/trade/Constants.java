@@ -10,6 +10,11 @@ public class Constants {
     public static final String shippingChannelNameKey = "shippingchannel";
     public static final String tradeContractIdKey = "tradeContractId";
     public static final String shipmentContractIdKey = "shipmentContractId";
+    public static final String accountsCollectionKey = "accountsCollection";
+    public static final String aclPolicyKey = "aclPolicy";
+    public static final String aclPolicyVersionKey = "aclPolicyVersion";
+    public static final String settlementModeKey = "settlementMode";
+    public static final String migrationStateKey = "migrationState";
 
     // Remote contract functions names
     public static final String getTradeFunc = "getTrade";
@@ -34,6 +39,11 @@ public class Constants {
     public static final String blSourcePortAttr = "sourcePort";
     public static final String blDestPortAttr = "destinationPort";
 
+    // L/C object attributes
+    public static final String lcBeneficiaryAttr = "beneficiary";
+    public static final String lcDocumentsRefAttr = "documentsRef";
+    public static final String lcRequiredDocsAttr = "requiredDocs";
+
     // MSP Ids
     public static final String exporterOrgMsp = "ExporterOrgMSP";
     public static final String importerOrgMsp = "ImporterOrgMSP";
@@ -41,6 +51,7 @@ public class Constants {
 
     // Business roles
     public static final String ANY_ROLE = "any";
+    public static final String ACL_ADMIN_ROLE = "acl_admin";
     public static final String IMPORTER_BANKER_ROLE = "importer_banker";
     public static final String EXPORTER_BANKER_ROLE = "exporter_banker";
     public static final String IMPORTER_ROLE = "importer";
@@ -48,13 +59,42 @@ public class Constants {
 
     // Response keywords
     public static final String StatusKey = "Status";
+    public static final String TradeIdKey = "TradeId";
+    public static final String LetterOfCreditKey = "LetterOfCredit";
+    public static final String RecordsKey = "Records";
+    public static final String CursorKey = "Cursor";
     public static final String LocationKey = "Location";
     public static final String BalanceKey = "Balance";
+    public static final String IdKey = "Id";
+    public static final String ValueKey = "Value";
+    public static final String BookmarkKey = "Bookmark";
+    public static final String MoreKey = "More";
+    public static final String SettledKey = "Settled";
+    public static final String VersionKey = "Version";
+    public static final String MigratedKey = "Migrated";
+    public static final String PositionKey = "Position";
+    public static final String KeysKey = "Keys";
+    public static final String FetchedKey = "Fetched";
+
+    // Largest page of records returned by a single export query
+    public static final int maxExportPageSize = 1000;
+
+    // Largest response written by a paged query
+    public static final int maxPageBytes = 1024 * 1024;
+
+    // Tracing: span file named by the environment, W3C trace context passed by clients in the transient map
+    public static final String traceFileEnv = "TRADE_TRACE_FILE";
+    public static final String traceparentKey = "traceparent";
 
     // Asset status types
     public static final String REQUESTED = "REQUESTED";
     public static final String ISSUED = "ISSUED";
     public static final String ACCEPTED = "ACCEPTED";
+    public static final String EXPIRED = "EXPIRED";
+
+    // Settlement modes: each payment moves funds between accounts, or payments are recorded as obligations and netted by 'settleNet'
+    public static final String GROSS_SETTLEMENT = "GROSS";
+    public static final String NET_SETTLEMENT = "NET";
 
     // Location types
     public static final String sourceLocation = "SOURCE";
@@ -0,0 +1,47 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/*
+    Appends spans to a local file, one JSON object per line. The trade and shipment contracts write the same format,
+    so pointing them all at files on a shared volume yields whole traces.
+*/
+
+public class FileSpanExporter implements SpanExporter {
+
+    private final Path file;
+
+    public FileSpanExporter(Path file) {
+        this.file = file;
+    }
+
+    // Exporter for the file named by the TRADE_TRACE_FILE environment variable, or null if tracing is off
+    public static FileSpanExporter fromEnvironment() {
+        String file = System.getenv(Constants.traceFileEnv);
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        return new FileSpanExporter(Paths.get(file));
+    }
+
+    @Override
+    public synchronized void export(Span span) {
+        byte[] line = (span.toJSONString() + "\n").getBytes(UTF_8);
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line);
+        } catch (IOException e) {
+            System.out.println("Unable to export span '" + span.getName() + "' to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+/*
+    History record JSON format:
+    {
+        "txId": <string>,
+        "timestamp": <string>,
+        "status": <string>,
+        "isDelete": <boolean>
+    }
+*/
+
+@DataType()
+public class HistoryRecord {
+
+    @Property()
+    private String txId;
+
+    @Property()
+    private String timestamp;
+
+    @Property()
+    private String status;
+
+    @Property()
+    private boolean isDelete;
+
+    public HistoryRecord() {
+    }
+
+    public HistoryRecord(@JsonProperty("txId") String txId, @JsonProperty("timestamp") String timestamp, @JsonProperty("status") String status, @JsonProperty("isDelete") boolean isDelete) {
+        this.txId = txId;
+        this.timestamp = timestamp;
+        this.status = status;
+        this.isDelete = isDelete;
+    }
+
+    public String getTxId() {
+        return txId;
+    }
+
+    public void setTxId(String txId) {
+        this.txId = txId;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public boolean getIsDelete() {
+        return isDelete;
+    }
+
+    public void setIsDelete(boolean isDelete) {
+        this.isDelete = isDelete;
+    }
+}
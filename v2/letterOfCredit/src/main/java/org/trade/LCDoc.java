@@ -4,6 +4,13 @@
 
 package org.trade;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
@@ -15,6 +22,8 @@ public class LCDoc {
 
     private static final Genson genson = new Genson();
 
+    private static final int refBytes = 16;
+
     @Property()
     private String docType;
 
@@ -37,6 +46,26 @@ public class LCDoc {
         return genson.serialize(this);
     }
 
+    // JSON of the document set of an L/C, as stored under its reference
+    public static String toJSONString(LCDoc[] docs) {
+        return genson.serialize(docs);
+    }
+
+    public static LCDoc[] fromJSONArray(String json) {
+        return genson.deserialize(json, LCDoc[].class);
+    }
+
+    // Document sets are stored once on the ledger, keyed by the first 128 bits of the SHA-256 of their JSON, and L/Cs
+    // refer to them by that digest in URL-safe Base64 (22 characters)
+    public static String setRef(String docsJson) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(docsJson.getBytes(UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, refBytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
     public static LCDoc fromJSONString(String json) {
         return genson.deserialize(json, LCDoc.class);
     }
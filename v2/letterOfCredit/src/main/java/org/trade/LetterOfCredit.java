@@ -7,8 +7,10 @@ package org.trade;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
 
+import com.owlike.genson.annotation.JsonIgnore;
 import com.owlike.genson.annotation.JsonProperty;
 import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
 /*
     Letter of Credit JSON format:
     {
@@ -16,15 +18,20 @@ import com.owlike.genson.Genson;
         "expirationDate": <string>,
         "beneficiary": <string>,
         "amount": <double>,
-        "documents": [ { "docType": <string> }, { "docType": <string> }, ... ],
-        "status": <string>
-    }
+        "requiredDocs": [ { "docType": <string> }, { "docType": <string> }, ... ],
+        "documentsRef": <document set reference>,
+        "status": <LifecycleState name>
+    }
+    Issued L/Cs hold 'documentsRef', the reference of their document set stored under its own key, instead of
+    'requiredDocs', unless the reference would be no smaller than the embedded documents. L/Cs written before documents
+    were stored separately embed them in 'requiredDocs'.
+    Absent fields are left out.
 */
 
 @DataType()
 public class LetterOfCredit {
 
-    private static final Genson genson = new Genson();
+    private static final Genson genson = new GensonBuilder().setSkipNull(true).create();
 
     @Property()
     private String id;
@@ -41,6 +48,9 @@ public class LetterOfCredit {
     @Property()
     private LCDoc[] documents;
 
+    @Property()
+    private String documentsRef;
+
     @Property()
     private String status;
 
@@ -96,6 +106,14 @@ public class LetterOfCredit {
         this.documents = docs;
     }
 
+    public String getDocumentsRef() {
+        return documentsRef;
+    }
+
+    public void setDocumentsRef(String documentsRef) {
+        this.documentsRef = documentsRef;
+    }
+
     public String getStatus() {
         return status;
     }
@@ -104,6 +122,15 @@ public class LetterOfCredit {
         this.status = status;
     }
 
+    @JsonIgnore
+    public LifecycleState getState() {
+        return LifecycleState.parse(status);
+    }
+
+    public void setState(LifecycleState state) {
+        this.status = state.name();
+    }
+
     public String toJSONString() {
         return genson.serialize(this);
     }
@@ -6,6 +6,7 @@ package org.trade;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.contract.ContextFactory;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.Contract;
 import org.hyperledger.fabric.contract.annotation.Default;
@@ -14,6 +15,9 @@ import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.Chaincode.Response;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
 import org.hyperledger.fabric.contract.annotation.Contact;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
@@ -21,8 +25,17 @@ import org.hyperledger.fabric.contract.annotation.License;
 import com.owlike.genson.Genson;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import org.trade.ValidationPipeline.Stage;
 
 @Contract(name = "LetterOfCreditContract",
     info = @Info(title = "LetterOfCredit contract",
@@ -40,11 +53,36 @@ public class LetterOfCreditContract implements ContractInterface {
 
     private final Genson genson = new Genson();
 
+    // Object type of the expiry index keys: LCExpiry~<yyyy-MM-dd>~<tradeId>
+    private static final String lcExpiryIndex = "LCExpiry";
+
+    // Object type of the importers' pending payment request keys: PaymentPending~<importerMSP>~<tradeId>
+    private static final String paymentPendingIndex = "PaymentPending";
+
+    // Fabric deletes keys written with an empty value, so index entries carry a single zero byte
+    private static final byte[] indexEntry = new byte[] { 0 };
+
+    // Composite key object types that 'exportRecords' can page through
+    private static final List<String> exportableRecordTypes = Arrays.asList("LetterOfCredit", "LCDocs", "Payment", "Account", "Escrow");
+
+    // Upgrades of the records written by earlier versions of the contract, in schema version order
+    private final Migrator migrator = new Migrator(Constants.migrationStateKey)
+                                            .register(1, "LetterOfCredit", this::migrateLC)
+                                            .register(2, "PaymentStatus", this::migratePaymentStatus);
+
     public  LetterOfCreditContract() {
     }
 
+    // Ledger accesses and chaincode invocations are visible to Flight Recorder when their events are enabled.
+    // Writes are buffered for the whole transaction and reach the ledger in 'afterTransaction'.
+    @Override
+    public Context createContext(ChaincodeStub stub) {
+        return ContextFactory.getInstance().createContext(new BufferedChaincodeStub(RecordingChaincodeStub.wrap(stub)));
+    }
+
     @Override
     public void beforeTransaction(Context ctx) {
+        TransactionRecorder.begin("LetterOfCreditContract", ctx);
         String mspId = AccessControlUtils.GetClientMspId(ctx);
         String role = AccessControlUtils.GetClientRole(ctx);
         if (role == null) {
@@ -53,8 +91,16 @@ public class LetterOfCreditContract implements ContractInterface {
         String function = ctx.getStub().getFunction();
 
         if (AccessControlUtils.checkAccess(ctx, mspId, role, function)) {
-            throw new ChaincodeException("The participant " + mspId + " cannot invoke transaction " + function);
+            throw RejectionCode.ACCESS_DENIED.reject(mspId, function);
+        }
+    }
+
+    @Override
+    public void afterTransaction(Context ctx, Object result) {
+        if (ctx.getStub() instanceof BufferedChaincodeStub) {
+            ((BufferedChaincodeStub) ctx.getStub()).flush();
         }
+        TransactionRecorder.end("OK");
     }
 
     public String getLCKey(ChaincodeStub stub, String id) {
@@ -87,6 +133,35 @@ public class LetterOfCreditContract implements ContractInterface {
         return ck.toString();
     }
 
+    public String getPendingPaymentKey(ChaincodeStub stub, String importer, String id) {
+        CompositeKey ck = stub.createCompositeKey(paymentPendingIndex, importer, id);
+        if (ck == null) {
+            System.out.println("getPendingPaymentKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(paymentPendingIndex, importer, id);
+        }
+        return ck.toString();
+    }
+
+    public String getEscrowKey(ChaincodeStub stub, String id) {
+        String prefix = "Escrow";
+        CompositeKey ck = stub.createCompositeKey(prefix, id);
+        if (ck == null) {
+            System.out.println("getEscrowKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(prefix, id);
+        }
+        return ck.toString();
+    }
+
+    public String getPaymentObligationKey(ChaincodeStub stub, String id, String txId) {
+        String prefix = "PaymentObligation";
+        CompositeKey ck = stub.createCompositeKey(prefix, id, txId);
+        if (ck == null) {
+            System.out.println("getPaymentObligationKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(prefix, id, txId);
+        }
+        return ck.toString();
+    }
+
     public String getAccountKey(ChaincodeStub stub, String id) {
         String prefix = "Account";
         CompositeKey ck = stub.createCompositeKey(prefix, id);
@@ -97,23 +172,121 @@ public class LetterOfCreditContract implements ContractInterface {
         return ck.toString();
     }
 
+    public String getLCDocsKey(ChaincodeStub stub, String ref) {
+        String prefix = "LCDocs";
+        CompositeKey ck = stub.createCompositeKey(prefix, ref);
+        if (ck == null) {
+            System.out.println("getLCDocsKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(prefix, ref);
+        }
+        return ck.toString();
+    }
+
+    public String getLCExpiryKey(ChaincodeStub stub, String expiryDate, String id) {
+        CompositeKey ck = stub.createCompositeKey(lcExpiryIndex, expiryDate, id);
+        if (ck == null) {
+            System.out.println("getLCExpiryKey() stub function returned null, generating using constructor");
+            ck = new CompositeKey(lcExpiryIndex, expiryDate, id);
+        }
+        return ck.toString();
+    }
+
+    // Name of the private data collection holding account and payment records, or null if they are kept in channel state
+    public String getAccountsCollection(ChaincodeStub stub) {
+        byte[] collectionBytes = stub.getState(Constants.accountsCollectionKey);
+        if (collectionBytes == null || collectionBytes.length == 0) {
+            return null;
+        }
+        return new String(collectionBytes, UTF_8);
+    }
+
+    // Account and payment records are read and written through these, so that only their hashes reach the channel
+    // when a private data collection is configured
+    private byte[] getRecord(ChaincodeStub stub, String collection, String key) {
+        if (collection == null) {
+            return stub.getState(key);
+        }
+        return stub.getPrivateData(collection, key);
+    }
+
+    private void putRecord(ChaincodeStub stub, String collection, String key, byte[] value) {
+        if (collection == null) {
+            stub.putState(key, value);
+        } else {
+            stub.putPrivateData(collection, key, value);
+        }
+    }
+
+    private void delRecord(ChaincodeStub stub, String collection, String key) {
+        if (collection == null) {
+            stub.delState(key);
+        } else {
+            stub.delPrivateData(collection, key);
+        }
+    }
+
+    // Whether payments are recorded as obligations for 'settleNet' rather than moving funds between accounts
+    public boolean isNetSettlement(ChaincodeStub stub) {
+        byte[] modeBytes = stub.getState(Constants.settlementModeKey);
+        return modeBytes != null && Constants.NET_SETTLEMENT.equals(new String(modeBytes, UTF_8));
+    }
+
     public void updateAccount(ChaincodeStub stub, BankAccount bankAccount) {
+        updateAccount(stub, getAccountsCollection(stub), bankAccount);
+    }
+
+    private void updateAccount(ChaincodeStub stub, String collection, BankAccount bankAccount) {
         String accountKey = getAccountKey(stub, bankAccount.getOwnerMSP());
-        stub.putState(accountKey, genson.serialize(bankAccount).getBytes(UTF_8));
+        putRecord(stub, collection, accountKey, genson.serialize(bankAccount).getBytes(UTF_8));
+    }
+
+    // The funds reserved for a trade when its L/C was issued are held as an account of the importer's, keyed by trade.
+    // Returns null for L/Cs issued before funds were reserved, and once the funds have been paid out or returned.
+    private BankAccount lookupEscrow(ChaincodeStub stub, String collection, String tradeId) {
+        byte[] escrowBytes = getRecord(stub, collection, getEscrowKey(stub, tradeId));
+        if (escrowBytes == null || escrowBytes.length == 0) {
+            return null;
+        }
+        return BankAccount.fromJSONString(new String(escrowBytes, UTF_8));
+    }
+
+    private void updateEscrow(ChaincodeStub stub, String collection, String tradeId, BankAccount escrow) {
+        String escrowKey = getEscrowKey(stub, tradeId);
+        if (escrow.getBalance() > 0) {
+            putRecord(stub, collection, escrowKey, escrow.toJSONString().getBytes(UTF_8));
+        } else {
+            delRecord(stub, collection, escrowKey);
+        }
     }
 
-    private BankAccount lookupAccount(ChaincodeStub stub, String ownerMSP) {
+    private BankAccount lookupAccount(ChaincodeStub stub, String collection, String ownerMSP) {
         String accountKey = getAccountKey(stub, ownerMSP);
-        byte[] accountBytes = stub.getState(accountKey);
+        byte[] accountBytes = getRecord(stub, collection, accountKey);
         if (accountBytes == null || accountBytes.length == 0) {
-            throw new ChaincodeException("No account recorded for MSP '" + ownerMSP + "'");
+            throw RejectionCode.ACCOUNT_NOT_FOUND.reject(ownerMSP);
         }
-        return BankAccount.fromJSONString(new String(accountBytes));
+        return BankAccount.fromJSONString(new String(accountBytes, UTF_8));
     }
 
     @Transaction()
     public void init(Context ctx, String ...params) {
         ChaincodeStub stub = ctx.getStub();
+        // An optional trailing parameter names the private data collection for account and payment records.
+        // An empty name keeps them in channel state.
+        String accountsCollection = getAccountsCollection(stub);
+        if (params.length == 4 || params.length == 7) {
+            String collectionName = params[params.length - 1];
+            if (collectionName != null && collectionName.length() > 0) {
+                accountsCollection = collectionName;
+                stub.putState(Constants.accountsCollectionKey, accountsCollection.getBytes(UTF_8));
+                System.out.println("L/C contract configured with account and payment records in collection '" + accountsCollection + "'");
+            } else {
+                accountsCollection = null;
+                stub.delState(Constants.accountsCollectionKey);
+                System.out.println("L/C contract configured with account and payment records in channel state");
+            }
+            params = Arrays.copyOf(params, params.length - 1);
+        }
         if (params.length == 3) {
             byte[] tcBytes = stub.getState(Constants.tradeContractIdKey);
             if (tcBytes == null || tcBytes.length == 0) {
@@ -127,8 +300,8 @@ public class LetterOfCreditContract implements ContractInterface {
             if (scBytes == null || scBytes.length == 0) {
                 throw new ChaincodeException("No shipment contract id recorded on ledger");
             }
-            System.out.println("No prameters provided. Reusing from ledger: Trade contract '" + new String(tcBytes)+ "', shipping channel '" + new String(schBytes) +
-                                "', and shipment contract '" + new String(scBytes) + "'");
+            System.out.println("No prameters provided. Reusing from ledger: Trade contract '" + new String(tcBytes, UTF_8)+ "', shipping channel '" + new String(schBytes, UTF_8) +
+                                "', and shipment contract '" + new String(scBytes, UTF_8) + "'");
         } else if (params.length == 6) {
             String tradeContractId = params[0];
             if (tradeContractId != null && tradeContractId.length() > 0) {
@@ -146,7 +319,7 @@ public class LetterOfCreditContract implements ContractInterface {
                 System.out.println("L/C contract upgraded with Shipment contract '" + shipmentContractId + "'");
             }
         } else {
-            throw new ChaincodeException("Expected 3 or 6 parameters, found " + params.length);
+            throw new ChaincodeException("Expected 3, 4, 6 or 7 parameters, found " + params.length);
         }
         // Last 3 parameters are used to initialize a bank account for the exporting entity
         String exportingEntityMSP = params[params.length - 3];
@@ -154,11 +327,47 @@ public class LetterOfCreditContract implements ContractInterface {
         double exportingEntityAccountBalance = Double.parseDouble(params[params.length - 1]);
         if (exportingEntityMSP != null && exportingEntityMSP.length() > 0 && exportingEntityBank != null & exportingEntityBank.length() > 0) {
             BankAccount exportingEntityAccount = new BankAccount(exportingEntityMSP, exportingEntityBank, exportingEntityAccountBalance);
-            updateAccount(stub, exportingEntityAccount);
+            updateAccount(stub, accountsCollection, exportingEntityAccount);
             System.out.println("Initialized exporting entity account: " + exportingEntityAccount.toJSONString());
         }
     }
 
+    @Transaction()
+    public void updateACLPolicy(Context ctx, String policyJson) {
+        // Record the new access control policy. Its version must follow the current one, so concurrent updates can't overwrite each other.
+        ACLPolicy policy = AccessControlUtils.updatePolicy(ctx.getStub(), AccessControlUtils.GetClientMspId(ctx), policyJson);
+        System.out.println("ACL policy version " + policy.getVersion() + " recorded with " + policy.getRules().length + " rules");
+    }
+
+    @Transaction()
+    public String getACLPolicy(Context ctx) {
+        return AccessControlUtils.getPolicy(ctx.getStub()).toJSONString();
+    }
+
+    @Transaction()
+    public void setSettlementMode(Context ctx, String mode) {
+        // Obligations recorded in net mode remain to be settled by 'settleNet' after switching back to gross mode
+        if (!Constants.GROSS_SETTLEMENT.equals(mode) && !Constants.NET_SETTLEMENT.equals(mode)) {
+            throw RejectionCode.UNKNOWN_SETTLEMENT_MODE.reject(mode, Arrays.asList(Constants.GROSS_SETTLEMENT, Constants.NET_SETTLEMENT));
+        }
+        ctx.getStub().putState(Constants.settlementModeKey, mode.getBytes(UTF_8));
+        System.out.println("L/C contract configured with " + mode + " settlement of payments");
+    }
+
+    @Transaction()
+    public String getMigrationBatch(Context ctx, int batchSize) {
+        // Plan the next batch of up to 'batchSize' records written by earlier versions of the contract, for 'migrate'.
+        // Paginated queries are only allowed in read-only transactions, so this transaction must not be submitted.
+        return genson.serialize(migrator.nextBatch(ctx, batchSize));
+    }
+
+    @Transaction()
+    public String migrate(Context ctx, String batchJson) {
+        // Upgrade the records of a batch returned by 'getMigrationBatch'. Plan and migrate batches until 'More' is false.
+        // Other transactions read records in either format in the meantime.
+        return genson.serialize(migrator.migrate(ctx, batchJson));
+    }
+
     @Transaction()
     public boolean existsLC(Context ctx, String tradeId) {
         // Check if L/C for the given trade instance exists
@@ -168,43 +377,44 @@ public class LetterOfCreditContract implements ContractInterface {
 
     @Transaction()
     public void requestLC(Context ctx, String tradeId) {
-        // Lookup trade contract ID
-        Map<String, Object> tradeObj = getTrade(ctx, tradeId);
-        String tradeStatus = (String) tradeObj.get(Constants.tradeStatusAttr);
-        String tradeImporterMSP = (String) tradeObj.get(Constants.importerMSPAttr);
-        String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
-
-        if (!tradeStatus.equals(Constants.ACCEPTED)) {
-            throw new ChaincodeException("'" + tradeId + "' is in '" + tradeStatus + "' state. Expected '" + Constants.ACCEPTED + "'");
-        }
-
-        // Importer, represented by an importer org MSP (currently, only 'ImporterOrgMSP'), associated with this trade must match the caller's MSP
-        if (!tradeImporterMSP.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to importer " + AccessControlUtils.GetClientMspId(ctx));
-        }
-
-        // Lookup importer account balances
-        BankAccount importerAccount = lookupAccount(ctx.getStub(), tradeImporterMSP);
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        ValidationPipeline validation = new ValidationPipeline();
 
-        // Get trade amount
-        Object tradeAmountObj = tradeObj.get(Constants.tradeAmountAttr);
-        double tradeAmount;
-        if (tradeAmountObj instanceof Long) {
-            tradeAmount = (double) ((Long) tradeAmountObj);
-        } else {
-            tradeAmount = (double) tradeAmountObj;
-        }
+        // Lookup the caller's account balances. Only the trade's importer may request an L/C, so this is the importer account.
+        ValidationPipeline.Value<BankAccount> importerAccount = validation.lookup(Stage.IDENTITY, () -> lookupAccount(stub, getAccountsCollection(stub), callerMspId));
 
-        // If trade amount can't be covered by the importer's balance, reject this L/C request
-        if (tradeAmount > importerAccount.getBalance()) {
-            throw new ChaincodeException("'" + tradeId + "' requires amount " + tradeAmount + " but importer balance is only " + importerAccount.getBalance());
-        }
+        // Lookup trade from the trade contract
+        ValidationPipeline.Value<Map<String, Object>> trade = validation.lookup(Stage.REMOTE, () -> getTrade(ctx, tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            String tradeStatus = (String) trade.get().get(Constants.tradeStatusAttr);
+            if (!tradeStatus.equals(Constants.ACCEPTED)) {
+                throw RejectionCode.TRADE_NOT_ACCEPTED.reject(tradeId, tradeStatus, Constants.ACCEPTED);
+            }
+        });
+        validation.check(Stage.REMOTE, () -> {
+            // Importer, represented by an importer org MSP (currently, only 'ImporterOrgMSP'), associated with this trade must match the caller's MSP
+            if (!trade.get().get(Constants.importerMSPAttr).equals(callerMspId)) {
+                throw RejectionCode.NOT_TRADE_IMPORTER.reject(tradeId, callerMspId);
+            }
+        });
+        validation.check(Stage.REMOTE, () -> {
+            // If trade amount can't be covered by the importer's balance, reject this L/C request
+            double tradeAmount = getTradeAmount(trade.get());
+            if (tradeAmount > importerAccount.get().getBalance()) {
+                throw RejectionCode.INSUFFICIENT_BALANCE.reject(tradeId, tradeAmount, importerAccount.get().getBalance());
+            }
+        });
+        validation.run();
 
         // Create L/C object and record it on the ledger: exporter is represented by its org's MSP
-        LetterOfCredit lc = new LetterOfCredit("", "", tradeExporterMSP, Double.valueOf(tradeObj.get(Constants.tradeAmountAttr).toString()), new LCDoc[]{}, Constants.REQUESTED);
-        String lcKey = getLCKey(ctx.getStub(), tradeId);
+        Map<String, Object> tradeObj = trade.get();
+        String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
+        LetterOfCredit lc = new LetterOfCredit("", "", tradeExporterMSP, Double.valueOf(tradeObj.get(Constants.tradeAmountAttr).toString()), new LCDoc[]{},
+                                                StateMachine.LETTER_OF_CREDIT.transition(LifecycleState.NONE, LifecycleEvent.REQUEST).name());
+        String lcKey = getLCKey(stub, tradeId);
         String lcStr = lc.toJSONString();
-        ctx.getStub().putState(lcKey, lcStr.getBytes(UTF_8));
+        stub.putState(lcKey, lcStr.getBytes(UTF_8));
         System.out.println("L/C request recorded with key '" + lcKey + "' and value : " + lcStr);
     }
 
@@ -215,24 +425,41 @@ public class LetterOfCreditContract implements ContractInterface {
         String lcKey = getLCKey(stub, tradeId);
         byte[] lcBytes = stub.getState(lcKey);
         if (lcBytes == null || lcBytes.length == 0) {
-            throw new ChaincodeException("No L/C recorded for trade '" + tradeId + "'");
+            throw RejectionCode.LC_NOT_FOUND.reject(tradeId);
+        }
+
+        // The expiry index needs a date it can order
+        String expiryDate = ExpiryDate.normalize(expirationDate);
+        if (expiryDate == null) {
+            throw RejectionCode.INVALID_EXPIRATION_DATE.reject(expirationDate);
         }
 
         Map<String, Object> tradeObj = getTrade(ctx, tradeId);
         String tradeImporterMSP = (String) tradeObj.get(Constants.importerMSPAttr);
         // Importer, represented by an importer org MSP (currently, only 'ImporterOrgMSP'), associated with this trade must match the caller's MSP
         if (!tradeImporterMSP.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to importer " + AccessControlUtils.GetClientMspId(ctx) + ". Importer's bank cannot issue LC");
+            throw RejectionCode.LC_ISSUER_NOT_IMPORTER.reject(tradeId, AccessControlUtils.GetClientMspId(ctx));
         }
 
         // Check L/C status and issue with new attributes if required
-        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes));
-        String lcStatus = lc.getStatus();
-        if (lcStatus.equals(Constants.ACCEPTED)) {
-            System.out.println("L/C for trade '" + tradeId + "' has already been accepted");
-        } else if (lcStatus.equals(Constants.ISSUED)) {
-            System.out.println("L/C for trade '" + tradeId + "' has already been issued");
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+        LifecycleState lcState = lc.getState();
+        LifecycleState nextState = StateMachine.LETTER_OF_CREDIT.transition(lcState, LifecycleEvent.ISSUE);
+        if (nextState == null) {
+            throw RejectionCode.LC_NOT_ISSUABLE.reject(tradeId, lcState);
+        } else if (nextState == lcState) {
+            System.out.println("L/C for trade '" + tradeId + "' has already been " + lcState.name().toLowerCase());
         } else {
+            // Reserve the L/C amount for the trade, so that payments are released from escrow without touching the importer's account
+            String accountsCollection = getAccountsCollection(stub);
+            BankAccount importerAccount = lookupAccount(stub, accountsCollection, tradeImporterMSP);
+            if (lc.getAmount() > importerAccount.getBalance()) {
+                throw RejectionCode.INSUFFICIENT_BALANCE.reject(tradeId, lc.getAmount(), importerAccount.getBalance());
+            }
+            importerAccount.setBalance(importerAccount.getBalance() - lc.getAmount());
+            updateAccount(stub, accountsCollection, importerAccount);
+            updateEscrow(stub, accountsCollection, tradeId, new BankAccount(tradeImporterMSP, importerAccount.getBank(), lc.getAmount()));
+
             lc.setId(letterOfCreditId);
             lc.setExpirationDate(expirationDate);
             if (docs.length > 0) {
@@ -241,10 +468,12 @@ public class LetterOfCreditContract implements ContractInterface {
                     lcDocs[i] = new LCDoc(docs[i]);
                 }
                 lc.setRequiredDocs(lcDocs);
+                storeLCDocs(stub, lc);
             }
-            lc.setStatus(Constants.ISSUED);
+            lc.setState(nextState);
             String lcStr = lc.toJSONString();
             stub.putState(lcKey, lcStr.getBytes(UTF_8));
+            stub.putState(getLCExpiryKey(stub, expiryDate, tradeId), indexEntry);
             System.out.println("L/C issuance recorded with key '" + lcKey + "' and value : " + lcStr);
         }
     }
@@ -256,18 +485,19 @@ public class LetterOfCreditContract implements ContractInterface {
         String lcKey = getLCKey(stub, tradeId);
         byte[] lcBytes = stub.getState(lcKey);
         if (lcBytes == null || lcBytes.length == 0) {
-            throw new ChaincodeException("No L/C recorded for trade '" + tradeId + "'");
+            throw RejectionCode.LC_NOT_FOUND.reject(tradeId);
         }
 
         // Check L/C status and accept if required
-        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes));
-        String lcStatus = lc.getStatus();
-        if (lcStatus.equals(Constants.ACCEPTED)) {
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+        LifecycleState lcState = lc.getState();
+        LifecycleState nextState = StateMachine.LETTER_OF_CREDIT.transition(lcState, LifecycleEvent.ACCEPT);
+        if (nextState == null) {
+            throw lcState == LifecycleState.EXPIRED ? RejectionCode.LC_EXPIRED.reject(tradeId) : RejectionCode.LC_NOT_ISSUED.reject(tradeId);
+        } else if (nextState == lcState) {
             System.out.println("L/C for trade '" + tradeId + "' has already been accepted");
-        } else if (lcStatus.equals(Constants.REQUESTED)) {
-            throw new ChaincodeException("L/C for trade '" + tradeId + "' has not been issued");
         } else {
-            lc.setStatus(Constants.ACCEPTED);
+            lc.setState(nextState);
             String lcStr = lc.toJSONString();
             stub.putState(lcKey, lcStr.getBytes(UTF_8));
             System.out.println("L/C acceptance recorded with key '" + lcKey + "' and value : " + lcStr);
@@ -279,181 +509,314 @@ public class LetterOfCreditContract implements ContractInterface {
         // Check if there's already a pending payment request. If yes, this is just a noop.
         ChaincodeStub stub = ctx.getStub();
         String paymentStatusKey = getPaymentStatusKey(stub, tradeId);
-        byte[] paymentStatusBytes = stub.getState(paymentStatusKey);
-        if (paymentStatusBytes != null && paymentStatusBytes.length > 0) {
+        LifecycleState paymentState = LifecycleState.fromBytes(stub.getState(paymentStatusKey));
+        LifecycleState nextPaymentState = StateMachine.PAYMENT.transition(paymentState, LifecycleEvent.REQUEST);
+        if (nextPaymentState == paymentState) {
             System.out.println("Payment request for trade '" + tradeId + "' has already been recorded and is pending");
             return;
         }
 
-        // Get shipment location from 'shipment' contract on 'shipping' channel. If it's not set, reject this operation.
-        String shipmentLocation = getShipmentLocation(ctx, tradeId);
-        if (shipmentLocation == null || shipmentLocation.isEmpty()) {
-            throw new ChaincodeException("Shipment location response for trade '" + tradeId + "' not set, or error while fetching");
-        }
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        ValidationPipeline validation = new ValidationPipeline();
+
+        // An expired L/C no longer covers new payment requests
+        validation.check(Stage.LOCAL, () -> {
+            byte[] lcBytes = stub.getState(getLCKey(stub, tradeId));
+            if (lcBytes != null && lcBytes.length > 0 && LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8)).getState() == LifecycleState.EXPIRED) {
+                throw RejectionCode.LC_EXPIRED.reject(tradeId);
+            }
+        });
+
+        // Lookup amount already paid
+        ValidationPipeline.Value<Double> tradePayment = validation.lookup(Stage.LOCAL, () -> lookupPayment(stub, getAccountsCollection(stub), tradeId));
 
         // Get trade object from 'trade' contract
-        Map<String, Object> tradeObj = getTrade(ctx, tradeId);
-        String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
-        // Exporter, represented by an exporter org MSP (currently, only 'ExporterOrgMSP'), associated with this trade must match the caller's MSP
-        if (!tradeExporterMSP.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporter " + AccessControlUtils.GetClientMspId(ctx) + ". Exporter's bank cannot request payment");
-        }
-        // Lookup amount already paid. If this matches the full value of the trade, reject the operation.
-        String paymentKey = getPaymentKey(stub, tradeId);
-        byte[] paymentBytes = stub.getState(paymentKey);
-        if (paymentBytes == null) {
-            throw new ChaincodeException("Unable to lookup payments for '" + tradeId + "'");
-        }
-        double tradePayment = 0.0;
-        if (paymentBytes.length > 0) {
-            tradePayment = Double.parseDouble(new String(paymentBytes));
-        }
+        ValidationPipeline.Value<Map<String, Object>> trade = validation.lookup(Stage.REMOTE, () -> getTrade(ctx, tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            // Exporter, represented by an exporter org MSP (currently, only 'ExporterOrgMSP'), associated with this trade must match the caller's MSP
+            if (!trade.get().get(Constants.exporterMSPAttr).equals(callerMspId)) {
+                throw RejectionCode.PAYMENT_REQUESTER_NOT_EXPORTER.reject(tradeId, callerMspId);
+            }
+        });
+        validation.check(Stage.REMOTE, () -> {
+            // If the amount already paid matches the full value of the trade, reject the operation.
+            double tradeAmount = getTradeAmount(trade.get());
+            if (tradeAmount == tradePayment.get()) {
+                throw RejectionCode.PAYMENT_COMPLETE.reject(tradeId, tradeAmount);
+            }
+        });
 
-        Object tradeAmountObj = tradeObj.get(Constants.tradeAmountAttr);
-        double tradeAmount;
-        if (tradeAmountObj instanceof Long) {
-            tradeAmount = (double) ((Long) tradeAmountObj);
-        } else {
-            tradeAmount = (double) tradeAmountObj;
-        }
-        if (tradeAmount == tradePayment) {
-            throw new ChaincodeException("Payment for '" + tradeId + "' already made in full: " + tradeAmount);
-        }
+        // Get shipment location from 'shipment' contract on 'shipping' channel. If it's not set, reject this operation.
+        ValidationPipeline.Value<String> shipmentLocation = validation.lookup(Stage.REMOTE, () -> lookupShipmentLocation(ctx, tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            // If the shipment is still at the source location and the amount paid is greater than zero, reject this operation.
+            if (shipmentLocation.get().equals(Constants.sourceLocation) && tradePayment.get() > 0) {
+                throw RejectionCode.PARTIAL_PAYMENT_AT_SOURCE.reject(tradeId);
+            }
+        });
 
         // Get bill of lading from shipment contract. Match attributes with those in the trade object
-        Map<String, Object> blObj = getBillOfLading(ctx, tradeId);
-        String blExporterMSP = (String) blObj.get(Constants.blExporterMSPAttr);
-        String blDescGoods = (String) blObj.get(Constants.blDescGoodsAttr);
-        String blBeneficiary = (String) blObj.get(Constants.blBeneficiaryAttr);
-        Object blAmountObj = tradeObj.get(Constants.blAmountAttr);
-        double blAmount;
-        if (blAmountObj instanceof Long) {
-            blAmount = (double) ((Long) blAmountObj);
-        } else {
-            blAmount = (double) blAmountObj;
-        }
-        // Match exporter MSPs
-        if (!tradeExporterMSP.equals(blExporterMSP)) {
-            throw new ChaincodeException("'" + tradeId + "' exporter " + tradeExporterMSP + " does not match B/L exporter " + blExporterMSP);
-        }
-        // Match description of goods
-        String tradeDescGoods = (String) tradeObj.get(Constants.tradeDescOfGoodsAttr);
-        if (!tradeDescGoods.equals(blDescGoods)) {
-            throw new ChaincodeException("'" + tradeId + "' goods " + tradeDescGoods + " don't match B/L goods " + blDescGoods);
+        ValidationPipeline.Value<Map<String, Object>> billOfLading = validation.lookup(Stage.REMOTE, () -> getBillOfLading(ctx, tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            Map<String, Object> tradeObj = trade.get();
+            Map<String, Object> blObj = billOfLading.get();
+            String blExporterMSP = (String) blObj.get(Constants.blExporterMSPAttr);
+            String blDescGoods = (String) blObj.get(Constants.blDescGoodsAttr);
+            String blBeneficiary = (String) blObj.get(Constants.blBeneficiaryAttr);
+            Object blAmountObj = tradeObj.get(Constants.blAmountAttr);
+            double blAmount;
+            if (blAmountObj instanceof Long) {
+                blAmount = (double) ((Long) blAmountObj);
+            } else {
+                blAmount = (double) blAmountObj;
+            }
+            // Match exporter MSPs
+            String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
+            if (!tradeExporterMSP.equals(blExporterMSP)) {
+                throw RejectionCode.BL_EXPORTER_MISMATCH.reject(tradeId, tradeExporterMSP, blExporterMSP);
+            }
+            // Match description of goods
+            String tradeDescGoods = (String) tradeObj.get(Constants.tradeDescOfGoodsAttr);
+            if (!tradeDescGoods.equals(blDescGoods)) {
+                throw RejectionCode.BL_GOODS_MISMATCH.reject(tradeId, tradeDescGoods, blDescGoods);
+            }
+            // Match amount
+            double tradeAmount = getTradeAmount(tradeObj);
+            if (tradeAmount != blAmount) {
+                throw RejectionCode.BL_AMOUNT_MISMATCH.reject(tradeId, tradeAmount, blAmount);
+            }
+            // Match beneficiary with trade importer
+            String tradeImporterMSP = (String) tradeObj.get(Constants.importerMSPAttr);
+            if (!tradeImporterMSP.equals(blBeneficiary)) {
+                throw RejectionCode.BL_IMPORTER_MISMATCH.reject(tradeId, tradeImporterMSP, blBeneficiary);
+            }
+        });
+        validation.run();
+
+        // Record a payment request on the ledger, and add it to the importer's pending requests
+        stub.putState(paymentStatusKey, nextPaymentState.toBytes());
+        stub.putState(getPendingPaymentKey(stub, (String) trade.get().get(Constants.importerMSPAttr), tradeId), indexEntry);
+        System.out.println("Payment request recorded with key '" + paymentStatusKey + "' and value : " + nextPaymentState);
+    }
+
+    @Transaction()
+    public void makePayment(Context ctx, String tradeId) {
+        ChaincodeStub stub = ctx.getStub();
+        String accountsCollection = getAccountsCollection(stub);
+        boolean netting = isNetSettlement(stub);
+        Map<String, BankAccount> accounts = new LinkedHashMap<String, BankAccount>();
+        payTrade(ctx, accountsCollection, AccessControlUtils.GetClientMspId(ctx), tradeId, accounts, netting);
+        if (!netting) {
+            for (BankAccount account : accounts.values()) {
+                updateAccount(stub, accountsCollection, account);
+            }
         }
-        // Match amount
-        if (tradeAmount != blAmount) {
-            throw new ChaincodeException("'" + tradeId + "' amount " + tradeAmount + " does not match B/L amount " + blAmount);
+    }
+
+    @Transaction()
+    public String makePaymentBatch(Context ctx, String... tradeIds) {
+        // Settle the pending payment requests of several trades, typically a page of 'getPendingPayments'. Each account
+        // is read once and, unless payments are netted, written once for the whole batch. If any payment is rejected, so is the transaction.
+        ChaincodeStub stub = ctx.getStub();
+        if (tradeIds.length == 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(0);
         }
-        // Match beneficiary with trade importer
-        String tradeImporterMSP = (String) tradeObj.get(Constants.importerMSPAttr);
-        if (!tradeImporterMSP.equals(blBeneficiary)) {
-            throw new ChaincodeException("'" + tradeId + "' importer " + tradeImporterMSP + " does not match B/L importer " + blBeneficiary);
+        String accountsCollection = getAccountsCollection(stub);
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        boolean netting = isNetSettlement(stub);
+        Map<String, BankAccount> accounts = new LinkedHashMap<String, BankAccount>();
+        List<String> paid = new ArrayList<String>(new LinkedHashSet<String>(Arrays.asList(tradeIds)));
+        for (String tradeId : paid) {
+            payTrade(ctx, accountsCollection, callerMspId, tradeId, accounts, netting);
         }
-
-        // If the shipment is still at the source location and the amount paid is greater than zero, reject this operation.
-        if (shipmentLocation.equals(Constants.sourceLocation) && tradePayment > 0) {
-            throw new ChaincodeException("Shipment for '" + tradeId + "' still at source location and partial amount has already been paid");
+        if (!netting) {
+            for (BankAccount account : accounts.values()) {
+                updateAccount(stub, accountsCollection, account);
+            }
         }
 
-        // Record a payment request on the ledger.
-        stub.putState(paymentStatusKey, Constants.REQUESTED.getBytes(UTF_8));
-        System.out.println("Payment request recorded with key '" + paymentStatusKey + "' and value : " + Constants.REQUESTED);
+        Map<String, Object> result = new HashMap<String, Object>() {
+            private static final long serialVersionUID = -6312287469915064466L;
+            {
+                put(Constants.RecordsKey, paid);
+            }
+        };
+        System.out.println("Made " + paid.size() + " payments in batch" + (netting ? ", recorded for net settlement" : ", updating " + accounts.size() + " accounts"));
+        return genson.serialize(result);
     }
 
     @Transaction()
-    public void makePayment(Context ctx, String tradeId) {
-        // Check if there's already a pending payment request. If no, then reject this request.
+    public String settleNet(Context ctx, int window) {
+        // Settle up to 'window' recorded payment obligations. Each account's net position across them is applied with a
+        // single balance update, so account keys are written once per settlement rather than twice per payment.
         ChaincodeStub stub = ctx.getStub();
-        String paymentStatusKey = getPaymentStatusKey(stub, tradeId);
-        byte[] paymentStatusBytes = stub.getState(paymentStatusKey);
-        if (paymentStatusBytes == null || paymentStatusBytes.length == 0) {
-            throw new ChaincodeException("No payment request recorded for '" + tradeId + "'");
+        if (window <= 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(window);
         }
-
-        // Get shipment location from 'shipment' contract on 'shipping' channel.
-        String shipmentLocation = getShipmentLocation(ctx, tradeId);
-        if (shipmentLocation == null || shipmentLocation.isEmpty()) {
-            throw new ChaincodeException("Shipment location response for trade '" + tradeId + "' not set, or error while fetching");
+        String accountsCollection = getAccountsCollection(stub);
+        CompositeKey partialKey = new CompositeKey("PaymentObligation");
+
+        // Net positions are kept in key order, so that every endorser returns the same response payload. The order of the
+        // account writes doesn't matter, as the peer sorts the read-write set by key.
+        Map<String, Double> positions = new TreeMap<String, Double>();
+        boolean more = false;
+        int settled = 0;
+        QueryResultsIterator<KeyValue> obligations = (accountsCollection == null) ? stub.getStateByPartialCompositeKey(partialKey)
+                                                                                     : stub.getPrivateDataByPartialCompositeKey(accountsCollection, partialKey);
+        try {
+            for (KeyValue entry : obligations) {
+                if (settled == window) {
+                    more = true;
+                    break;
+                }
+                PaymentObligation obligation = PaymentObligation.fromJSONString(new String(entry.getValue(), UTF_8));
+                if (obligation.getPayerMSP() != null) {
+                    positions.merge(obligation.getPayerMSP(), -obligation.getAmount(), Double::sum);
+                }
+                positions.merge(obligation.getPayeeMSP(), obligation.getAmount(), Double::sum);
+                delRecord(stub, accountsCollection, entry.getKey());
+                settled++;
+            }
+        } finally {
+            closeResults(obligations, "PaymentObligation");
         }
 
-        // Get trade object from 'trade' contract
-        Map<String, Object> tradeObj = getTrade(ctx, tradeId);
-        String tradeImporterMSP = (String) tradeObj.get(Constants.importerMSPAttr);
-        // Importer, represented by an importer org MSP (currently, only 'ImporterOrgMSP'), associated with this trade must match the caller's MSP
-        if (!tradeImporterMSP.equals(AccessControlUtils.GetClientMspId(ctx))) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to importer " + AccessControlUtils.GetClientMspId(ctx) + ". Importer's bank cannot make payment");
+        for (Map.Entry<String, Double> position : positions.entrySet()) {
+            BankAccount account = lookupAccount(stub, accountsCollection, position.getKey());
+            account.setBalance(account.getBalance() + position.getValue());
+            updateAccount(stub, accountsCollection, account);
         }
-        // Lookup amount already paid.
-        String paymentKey = getPaymentKey(stub, tradeId);
-        byte[] paymentBytes = stub.getState(paymentKey);
-        if (paymentBytes == null) {
-            throw new ChaincodeException("Unable to lookup payments for '" + tradeId + "'");
+
+        final int settledCount = settled;
+        final boolean hasMore = more;
+        Map<String, Object> result = new HashMap<String, Object>() {
+            private static final long serialVersionUID = -2298014578803563386L;
+            {
+                put(Constants.RecordsKey, positions);
+                put(Constants.SettledKey, settledCount);
+                put(Constants.MoreKey, hasMore);
+            }
+        };
+        System.out.println("Settled " + settled + " payment obligations across " + positions.size() + " accounts" + (hasMore ? ", more are recorded" : ""));
+        return genson.serialize(result);
+    }
+
+    @Transaction()
+    public String getPendingPayments(Context ctx, int pageSize, String bookmark) {
+        // Page through the trades with a payment request pending for the caller, in trade ID order, reading only the caller's slice of the index
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        return PagedQuery.byPartialCompositeKey(stub, null, new CompositeKey(paymentPendingIndex, callerMspId), pageSize, bookmark)
+                         .projection((entry) -> genson.serialize(CompositeKey.parseCompositeKey(entry.getKey()).getAttributes().get(1)))
+                         .run();
+    }
+
+    @Transaction()
+    public String expireLCs(Context ctx, String asOfDate, int limit) {
+        // Expire up to 'limit' issued or accepted L/Cs whose expiration date is before 'asOfDate', earliest first.
+        // The expiry index is read in date order and the scan stops at the first entry that isn't due, so only the due slice is read.
+        ChaincodeStub stub = ctx.getStub();
+        if (limit <= 0) {
+            throw RejectionCode.INVALID_BATCH_SIZE.reject(limit);
         }
-        double tradePayment = 0.0;
-        if (paymentBytes.length > 0) {
-            tradePayment = Double.parseDouble(new String(paymentBytes));
+        String asOf = ExpiryDate.normalize(asOfDate);
+        if (asOf == null) {
+            throw RejectionCode.INVALID_EXPIRATION_DATE.reject(asOfDate);
         }
-        // Get trade amount
-        Object tradeAmountObj = tradeObj.get(Constants.tradeAmountAttr);
-        double tradeAmount;
-        if (tradeAmountObj instanceof Long) {
-            tradeAmount = (double) ((Long) tradeAmountObj);
-        } else {
-            tradeAmount = (double) tradeAmountObj;
+        // Endorsers agree on the transaction timestamp, so it bounds how far ahead a caller may expire L/Cs
+        String txDate = ExpiryDate.of(stub.getTxTimestamp());
+        if (asOf.compareTo(txDate) > 0) {
+            throw RejectionCode.EXPIRY_DATE_IN_FUTURE.reject(asOf, txDate);
         }
 
-        // Get outstanding obligation
-        double paymentObligation;
-        if (shipmentLocation.equals(Constants.sourceLocation)) {
-            paymentObligation = tradeAmount/2;
-        } else {
-            paymentObligation = tradeAmount - tradePayment;
+        List<String> expired = new ArrayList<String>();
+        String accountsCollection = getAccountsCollection(stub);
+        Map<String, BankAccount> accounts = new LinkedHashMap<String, BankAccount>();
+        boolean more = false;
+        int processed = 0;
+        QueryResultsIterator<KeyValue> index = stub.getStateByPartialCompositeKey(new CompositeKey(lcExpiryIndex));
+        try {
+            for (KeyValue entry : index) {
+                List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+                if (attributes.get(0).compareTo(asOf) >= 0) {
+                    break;
+                }
+                if (processed++ == limit) {
+                    more = true;
+                    break;
+                }
+                String tradeId = attributes.get(1);
+                if (expireLC(stub, accountsCollection, tradeId, accounts)) {
+                    expired.add(tradeId);
+                }
+                stub.delState(entry.getKey());
+            }
+        } finally {
+            closeResults(index, lcExpiryIndex);
+        }
+        for (BankAccount account : accounts.values()) {
+            updateAccount(stub, accountsCollection, account);
         }
 
-        // Lookup account balances
-        BankAccount importerAccount = lookupAccount(stub, tradeImporterMSP);
-        String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
-        BankAccount exporterAccount = lookupAccount(stub, tradeExporterMSP);
+        final boolean hasMore = more;
+        Map<String, Object> result = new HashMap<String, Object>() {
+            private static final long serialVersionUID = 4526151806357614094L;
+            {
+                put(Constants.RecordsKey, expired);
+                put(Constants.MoreKey, hasMore);
+            }
+        };
+        System.out.println("Expired " + expired.size() + " L/Cs due before " + asOf + (hasMore ? ", more are due" : ""));
+        return genson.serialize(result);
+    }
 
-        // Update balances and payment
-        importerAccount.setBalance(importerAccount.getBalance() - paymentObligation);
-        exporterAccount.setBalance(exporterAccount.getBalance() + paymentObligation);
-        tradePayment += paymentObligation;
+    @Transaction()
+    public String getLC(Context ctx, String tradeId) {
+        // Lookup L/C from given trade ID
+        ChaincodeStub stub = ctx.getStub();
+        String lcKey = getLCKey(stub, tradeId);
+        byte[] lcBytes = stub.getState(lcKey);
+        if (lcBytes == null || lcBytes.length == 0) {
+            throw RejectionCode.LC_NOT_FOUND.reject(tradeId);
+        }
 
-        updateAccount(stub, importerAccount);
-        updateAccount(stub, exporterAccount);
-        stub.putState(paymentKey, Double.toString(tradePayment).getBytes(UTF_8));
+        // Only the beneficiary is needed to check visibility, so read it from the stored bytes
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        String callerRole = AccessControlUtils.GetClientRole(ctx);
+        if (!isLCVisible(JsonFields.stringField(lcBytes, Constants.lcBeneficiaryAttr), callerMspId, callerRole)) {
+            throw RejectionCode.LC_NOT_VISIBLE.reject(tradeId, callerMspId);
+        }
 
-        // Delete payment request
-        stub.delState(paymentStatusKey);
+        String lcStr = new String(resolveLCDocs(stub, lcBytes, new HashMap<String, LCDoc[]>()), UTF_8);
+        System.out.println("Retrieved L/C for trade '" + tradeId + "' from ledger (" + lcBytes.length + " bytes)");
+        return lcStr;
     }
 
     @Transaction()
-    public String getLC(Context ctx, String tradeId) {
+    public String getLCFields(Context ctx, String tradeId, String... fields) {
         // Lookup L/C from given trade ID
         ChaincodeStub stub = ctx.getStub();
         String lcKey = getLCKey(stub, tradeId);
         byte[] lcBytes = stub.getState(lcKey);
         if (lcBytes == null || lcBytes.length == 0) {
-            throw new ChaincodeException("No L/C recorded for trade '" + tradeId + "'");
+            throw RejectionCode.LC_NOT_FOUND.reject(tradeId);
         }
 
-        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes));
-        String tradeExporterMSP = lc.getBeneficiary();
-        // Exporter, represented by an exporter or exporting entity org MSP associated with this L/C, must match the caller's MSP
-        // Allow the exporter bank to access this L/C too
+        // Visibility is checked as in 'getLC'
         String callerMspId = AccessControlUtils.GetClientMspId(ctx);
         String callerRole = AccessControlUtils.GetClientRole(ctx);
-        boolean isExportOrg = (callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP));
-        boolean isExporterBank = (callerMspId.equals(Constants.exporterOrgMsp) && callerRole.equals(Constants.EXPORTER_BANKER_ROLE));
-        if (isExportOrg && !isExporterBank && !tradeExporterMSP.equals(callerMspId)) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporting entity MSP " + callerMspId);
+        if (!isLCVisible(JsonFields.stringField(lcBytes, Constants.lcBeneficiaryAttr), callerMspId, callerRole)) {
+            throw RejectionCode.LC_NOT_VISIBLE.reject(tradeId, callerMspId);
         }
 
-        String lcStr = new String(lcBytes);
-        System.out.println("Retrieved L/C from ledger: " + lcStr);
-        return lcStr;
+        // Copy only the requested fields from the stored bytes. Documents stored separately are only read when asked for.
+        List<String> names = Arrays.asList(fields);
+        if (names.contains(Constants.lcRequiredDocsAttr) && JsonFields.hasField(lcBytes, Constants.lcDocumentsRefAttr)) {
+            lcBytes = resolveLCDocs(stub, lcBytes, new HashMap<String, LCDoc[]>());
+        }
+        String selected = JsonFields.selectFields(lcBytes, names);
+        System.out.println("Retrieved " + names + " of L/C for trade '" + tradeId + "' from ledger (" + selected.length() + " of " + lcBytes.length + " bytes)");
+        return selected;
     }
 
     @Transaction()
@@ -463,19 +826,14 @@ public class LetterOfCreditContract implements ContractInterface {
         String lcKey = getLCKey(stub, tradeId);
         byte[] lcBytes = stub.getState(lcKey);
         if (lcBytes == null || lcBytes.length == 0) {
-            throw new ChaincodeException("No L/C recorded for trade '" + tradeId + "'");
+            throw RejectionCode.LC_NOT_FOUND.reject(tradeId);
         }
 
-        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes));
-        String tradeExporterMSP = lc.getBeneficiary();
-        // Exporter, represented by an exporter or exporting entity org MSP associated with this L/C, must match the caller's MSP
-        // Allow the exporter bank to access this L/C too
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
         String callerMspId = AccessControlUtils.GetClientMspId(ctx);
         String callerRole = AccessControlUtils.GetClientRole(ctx);
-        boolean isExportOrg = (callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP));
-        boolean isExporterBank = (callerMspId.equals(Constants.exporterOrgMsp) && callerRole.equals(Constants.EXPORTER_BANKER_ROLE));
-        if (isExportOrg && !isExporterBank && !tradeExporterMSP.equals(callerMspId)) {
-            throw new ChaincodeException("'" + tradeId + "' does not belong to exporting entity MSP " + callerMspId);
+        if (!isLCVisible(lc.getBeneficiary(), callerMspId, callerRole)) {
+            throw RejectionCode.LC_NOT_VISIBLE.reject(tradeId, callerMspId);
         }
 
         Map<String, Object> status = new HashMap<String, Object>() {
@@ -488,12 +846,107 @@ public class LetterOfCreditContract implements ContractInterface {
         return genson.serialize(status);
     }
 
+    @Transaction()
+    public String getLCs(Context ctx, String... tradeIds) {
+        // Resolve the caller once for the whole batch
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        String callerRole = AccessControlUtils.GetClientRole(ctx);
+
+        // Stream the stored L/Cs into a single JSON array. L/Cs that don't exist or aren't visible to the caller are left out.
+        // Documents shared by several L/Cs are read once for the whole batch.
+        StringBuilder lcs = new StringBuilder("[");
+        Map<String, LCDoc[]> lcDocs = new HashMap<String, LCDoc[]>();
+        int count = 0;
+        for (String tradeId : tradeIds) {
+            byte[] lcBytes = stub.getState(getLCKey(stub, tradeId));
+            if (lcBytes == null || lcBytes.length == 0) {
+                continue;
+            }
+            if (!isLCVisible(JsonFields.stringField(lcBytes, Constants.lcBeneficiaryAttr), callerMspId, callerRole)) {
+                continue;
+            }
+            String lcStr = new String(resolveLCDocs(stub, lcBytes, lcDocs), UTF_8);
+            if (count++ > 0) {
+                lcs.append(',');
+            }
+            lcs.append("{\"").append(Constants.TradeIdKey).append("\":").append(genson.serialize(tradeId))
+               .append(",\"").append(Constants.LetterOfCreditKey).append("\":").append(lcStr).append('}');
+        }
+        lcs.append(']');
+        System.out.println("Retrieved " + count + " of " + tradeIds.length + " requested L/Cs from ledger");
+        return lcs.toString();
+    }
+
+    @Transaction()
+    public String getLCStatuses(Context ctx, String... tradeIds) {
+        // Resolve the caller once for the whole batch
+        ChaincodeStub stub = ctx.getStub();
+        String callerMspId = AccessControlUtils.GetClientMspId(ctx);
+        String callerRole = AccessControlUtils.GetClientRole(ctx);
+
+        // Stream the L/C statuses into a single JSON array. L/Cs that don't exist or aren't visible to the caller are left out.
+        StringBuilder statuses = new StringBuilder("[");
+        int count = 0;
+        for (String tradeId : tradeIds) {
+            byte[] lcBytes = stub.getState(getLCKey(stub, tradeId));
+            if (lcBytes == null || lcBytes.length == 0) {
+                continue;
+            }
+            LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+            if (!isLCVisible(lc.getBeneficiary(), callerMspId, callerRole)) {
+                continue;
+            }
+            if (count++ > 0) {
+                statuses.append(',');
+            }
+            statuses.append("{\"").append(Constants.TradeIdKey).append("\":").append(genson.serialize(tradeId))
+                    .append(",\"").append(Constants.StatusKey).append("\":").append(genson.serialize(lc.getStatus())).append('}');
+        }
+        statuses.append(']');
+        System.out.println("Retrieved " + count + " of " + tradeIds.length + " requested L/C statuses from ledger");
+        return statuses.toString();
+    }
+
+    @Transaction()
+    public String getLCHistory(Context ctx, String tradeId, int pageSize, String cursor) {
+        // Stream the modifications of the L/C for the given trade ID, resuming after the transaction ID given as cursor
+        ChaincodeStub stub = ctx.getStub();
+        String lcKey = getLCKey(stub, tradeId);
+        List<HistoryRecord> records = new ArrayList<HistoryRecord>();
+        String nextCursor = getHistoryPage(stub, lcKey, pageSize, cursor, (lcBytes) -> LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8)).getStatus(), records);
+
+        Map<String, Object> history = new HashMap<String, Object>() {
+            private static final long serialVersionUID = 2938408312457723861L;
+            {
+                put(Constants.RecordsKey, records);
+                put(Constants.CursorKey, nextCursor);
+            }
+        };
+        System.out.println("Retrieved " + records.size() + " L/C history records from ledger for trade '" + tradeId + "'");
+        return genson.serialize(history);
+    }
+
+    @Transaction()
+    public String exportRecords(Context ctx, String recordType, int pageSize, String bookmark) {
+        // Stream one page of L/C, L/C document, payment or account records in key order, starting at the given bookmark.
+        // Paginated queries are only allowed in read-only transactions, so this must be evaluated rather than submitted.
+        if (!exportableRecordTypes.contains(recordType)) {
+            throw RejectionCode.UNKNOWN_RECORD_TYPE.reject(recordType, exportableRecordTypes);
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String collection = recordType.equals("LetterOfCredit") || recordType.equals("LCDocs") ? null : getAccountsCollection(stub);
+        return PagedQuery.byPartialCompositeKey(stub, collection, new CompositeKey(recordType), Math.min(pageSize, Constants.maxExportPageSize), bookmark)
+                         .projection((record) -> exportRecordJson(recordType, record))
+                         .run();
+    }
+
     @Transaction()
     public String getAccountBalance(Context ctx) {
         // Lookup account balance from caller's MSP Id
         ChaincodeStub stub = ctx.getStub();
         String mspId = AccessControlUtils.GetClientMspId(ctx);
-        BankAccount account = lookupAccount(stub, mspId);
+        BankAccount account = lookupAccount(stub, getAccountsCollection(stub), mspId);
         Map<String, Object> balance = new HashMap<String, Object>() {
             private static final long serialVersionUID = 7867066038290368995L;
             {
@@ -503,24 +956,331 @@ public class LetterOfCreditContract implements ContractInterface {
         return genson.serialize(balance);
     }
 
+    private boolean isLCVisible(String beneficiary, String callerMspId, String callerRole) {
+        // Exporter, represented by an exporter or exporting entity org MSP associated with this L/C, must match the caller's MSP
+        // Allow the exporter bank to access this L/C too
+        boolean isExportOrg = (callerMspId.equals(Constants.exporterOrgMsp) || callerMspId.equals(Constants.exportingEntityOrgMSP));
+        boolean isExporterBank = (callerMspId.equals(Constants.exporterOrgMsp) && Constants.EXPORTER_BANKER_ROLE.equals(callerRole));
+        return !isExportOrg || isExporterBank || callerMspId.equals(beneficiary);
+    }
+
+    // Schema version 1: v1 L/Cs refer to their document set, where that is smaller, and issued ones are indexed for expiry
+    private boolean migrateLC(Context ctx, String lcKey, byte[] lcBytes) {
+        ChaincodeStub stub = ctx.getStub();
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+        boolean migrated = false;
+        if (storeLCDocs(stub, lc)) {
+            stub.putState(lcKey, lc.toJSONString().getBytes(UTF_8));
+            migrated = true;
+        }
+        if (lc.getState() == LifecycleState.ISSUED || lc.getState() == LifecycleState.ACCEPTED) {
+            String tradeId = CompositeKey.parseCompositeKey(lcKey).getAttributes().get(0);
+            String expiryDate = ExpiryDate.normalize(lc.getExpirationDate());
+            if (expiryDate == null) {
+                System.out.println("L/C for trade '" + tradeId + "' has expiration date '" + lc.getExpirationDate() + "', which can't be indexed");
+            } else if (addIndexEntry(stub, getLCExpiryKey(stub, expiryDate, tradeId))) {
+                migrated = true;
+            }
+        }
+        return migrated;
+    }
+
+    // Schema version 2: requested payments are in their importer's pending payment requests. The importer owns the
+    // trade's escrow, if the L/C was issued with one. Only requested payments of L/Cs issued by the v1 contract need the
+    // trade contract to name the importer.
+    private boolean migratePaymentStatus(Context ctx, String paymentStatusKey, byte[] statusBytes) {
+        if (LifecycleState.fromBytes(statusBytes) != LifecycleState.REQUESTED) {
+            return false;
+        }
+        ChaincodeStub stub = ctx.getStub();
+        String tradeId = CompositeKey.parseCompositeKey(paymentStatusKey).getAttributes().get(0);
+        BankAccount escrow = lookupEscrow(stub, getAccountsCollection(stub), tradeId);
+        String importerMSP = (escrow != null) ? escrow.getOwnerMSP() : (String) getTrade(ctx, tradeId).get(Constants.importerMSPAttr);
+        return addIndexEntry(stub, getPendingPaymentKey(stub, importerMSP, tradeId));
+    }
+
+    // Records the index entry unless it is already recorded, and returns whether it was recorded by this call
+    private static boolean addIndexEntry(ChaincodeStub stub, String indexKey) {
+        byte[] entry = stub.getState(indexKey);
+        if (entry != null && entry.length > 0) {
+            return false;
+        }
+        stub.putState(indexKey, indexEntry);
+        return true;
+    }
+
+    // Moves the L/C's required documents to their document set's key, unless the reference would be no smaller than the
+    // documents, and returns whether they were moved. The set is stored once for all L/Cs that require the same documents.
+    private boolean storeLCDocs(ChaincodeStub stub, LetterOfCredit lc) {
+        LCDoc[] docs = lc.getRequiredDocs();
+        if (docs == null || docs.length == 0) {
+            return false;
+        }
+        String docsJson = LCDoc.toJSONString(docs);
+        String ref = LCDoc.setRef(docsJson);
+        // Both fields have names of the same length, so the quoted reference replaces the array
+        if (docsJson.length() <= ref.length() + 2) {
+            return false;
+        }
+        String docsKey = getLCDocsKey(stub, ref);
+        byte[] storedBytes = stub.getState(docsKey);
+        if (storedBytes == null || storedBytes.length == 0) {
+            stub.putState(docsKey, docsJson.getBytes(UTF_8));
+            System.out.println("L/C documents recorded with key '" + docsKey + "'");
+        } else if (!Arrays.equals(storedBytes, docsJson.getBytes(UTF_8))) {
+            throw new ChaincodeException("L/C documents recorded with key '" + docsKey + "' differ from " + docsJson);
+        }
+        lc.setRequiredDocs(null);
+        lc.setDocumentsRef(ref);
+        return true;
+    }
+
+    // Returns the L/C JSON with its referenced documents in 'requiredDocs', reading each document set at most once per
+    // cache. L/Cs that embed their documents are returned as stored, without being deserialized.
+    private byte[] resolveLCDocs(ChaincodeStub stub, byte[] lcBytes, Map<String, LCDoc[]> lcDocs) {
+        if (!JsonFields.hasField(lcBytes, Constants.lcDocumentsRefAttr)) {
+            return lcBytes;
+        }
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+        LCDoc[] docs = lcDocs.computeIfAbsent(lc.getDocumentsRef(), (ref) -> {
+            byte[] docsBytes = stub.getState(getLCDocsKey(stub, ref));
+            if (docsBytes == null || docsBytes.length == 0) {
+                throw new ChaincodeException("No L/C documents recorded for reference '" + ref + "'");
+            }
+            return LCDoc.fromJSONArray(new String(docsBytes, UTF_8));
+        });
+        lc.setRequiredDocs(docs);
+        lc.setDocumentsRef(null);
+        return lc.toJSONString().getBytes(UTF_8);
+    }
+
+    // Moves the L/C for the given trade to EXPIRED, and returns whether it was expired by this call. Funds still held in
+    // escrow are returned to the importer's account in 'accounts', for the caller to record.
+    private boolean expireLC(ChaincodeStub stub, String accountsCollection, String tradeId, Map<String, BankAccount> accounts) {
+        String lcKey = getLCKey(stub, tradeId);
+        byte[] lcBytes = stub.getState(lcKey);
+        if (lcBytes == null || lcBytes.length == 0) {
+            return false;
+        }
+        LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+        LifecycleState nextState = StateMachine.LETTER_OF_CREDIT.transition(lc.getState(), LifecycleEvent.EXPIRE);
+        if (nextState == null || nextState == lc.getState()) {
+            return false;
+        }
+        lc.setState(nextState);
+        stub.putState(lcKey, lc.toJSONString().getBytes(UTF_8));
+        BankAccount escrow = lookupEscrow(stub, accountsCollection, tradeId);
+        if (escrow != null) {
+            BankAccount importerAccount = accounts.computeIfAbsent(escrow.getOwnerMSP(), (mspId) -> lookupAccount(stub, accountsCollection, mspId));
+            importerAccount.setBalance(importerAccount.getBalance() + escrow.getBalance());
+            delRecord(stub, accountsCollection, getEscrowKey(stub, tradeId));
+        }
+        return true;
+    }
+
+    // Appends {"Id": <key attribute>, "Value": <stored JSON>} for an exported record. Payments are stored as plain numbers.
+    private String exportRecordJson(String recordType, KeyValue record) {
+        String id = CompositeKey.parseCompositeKey(record.getKey()).getAttributes().get(0);
+        String value = new String(record.getValue(), UTF_8);
+        if (recordType.equals("Payment")) {
+            value = Double.toString(value.isEmpty() ? 0.0 : Double.parseDouble(value));
+        }
+        return "{\"" + Constants.IdKey + "\":" + genson.serialize(id) + ",\"" + Constants.ValueKey + "\":" + value + "}";
+    }
+
+    private void closeResults(AutoCloseable results, String recordType) {
+        try {
+            results.close();
+        } catch (Exception e) {
+            throw new ChaincodeException("Unable to close iterator over " + recordType + " records: " + e.getMessage());
+        }
+    }
+
+    // Fills 'records' with up to 'pageSize' modifications of the given key, decoding them one at a time, and returns
+    // the cursor to resume from (empty if the history has been exhausted)
+    private String getHistoryPage(ChaincodeStub stub, String key, int pageSize, String cursor, Function<byte[], String> statusDecoder, List<HistoryRecord> records) {
+        if (pageSize <= 0) {
+            throw RejectionCode.INVALID_PAGE_SIZE.reject(pageSize);
+        }
+        // Skip over (without decoding) the modifications up to and including the cursor
+        boolean collecting = (cursor == null || cursor.isEmpty());
+        QueryResultsIterator<KeyModification> history = stub.getHistoryForKey(key);
+        try {
+            Iterator<KeyModification> modifications = history.iterator();
+            while (modifications.hasNext()) {
+                KeyModification modification = modifications.next();
+                if (!collecting) {
+                    collecting = modification.getTxId().equals(cursor);
+                    continue;
+                }
+                String status = "";
+                if (!modification.isDeleted()) {
+                    status = statusDecoder.apply(modification.getValue());
+                }
+                records.add(new HistoryRecord(modification.getTxId(), modification.getTimestamp().toString(), status, modification.isDeleted()));
+                if (records.size() == pageSize) {
+                    // Stop early: the page is full
+                    return modifications.hasNext() ? modification.getTxId() : "";
+                }
+            }
+            return "";
+        } finally {
+            try {
+                history.close();
+            } catch (Exception e) {
+                throw new ChaincodeException("Unable to close history iterator for key '" + key + "': " + e.getMessage());
+            }
+        }
+    }
+
+    // Pays the outstanding obligation of the pending payment request for the given trade. Accounts are read through
+    // 'accounts', and their new balances are left there for the caller to record. When netting, the accounts are only
+    // checked, and the payment is recorded as an obligation for 'settleNet' instead.
+    private void payTrade(Context ctx, String accountsCollection, String callerMspId, String tradeId, Map<String, BankAccount> accounts, boolean netting) {
+        ChaincodeStub stub = ctx.getStub();
+        String paymentStatusKey = getPaymentStatusKey(stub, tradeId);
+        ValidationPipeline validation = new ValidationPipeline();
+
+        // Check if there's already a pending payment request. If no, then reject this request.
+        ValidationPipeline.Value<LifecycleState> nextPaymentState = validation.lookup(Stage.LOCAL, () -> {
+            LifecycleState paymentState = LifecycleState.fromBytes(stub.getState(paymentStatusKey));
+            LifecycleState nextState = StateMachine.PAYMENT.transition(paymentState, LifecycleEvent.PAY);
+            if (nextState == null) {
+                throw RejectionCode.PAYMENT_NOT_REQUESTED.reject(tradeId);
+            }
+            return nextState;
+        });
+
+        // Lookup amount already paid.
+        ValidationPipeline.Value<Double> tradePayment = validation.lookup(Stage.LOCAL, () -> lookupPayment(stub, accountsCollection, tradeId));
+
+        // Lookup the funds reserved for the trade when its L/C was issued
+        ValidationPipeline.Value<BankAccount> escrow = validation.lookup(Stage.LOCAL, () -> lookupEscrow(stub, accountsCollection, tradeId));
+
+        // Lookup the caller's account, unless the payment is released from escrow. Only the trade's importer may pay, so this is the importer account.
+        ValidationPipeline.Value<BankAccount> importerAccount = validation.lookup(Stage.IDENTITY, () -> escrow.get() != null ? null
+                                                                                  : accounts.computeIfAbsent(callerMspId, (mspId) -> lookupAccount(stub, accountsCollection, mspId)));
+
+        // Get trade object from 'trade' contract
+        ValidationPipeline.Value<Map<String, Object>> trade = validation.lookup(Stage.REMOTE, () -> getTrade(ctx, tradeId));
+        validation.check(Stage.REMOTE, () -> {
+            // Importer, represented by an importer org MSP (currently, only 'ImporterOrgMSP'), associated with this trade must match the caller's MSP
+            if (!trade.get().get(Constants.importerMSPAttr).equals(callerMspId)) {
+                throw RejectionCode.PAYER_NOT_IMPORTER.reject(tradeId, callerMspId);
+            }
+        });
+
+        // Get shipment location from 'shipment' contract on 'shipping' channel.
+        ValidationPipeline.Value<String> shipmentLocation = validation.lookup(Stage.REMOTE, () -> lookupShipmentLocation(ctx, tradeId));
+        validation.run();
+
+        // Get outstanding obligation
+        Map<String, Object> tradeObj = trade.get();
+        double tradeAmount = getTradeAmount(tradeObj);
+        double paid = tradePayment.get();
+        double paymentObligation;
+        if (shipmentLocation.get().equals(Constants.sourceLocation)) {
+            paymentObligation = tradeAmount/2;
+        } else {
+            paymentObligation = tradeAmount - paid;
+        }
+
+        // Lookup exporter account balances
+        String tradeExporterMSP = (String) tradeObj.get(Constants.exporterMSPAttr);
+        BankAccount exporterAccount = accounts.computeIfAbsent(tradeExporterMSP, (mspId) -> lookupAccount(stub, accountsCollection, mspId));
+
+        // Release the payment from escrow if the trade has one. The importer's account has already been debited.
+        BankAccount escrowAccount = escrow.get();
+        if (escrowAccount != null) {
+            if (paymentObligation > escrowAccount.getBalance()) {
+                throw RejectionCode.INSUFFICIENT_ESCROW.reject(tradeId, paymentObligation, escrowAccount.getBalance());
+            }
+            escrowAccount.setBalance(escrowAccount.getBalance() - paymentObligation);
+            updateEscrow(stub, accountsCollection, tradeId, escrowAccount);
+        }
+
+        // Update balances and payment. The caller records the accounts.
+        BankAccount payerAccount = importerAccount.get();
+        if (netting) {
+            // Obligations of payments released from escrow have no payer to debit
+            PaymentObligation obligation = new PaymentObligation(payerAccount == null ? null : payerAccount.getOwnerMSP(), exporterAccount.getOwnerMSP(), paymentObligation);
+            putRecord(stub, accountsCollection, getPaymentObligationKey(stub, tradeId, stub.getTxId()), obligation.toJSONString().getBytes(UTF_8));
+        } else {
+            if (payerAccount != null) {
+                payerAccount.setBalance(payerAccount.getBalance() - paymentObligation);
+            }
+            exporterAccount.setBalance(exporterAccount.getBalance() + paymentObligation);
+        }
+        paid += paymentObligation;
+
+        putRecord(stub, accountsCollection, getPaymentKey(stub, tradeId), Double.toString(paid).getBytes(UTF_8));
+
+        // Record the payment request's new state. A request that is no longer pending is deleted.
+        if (nextPaymentState.get() == LifecycleState.NONE) {
+            stub.delState(paymentStatusKey);
+            stub.delState(getPendingPaymentKey(stub, callerMspId, tradeId));
+        } else {
+            stub.putState(paymentStatusKey, nextPaymentState.get().toBytes());
+        }
+    }
+
+    private double lookupPayment(ChaincodeStub stub, String collection, String tradeId) {
+        byte[] paymentBytes = getRecord(stub, collection, getPaymentKey(stub, tradeId));
+        if (paymentBytes == null) {
+            throw new ChaincodeException("Unable to lookup payments for '" + tradeId + "'");
+        }
+        if (paymentBytes.length == 0) {
+            return 0.0;
+        }
+        return Double.parseDouble(new String(paymentBytes, UTF_8));
+    }
+
+    private String lookupShipmentLocation(Context ctx, String tradeId) {
+        String shipmentLocation = getShipmentLocation(ctx, tradeId);
+        if (shipmentLocation == null || shipmentLocation.isEmpty()) {
+            throw RejectionCode.SHIPMENT_LOCATION_UNAVAILABLE.reject(tradeId);
+        }
+        return shipmentLocation;
+    }
+
+    private double getTradeAmount(Map<String, Object> tradeObj) {
+        Object tradeAmountObj = tradeObj.get(Constants.tradeAmountAttr);
+        if (tradeAmountObj instanceof Long) {
+            return (double) ((Long) tradeAmountObj);
+        }
+        return (double) tradeAmountObj;
+    }
+
     private Map<String, Object> getTrade(Context ctx, String tradeId) {
+        return Tracer.trace("getTrade", () -> fetchTrade(ctx, tradeId));
+    }
+
+    private String getShipmentLocation(Context ctx, String tradeId) {
+        return Tracer.trace("getShipmentLocation", () -> fetchShipmentLocation(ctx, tradeId));
+    }
+
+    private Map<String, Object> getBillOfLading(Context ctx, String tradeId) {
+        return Tracer.trace("getBillOfLading", () -> fetchBillOfLading(ctx, tradeId));
+    }
+
+    private Map<String, Object> fetchTrade(Context ctx, String tradeId) {
         // Look up the trade contract name
         ChaincodeStub stub = ctx.getStub();
         byte[] tcBytes = stub.getState(Constants.tradeContractIdKey);
         if (tcBytes == null || tcBytes.length == 0) {
             throw new ChaincodeException("No trade contract id recorded on ledger");
         }
-        String tradeChaincodeId = new String(tcBytes);
+        String tradeChaincodeId = new String(tcBytes, UTF_8);
 
         // Lookup trade agreemeent by invoking the trade chaincode
-        Response tradeResp = ctx.getStub().invokeChaincodeWithStringArgs(tradeChaincodeId, Constants.getTradeFunc, tradeId);
+        Response tradeResp = Tracer.invokeChaincode(stub, tradeChaincodeId, Constants.getTradeFunc, tradeId);
         if (tradeResp.getStatus() != Response.Status.SUCCESS) {
             throw new ChaincodeException("Error invoking '" + tradeChaincodeId + "' chaincode, function '" + Constants.getTradeFunc + "'");
         }
 
         String trade = tradeResp.getStringPayload();
         if (trade.isEmpty()) {
-            throw new ChaincodeException("Unable to locate trade ': " + tradeId + "'");
+            throw RejectionCode.TRADE_NOT_FOUND.reject(tradeId);
         }
 
         @SuppressWarnings("unchecked")
@@ -528,26 +1288,26 @@ public class LetterOfCreditContract implements ContractInterface {
         return tradeObj;
     }
 
-    private String getShipmentLocation(Context ctx, String tradeId) {
+    private String fetchShipmentLocation(Context ctx, String tradeId) {
         // Look up the trade contract name
         ChaincodeStub stub = ctx.getStub();
         byte[] schBytes = stub.getState(Constants.shippingChannelNameKey);
         if (schBytes == null || schBytes.length == 0) {
             throw new ChaincodeException("No shipping channel name recorded on ledger");
         }
-        String shippingChannel = new String(schBytes);
+        String shippingChannel = new String(schBytes, UTF_8);
 
         byte[] scBytes = stub.getState(Constants.shipmentContractIdKey);
         if (scBytes == null || scBytes.length == 0) {
             throw new ChaincodeException("No shipment contract id recorded on ledger");
         }
-        String shipmentChaincodeId = new String(scBytes);
+        String shipmentChaincodeId = new String(scBytes, UTF_8);
 
         // Lookup shipment location agreemeent by invoking the sipment chaincode
         ArrayList<String> shipmentLocationArgs = new ArrayList<String>();
         shipmentLocationArgs.add(Constants.getShipmentLocationFunc);
         shipmentLocationArgs.add(tradeId);
-        Response shipmentLocationResp = ctx.getStub().invokeChaincodeWithStringArgs(shipmentChaincodeId, shipmentLocationArgs, shippingChannel);
+        Response shipmentLocationResp = Tracer.invokeChaincode(stub, shipmentChaincodeId, shipmentLocationArgs, shippingChannel);
         if (shipmentLocationResp.getStatus() != Response.Status.SUCCESS) {
             throw new ChaincodeException("Error invoking '" + shipmentChaincodeId + "' chaincode, function '" + Constants.getShipmentLocationFunc + "'");
         }
@@ -566,26 +1326,26 @@ public class LetterOfCreditContract implements ContractInterface {
         return ((String) sloc);
     }
 
-    private Map<String, Object> getBillOfLading(Context ctx, String tradeId) {
+    private Map<String, Object> fetchBillOfLading(Context ctx, String tradeId) {
         // Look up the trade contract name
         ChaincodeStub stub = ctx.getStub();
         byte[] schBytes = stub.getState(Constants.shippingChannelNameKey);
         if (schBytes == null || schBytes.length == 0) {
             throw new ChaincodeException("No shipping channel name recorded on ledger");
         }
-        String shippingChannel = new String(schBytes);
+        String shippingChannel = new String(schBytes, UTF_8);
 
         byte[] scBytes = stub.getState(Constants.shipmentContractIdKey);
         if (scBytes == null || scBytes.length == 0) {
             throw new ChaincodeException("No shipment contract id recorded on ledger");
         }
-        String shipmentChaincodeId = new String(scBytes);
+        String shipmentChaincodeId = new String(scBytes, UTF_8);
 
         // Lookup shipment location agreemeent by invoking the sipment chaincode
         ArrayList<String> billOfLadingArgs = new ArrayList<String>();
         billOfLadingArgs.add(Constants.getBillOfLadingFunc);
         billOfLadingArgs.add(tradeId);
-        Response shipmentLocationResp = ctx.getStub().invokeChaincodeWithStringArgs(shipmentChaincodeId, billOfLadingArgs, shippingChannel);
+        Response shipmentLocationResp = Tracer.invokeChaincode(stub, shipmentChaincodeId, billOfLadingArgs, shippingChannel);
         if (shipmentLocationResp.getStatus() != Response.Status.SUCCESS) {
             throw new ChaincodeException("Error invoking '" + shipmentChaincodeId + "' chaincode, function '" + Constants.getBillOfLadingFunc + "'");
         }
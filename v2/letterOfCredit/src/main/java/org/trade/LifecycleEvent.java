@@ -0,0 +1,17 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Events that move L/Cs, E/Ls and payment requests through their lifecycles. See StateMachine.
+*/
+
+public enum LifecycleEvent {
+    REQUEST,
+    ISSUE,
+    ACCEPT,
+    PAY,
+    EXPIRE
+}
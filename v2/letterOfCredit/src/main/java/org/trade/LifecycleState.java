@@ -0,0 +1,49 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+/*
+    Lifecycle states of L/Cs, E/Ls and payment requests.
+    NONE is the state of a document that hasn't been recorded yet, or of a trade without a pending payment request.
+    States are stored by name, in L/C and E/L documents and under payment status keys, as the v1 contracts stored them.
+    Stored records therefore read the same on the ledger, in the block stream and in query responses, which return them
+    as stored. Transition tables index states by ordinal, which is never persisted.
+*/
+
+public enum LifecycleState {
+
+    NONE,
+    REQUESTED,
+    ISSUED,
+    ACCEPTED,
+    EXPIRED;
+
+    public byte[] toBytes() {
+        return name().getBytes(UTF_8);
+    }
+
+    public static LifecycleState parse(String status) {
+        if (status == null || status.isEmpty()) {
+            return NONE;
+        }
+        try {
+            return valueOf(status);
+        } catch (IllegalArgumentException e) {
+            throw new ChaincodeException("Unknown status '" + status + "'");
+        }
+    }
+
+    // Decodes a status stored on its own under a ledger key
+    public static LifecycleState fromBytes(byte[] statusBytes) {
+        if (statusBytes == null || statusBytes.length == 0) {
+            return NONE;
+        }
+        return parse(new String(statusBytes, UTF_8));
+    }
+}
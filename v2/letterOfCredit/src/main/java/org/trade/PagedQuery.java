@@ -0,0 +1,185 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import com.owlike.genson.Genson;
+
+/*
+    One page of a composite key or rich query, written into the JSON response as the records are read:
+    {
+        "Records": [ <projected record>, ... ],
+        "Bookmark": <string, empty once the query is exhausted>,
+        "Fetched": <number of records read from the ledger, including those filtered out>
+    }
+    Records rejected by the filter, or projected to null, are left out. Nothing is collected before it is written, so
+    memory use follows the response, which the byte budget bounds. A page that reaches the budget ends before the record
+    that would exceed it, and its bookmark resumes from that record. The first record is always written, so every page
+    makes progress. Rich query bookmarks can't resume mid-page, so a rich query page that exceeds the budget is rejected.
+    Paginated queries are only allowed in read-only transactions. Private data queries can't be paginated, so they
+    skip to the bookmark and hand out the key following the page as the next one.
+    The query's iterator is closed before 'run' returns or throws.
+*/
+
+public final class PagedQuery {
+
+    private static final Genson genson = new Genson();
+
+    private final ChaincodeStub stub;
+
+    private final String description;
+
+    private final CompositeKey partialKey;
+
+    private final String collection;
+
+    private final String query;
+
+    private final int pageSize;
+
+    private final String bookmark;
+
+    private Predicate<KeyValue> filter = (record) -> true;
+
+    private Function<KeyValue, String> projection = (record) -> new String(record.getValue(), UTF_8);
+
+    private int byteBudget = Constants.maxPageBytes;
+
+    private PagedQuery(ChaincodeStub stub, String description, CompositeKey partialKey, String collection, String query, int pageSize, String bookmark) {
+        if (pageSize <= 0) {
+            throw RejectionCode.INVALID_PAGE_SIZE.reject(pageSize);
+        }
+        this.stub = stub;
+        this.description = description;
+        this.partialKey = partialKey;
+        this.collection = collection;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.bookmark = bookmark == null ? "" : bookmark;
+    }
+
+    // Records under the given partial key, in channel state, or in the given private data collection if it isn't null
+    public static PagedQuery byPartialCompositeKey(ChaincodeStub stub, String collection, CompositeKey partialKey, int pageSize, String bookmark) {
+        return new PagedQuery(stub, "'" + partialKey.getObjectType() + "' records", partialKey, collection, null, pageSize, bookmark);
+    }
+
+    public static PagedQuery byRichQuery(ChaincodeStub stub, String query, int pageSize, String bookmark) {
+        return new PagedQuery(stub, "rich query results", null, null, query, pageSize, bookmark);
+    }
+
+    public PagedQuery filter(Predicate<KeyValue> filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    // Maps each record to the JSON text of its entry in 'Records', or to null to leave it out
+    public PagedQuery projection(Function<KeyValue, String> projection) {
+        this.projection = projection;
+        return this;
+    }
+
+    public PagedQuery byteBudget(int byteBudget) {
+        this.byteBudget = byteBudget;
+        return this;
+    }
+
+    public String run() {
+        StringBuilder page = new StringBuilder("{\"").append(Constants.RecordsKey).append("\":[");
+        int fetched = 0;
+        int written = 0;
+        long bytes = 0;
+        String nextBookmark = "";
+        boolean cut = false;
+        // Private data queries are the only ones without pagination metadata
+        QueryResultsIteratorWithMetadata<KeyValue> paged = null;
+        QueryResultsIterator<KeyValue> unpaged = null;
+        if (query != null) {
+            paged = stub.getQueryResultWithPagination(query, pageSize, bookmark);
+        } else if (collection != null) {
+            unpaged = stub.getPrivateDataByPartialCompositeKey(collection, partialKey);
+        } else {
+            paged = stub.getStateByPartialCompositeKeyWithPagination(partialKey, pageSize, bookmark);
+        }
+        AutoCloseable results = paged != null ? paged : unpaged;
+        try {
+            for (KeyValue record : paged != null ? paged : unpaged) {
+                if (collection != null) {
+                    if (record.getKey().compareTo(bookmark) < 0) {
+                        continue;
+                    }
+                    if (fetched == pageSize) {
+                        nextBookmark = record.getKey();
+                        break;
+                    }
+                }
+                fetched++;
+                if (!filter.test(record)) {
+                    continue;
+                }
+                String json = projection.apply(record);
+                if (json == null) {
+                    continue;
+                }
+                int size = utf8Length(json) + (written > 0 ? 1 : 0);
+                if (written > 0 && bytes + size > byteBudget) {
+                    if (query != null) {
+                        throw RejectionCode.PAGE_TOO_LARGE.reject(pageSize, byteBudget);
+                    }
+                    nextBookmark = record.getKey();
+                    fetched--;
+                    cut = true;
+                    break;
+                }
+                if (written++ > 0) {
+                    page.append(',');
+                }
+                page.append(json);
+                bytes += size;
+            }
+            if (!cut && paged != null) {
+                nextBookmark = paged.getMetadata().getBookmark();
+            }
+        } finally {
+            try {
+                results.close();
+            } catch (Exception e) {
+                throw new ChaincodeException("Unable to close iterator over " + description + ": " + e.getMessage());
+            }
+        }
+        page.append("],\"").append(Constants.BookmarkKey).append("\":").append(genson.serialize(nextBookmark))
+            .append(",\"").append(Constants.FetchedKey).append("\":").append(fetched).append('}');
+        System.out.println("Paged " + written + " of " + fetched + " " + description + " fetched, " + bytes + " bytes" + (cut ? ", cut at the byte budget" : ""));
+        return page.toString();
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0 ; i < s.length() ; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
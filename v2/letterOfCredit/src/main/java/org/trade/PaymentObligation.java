@@ -0,0 +1,71 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import org.hyperledger.fabric.contract.annotation.DataType;
+import org.hyperledger.fabric.contract.annotation.Property;
+
+import com.owlike.genson.annotation.JsonProperty;
+import com.owlike.genson.Genson;
+/*
+    Payment made in net settlement mode, awaiting 'settleNet' to move the amount between the accounts. Obligations are
+    recorded one per payment, under PaymentObligation~<tradeId>~<txId>.
+*/
+
+@DataType()
+public class PaymentObligation {
+
+    private static final Genson genson = new Genson();
+
+    @Property()
+    private String payerMSP;
+
+    @Property()
+    private String payeeMSP;
+
+    @Property()
+    private double amount;
+
+    public PaymentObligation() {
+    }
+
+    public PaymentObligation(@JsonProperty("payerMSP") String payerMSP, @JsonProperty("payeeMSP") String payeeMSP, @JsonProperty("amount") double amount) {
+        this.payerMSP = payerMSP;
+        this.payeeMSP = payeeMSP;
+        this.amount = amount;
+    }
+
+    public String getPayerMSP() {
+        return payerMSP;
+    }
+
+    public void setPayerMSP(String payerMSP) {
+        this.payerMSP = payerMSP;
+    }
+
+    public String getPayeeMSP() {
+        return payeeMSP;
+    }
+
+    public void setPayeeMSP(String payeeMSP) {
+        this.payeeMSP = payeeMSP;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+
+    public String toJSONString() {
+        return genson.serialize(this);
+    }
+
+    public static PaymentObligation fromJSONString(String json) {
+        return genson.deserialize(json, PaymentObligation.class);
+    }
+}
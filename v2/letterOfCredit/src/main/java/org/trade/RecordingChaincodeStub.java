@@ -0,0 +1,363 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/*
+    Chaincode stub that emits a Flight Recorder event for every ledger access and chaincode invocation, and otherwise
+    delegates to the stub it wraps. The string and convenience overloads are default methods of 'ChaincodeStub'
+    that end up in the methods below, so they are recorded too.
+    Use 'wrap', which leaves the stub alone unless one of the events is enabled.
+*/
+
+public final class RecordingChaincodeStub implements ChaincodeStub {
+
+    private static final String GET = "GET";
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DELETE";
+    private static final String QUERY = "QUERY";
+    private static final String HISTORY = "HISTORY";
+
+    private final ChaincodeStub stub;
+
+    private RecordingChaincodeStub(ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    public static ChaincodeStub wrap(ChaincodeStub stub) {
+        if (stub instanceof RecordingChaincodeStub) {
+            return stub;
+        }
+        if (!new LedgerAccessEvent().isEnabled() && !new ChaincodeInvocationEvent().isEnabled()) {
+            return stub;
+        }
+        return new RecordingChaincodeStub(stub);
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return stub.getArgs();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return stub.getStringArgs();
+    }
+
+    @Override
+    public String getFunction() {
+        return stub.getFunction();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return stub.getParameters();
+    }
+
+    @Override
+    public String getTxId() {
+        return stub.getTxId();
+    }
+
+    @Override
+    public String getChannelId() {
+        return stub.getChannelId();
+    }
+
+    @Override
+    public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        ChaincodeInvocationEvent event = new ChaincodeInvocationEvent();
+        event.begin();
+        Response response = stub.invokeChaincode(chaincodeName, args, channel);
+        event.end();
+        if (event.shouldCommit()) {
+            event.chaincode = chaincodeName;
+            event.function = args.isEmpty() ? "" : new String(args.get(0), UTF_8);
+            event.channel = channel == null ? "" : channel;
+            for (byte[] arg : args) {
+                event.requestSize += arg.length;
+            }
+            byte[] payload = response.getPayload();
+            event.responseSize = payload == null ? 0 : payload.length;
+            event.status = response.getStatusCode();
+            event.commit();
+        }
+        return response;
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        byte[] value = stub.getState(key);
+        record(event, GET, null, key, value);
+        return value;
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        return stub.getStateValidationParameter(key);
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        stub.putState(key, value);
+        record(event, PUT, null, key, value);
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        stub.setStateValidationParameter(key, value);
+    }
+
+    @Override
+    public void delState(String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        stub.delState(key);
+        record(event, DELETE, null, key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+        record(event, QUERY, null, startKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
+        record(event, QUERY, null, startKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(compositeKey);
+        record(event, QUERY, null, compositeKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(compositeKey);
+        record(event, QUERY, null, compositeKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize, String bookmark) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark);
+        record(event, QUERY, null, compositeKey, null);
+        return results;
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return stub.createCompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return stub.splitCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getQueryResult(query);
+        record(event, QUERY, null, query, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getQueryResultWithPagination(query, pageSize, bookmark);
+        record(event, QUERY, null, query, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyModification> results = stub.getHistoryForKey(key);
+        record(event, HISTORY, null, key, null);
+        return results;
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        byte[] value = stub.getPrivateData(collection, key);
+        record(event, GET, collection, key, value);
+        return value;
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        byte[] hash = stub.getPrivateDataHash(collection, key);
+        record(event, GET, collection, key, hash);
+        return hash;
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        return stub.getPrivateDataValidationParameter(collection, key);
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        stub.putPrivateData(collection, key, value);
+        record(event, PUT, collection, key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        stub.setPrivateDataValidationParameter(collection, key, value);
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        stub.delPrivateData(collection, key);
+        record(event, DELETE, collection, key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getPrivateDataByRange(collection, startKey, endKey);
+        record(event, QUERY, collection, startKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+        record(event, QUERY, collection, compositeKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+        record(event, QUERY, collection, compositeKey, null);
+        return results;
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        LedgerAccessEvent event = new LedgerAccessEvent();
+        event.begin();
+        QueryResultsIterator<KeyValue> results = stub.getPrivateDataQueryResult(collection, query);
+        record(event, QUERY, collection, query, null);
+        return results;
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        stub.setEvent(name, payload);
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return stub.getEvent();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return stub.getSignedProposal();
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return stub.getTxTimestamp();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return stub.getCreator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return stub.getTransient();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return stub.getBinding();
+    }
+
+    @Override
+    public String getMspId() {
+        return stub.getMspId();
+    }
+
+    // Keys are only rendered once the event is known to be recorded
+    private static void record(LedgerAccessEvent event, String operation, String collection, Object key, byte[] value) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.collection = collection == null ? "" : collection;
+            event.key = String.valueOf(key);
+            event.size = value == null ? 0 : value.length;
+            event.commit();
+        }
+    }
+}
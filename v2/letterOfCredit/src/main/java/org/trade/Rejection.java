@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+
+import com.owlike.genson.Genson;
+
+/*
+    Expected business-rule rejection. Rejections are routine, so they skip the stack trace, and the message and payload
+    are only rendered if someone reads them.
+    Payload JSON format (returned to the client along with the message):
+    {
+        "code": <RejectionCode>,
+        "message": <string>,
+        "args": [ <string>, ... ]
+    }
+*/
+
+public class Rejection extends ChaincodeException {
+
+    private static final long serialVersionUID = -3385932165093528517L;
+
+    private static final Genson genson = new Genson();
+
+    private final RejectionCode code;
+
+    private final Object[] args;
+
+    private transient String message;
+
+    private transient byte[] payload;
+
+    public Rejection(RejectionCode code, Object... args) {
+        super((String) null);
+        this.code = code;
+        this.args = args;
+    }
+
+    public RejectionCode getCode() {
+        return code;
+    }
+
+    public Object[] getArgs() {
+        return args.clone();
+    }
+
+    @Override
+    public String getMessage() {
+        if (message == null) {
+            message = code.render(args);
+        }
+        return message;
+    }
+
+    @Override
+    public byte[] getPayload() {
+        if (payload == null) {
+            String[] argStrings = new String[args.length];
+            for (int i = 0 ; i < args.length ; i++) {
+                argStrings[i] = String.valueOf(args[i]);
+            }
+            Map<String, Object> payloadObj = new LinkedHashMap<String, Object>();
+            payloadObj.put("code", code.name());
+            payloadObj.put("message", getMessage());
+            payloadObj.put("args", argStrings);
+            payload = genson.serializeBytes(payloadObj);
+        }
+        return payload.clone();
+    }
+
+    // Rejections are expected outcomes, not faults, so there is no point in capturing where they were thrown
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Machine-readable codes for the business-rule rejections of the L/C contract, with their message templates.
+    Clients should switch on the code carried in the rejection payload rather than parse messages.
+*/
+
+public enum RejectionCode {
+
+    ACCESS_DENIED("The participant %s cannot invoke transaction %s"),
+    UNKNOWN_ROLE("The participant %s role %s is not recognized"),
+    TRADE_NOT_FOUND("Unable to locate trade ': %s'"),
+    TRADE_NOT_ACCEPTED("'%s' is in '%s' state. Expected '%s'"),
+    NOT_TRADE_IMPORTER("'%s' does not belong to importer %s"),
+    ACCOUNT_NOT_FOUND("No account recorded for MSP '%s'"),
+    INSUFFICIENT_BALANCE("'%s' requires amount %s but importer balance is only %s"),
+    INSUFFICIENT_ESCROW("'%s' requires amount %s but only %s is held in escrow"),
+    LC_NOT_FOUND("No L/C recorded for trade '%s'"),
+    LC_NOT_VISIBLE("'%s' does not belong to exporting entity MSP %s"),
+    LC_ISSUER_NOT_IMPORTER("'%s' does not belong to importer %s. Importer's bank cannot issue LC"),
+    LC_NOT_ISSUABLE("L/C for trade '%s' cannot be issued in state %s"),
+    LC_NOT_ISSUED("L/C for trade '%s' has not been issued"),
+    LC_EXPIRED("L/C for trade '%s' has expired"),
+    INVALID_EXPIRATION_DATE("Expiration date '%s' is not a valid MM/dd/yyyy or yyyy-MM-dd date"),
+    EXPIRY_DATE_IN_FUTURE("Cannot expire instruments as of %s, after the transaction date %s"),
+    INVALID_BATCH_SIZE("Batch size must be positive, found %s"),
+    SHIPMENT_LOCATION_UNAVAILABLE("Shipment location response for trade '%s' not set, or error while fetching"),
+    PAYMENT_REQUESTER_NOT_EXPORTER("'%s' does not belong to exporter %s. Exporter's bank cannot request payment"),
+    PAYMENT_COMPLETE("Payment for '%s' already made in full: %s"),
+    BL_EXPORTER_MISMATCH("'%s' exporter %s does not match B/L exporter %s"),
+    BL_GOODS_MISMATCH("'%s' goods %s don't match B/L goods %s"),
+    BL_AMOUNT_MISMATCH("'%s' amount %s does not match B/L amount %s"),
+    BL_IMPORTER_MISMATCH("'%s' importer %s does not match B/L importer %s"),
+    PARTIAL_PAYMENT_AT_SOURCE("Shipment for '%s' still at source location and partial amount has already been paid"),
+    PAYMENT_NOT_REQUESTED("No payment request recorded for '%s'"),
+    PAYER_NOT_IMPORTER("'%s' does not belong to importer %s. Importer's bank cannot make payment"),
+    INVALID_PAGE_SIZE("Page size must be positive, found %s"),
+    PAGE_TOO_LARGE("A page of %s records exceeds the %s byte response budget, request a smaller page"),
+    UNKNOWN_RECORD_TYPE("Record type '%s' cannot be exported. Expected one of %s"),
+    INVALID_ACL_POLICY("ACL policy rejected: %s"),
+    ACL_POLICY_VERSION_MISMATCH("ACL policy version %s does not follow the current version %s"),
+    ACL_POLICY_ALTERS_OTHER_MSP("ACL policy changes the rules of %s, which %s cannot change"),
+    UNKNOWN_SETTLEMENT_MODE("Settlement mode '%s' is not one of %s"),
+    MIGRATION_BATCH_STALE("Migration batch for schema version %s at '%s' doesn't match the progress recorded on the ledger, schema version %s at '%s'"),
+    MIGRATION_BATCH_INVALID("Migration batch for schema version %s is invalid: %s");
+
+    private final String template;
+
+    private RejectionCode(String template) {
+        this.template = template;
+    }
+
+    public Rejection reject(Object... args) {
+        return new Rejection(this, args);
+    }
+
+    String render(Object[] args) {
+        return String.format(template, args);
+    }
+}
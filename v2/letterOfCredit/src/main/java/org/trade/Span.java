@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.owlike.genson.Genson;
+
+/*
+    Trace span in the OpenTelemetry data model. Exported as one JSON object:
+    {
+        "traceId": <32 hex digits>,
+        "spanId": <16 hex digits>,
+        "parentSpanId": <16 hex digits, or empty for a root span>,
+        "name": <string>,
+        "kind": "SERVER" | "CLIENT" | "INTERNAL",
+        "startTimeUnixNano": <decimal string>,
+        "endTimeUnixNano": <decimal string>,
+        "status": "OK" | "ERROR",
+        "attributes": { <string>: <string>, ... }
+    }
+*/
+
+public class Span {
+
+    public enum Kind {
+        SERVER, CLIENT, INTERNAL
+    }
+
+    private static final Genson genson = new Genson();
+
+    private final String traceId;
+
+    private final String spanId;
+
+    private final String parentSpanId;
+
+    private final String name;
+
+    private final Kind kind;
+
+    private final long startTimeUnixNano;
+
+    private long endTimeUnixNano;
+
+    private String status = "OK";
+
+    private final Map<String, String> attributes = new LinkedHashMap<String, String>();
+
+    public Span(String traceId, String spanId, String parentSpanId, String name, Kind kind) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId == null ? "" : parentSpanId;
+        this.name = name;
+        this.kind = kind;
+        this.startTimeUnixNano = now();
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartTimeUnixNano() {
+        return startTimeUnixNano;
+    }
+
+    public long getEndTimeUnixNano() {
+        return endTimeUnixNano;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public Span setAttribute(String key, Object value) {
+        attributes.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public boolean isEnded() {
+        return endTimeUnixNano != 0;
+    }
+
+    // 'error' is null for a span that completed normally
+    public void end(String error) {
+        if (isEnded()) {
+            return;
+        }
+        endTimeUnixNano = Math.max(now(), startTimeUnixNano);
+        if (error != null) {
+            status = "ERROR";
+            attributes.put("error", error);
+        }
+    }
+
+    public String toJSONString() {
+        Map<String, Object> spanObj = new LinkedHashMap<String, Object>();
+        spanObj.put("traceId", traceId);
+        spanObj.put("spanId", spanId);
+        spanObj.put("parentSpanId", parentSpanId);
+        spanObj.put("name", name);
+        spanObj.put("kind", kind.name());
+        spanObj.put("startTimeUnixNano", Long.toString(startTimeUnixNano));
+        spanObj.put("endTimeUnixNano", Long.toString(endTimeUnixNano));
+        spanObj.put("status", status);
+        spanObj.put("attributes", attributes);
+        return genson.serialize(spanObj);
+    }
+
+    private static long now() {
+        Instant instant = Instant.now();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+}
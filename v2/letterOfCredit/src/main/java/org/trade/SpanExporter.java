@@ -0,0 +1,15 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Receives each span once it has ended. Implementations must be thread-safe, and must not throw: tracing is not
+    allowed to fail a transaction.
+*/
+
+public interface SpanExporter {
+
+    void export(Span span);
+}
@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Transition table for a document lifecycle, indexed by (current state, event).
+    A transition to the current state means the event has already been applied and the operation is a noop.
+    A missing transition means the event is not permitted in the current state.
+*/
+
+public final class StateMachine {
+
+    public static final StateMachine LETTER_OF_CREDIT = new StateMachine()
+        .allow(LifecycleState.NONE, LifecycleEvent.REQUEST, LifecycleState.REQUESTED)
+        .allow(LifecycleState.REQUESTED, LifecycleEvent.ISSUE, LifecycleState.ISSUED)
+        .allow(LifecycleState.ISSUED, LifecycleEvent.ISSUE, LifecycleState.ISSUED)
+        .allow(LifecycleState.ACCEPTED, LifecycleEvent.ISSUE, LifecycleState.ACCEPTED)
+        .allow(LifecycleState.ISSUED, LifecycleEvent.ACCEPT, LifecycleState.ACCEPTED)
+        .allow(LifecycleState.ACCEPTED, LifecycleEvent.ACCEPT, LifecycleState.ACCEPTED)
+        .allow(LifecycleState.ISSUED, LifecycleEvent.EXPIRE, LifecycleState.EXPIRED)
+        .allow(LifecycleState.ACCEPTED, LifecycleEvent.EXPIRE, LifecycleState.EXPIRED)
+        .allow(LifecycleState.EXPIRED, LifecycleEvent.EXPIRE, LifecycleState.EXPIRED);
+
+    // A trade has at most one pending payment request, which making the payment clears
+    public static final StateMachine PAYMENT = new StateMachine()
+        .allow(LifecycleState.NONE, LifecycleEvent.REQUEST, LifecycleState.REQUESTED)
+        .allow(LifecycleState.REQUESTED, LifecycleEvent.REQUEST, LifecycleState.REQUESTED)
+        .allow(LifecycleState.REQUESTED, LifecycleEvent.PAY, LifecycleState.NONE);
+
+    private final LifecycleState[][] transitions = new LifecycleState[LifecycleState.values().length][LifecycleEvent.values().length];
+
+    private StateMachine() {
+    }
+
+    private StateMachine allow(LifecycleState from, LifecycleEvent event, LifecycleState to) {
+        transitions[from.ordinal()][event.ordinal()] = to;
+        return this;
+    }
+
+    // Returns the state reached by applying 'event' in state 'from', or null if the event is not permitted
+    public LifecycleState transition(LifecycleState from, LifecycleEvent event) {
+        return transitions[from.ordinal()][event.ordinal()];
+    }
+}
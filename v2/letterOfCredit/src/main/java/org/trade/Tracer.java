@@ -0,0 +1,216 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+/*
+    Minimal OpenTelemetry-style tracer: one SERVER span per transaction, INTERNAL spans for the remote lookups and
+    a CLIENT span per chaincode invocation. Tracing is off unless an exporter is configured (TRADE_TRACE_FILE).
+
+    Chaincode-to-chaincode calls can't carry extra trace fields: the callee sees the caller's proposal, including its
+    transient map, and the trade and shipment contracts reject unexpected arguments. Trace context is therefore
+    derived from what both sides see:
+    - the trace ID comes from a W3C 'traceparent' transient field set by the client, or else from the transaction ID;
+    - the CLIENT span ID is a digest of the transaction ID, target channel, function and arguments, which the callee
+      recomputes from its own stub to name its parent (see 'invocationSpanId').
+*/
+
+public final class Tracer {
+
+    private static final Pattern traceparentPattern = Pattern.compile("^00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$");
+
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<Span> current = new ThreadLocal<Span>();
+
+    private static volatile SpanExporter exporter = FileSpanExporter.fromEnvironment();
+
+    private Tracer() {
+    }
+
+    public static void setExporter(SpanExporter spanExporter) {
+        exporter = spanExporter;
+    }
+
+    public static boolean isEnabled() {
+        return exporter != null;
+    }
+
+    // Starts the SERVER span of the transaction running on this thread, discarding any span left by a failed one
+    static void startTransaction(String contract, ChaincodeStub stub) {
+        current.remove();
+        if (!isEnabled()) {
+            return;
+        }
+        // Clients invoke these contracts directly, so the parent is the client's span, if it sent one
+        Span span = new Span(traceId(stub), randomSpanId(), clientSpanId(stub), stub.getFunction(), Span.Kind.SERVER);
+        span.setAttribute("contract", contract).setAttribute("tx.id", stub.getTxId()).setAttribute("channel", stub.getChannelId());
+        List<String> params = stub.getParameters();
+        if (params != null && !params.isEmpty()) {
+            span.setAttribute("trade.id", params.get(0));
+        }
+        current.set(span);
+    }
+
+    static void endTransaction(String outcome) {
+        Span span = current.get();
+        if (span == null) {
+            return;
+        }
+        current.remove();
+        span.setAttribute("outcome", outcome);
+        end(span, outcome.equals("OK") ? null : outcome);
+    }
+
+    // Sets an attribute of the current span, if there is one
+    static void setAttribute(String key, Object value) {
+        Span span = current.get();
+        if (span != null) {
+            span.setAttribute(key, value);
+        }
+    }
+
+    // Adds 'amount' to a numeric attribute of the current span, if there is one, so repeated measurements add up
+    static void addToAttribute(String key, long amount) {
+        Span span = current.get();
+        if (span != null) {
+            String value = span.getAttributes().get(key);
+            span.setAttribute(key, (value == null ? 0 : Long.parseLong(value)) + amount);
+        }
+    }
+
+    // Runs 'body' in an INTERNAL span, child of the current span. Runs it untraced outside of a traced transaction.
+    public static <T> T trace(String name, Supplier<T> body) {
+        Span parent = current.get();
+        if (parent == null) {
+            return body.get();
+        }
+        Span span = new Span(parent.getTraceId(), randomSpanId(), parent.getSpanId(), name, Span.Kind.INTERNAL);
+        current.set(span);
+        String error = null;
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            error = errorName(e);
+            throw e;
+        } finally {
+            current.set(parent);
+            end(span, error);
+        }
+    }
+
+    // Invokes another chaincode on this channel in a CLIENT span whose ID the callee can recompute
+    public static Response invokeChaincode(ChaincodeStub stub, String chaincodeName, String... args) {
+        return invokeChaincode(stub, chaincodeName, Arrays.asList(args), null, () -> stub.invokeChaincodeWithStringArgs(chaincodeName, args));
+    }
+
+    // Invokes another chaincode on 'channel' in a CLIENT span whose ID the callee can recompute
+    public static Response invokeChaincode(ChaincodeStub stub, String chaincodeName, List<String> args, String channel) {
+        return invokeChaincode(stub, chaincodeName, args, channel, () -> stub.invokeChaincodeWithStringArgs(chaincodeName, args, channel));
+    }
+
+    private static Response invokeChaincode(ChaincodeStub stub, String chaincodeName, List<String> args, String channel, Supplier<Response> invocation) {
+        Span parent = current.get();
+        if (parent == null) {
+            return invocation.get();
+        }
+        String targetChannel = (channel == null || channel.isEmpty()) ? stub.getChannelId() : channel;
+        Span span = new Span(parent.getTraceId(), invocationSpanId(stub.getTxId(), targetChannel, args), parent.getSpanId(),
+                                args.isEmpty() ? chaincodeName : args.get(0), Span.Kind.CLIENT);
+        span.setAttribute("peer.chaincode", chaincodeName).setAttribute("peer.channel", targetChannel);
+        String error = null;
+        try {
+            Response response = invocation.get();
+            span.setAttribute("peer.status", response.getStatusCode());
+            if (response.getStatus() != Response.Status.SUCCESS) {
+                error = response.getMessage();
+            }
+            return response;
+        } catch (RuntimeException e) {
+            error = errorName(e);
+            throw e;
+        } finally {
+            end(span, error);
+        }
+    }
+
+    // Trace ID of the client's 'traceparent' transient field if valid, else derived from the transaction ID
+    public static String traceId(ChaincodeStub stub) {
+        Matcher traceparent = traceparent(stub);
+        if (traceparent != null) {
+            return traceparent.group(1);
+        }
+        return sha256Hex(stub.getTxId()).substring(0, 32);
+    }
+
+    // Span ID of the invocation of 'args' on 'channel' within transaction 'txId':
+    // the first 16 hex digits of SHA-256(txId + '\n' + channel + '\n' + args joined with '\n')
+    public static String invocationSpanId(String txId, String channel, List<String> args) {
+        List<String> parts = new ArrayList<String>();
+        parts.add(txId);
+        parts.add(channel);
+        parts.addAll(args);
+        return sha256Hex(String.join("\n", parts)).substring(0, 16);
+    }
+
+    private static String clientSpanId(ChaincodeStub stub) {
+        Matcher traceparent = traceparent(stub);
+        return traceparent == null ? null : traceparent.group(2);
+    }
+
+    private static Matcher traceparent(ChaincodeStub stub) {
+        Map<String, byte[]> transientData = stub.getTransient();
+        if (transientData == null || !transientData.containsKey(Constants.traceparentKey)) {
+            return null;
+        }
+        Matcher matcher = traceparentPattern.matcher(new String(transientData.get(Constants.traceparentKey), UTF_8).trim());
+        return matcher.matches() ? matcher : null;
+    }
+
+    private static void end(Span span, String error) {
+        span.end(error);
+        SpanExporter spanExporter = exporter;
+        if (spanExporter != null) {
+            spanExporter.export(span);
+        }
+    }
+
+    private static String errorName(RuntimeException e) {
+        return (e instanceof Rejection) ? ((Rejection) e).getCode().name() : e.getClass().getSimpleName();
+    }
+
+    private static String randomSpanId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[2 * i] = hexDigits[(digest[i] >> 4) & 0xf];
+                hex[2 * i + 1] = hexDigits[digest[i] & 0xf];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
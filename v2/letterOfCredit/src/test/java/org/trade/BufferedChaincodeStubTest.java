@@ -0,0 +1,138 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.contract.Context;
+import org.junit.jupiter.api.Test;
+
+public final class BufferedChaincodeStubTest {
+
+    private final String accountsCollection = "accountsCollection";
+
+    @Test
+    public void ReadYourWrites() {
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        ledger.putState("a", "1".getBytes(UTF_8));
+        BufferedChaincodeStub stub = new BufferedChaincodeStub(ledger.newTransaction(""));
+
+        // Repeated reads only reach the ledger once, and absent keys read as empty values
+        assertEquals("1", stub.getStringState("a"));
+        assertEquals("1", stub.getStringState("a"));
+        assertEquals(0, stub.getState("b").length);
+        assertEquals(0, stub.getState("b").length);
+        assertEquals(2, ledger.getStateCount());
+
+        // Writes are visible to the transaction, but not to the ledger until flushed
+        long writes = ledger.putStateCount();
+        stub.putStringState("a", "2");
+        stub.putStringState("b", "3");
+        stub.delState("c");
+        assertEquals("2", stub.getStringState("a"));
+        assertEquals("3", stub.getStringState("b"));
+        assertEquals(0, stub.getState("c").length);
+        assertEquals("1", new String(ledger.getWorldState().get("a"), UTF_8));
+        assertFalse(ledger.getWorldState().containsKey("b"));
+        assertEquals(writes, ledger.putStateCount());
+        assertEquals(2, ledger.getStateCount());
+
+        stub.flush();
+        assertEquals("2", new String(ledger.getWorldState().get("a"), UTF_8));
+        assertEquals("3", new String(ledger.getWorldState().get("b"), UTF_8));
+        assertEquals(writes + 3, ledger.putStateCount());
+
+        // A flushed buffer starts over
+        stub.flush();
+        assertEquals(writes + 3, ledger.putStateCount());
+    }
+
+    @Test
+    public void CoalescedWrites() {
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        ledger.putState("existing", "1".getBytes(UTF_8));
+        ledger.putState("unchanged", "1".getBytes(UTF_8));
+        long writes = ledger.putStateCount();
+        BufferedChaincodeStub stub = new BufferedChaincodeStub(ledger.newTransaction(""));
+
+        // Only the last of several writes reaches the ledger
+        for (int i = 0; i < 10; i++) {
+            stub.putStringState("counter", Integer.toString(i));
+        }
+
+        // A put followed by a delete of a key known to be absent cancels out
+        assertEquals(0, stub.getState("transient").length);
+        stub.putStringState("transient", "1");
+        stub.delState("transient");
+
+        // A put followed by a delete of an existing key is a single delete
+        stub.putStringState("existing", "2");
+        stub.delState("existing");
+
+        // Writing back the value that was read is dropped
+        assertEquals("1", stub.getStringState("unchanged"));
+        stub.putStringState("unchanged", "2");
+        stub.putStringState("unchanged", "1");
+
+        stub.flush();
+        assertEquals(writes + 2, ledger.putStateCount());
+        assertEquals("9", new String(ledger.getWorldState().get("counter"), UTF_8));
+        assertFalse(ledger.getWorldState().containsKey("transient"));
+        assertFalse(ledger.getWorldState().containsKey("existing"));
+        assertEquals("1", new String(ledger.getWorldState().get("unchanged"), UTF_8));
+    }
+
+    @Test
+    public void PrivateDataWrites() {
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        ledger.putPrivateData(accountsCollection, "a", "1".getBytes(UTF_8));
+        BufferedChaincodeStub stub = new BufferedChaincodeStub(ledger.newTransaction(""));
+
+        // Private data and channel state keys with the same name are kept apart
+        stub.putPrivateData(accountsCollection, "a", "2".getBytes(UTF_8));
+        stub.putStringState("a", "3");
+        stub.delPrivateData(accountsCollection, "b");
+        assertArrayEquals("2".getBytes(UTF_8), stub.getPrivateData(accountsCollection, "a"));
+        assertEquals("3", stub.getStringState("a"));
+        assertEquals(0, stub.getPrivateData(accountsCollection, "b").length);
+        assertEquals("1", new String(ledger.getPrivateDataState(accountsCollection).get("a"), UTF_8));
+
+        stub.flush();
+        assertEquals("2", new String(ledger.getPrivateDataState(accountsCollection).get("a"), UTF_8));
+        assertEquals("3", new String(ledger.getWorldState().get("a"), UTF_8));
+    }
+
+    @Test
+    public void FlushAfterTransaction() {
+        LetterOfCreditContract contract = new LetterOfCreditContract();
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+        String tradeId = "trade-1";
+        String lcKey = contract.getLCKey(ledger, tradeId);
+        LetterOfCredit lc = new LetterOfCredit("lc-1", "12/31/2020", Constants.exporterOrgMsp, 50000.50, new LCDoc[]{}, Constants.ISSUED);
+        ledger.putState(lcKey, lc.toJSONString().getBytes(UTF_8));
+
+        Context ctx = mock(Context.class);
+        ClientIdentity clientIdentity = mock(ClientIdentity.class);
+        BufferedChaincodeStub stub = new BufferedChaincodeStub(ledger.newTransaction("acceptLC", tradeId));
+        when(ctx.getStub()).thenReturn(stub);
+        when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+        when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+        when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+
+        // The accepted L/C is only recorded once the transaction completes
+        contract.beforeTransaction(ctx);
+        contract.acceptLC(ctx, tradeId);
+        assertEquals(Constants.ACCEPTED, LetterOfCredit.fromJSONString(stub.getStringState(lcKey)).getStatus());
+        assertEquals(Constants.ISSUED, LetterOfCredit.fromJSONString(new String(ledger.getWorldState().get(lcKey), UTF_8)).getStatus());
+        contract.afterTransaction(ctx, null);
+        assertEquals(Constants.ACCEPTED, LetterOfCredit.fromJSONString(new String(ledger.getWorldState().get(lcKey), UTF_8)).getStatus());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.ByteString;
+
+/*
+    Measures what resolving the caller costs a transaction, to size a cache of caller identities.
+    - The contract runtime parses the client's certificate when it creates the transaction context. Its only
+      constructor does so, so no contract code can skip it.
+    - A transaction then checks the MSP ID four times and the role twice (access, ownership and visibility checks),
+      which reads fields of the parsed identity. Reading them once and passing them on is the best case for memoizing them.
+    - A cache of parsed identities keyed by certificate digest pays for the SHA-256 of the serialized identity and
+      a lookup on every hit, on top of the context creation it can't avoid.
+    The identity is an ECDSA P-256 enrollment certificate with Fabric CA attributes, as issued to an importer's banker.
+    Run with 'gradle benchmark'.
+*/
+@Tag("benchmark")
+public final class CallerIdentityBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final String CERTIFICATE =
+              "-----BEGIN CERTIFICATE-----\n"
+            + "MIIC7TCCApSgAwIBAgIUdkdruRUebIZIBAETVxpJ8yfhq7YwCgYIKoZIzj0EAwIw\n"
+            + "aDELMAkGA1UEBhMCVVMxFzAVBgNVBAgMDk5vcnRoIENhcm9saW5hMRQwEgYDVQQK\n"
+            + "DAtIeXBlcmxlZGdlcjEPMA0GA1UECwwGRmFicmljMRkwFwYDVQQDDBBmYWJyaWMt\n"
+            + "Y2Etc2VydmVyMB4XDTI2MTAxOTA3NDY1NFoXDTM2MTAxNjA3NDY1NFowfjELMAkG\n"
+            + "A1UEBhMCVVMxFzAVBgNVBAgMDk5vcnRoIENhcm9saW5hMRQwEgYDVQQKDAtIeXBl\n"
+            + "cmxlZGdlcjEPMA0GA1UECwwGY2xpZW50MRQwEgYDVQQLDAtpbXBvcnRlcm9yZzEZ\n"
+            + "MBcGA1UEAwwQaW1wb3J0ZXItYmFua2VyMTBZMBMGByqGSM49AgEGCCqGSM49AwEH\n"
+            + "A0IABJfXIAya2SRkLILtpTLphpqOLeUv2iu/mCFN9ibFbEc8qICgS8SBh4EAa9ra\n"
+            + "uU8k6U8r2bLgjkTwRVrIV4HFPnujggEEMIIBADAOBgNVHQ8BAf8EBAMCB4AwDAYD\n"
+            + "VR0TAQH/BAIwADAdBgNVHQ4EFgQUeTFEJaewJwZ5vtWeVn3Qk0jKsRIwHwYDVR0j\n"
+            + "BBgwFoAUJzBBNpQOGUuendTrU4A9L4savZIwGAYDVR0RBBEwD4INaW1wb3J0ZXIt\n"
+            + "cGVlcjCBhQYIKgMEBQYHCAEEeXsiYXR0cnMiOnsiQlVTSU5FU1NfUk9MRSI6Imlt\n"
+            + "cG9ydGVyX2JhbmtlciIsImhmLkFmZmlsaWF0aW9uIjoiIiwiaGYuRW5yb2xsbWVu\n"
+            + "dElEIjoiaW1wb3J0ZXItYmFua2VyMSIsImhmLlR5cGUiOiJjbGllbnQifX0wCgYI\n"
+            + "KoZIzj0EAwIDRwAwRAIgZ5eyymDFZjsU5DAtm4GiYWbeLEyJ93DJFNvKrKQEI+QC\n"
+            + "IFz3uSUZt9RANAOarxiyTcIzO97mz1++nZtCTMPcGdip\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private interface Resolver {
+        int resolve(Context ctx);
+    }
+
+    private static final Resolver CONTEXT_ONLY = (ctx) -> ctx.getClientIdentity().getId().length();
+
+    private static final Resolver PER_CHECK = (ctx) -> {
+        int checksum = 0;
+        for (int i = 0; i < 4; i++) {
+            checksum += ctx.getClientIdentity().getMSPID().length();
+        }
+        for (int i = 0; i < 2; i++) {
+            checksum += ctx.getClientIdentity().getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR).length();
+        }
+        return checksum;
+    };
+
+    private static final Resolver PER_TRANSACTION = (ctx) -> {
+        String mspId = ctx.getClientIdentity().getMSPID();
+        String role = ctx.getClientIdentity().getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR);
+        return 4 * mspId.length() + 2 * role.length();
+    };
+
+    private static final int CACHE_SIZE = 256;
+
+    private static final Map<String, String[]> identityCache = new LinkedHashMap<String, String[]>(CACHE_SIZE, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final Resolver CACHE_HIT = (ctx) -> {
+        try {
+            String digest = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(ctx.getStub().getCreator()));
+            String[] identity = identityCache.computeIfAbsent(digest, (d) -> new String[] {
+                ctx.getClientIdentity().getMSPID(), ctx.getClientIdentity().getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR) });
+            return 4 * identity[0].length() + 2 * identity[1].length();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+    @Test
+    public void CallerResolution() {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        stub.setCreator(SerializedIdentity.newBuilder().setMspid(Constants.importerOrgMsp).setIdBytes(ByteString.copyFrom(CERTIFICATE, UTF_8)).build().toByteArray());
+
+        // The certificate carries the caller's role
+        Context ctx = new Context(stub);
+        assertEquals(Constants.importerOrgMsp, AccessControlUtils.GetClientMspId(ctx));
+        assertEquals(Constants.IMPORTER_BANKER_ROLE, AccessControlUtils.GetClientRole(ctx));
+
+        run("Context creation (certificate parse)", stub, CONTEXT_ONLY, true, WARMUP_ITERATIONS);
+        run("Lookups, per check", stub, PER_CHECK, false, WARMUP_ITERATIONS);
+        run("Lookups, once per transaction", stub, PER_TRANSACTION, false, WARMUP_ITERATIONS);
+        run("Digest-keyed identity cache, hit", stub, CACHE_HIT, false, WARMUP_ITERATIONS);
+
+        double context = run("Context creation (certificate parse)", stub, CONTEXT_ONLY, true, ITERATIONS);
+        double perCheck = run("Lookups, per check", stub, PER_CHECK, false, ITERATIONS);
+        double perTransaction = run("Lookups, once per transaction", stub, PER_TRANSACTION, false, ITERATIONS);
+        double cacheHit = run("Digest-keyed identity cache, hit", stub, CACHE_HIT, false, ITERATIONS);
+        System.out.println(String.format("Per transaction: %.1f ns (per check), %.1f ns (once per transaction), %.1f ns (cache hit)",
+                                            context + perCheck, context + perTransaction, context + cacheHit));
+    }
+
+    // A new context per iteration when measuring its creation, otherwise a single context as within one transaction
+    private static double run(String label, InMemoryChaincodeStub stub, Resolver resolver, boolean newContext, int iterations) {
+        Context ctx = new Context(stub);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += resolver.resolve(newContext ? new Context(stub) : ctx);
+        }
+        double nsPerOp = (double) (System.nanoTime() - start) / iterations;
+        if (iterations == ITERATIONS) {
+            System.out.println(String.format("%-40s %10.1f ns/transaction (checksum %d)", label, nsPerOp, checksum));
+        }
+        return nsPerOp;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/*
+    Chaincode stub backed by in-memory, thread-safe world state, for tests that need real ledger semantics
+    (range scans, pagination, history) or that invoke a contract from several threads.
+    Stubs created with 'newTransaction' share the same world state, but each carries its own transaction
+    attributes and should be confined to one thread. Writes are applied immediately.
+*/
+public final class InMemoryChaincodeStub implements ChaincodeStub {
+
+    public interface ChaincodeInvoker {
+        Response invoke(String chaincodeName, List<String> args, String channel);
+    }
+
+    private static final AtomicLong txCounter = new AtomicLong();
+
+    private final ConcurrentNavigableMap<String, byte[]> state;
+    private final Map<String, ConcurrentNavigableMap<String, byte[]>> privateData;
+    private final Map<String, Queue<KeyModification>> history;
+    private final AtomicLong getStateCount;
+    private final AtomicLong putStateCount;
+    private volatile ChaincodeInvoker invoker;
+
+    private String txId;
+    private String channelId = "channel";
+    private String mspId = "PeerMSP";
+    private String function = "";
+    private List<String> parameters = Collections.emptyList();
+    private Map<String, byte[]> transientData = new HashMap<String, byte[]>();
+    private byte[] creator = new byte[] {};
+    private ChaincodeEvent event;
+
+    public InMemoryChaincodeStub() {
+        this(new ConcurrentSkipListMap<String, byte[]>(), new ConcurrentHashMap<String, ConcurrentNavigableMap<String, byte[]>>(),
+                new ConcurrentHashMap<String, Queue<KeyModification>>(), new AtomicLong(), new AtomicLong(), null);
+    }
+
+    private InMemoryChaincodeStub(ConcurrentNavigableMap<String, byte[]> state, Map<String, ConcurrentNavigableMap<String, byte[]>> privateData,
+                                    Map<String, Queue<KeyModification>> history, AtomicLong getStateCount, AtomicLong putStateCount, ChaincodeInvoker invoker) {
+        this.state = state;
+        this.privateData = privateData;
+        this.history = history;
+        this.getStateCount = getStateCount;
+        this.putStateCount = putStateCount;
+        this.invoker = invoker;
+        this.txId = "tx-" + txCounter.incrementAndGet();
+    }
+
+    // Creates a stub for a new transaction over the same world state
+    public InMemoryChaincodeStub newTransaction(String function, String... parameters) {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub(state, privateData, history, getStateCount, putStateCount, invoker);
+        stub.setFunction(function, parameters);
+        stub.channelId = channelId;
+        stub.mspId = mspId;
+        stub.creator = creator;
+        return stub;
+    }
+
+    public void setFunction(String function, String... parameters) {
+        this.function = function;
+        this.parameters = Arrays.asList(parameters);
+        this.txId = "tx-" + txCounter.incrementAndGet();
+    }
+
+    public void setInvoker(ChaincodeInvoker invoker) {
+        this.invoker = invoker;
+    }
+
+    public void setTransient(Map<String, byte[]> transientData) {
+        this.transientData = transientData;
+    }
+
+    // Serialized identity of the client submitting the transaction
+    public void setCreator(byte[] creator) {
+        this.creator = creator;
+    }
+
+    public void setMspId(String mspId) {
+        this.mspId = mspId;
+    }
+
+    public Map<String, byte[]> getWorldState() {
+        return Collections.unmodifiableMap(state);
+    }
+
+    public Map<String, byte[]> getPrivateDataState(String collection) {
+        return Collections.unmodifiableMap(collectionState(collection));
+    }
+
+    public long getStateCount() {
+        return getStateCount.get();
+    }
+
+    public long putStateCount() {
+        return putStateCount.get();
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        List<byte[]> args = new ArrayList<byte[]>();
+        for (String arg : getStringArgs()) {
+            args.add(arg.getBytes(UTF_8));
+        }
+        return args;
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        List<String> args = new ArrayList<String>();
+        args.add(function);
+        args.addAll(parameters);
+        return args;
+    }
+
+    @Override
+    public String getFunction() {
+        return function;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String getChannelId() {
+        return channelId;
+    }
+
+    @Override
+    public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        if (invoker == null) {
+            return new Response(Response.Status.INTERNAL_SERVER_ERROR, "No chaincode invoker configured", new byte[] {});
+        }
+        List<String> stringArgs = args.stream().map(arg -> new String(arg, UTF_8)).collect(Collectors.toList());
+        return invoker.invoke(chaincodeName, stringArgs, channel);
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        getStateCount.incrementAndGet();
+        byte[] value = state.get(key);
+        return value == null ? new byte[] {} : value.clone();
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        return null;
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        putStateCount.incrementAndGet();
+        state.put(key, value.clone());
+        recordModification(key, value, false);
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+    }
+
+    @Override
+    public void delState(String key) {
+        putStateCount.incrementAndGet();
+        if (state.remove(key) != null) {
+            recordModification(key, new byte[] {}, true);
+        }
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        return new Results<KeyValue>(toKeyValues(range(state, startKey, endKey), Integer.MAX_VALUE), "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize, String bookmark) {
+        String start = (bookmark == null || bookmark.isEmpty()) ? startKey : bookmark;
+        return paginate(range(state, start, endKey), pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        return new Results<KeyValue>(toKeyValues(prefixRange(state, compositeKey, null), Integer.MAX_VALUE), "");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize, String bookmark) {
+        return paginate(prefixRange(state, compositeKey.toString(), bookmark), pageSize);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        throw new UnsupportedOperationException("Rich queries are not supported by the in-memory stub");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        throw new UnsupportedOperationException("Rich queries are not supported by the in-memory stub");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        Queue<KeyModification> modifications = history.get(key);
+        List<KeyModification> snapshot = modifications == null ? new ArrayList<KeyModification>() : new ArrayList<KeyModification>(modifications);
+        return new Results<KeyModification>(snapshot, "");
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        byte[] value = collectionState(collection).get(key);
+        return value == null ? new byte[] {} : value.clone();
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        byte[] value = collectionState(collection).get(key);
+        if (value == null) {
+            return new byte[] {};
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        return null;
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        collectionState(collection).put(key, value.clone());
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        collectionState(collection).remove(key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        return new Results<KeyValue>(toKeyValues(range(collectionState(collection), startKey, endKey), Integer.MAX_VALUE), "");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        return new Results<KeyValue>(toKeyValues(prefixRange(collectionState(collection), compositeKey, null), Integer.MAX_VALUE), "");
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        return getPrivateDataByPartialCompositeKey(collection, compositeKey.toString());
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+        return getPrivateDataByPartialCompositeKey(collection, new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        throw new UnsupportedOperationException("Rich queries are not supported by the in-memory stub");
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        event = ChaincodeEvent.newBuilder().setEventName(name).setTxId(txId)
+                    .setPayload(com.google.protobuf.ByteString.copyFrom(payload)).build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return null;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return Instant.now();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return creator;
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return transientData;
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[] {};
+    }
+
+    @Override
+    public String getMspId() {
+        return mspId;
+    }
+
+    private ConcurrentNavigableMap<String, byte[]> collectionState(String collection) {
+        return privateData.computeIfAbsent(collection, c -> new ConcurrentSkipListMap<String, byte[]>());
+    }
+
+    private void recordModification(String key, byte[] value, boolean isDeleted) {
+        Modification modification = new Modification(txId, value.clone(), Instant.now(), isDeleted);
+        history.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<KeyModification>()).add(modification);
+    }
+
+    private static Map<String, byte[]> range(ConcurrentNavigableMap<String, byte[]> map, String startKey, String endKey) {
+        if (endKey == null || endKey.isEmpty()) {
+            return map.tailMap(startKey == null ? "" : startKey, true);
+        }
+        return map.subMap(startKey == null ? "" : startKey, true, endKey, false);
+    }
+
+    private static Map<String, byte[]> prefixRange(ConcurrentNavigableMap<String, byte[]> map, String prefix, String bookmark) {
+        String start = (bookmark == null || bookmark.isEmpty()) ? prefix : bookmark;
+        return map.subMap(start, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static List<KeyValue> toKeyValues(Map<String, byte[]> entries, int limit) {
+        List<KeyValue> keyValues = new ArrayList<KeyValue>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (keyValues.size() == limit) {
+                break;
+            }
+            keyValues.add(new Entry(entry.getKey(), entry.getValue().clone()));
+        }
+        return keyValues;
+    }
+
+    private static Results<KeyValue> paginate(Map<String, byte[]> entries, int pageSize) {
+        List<KeyValue> page = new ArrayList<KeyValue>();
+        String bookmark = "";
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            if (page.size() == pageSize) {
+                bookmark = entry.getKey();
+                break;
+            }
+            page.add(new Entry(entry.getKey(), entry.getValue().clone()));
+        }
+        return new Results<KeyValue>(page, bookmark);
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+        private final String txId;
+        private final byte[] value;
+        private final Instant timestamp;
+        private final boolean isDeleted;
+
+        Modification(String txId, byte[] value, Instant timestamp, boolean isDeleted) {
+            this.txId = txId;
+            this.value = value;
+            this.timestamp = timestamp;
+            this.isDeleted = isDeleted;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return isDeleted;
+        }
+    }
+
+    // Iterator over a snapshot of results; tracks whether it has been closed
+    static final class Results<T> implements QueryResultsIterator<T>, QueryResultsIteratorWithMetadata<T> {
+        private final List<T> results;
+        private final String bookmark;
+        private volatile boolean closed;
+
+        Results(List<T> results, String bookmark) {
+            this.results = results;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder().setBookmark(bookmark).setFetchedRecordsCount(results.size()).build();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+}
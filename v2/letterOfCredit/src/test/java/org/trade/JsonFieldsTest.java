@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Test;
+
+public final class JsonFieldsTest {
+
+    @Test
+    public void TopLevelFields() {
+        LetterOfCredit lc = new LetterOfCredit("lc-1", "12/31/2020", Constants.exporterOrgMsp, 50000.50, new LCDoc[] { new LCDoc("B/L") }, Constants.ISSUED);
+        byte[] lcBytes = lc.toJSONString().getBytes(UTF_8);
+        assertEquals(Constants.exporterOrgMsp, JsonFields.stringField(lcBytes, Constants.lcBeneficiaryAttr));
+        assertEquals("lc-1", JsonFields.stringField(lcBytes, "id"));
+        assertFalse(JsonFields.hasField(lcBytes, Constants.lcDocumentsRefAttr));
+
+        // Fields that aren't strings are found, but have no string value
+        assertTrue(JsonFields.hasField(lcBytes, "amount"));
+        assertNull(JsonFields.stringField(lcBytes, "amount"));
+        assertNull(JsonFields.stringField(lcBytes, "requiredDocs"));
+
+        // Fields of nested objects, and strings that look like fields, are skipped
+        byte[] json = ("{ \"docs\" : [ { \"beneficiary\": \"nested\" }, \"\\\"beneficiary\\\":\" ], \"meta\": {\"a\": {\"b\": [1, 2]}},"
+                        + " \"ok\" : true, \"none\": null, \"beneficiary\" : \"top\" }").getBytes(UTF_8);
+        assertEquals("top", JsonFields.stringField(json, "beneficiary"));
+        assertFalse(JsonFields.hasField(json, "a"));
+        assertTrue(JsonFields.hasField(json, "none"));
+        assertFalse(JsonFields.hasField("{}".getBytes(UTF_8), "beneficiary"));
+    }
+
+    @Test
+    public void EscapedStrings() {
+        byte[] json = "{\"na\\u006de\":\"Caf\\u00e9 \\\"Lumber\\\"\\n\",\"plain\":\"Caf\u00e9\"}".getBytes(UTF_8);
+        assertEquals("Caf\u00e9 \"Lumber\"\n", JsonFields.stringField(json, "name"));
+        assertEquals("Caf\u00e9", JsonFields.stringField(json, "plain"));
+    }
+
+    @Test
+    public void SelectedFields() {
+        byte[] json = ("{ \"id\" : \"lc-1\", \"docs\": [ {\"amount\": 1} ], \"na\\u006de\": \"Caf\\u00e9\", \"amount\" : 50000.5 }").getBytes(UTF_8);
+        assertEquals("{\"docs\":[ {\"amount\": 1} ],\"amount\":50000.5}", JsonFields.selectFields(json, Arrays.asList("amount", "docs", "missing")));
+
+        // Keys and values are copied as stored, escapes included
+        assertEquals("{\"na\\u006de\":\"Caf\\u00e9\"}", JsonFields.selectFields(json, Arrays.asList("name")));
+        assertEquals("{}", JsonFields.selectFields(json, Arrays.<String>asList()));
+        assertEquals("{}", JsonFields.selectFields("{}".getBytes(UTF_8), Arrays.asList("id")));
+        assertThrows(ChaincodeException.class, () -> JsonFields.selectFields("{\"id\":\"lc-1\",".getBytes(UTF_8), Arrays.asList("amount")));
+    }
+
+    @Test
+    public void MalformedJSON() {
+        assertThrows(ChaincodeException.class, () -> JsonFields.stringField("[]".getBytes(UTF_8), "id"));
+        assertThrows(ChaincodeException.class, () -> JsonFields.stringField("{\"id\":\"lc-1".getBytes(UTF_8), "id"));
+        assertThrows(ChaincodeException.class, () -> JsonFields.stringField("{\"a\":{\"b\":1}".getBytes(UTF_8), "id"));
+        assertThrows(ChaincodeException.class, () -> JsonFields.stringField("{\"id\" \"lc-1\"}".getBytes(UTF_8), "id"));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+/*
+    Invokes a single contract instance from several threads against a shared in-memory ledger, and checks that
+    every transaction sees and produces exactly the state it would have produced if run alone.
+*/
+public final class LetterOfCreditContractConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int TRADES_PER_THREAD = 50;
+
+    private final String tradeContractId = "trade";
+    private final String expirationDate = "12/31/2020";
+    private final String descriptionOfGoods = "Wood for Toys";
+
+    @Test
+    public void LCLifecycleUnderParallelInvocation() throws Exception {
+        LetterOfCreditContract contract = new LetterOfCreditContract();
+        InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+
+        // Trade contract stand-in, serving trades from a thread-safe map
+        Map<String, String> trades = new ConcurrentHashMap<String, String>();
+        ledger.setInvoker((chaincodeName, args, channel) -> {
+            String trade = trades.get(args.get(1));
+            if (!chaincodeName.equals(tradeContractId) || !args.get(0).equals(Constants.getTradeFunc) || trade == null) {
+                return new Response(Response.Status.INTERNAL_SERVER_ERROR, "Unknown trade", new byte[] {});
+            }
+            return new Response(Response.Status.SUCCESS, "OK", trade.getBytes(UTF_8));
+        });
+        ledger.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+        BankAccount importerAccount = new BankAccount(Constants.importerOrgMsp, "ToyBank", 1.0e12);
+        ledger.putState(contract.getAccountKey(ledger, Constants.importerOrgMsp), importerAccount.toJSONString().getBytes(UTF_8));
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                JSONObject tradeObj = new JSONObject();
+                tradeObj.put(Constants.tradeAmountAttr, amount(t, i));
+                tradeObj.put(Constants.importerMSPAttr, Constants.importerOrgMsp);
+                tradeObj.put(Constants.exporterMSPAttr, Constants.exporterOrgMsp);
+                tradeObj.put(Constants.tradeDescOfGoodsAttr, descriptionOfGoods);
+                tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                trades.put(tradeId(t, i), tradeObj.toString());
+            }
+        }
+
+        // Each worker gets its own stub and contexts; only the contract instance and the ledger are shared
+        List<Callable<Integer>> workers = new ArrayList<Callable<Integer>>();
+        CountDownLatch startSignal = new CountDownLatch(1);
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            InMemoryChaincodeStub stub = ledger.newTransaction("");
+            Context importer = context(stub, Constants.importerOrgMsp, Constants.IMPORTER_ROLE);
+            Context importerBank = context(stub, Constants.importerOrgMsp, Constants.IMPORTER_BANKER_ROLE);
+            Context exporterBank = context(stub, Constants.exporterOrgMsp, Constants.EXPORTER_BANKER_ROLE);
+            Context exportingEntity = context(stub, Constants.exportingEntityOrgMSP, Constants.EXPORTER_ROLE);
+            workers.add(() -> {
+                startSignal.await();
+                int completed = 0;
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    String tradeId = tradeId(thread, i);
+
+                    stub.setFunction("requestLC", tradeId);
+                    contract.beforeTransaction(importer);
+                    contract.requestLC(importer, tradeId);
+
+                    stub.setFunction("issueLC", tradeId, lcId(thread, i), expirationDate, "B/L", "E/L");
+                    contract.beforeTransaction(importerBank);
+                    contract.issueLC(importerBank, tradeId, lcId(thread, i), expirationDate, "B/L", "E/L");
+
+                    stub.setFunction("acceptLC", tradeId);
+                    contract.beforeTransaction(exporterBank);
+                    contract.acceptLC(exporterBank, tradeId);
+
+                    // ACL decisions must not leak between identities
+                    stub.setFunction("issueLC", tradeId, lcId(thread, i), expirationDate);
+                    assertThrows(ChaincodeException.class, () -> contract.beforeTransaction(exporterBank));
+
+                    stub.setFunction("getLC", tradeId);
+                    contract.beforeTransaction(importer);
+                    assertLC(LetterOfCredit.fromJSONString(contract.getLC(importer, tradeId)), thread, i);
+
+                    stub.setFunction("getLCStatus", tradeId);
+                    contract.beforeTransaction(exporterBank);
+                    assertEquals(Constants.ACCEPTED, new JSONObject(contract.getLCStatus(exporterBank, tradeId)).getString(Constants.StatusKey));
+
+                    // The exporting entity is not the beneficiary, so it must never see these L/Cs
+                    stub.setFunction("getLCs", tradeId);
+                    contract.beforeTransaction(exportingEntity);
+                    assertEquals(0, new JSONArray(contract.getLCs(exportingEntity, tradeId)).length());
+                    completed++;
+                }
+
+                // Batch read of everything this worker created
+                String[] tradeIds = new String[TRADES_PER_THREAD];
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    tradeIds[i] = tradeId(thread, i);
+                }
+                stub.setFunction("getLCs", tradeIds);
+                contract.beforeTransaction(importerBank);
+                JSONArray lcs = new JSONArray(contract.getLCs(importerBank, tradeIds));
+                assertEquals(TRADES_PER_THREAD, lcs.length());
+                for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                    assertEquals(tradeIds[i], lcs.getJSONObject(i).getString(Constants.TradeIdKey));
+                    assertLC(LetterOfCredit.fromJSONString(lcs.getJSONObject(i).getJSONObject(Constants.LetterOfCreditKey).toString()), thread, i);
+                }
+                return completed;
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (Callable<Integer> worker : workers) {
+                results.add(pool.submit(worker));
+            }
+            startSignal.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(TRADES_PER_THREAD, result.get(2, TimeUnit.MINUTES));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Check the final ledger state for lost or corrupted writes. Stored L/Cs only refer to their document set,
+        // which is recorded once for all trades.
+        String docsRef = LCDoc.setRef(LCDoc.toJSONString(new LCDoc[] { new LCDoc("B/L"), new LCDoc("E/L") }));
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < TRADES_PER_THREAD; i++) {
+                byte[] lcBytes = ledger.getWorldState().get(contract.getLCKey(ledger, tradeId(t, i)));
+                LetterOfCredit lc = LetterOfCredit.fromJSONString(new String(lcBytes, UTF_8));
+                assertEquals(docsRef, lc.getDocumentsRef());
+                lc.setRequiredDocs(new LCDoc[] { new LCDoc("B/L"), new LCDoc("E/L") });
+                assertLC(lc, t, i);
+            }
+        }
+        assertNotNull(ledger.getWorldState().get(contract.getLCDocsKey(ledger, docsRef)));
+    }
+
+    private void assertLC(LetterOfCredit lc, int thread, int index) {
+        assertEquals(lcId(thread, index), lc.getId());
+        assertEquals(expirationDate, lc.getExpirationDate());
+        assertEquals(Constants.exporterOrgMsp, lc.getBeneficiary());
+        assertEquals(amount(thread, index), lc.getAmount());
+        assertEquals(2, lc.getRequiredDocs().length);
+        assertEquals("B/L", lc.getRequiredDocs()[0].getDocType());
+        assertEquals("E/L", lc.getRequiredDocs()[1].getDocType());
+        assertEquals(Constants.ACCEPTED, lc.getStatus());
+    }
+
+    private static Context context(InMemoryChaincodeStub stub, String mspId, String role) {
+        Context ctx = mock(Context.class);
+        ClientIdentity clientIdentity = mock(ClientIdentity.class);
+        when(ctx.getStub()).thenReturn(stub);
+        when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+        when(clientIdentity.getMSPID()).thenReturn(mspId);
+        when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(role);
+        return ctx;
+    }
+
+    private static String tradeId(int thread, int index) {
+        return "trade-" + thread + "-" + index;
+    }
+
+    private static String lcId(int thread, int index) {
+        return "lc-" + thread + "-" + index;
+    }
+
+    private static double amount(int thread, int index) {
+        return 1000.0 * (thread + 1) + index + 0.5;
+    }
+}
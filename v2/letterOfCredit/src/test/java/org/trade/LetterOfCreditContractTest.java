@@ -5,28 +5,50 @@
 package org.trade;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.shim.Chaincode;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ResponseUtils;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 
 public final class LetterOfCreditContractTest {
 
@@ -46,6 +68,7 @@ public final class LetterOfCreditContractTest {
     public String expirationDate = "12/31/2020";
     public String docBL = "B/L";
     public String docEL = "E/L";
+    public String accountsCollection = "accountsCollection";
 
     @Test
     public void LCInit() {
@@ -78,6 +101,33 @@ public final class LetterOfCreditContractTest {
 
         // Try the init again, this time with only the exporter account parameters. It should succeed.
         contract.init(ctx, Constants.exportingEntityOrgMSP, exporterBank, Double.toString(exporterBalance));
+
+        // Configure a private data collection: the account must be written to the collection and not to channel state
+        ChaincodeStub pdcStub = mock(ChaincodeStub.class);
+        when(ctx.getStub()).thenReturn(pdcStub);
+        contract.init(ctx, tradeContractId, shippingChannelName, shipmentContractId, Constants.exportingEntityOrgMSP, exporterBank, Double.toString(exporterBalance), accountsCollection);
+        verify(pdcStub).putState(Constants.accountsCollectionKey, accountsCollection.getBytes(UTF_8));
+        verify(pdcStub).putPrivateData(accountsCollection, ck.toString(), exporterAccount.getBytes(UTF_8));
+        verify(pdcStub, never()).putState(ck.toString(), exporterAccount.getBytes(UTF_8));
+
+        // The collection recorded on the ledger is used when the init does not name one
+        when(pdcStub.getState(Constants.tradeContractIdKey)).thenReturn(tradeContractId.getBytes(UTF_8));
+        when(pdcStub.getState(Constants.shippingChannelNameKey)).thenReturn(shippingChannelName.getBytes(UTF_8));
+        when(pdcStub.getState(Constants.shipmentContractIdKey)).thenReturn(shipmentContractId.getBytes(UTF_8));
+        when(pdcStub.getState(Constants.accountsCollectionKey)).thenReturn(accountsCollection.getBytes(UTF_8));
+        contract.init(ctx, Constants.exportingEntityOrgMSP, exporterBank, Double.toString(exporterBalance));
+        verify(pdcStub, times(2)).putPrivateData(accountsCollection, ck.toString(), exporterAccount.getBytes(UTF_8));
+        verify(pdcStub, never()).putState(ck.toString(), exporterAccount.getBytes(UTF_8));
+
+        // An empty collection name switches back to channel state
+        contract.init(ctx, Constants.exportingEntityOrgMSP, exporterBank, Double.toString(exporterBalance), "");
+        verify(pdcStub).delState(Constants.accountsCollectionKey);
+        verify(pdcStub).putState(ck.toString(), exporterAccount.getBytes(UTF_8));
+
+        // Wrong number of parameters
+        assertThrows(ChaincodeException.class, () -> {
+            contract.init(ctx, Constants.exportingEntityOrgMSP, exporterBank);
+        });
     }
 
     @Nested
@@ -154,6 +204,8 @@ public final class LetterOfCreditContractTest {
                 contract.requestLC(ctx, tradeId);
             });
             assertEquals(thrown.getMessage(), "'" + tradeId + "' requires amount " + amount + " but importer balance is only " + amount/2);
+            assertEquals(RejectionCode.INSUFFICIENT_BALANCE, ((Rejection) thrown).getCode());
+            assertEquals(0, thrown.getStackTrace().length);
 
             // Reset balance so operation should ordinarily succeed
             impAcc = new BankAccount(importerMSP, importerBank, importerBalance);
@@ -230,15 +282,84 @@ public final class LetterOfCreditContractTest {
             lcJson = lc.toJSONString();
             when(stub.getState(lcKey)).thenReturn(lcJson.getBytes(UTF_8));
 
+            // Test failure when the importer can't cover the L/C amount
+            String impAccKey = contract.getAccountKey(stub, importerMSP);
+            when(stub.getState(impAccKey)).thenReturn(new BankAccount(importerMSP, importerBank, amount/2).toJSONString().getBytes(UTF_8));
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL, docEL);
+            });
+            assertEquals(RejectionCode.INSUFFICIENT_BALANCE, ((Rejection) thrown).getCode());
+            verify(stub, never()).putState(eq(lcKey), any());
+
+            BankAccount impAcc = new BankAccount(importerMSP, importerBank, importerBalance);
+            when(stub.getState(impAccKey)).thenReturn(impAcc.toJSONString().getBytes(UTF_8));
             contract.beforeTransaction(ctx);    // ACL check
             contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL, docEL);
+
+            // The L/C amount moves from the importer's account to the trade's escrow
+            impAcc.setBalance(importerBalance - amount);
+            verify(stub).putState(impAccKey, impAcc.toJSONString().getBytes(UTF_8));
+            String escrowKey = contract.getEscrowKey(stub, tradeId);
+            verify(stub).putState(escrowKey, new BankAccount(importerMSP, importerBank, amount).toJSONString().getBytes(UTF_8));
+
             lc.setId(lcId);
             lc.setExpirationDate(expirationDate);
-            lc.setRequiredDocs(new LCDoc[] { new LCDoc(docBL), new LCDoc(docEL) });
             lc.setStatus(Constants.ISSUED);
+            LCDoc[] requiredDocs = new LCDoc[] { new LCDoc(docBL), new LCDoc(docEL) };
+            lc.setRequiredDocs(requiredDocs);
+            String inlineLcJson = lc.toJSONString();
+            String docsJson = LCDoc.toJSONString(requiredDocs);
+            lc.setRequiredDocs(null);
+            lc.setDocumentsRef(LCDoc.setRef(docsJson));
             lcJson = lc.toJSONString();
             verify(stub).putState(lcKey, lcJson.getBytes(UTF_8));
 
+            // The document set is stored once under its reference, and the L/C only refers to it, which makes it smaller
+            String docsKey = contract.getLCDocsKey(stub, LCDoc.setRef(docsJson));
+            verify(stub).putState(docsKey, docsJson.getBytes(UTF_8));
+            assertFalse(new JSONObject(lcJson).has("requiredDocs"));
+            assertEquals(22, new JSONObject(lcJson).getString("documentsRef").length());
+            assertTrue(lcJson.getBytes(UTF_8).length < inlineLcJson.getBytes(UTF_8).length);
+
+            // The status is stored by name
+            assertEquals(Constants.ISSUED, new JSONObject(lcJson).getString("status"));
+
+            // The L/C is indexed under its normalized expiration date
+            verify(stub).putState(new CompositeKey("LCExpiry", "2020-12-31", tradeId).toString(), new byte[] { 0 });
+
+            // A document set no larger than its reference stays in the L/C, and isn't stored separately
+            String singleDocKey = contract.getLCDocsKey(stub, LCDoc.setRef(LCDoc.toJSONString(new LCDoc[] { new LCDoc(docBL) })));
+            contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL);
+            lc.setRequiredDocs(new LCDoc[] { new LCDoc(docBL) });
+            lc.setDocumentsRef(null);
+            verify(stub).putState(lcKey, lc.toJSONString().getBytes(UTF_8));
+            verify(stub, never()).putState(eq(singleDocKey), any());
+
+            // Test with an expiration date that isn't a date
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.issueLC(ctx, tradeId, lcId, "end of year", docBL, docEL);
+            });
+            assertEquals(RejectionCode.INVALID_EXPIRATION_DATE, ((Rejection) thrown).getCode());
+
+            // Test with an L/C stored by the v1 contract
+            String legacyLcJson = "{\"amount\":" + amount + ",\"beneficiary\":\"" + exporterMSP + "\",\"expirationDate\":\"\",\"id\":\"\",\"requiredDocs\":[],\"status\":\"REQUESTED\"}";
+            when(stub.getState(lcKey)).thenReturn(legacyLcJson.getBytes(UTF_8));
+            contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL, docEL);
+            verify(stub, times(2)).putState(lcKey, lcJson.getBytes(UTF_8));
+
+            // Test that document sets already on the ledger are not written again
+            when(stub.getState(docsKey)).thenReturn(docsJson.getBytes(UTF_8));
+            when(stub.getState(lcKey)).thenReturn(new LetterOfCredit("", "", exporterMSP, amount, new LCDoc[]{}, Constants.REQUESTED).toJSONString().getBytes(UTF_8));
+            contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL, docEL);
+            verify(stub, times(2)).putState(docsKey, docsJson.getBytes(UTF_8));
+            verify(stub, times(3)).putState(lcKey, lcJson.getBytes(UTF_8));
+
+            // Test failure when a different document set is recorded under the same reference
+            when(stub.getState(docsKey)).thenReturn(LCDoc.toJSONString(new LCDoc[] { new LCDoc(docEL), new LCDoc(docBL) }).getBytes(UTF_8));
+            assertThrows(ChaincodeException.class, () -> {
+                contract.issueLC(ctx, tradeId, lcId, expirationDate, docBL, docEL);
+            });
+
             // Test failure when the caller is in the wrong org
             when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
             assertThrows(ChaincodeException.class, () -> {
@@ -449,7 +570,8 @@ public final class LetterOfCreditContractTest {
             contract.beforeTransaction(ctx);    // ACL check
             contract.requestPayment(ctx, tradeId);
             String psKey = contract.getPaymentStatusKey(stub, tradeId);
-            verify(stub).putState(psKey, Constants.REQUESTED.getBytes(UTF_8));
+            verify(stub).putState(psKey, LifecycleState.REQUESTED.toBytes());
+            verify(stub).putState(contract.getPendingPaymentKey(stub, importerMSP, tradeId), new byte[] { 0 });
 
             // Test failure when the trade payment is equal to the trade amount
             payment = Double.toString(amount);
@@ -527,6 +649,13 @@ public final class LetterOfCreditContractTest {
                 contract.makePayment(ctx, tradeId);
             });
             assertEquals(thrown.getMessage(), "No payment request recorded for '" + tradeId + "'");
+            JSONObject rejectionObj = new JSONObject(new String(((ChaincodeException) thrown).getPayload(), UTF_8));
+            assertEquals(RejectionCode.PAYMENT_NOT_REQUESTED.name(), rejectionObj.getString("code"));
+            assertEquals(thrown.getMessage(), rejectionObj.getString("message"));
+            assertEquals(tradeId, rejectionObj.getJSONArray("args").getString(0));
+            // The request is rejected on the local ledger check, without invoking the trade or shipment contracts
+            verify(stub, never()).invokeChaincodeWithStringArgs(tradeContractId, Constants.getTradeFunc, tradeId);
+            verify(stub, never()).invokeChaincodeWithStringArgs(eq(shipmentContractId), anyList(), eq(shippingChannelName));
 
             // Record payment request
             when(stub.getState(contract.getPaymentStatusKey(stub, tradeId))).thenReturn(Constants.REQUESTED.getBytes(UTF_8));
@@ -577,6 +706,7 @@ public final class LetterOfCreditContractTest {
             contract.makePayment(ctx, tradeId);
             String psKey = contract.getPaymentStatusKey(stub, tradeId);
             verify(stub).delState(psKey);
+            verify(stub).delState(contract.getPendingPaymentKey(stub, importerMSP, tradeId));
             String paymentKey = contract.getPaymentKey(stub, tradeId);
             verify(stub).putState(paymentKey, Double.toString(amount/2).getBytes(UTF_8));
             String importerAccount = "{\"balance\":" + (double) (importerBalance  - amount/2) + ",\"bank\":\"" + importerBank + "\",\"ownerMSP\":\"" + importerMSP + "\"}";
@@ -605,6 +735,339 @@ public final class LetterOfCreditContractTest {
             });
         }
 
+        @Test
+        public void PaymentMakePrivate() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            when(stub.getState(Constants.tradeContractIdKey)).thenReturn(tradeContractId.getBytes(UTF_8));
+            when(stub.getState(Constants.shippingChannelNameKey)).thenReturn(shippingChannelName.getBytes(UTF_8));
+            when(stub.getState(Constants.shipmentContractIdKey)).thenReturn(shipmentContractId.getBytes(UTF_8));
+            when(stub.getState(Constants.accountsCollectionKey)).thenReturn(accountsCollection.getBytes(UTF_8));
+            when(stub.getFunction()).thenReturn("makePayment");
+
+            // Account and payment records are only held in the collection
+            BankAccount impAcc = new BankAccount(importerMSP, importerBank, importerBalance);
+            String impAccKey = contract.getAccountKey(stub, importerMSP);
+            when(stub.getPrivateData(accountsCollection, impAccKey)).thenReturn(impAcc.toJSONString().getBytes(UTF_8));
+            BankAccount expAcc = new BankAccount(exporterMSP, exporterBank, exporterBalance);
+            String expAccKey = contract.getAccountKey(stub, exporterMSP);
+            when(stub.getPrivateData(accountsCollection, expAccKey)).thenReturn(expAcc.toJSONString().getBytes(UTF_8));
+            String paymentKey = contract.getPaymentKey(stub, tradeId);
+            when(stub.getPrivateData(accountsCollection, paymentKey)).thenReturn(Double.toString(amount/2).getBytes(UTF_8));
+            String psKey = contract.getPaymentStatusKey(stub, tradeId);
+            when(stub.getState(psKey)).thenReturn(Constants.REQUESTED.getBytes(UTF_8));
+
+            JSONObject shipmentLocationObj = new JSONObject();
+            shipmentLocationObj.put(Constants.LocationKey, Constants.destinationLocation);
+            ArrayList<String> shipmentReqArgs = new ArrayList<String>();
+            shipmentReqArgs.add(Constants.getShipmentLocationFunc);
+            shipmentReqArgs.add(tradeId);
+            Response r = new Response(Response.Status.SUCCESS, "OK", shipmentLocationObj.toString().getBytes(UTF_8));
+            when(stub.invokeChaincodeWithStringArgs(shipmentContractId, shipmentReqArgs, shippingChannelName)).thenReturn(r);
+
+            JSONObject tradeObj = new JSONObject();
+            tradeObj.put(Constants.tradeAmountAttr, amount);
+            tradeObj.put(Constants.importerMSPAttr, importerMSP);
+            tradeObj.put(Constants.exporterMSPAttr, exporterMSP);
+            tradeObj.put(Constants.tradeDescOfGoodsAttr, descriptionOfGoods);
+            tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+            r = new Response(Response.Status.SUCCESS, "OK", tradeObj.toString().getBytes(UTF_8));
+            when(stub.invokeChaincodeWithStringArgs(tradeContractId, Constants.getTradeFunc, tradeId)).thenReturn(r);
+
+            // Pay the remaining half of the trade amount now that the shipment has reached its destination
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.makePayment(ctx, tradeId);
+            verify(stub).delState(psKey);
+            verify(stub).delState(contract.getPendingPaymentKey(stub, importerMSP, tradeId));
+            verify(stub).putPrivateData(accountsCollection, paymentKey, Double.toString(amount).getBytes(UTF_8));
+            String importerAccount = "{\"balance\":" + (double) (importerBalance  - amount/2) + ",\"bank\":\"" + importerBank + "\",\"ownerMSP\":\"" + importerMSP + "\"}";
+            verify(stub).putPrivateData(accountsCollection, impAccKey, importerAccount.getBytes(UTF_8));
+            String exporterAccount = "{\"balance\":" + (double) (exporterBalance  + amount/2) + ",\"bank\":\"" + exporterBank + "\",\"ownerMSP\":\"" + exporterMSP + "\"}";
+            verify(stub).putPrivateData(accountsCollection, expAccKey, exporterAccount.getBytes(UTF_8));
+
+            // Nothing but the payment status is written to channel state
+            verify(stub, never()).getState(impAccKey);
+            verify(stub, never()).getState(expAccKey);
+            verify(stub, never()).getState(paymentKey);
+            verify(stub, never()).putState(impAccKey, importerAccount.getBytes(UTF_8));
+            verify(stub, never()).putState(expAccKey, exporterAccount.getBytes(UTF_8));
+            verify(stub, never()).putState(paymentKey, Double.toString(amount).getBytes(UTF_8));
+
+            // Balances are also served from the collection
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_ROLE);
+            when(stub.getFunction()).thenReturn("getAccountBalance");
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject balance = new JSONObject(contract.getAccountBalance(ctx));
+            assertEquals(importerBalance, balance.getDouble(Constants.BalanceKey));
+        }
+
+        @Test
+        public void PaymentInbox() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            stub.putState(Constants.shippingChannelNameKey, shippingChannelName.getBytes(UTF_8));
+            stub.putState(Constants.shipmentContractIdKey, shipmentContractId.getBytes(UTF_8));
+            String impAccKey = contract.getAccountKey(stub, importerMSP);
+            stub.putState(impAccKey, new BankAccount(importerMSP, importerBank, importerBalance).toJSONString().getBytes(UTF_8));
+            String expAccKey = contract.getAccountKey(stub, exporterMSP);
+            stub.putState(expAccKey, new BankAccount(exporterMSP, exporterBank, exporterBalance).toJSONString().getBytes(UTF_8));
+
+            // Trade and shipment contract stand-ins: trade-<i> is worth 1000 * (i + 1), and its shipment has reached its destination
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject response = new JSONObject();
+                if (args.get(0).equals(Constants.getShipmentLocationFunc)) {
+                    response.put(Constants.LocationKey, Constants.destinationLocation);
+                } else {
+                    response.put(Constants.tradeAmountAttr, 1000.0 * (Integer.parseInt(args.get(1).substring("trade-".length())) + 1));
+                    response.put(Constants.importerMSPAttr, importerMSP);
+                    response.put(Constants.exporterMSPAttr, exporterMSP);
+                    response.put(Constants.tradeDescOfGoodsAttr, descriptionOfGoods);
+                    response.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                    response.put(Constants.blBeneficiaryAttr, importerMSP);
+                }
+                return new Response(Response.Status.SUCCESS, "OK", response.toString().getBytes(UTF_8));
+            });
+
+            // Payment requests are added to the importer's pending requests
+            when(clientIdentity.getMSPID()).thenReturn(exporterMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+            stub.setFunction("requestPayment");
+            contract.beforeTransaction(ctx);    // ACL check
+            for (int i = 0; i < 4; i++) {
+                contract.requestPayment(ctx, "trade-" + i);
+                assertTrue(stub.getWorldState().containsKey(contract.getPendingPaymentKey(stub, importerMSP, "trade-" + i)));
+            }
+
+            // Test failure when the caller isn't the importer's bank
+            stub.setFunction("getPendingPayments");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+
+            // The importer's bank pages through its pending requests
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject page = new JSONObject(contract.getPendingPayments(ctx, 3, ""));
+            assertEquals(Arrays.asList("trade-0", "trade-1", "trade-2"), page.getJSONArray(Constants.RecordsKey).toList());
+            page = new JSONObject(contract.getPendingPayments(ctx, 3, page.getString(Constants.BookmarkKey)));
+            assertEquals(Arrays.asList("trade-3"), page.getJSONArray(Constants.RecordsKey).toList());
+            assertEquals("", page.getString(Constants.BookmarkKey));
+
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.getPendingPayments(ctx, 0, "");
+            });
+            assertEquals(RejectionCode.INVALID_PAGE_SIZE, ((Rejection) thrown).getCode());
+
+            // A batch settles its requests with one update of each account
+            int importerUpdates = history(stub, impAccKey).size();
+            int exporterUpdates = history(stub, expAccKey).size();
+            stub.setFunction("makePaymentBatch");
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject result = new JSONObject(contract.makePaymentBatch(ctx, "trade-0", "trade-1", "trade-0"));
+            assertEquals(Arrays.asList("trade-0", "trade-1"), result.getJSONArray(Constants.RecordsKey).toList());
+            assertEquals(importerBalance - 3000.0, BankAccount.fromJSONString(new String(stub.getState(impAccKey), UTF_8)).getBalance());
+            assertEquals(exporterBalance + 3000.0, BankAccount.fromJSONString(new String(stub.getState(expAccKey), UTF_8)).getBalance());
+            assertEquals(importerUpdates + 1, history(stub, impAccKey).size());
+            assertEquals(exporterUpdates + 1, history(stub, expAccKey).size());
+            assertEquals("2000.0", new String(stub.getState(contract.getPaymentKey(stub, "trade-1")), UTF_8));
+            assertFalse(stub.getWorldState().containsKey(contract.getPaymentStatusKey(stub, "trade-0")));
+            assertFalse(stub.getWorldState().containsKey(contract.getPendingPaymentKey(stub, importerMSP, "trade-0")));
+            page = new JSONObject(contract.getPendingPayments(ctx, 10, ""));
+            assertEquals(Arrays.asList("trade-2", "trade-3"), page.getJSONArray(Constants.RecordsKey).toList());
+
+            // A batch with a trade that has no pending request is rejected as a whole
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.makePaymentBatch(ctx, "trade-2", "trade-0");
+            });
+            assertEquals(RejectionCode.PAYMENT_NOT_REQUESTED, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.makePaymentBatch(ctx);
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+        }
+
+        @Test
+        public void PaymentNetSettlement() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            stub.putState(Constants.shippingChannelNameKey, shippingChannelName.getBytes(UTF_8));
+            stub.putState(Constants.shipmentContractIdKey, shipmentContractId.getBytes(UTF_8));
+            String[] owners = { importerMSP, exporterMSP, Constants.exportingEntityOrgMSP };
+            for (String owner : owners) {
+                stub.putState(contract.getAccountKey(stub, owner), new BankAccount(owner, "Bank", 10000.0).toJSONString().getBytes(UTF_8));
+            }
+
+            // Trade and shipment contract stand-ins: trade-<i> is worth 1000 * (i + 1), and trade-2 is with the exporting entity
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject response = new JSONObject();
+                if (args.get(0).equals(Constants.getShipmentLocationFunc)) {
+                    response.put(Constants.LocationKey, Constants.destinationLocation);
+                } else {
+                    response.put(Constants.tradeAmountAttr, 1000.0 * (Integer.parseInt(args.get(1).substring("trade-".length())) + 1));
+                    response.put(Constants.importerMSPAttr, importerMSP);
+                    response.put(Constants.exporterMSPAttr, args.get(1).equals("trade-2") ? Constants.exportingEntityOrgMSP : exporterMSP);
+                }
+                return new Response(Response.Status.SUCCESS, "OK", response.toString().getBytes(UTF_8));
+            });
+            for (int i = 0; i < 4; i++) {
+                stub.putState(contract.getPaymentStatusKey(stub, "trade-" + i), LifecycleState.REQUESTED.toBytes());
+            }
+
+            // Only the administrator switches to net settlement
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            stub.setFunction("setSettlementMode");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.ACL_ADMIN_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.setSettlementMode(ctx, "DAILY");
+            });
+            assertEquals(RejectionCode.UNKNOWN_SETTLEMENT_MODE, ((Rejection) thrown).getCode());
+            contract.setSettlementMode(ctx, Constants.NET_SETTLEMENT);
+            assertTrue(contract.isNetSettlement(stub));
+
+            // Payments complete right away, but are recorded as obligations rather than moving funds
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            Map<String, Integer> accountUpdates = new HashMap<String, Integer>();
+            for (String owner : owners) {
+                accountUpdates.put(owner, history(stub, contract.getAccountKey(stub, owner)).size());
+            }
+            stub.setFunction("makePayment");
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.makePayment(ctx, "trade-0");
+            stub.setFunction("makePaymentBatch");
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.makePaymentBatch(ctx, "trade-1", "trade-2");
+            assertEquals("3000.0", new String(stub.getState(contract.getPaymentKey(stub, "trade-2")), UTF_8));
+            assertFalse(stub.getWorldState().containsKey(contract.getPaymentStatusKey(stub, "trade-1")));
+            assertEquals(3, stub.getWorldState().keySet().stream().filter(key -> key.startsWith(new CompositeKey("PaymentObligation").toString())).count());
+            for (String owner : owners) {
+                assertEquals(10000.0, BankAccount.fromJSONString(new String(stub.getState(contract.getAccountKey(stub, owner)), UTF_8)).getBalance());
+            }
+
+            // Each settlement applies the net positions with one update of each account
+            stub.setFunction("settleNet");
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject result = new JSONObject(contract.settleNet(ctx, 2));
+            assertEquals(2, result.getInt(Constants.SettledKey));
+            assertTrue(result.getBoolean(Constants.MoreKey));
+            assertEquals(-3000.0, result.getJSONObject(Constants.RecordsKey).getDouble(importerMSP));
+            result = new JSONObject(contract.settleNet(ctx, 10));
+            assertEquals(1, result.getInt(Constants.SettledKey));
+            assertFalse(result.getBoolean(Constants.MoreKey));
+            double[] balances = { 10000.0 - 6000.0, 10000.0 + 3000.0, 10000.0 + 3000.0 };
+            int[] updates = { 2, 1, 1 };
+            for (int i = 0; i < owners.length; i++) {
+                String accountKey = contract.getAccountKey(stub, owners[i]);
+                assertEquals(balances[i], BankAccount.fromJSONString(new String(stub.getState(accountKey), UTF_8)).getBalance());
+                assertEquals(accountUpdates.get(owners[i]) + updates[i], history(stub, accountKey).size());
+            }
+            assertEquals(0, new JSONObject(contract.settleNet(ctx, 10)).getInt(Constants.SettledKey));
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.settleNet(ctx, 0);
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+
+            // Back in gross mode, payments move funds again
+            stub.putState(Constants.settlementModeKey, Constants.GROSS_SETTLEMENT.getBytes(UTF_8));
+            stub.setFunction("makePayment");
+            contract.makePayment(ctx, "trade-3");
+            assertEquals(0.0, BankAccount.fromJSONString(new String(stub.getState(contract.getAccountKey(stub, importerMSP)), UTF_8)).getBalance());
+        }
+
+        @Test
+        public void PaymentFromEscrow() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            stub.putState(Constants.shippingChannelNameKey, shippingChannelName.getBytes(UTF_8));
+            stub.putState(Constants.shipmentContractIdKey, shipmentContractId.getBytes(UTF_8));
+            String impAccKey = contract.getAccountKey(stub, importerMSP);
+            stub.putState(impAccKey, new BankAccount(importerMSP, importerBank, importerBalance).toJSONString().getBytes(UTF_8));
+            String expAccKey = contract.getAccountKey(stub, exporterMSP);
+            stub.putState(expAccKey, new BankAccount(exporterMSP, exporterBank, exporterBalance).toJSONString().getBytes(UTF_8));
+
+            // Trade and shipment contract stand-ins: trade-<i> is worth 1000 * (i + 1), and its shipment has reached its destination
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject response = new JSONObject();
+                if (args.get(0).equals(Constants.getShipmentLocationFunc)) {
+                    response.put(Constants.LocationKey, Constants.destinationLocation);
+                } else {
+                    response.put(Constants.tradeAmountAttr, 1000.0 * (Integer.parseInt(args.get(1).substring("trade-".length())) + 1));
+                    response.put(Constants.importerMSPAttr, importerMSP);
+                    response.put(Constants.exporterMSPAttr, exporterMSP);
+                    response.put(Constants.tradeDescOfGoodsAttr, descriptionOfGoods);
+                    response.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                    response.put(Constants.blBeneficiaryAttr, importerMSP);
+                }
+                return new Response(Response.Status.SUCCESS, "OK", response.toString().getBytes(UTF_8));
+            });
+
+            // Issuing the L/Cs reserves their amounts in per-trade escrows
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            stub.setFunction("issueLC");
+            contract.beforeTransaction(ctx);    // ACL check
+            for (int i = 0; i < 2; i++) {
+                LetterOfCredit lc = new LetterOfCredit("", "", exporterMSP, 1000.0 * (i + 1), new LCDoc[]{}, Constants.REQUESTED);
+                stub.putState(contract.getLCKey(stub, "trade-" + i), lc.toJSONString().getBytes(UTF_8));
+                contract.issueLC(ctx, "trade-" + i, "lc-" + i, "12/31/2020");
+            }
+            assertEquals(importerBalance - 3000.0, BankAccount.fromJSONString(new String(stub.getState(impAccKey), UTF_8)).getBalance());
+            String escrowKey = contract.getEscrowKey(stub, "trade-1");
+            assertEquals(2000.0, BankAccount.fromJSONString(new String(stub.getState(escrowKey), UTF_8)).getBalance());
+
+            when(clientIdentity.getMSPID()).thenReturn(exporterMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+            stub.setFunction("requestPayment");
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.requestPayment(ctx, "trade-0");
+
+            // The payment is released from escrow, leaving the importer's account untouched
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            stub.setFunction("makePayment");
+            contract.beforeTransaction(ctx);    // ACL check
+            int importerUpdates = history(stub, impAccKey).size();
+            contract.makePayment(ctx, "trade-0");
+            assertEquals(importerUpdates, history(stub, impAccKey).size());
+            assertEquals(importerBalance - 3000.0, BankAccount.fromJSONString(new String(stub.getState(impAccKey), UTF_8)).getBalance());
+            assertEquals(exporterBalance + 1000.0, BankAccount.fromJSONString(new String(stub.getState(expAccKey), UTF_8)).getBalance());
+            assertFalse(stub.getWorldState().containsKey(contract.getEscrowKey(stub, "trade-0")));
+
+            // Expiry returns what is left in escrow to the importer
+            stub.setFunction("expireLCs");
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.expireLCs(ctx, "01/01/2021", 10);
+            assertEquals(importerBalance - 1000.0, BankAccount.fromJSONString(new String(stub.getState(impAccKey), UTF_8)).getBalance());
+            assertFalse(stub.getWorldState().containsKey(escrowKey));
+        }
+
         @Test
         public void LCGet() {
             LetterOfCreditContract contract = new LetterOfCreditContract();
@@ -682,6 +1145,43 @@ public final class LetterOfCreditContractTest {
                 }
             }
 
+            // Test that documents stored by reference are resolved in the returned L/C
+            LetterOfCredit lc2 = new LetterOfCredit(lcId, expirationDate, exporterMSP, amount, null, Constants.ACCEPTED);
+            String docsJson = LCDoc.toJSONString(new LCDoc[] { new LCDoc(docEL), new LCDoc(docBL) });
+            lc2.setDocumentsRef(LCDoc.setRef(docsJson));
+            String tradeId2 = "trade-3";
+            when(stub.getState(contract.getLCKey(stub, tradeId2))).thenReturn(lc2.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getLCDocsKey(stub, LCDoc.setRef(docsJson)))).thenReturn(docsJson.getBytes(UTF_8));
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject lc2Resp = new JSONObject(contract.getLC(ctx, tradeId2));
+            assertFalse(lc2Resp.has("documentsRef"));
+            assertEquals(docEL, lc2Resp.getJSONArray("requiredDocs").getJSONObject(0).getString("docType"));
+            assertEquals(docBL, lc2Resp.getJSONArray("requiredDocs").getJSONObject(1).getString("docType"));
+
+            // L/Cs that embed their documents are returned as stored, byte for byte, even when the stored JSON isn't
+            // laid out the way this contract would serialize it
+            assertEquals(lcJson, contract.getLC(ctx, tradeId));
+            String tradeId3 = "trade-4";
+            String storedLcJson = "{ \"status\": \"ISSUED\", \"id\": \"lc-4\", \"amount\": 1500.50, \"beneficiary\": \"" + exporterMSP + "\", \"expirationDate\": \"" + expirationDate + "\", \"requiredDocs\": [] }";
+            when(stub.getState(contract.getLCKey(stub, tradeId3))).thenReturn(storedLcJson.getBytes(UTF_8));
+            assertEquals(storedLcJson, contract.getLC(ctx, tradeId3));
+
+            // Test that only the requested fields are returned, and that referenced documents are resolved when requested
+            when(stub.getFunction()).thenReturn("getLCFields");
+            contract.beforeTransaction(ctx);    // ACL check
+            assertEquals("{\"status\":\"ISSUED\",\"amount\":1500.50}", contract.getLCFields(ctx, tradeId3, "amount", "status"));
+            JSONObject fields = new JSONObject(contract.getLCFields(ctx, tradeId, "amount", "expirationDate", "unknown"));
+            assertEquals(2, fields.length());
+            assertEquals(amount, fields.getDouble("amount"));
+            assertEquals(expirationDate, fields.getString("expirationDate"));
+            fields = new JSONObject(contract.getLCFields(ctx, tradeId2, Constants.lcRequiredDocsAttr));
+            assertEquals(docEL, fields.getJSONArray(Constants.lcRequiredDocsAttr).getJSONObject(0).getString("docType"));
+            assertEquals("{\"beneficiary\":\"" + exporterMSP + "\"}", contract.getLCFields(ctx, tradeId2, Constants.lcBeneficiaryAttr));
+            assertEquals("{\"status\":\"" + Constants.ACCEPTED + "\"}", contract.getLCFields(ctx, tradeId2, "status"));
+            when(stub.getFunction()).thenReturn("getLC");
+
             // Test failure when one exporter is trying to access an L/C associated with a different exporer
             when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
             when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
@@ -689,6 +1189,10 @@ public final class LetterOfCreditContractTest {
                 contract.beforeTransaction(ctx);    // ACL check
                 contract.getLC(ctx, tradeId);
             });
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.getLCFields(ctx, tradeId, "amount");
+            });
+            assertEquals(RejectionCode.LC_NOT_VISIBLE, ((Rejection) thrown).getCode());
 
             // Test failure when the caller is in the right org but has not been assigned a role
             when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
@@ -779,6 +1283,24 @@ public final class LetterOfCreditContractTest {
                 }
             }
 
+            // Test that documents stored by reference are resolved in the returned L/C
+            LetterOfCredit lc2 = new LetterOfCredit(lcId, expirationDate, exporterMSP, amount, null, Constants.ACCEPTED);
+            String docsJson = LCDoc.toJSONString(new LCDoc[] { new LCDoc(docEL), new LCDoc(docBL) });
+            lc2.setDocumentsRef(LCDoc.setRef(docsJson));
+            String tradeId2 = "trade-3";
+            when(stub.getState(contract.getLCKey(stub, tradeId2))).thenReturn(lc2.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getLCDocsKey(stub, LCDoc.setRef(docsJson)))).thenReturn(docsJson.getBytes(UTF_8));
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject lc2Resp = new JSONObject(contract.getLC(ctx, tradeId2));
+            assertFalse(lc2Resp.has("documentsRef"));
+            assertEquals(docEL, lc2Resp.getJSONArray("requiredDocs").getJSONObject(0).getString("docType"));
+            assertEquals(docBL, lc2Resp.getJSONArray("requiredDocs").getJSONObject(1).getString("docType"));
+
+            // L/Cs that embed their documents are returned as stored
+            assertEquals(lcJson, contract.getLC(ctx, tradeId));
+
             // Test failure when one exporter is trying to access an L/C associated with a different exporer
             when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
             when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
@@ -883,6 +1405,700 @@ public final class LetterOfCreditContractTest {
             });
         }
 
+
+        @Test
+        public void LCGetBatch() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_ROLE);
+            when(stub.getFunction()).thenReturn("getLCs");
+
+            // One L/C for the exporter, one for the exporting entity, and one trade without L/C
+            String otherTradeId = "trade-2";
+            String missingTradeId = "trade-3";
+            LetterOfCredit lc = new LetterOfCredit(lcId, expirationDate, exporterMSP, amount, new LCDoc[]{ new LCDoc(docBL) }, Constants.ISSUED);
+            LetterOfCredit otherLc = new LetterOfCredit("lc-2", expirationDate, Constants.exportingEntityOrgMSP, amount, new LCDoc[]{}, Constants.ACCEPTED);
+            when(stub.getState(contract.getLCKey(stub, tradeId))).thenReturn(lc.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getLCKey(stub, otherTradeId))).thenReturn(otherLc.toJSONString().getBytes(UTF_8));
+            when(stub.getState(contract.getLCKey(stub, missingTradeId))).thenReturn(new byte[] {});
+
+            // Test that the importer sees both L/Cs, in the requested order, and missing L/Cs are left out
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONArray lcs = new JSONArray(contract.getLCs(ctx, otherTradeId, missingTradeId, tradeId));
+            assertEquals(2, lcs.length());
+            assertEquals(otherTradeId, lcs.getJSONObject(0).getString(Constants.TradeIdKey));
+            assertEquals("lc-2", lcs.getJSONObject(0).getJSONObject(Constants.LetterOfCreditKey).getString("id"));
+            assertEquals(tradeId, lcs.getJSONObject(1).getString(Constants.TradeIdKey));
+            assertTrue(new JSONObject(lc.toJSONString()).put("status", Constants.ISSUED).similar(lcs.getJSONObject(1).getJSONObject(Constants.LetterOfCreditKey)));
+
+            JSONArray statuses = new JSONArray(contract.getLCStatuses(ctx, otherTradeId, missingTradeId, tradeId));
+            assertEquals(2, statuses.length());
+            assertEquals(Constants.ACCEPTED, statuses.getJSONObject(0).getString(Constants.StatusKey));
+            assertEquals(Constants.ISSUED, statuses.getJSONObject(1).getString(Constants.StatusKey));
+
+            // Test that the exporting entity only sees its own L/C
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            lcs = new JSONArray(contract.getLCs(ctx, tradeId, otherTradeId));
+            assertEquals(1, lcs.length());
+            assertEquals(otherTradeId, lcs.getJSONObject(0).getString(Constants.TradeIdKey));
+            statuses = new JSONArray(contract.getLCStatuses(ctx, tradeId, otherTradeId));
+            assertEquals(1, statuses.length());
+            assertEquals(otherTradeId, statuses.getJSONObject(0).getString(Constants.TradeIdKey));
+
+            // Test that the exporter's bank sees both L/Cs
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+            lcs = new JSONArray(contract.getLCs(ctx, tradeId, otherTradeId));
+            assertEquals(2, lcs.length());
+
+            // Test an empty batch
+            assertEquals("[]", contract.getLCs(ctx));
+
+            // Test failure when the caller is in the wrong org
+            when(clientIdentity.getMSPID()).thenReturn("SomeOtherOrgMSP");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+                contract.getLCs(ctx, tradeId);
+            });
+        }
+
+        @Test
+        public void LCGetHistory() throws Exception {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            when(stub.getFunction()).thenReturn("getLCHistory");
+
+            String lcKey = contract.getLCKey(stub, tradeId);
+            LetterOfCredit lc = new LetterOfCredit("", "", exporterMSP, amount, new LCDoc[]{}, Constants.REQUESTED);
+            KeyModification requested = mockModification("tx-1", lc.toJSONString(), false);
+            lc.setStatus(Constants.ISSUED);
+            KeyModification issued = mockModification("tx-2", lc.toJSONString(), false);
+            lc.setStatus(Constants.ACCEPTED);
+            KeyModification accepted = mockModification("tx-3", lc.toJSONString(), false);
+            @SuppressWarnings("unchecked")
+            QueryResultsIterator<KeyModification> history = mock(QueryResultsIterator.class);
+            when(history.iterator()).thenAnswer(invocation -> Arrays.asList(requested, issued, accepted).iterator());
+            when(stub.getHistoryForKey(lcKey)).thenReturn(history);
+
+            // Test first page: iteration stops early and the last modification is not decoded
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject page = new JSONObject(contract.getLCHistory(ctx, tradeId, 2, ""));
+            JSONArray records = page.getJSONArray(Constants.RecordsKey);
+            assertEquals(2, records.length());
+            assertEquals("tx-1", records.getJSONObject(0).getString("txId"));
+            assertEquals(Constants.REQUESTED, records.getJSONObject(0).getString("status"));
+            assertEquals(Instant.ofEpochSecond(1).toString(), records.getJSONObject(0).getString("timestamp"));
+            assertFalse(records.getJSONObject(0).getBoolean("isDelete"));
+            assertEquals(Constants.ISSUED, records.getJSONObject(1).getString("status"));
+            assertEquals("tx-2", page.getString(Constants.CursorKey));
+            verify(accepted, never()).getValue();
+            verify(history).close();
+
+            // Test next page, resuming from the cursor
+            page = new JSONObject(contract.getLCHistory(ctx, tradeId, 2, "tx-2"));
+            records = page.getJSONArray(Constants.RecordsKey);
+            assertEquals(1, records.length());
+            assertEquals("tx-3", records.getJSONObject(0).getString("txId"));
+            assertEquals(Constants.ACCEPTED, records.getJSONObject(0).getString("status"));
+            assertEquals("", page.getString(Constants.CursorKey));
+
+            // Test invalid page size
+            assertThrows(ChaincodeException.class, () -> {
+                contract.getLCHistory(ctx, tradeId, 0, "");
+            });
+
+            // Test successs when the caller is the exporter's bank
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+            contract.beforeTransaction(ctx);    // ACL check
+
+            // Test failure when the caller is not a banker
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+                contract.getLCHistory(ctx, tradeId, 2, "");
+            });
+        }
+
+        @Test
+        public void LCExpire() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            stub.setFunction("expireLCs");
+
+            // Five L/Cs expiring on consecutive days, the last one already expired
+            String[] expirationDates = { "12/28/2020", "12/29/2020", "12/30/2020", "2020-12-31", "01/01/2021" };
+            for (int i = 0; i < expirationDates.length; i++) {
+                String status = i == 1 ? Constants.ACCEPTED : Constants.ISSUED;
+                LetterOfCredit lc = new LetterOfCredit("lc-" + i, expirationDates[i], exporterMSP, amount, new LCDoc[]{}, status);
+                stub.putState(contract.getLCKey(stub, "trade-" + i), lc.toJSONString().getBytes(UTF_8));
+                stub.putState(contract.getLCExpiryKey(stub, ExpiryDate.normalize(expirationDates[i]), "trade-" + i), new byte[] { 0 });
+            }
+
+            // Expire in batches of two: L/Cs expiring on the as-of date are still valid
+            contract.beforeTransaction(ctx);    // ACL check
+            JSONObject batch = new JSONObject(contract.expireLCs(ctx, "12/31/2020", 2));
+            assertEquals(Arrays.asList("trade-0", "trade-1"), batch.getJSONArray(Constants.RecordsKey).toList());
+            assertTrue(batch.getBoolean(Constants.MoreKey));
+            batch = new JSONObject(contract.expireLCs(ctx, "12/31/2020", 2));
+            assertEquals(Arrays.asList("trade-2"), batch.getJSONArray(Constants.RecordsKey).toList());
+            assertFalse(batch.getBoolean(Constants.MoreKey));
+            assertEquals(Constants.EXPIRED, LetterOfCredit.fromJSONString(new String(stub.getState(contract.getLCKey(stub, "trade-1")), UTF_8)).getStatus());
+            assertEquals(Constants.ISSUED, LetterOfCredit.fromJSONString(new String(stub.getState(contract.getLCKey(stub, "trade-3")), UTF_8)).getStatus());
+
+            // Processed index entries are removed, so nothing is due any more
+            batch = new JSONObject(contract.expireLCs(ctx, "2020-12-31", 10));
+            assertEquals(0, batch.getJSONArray(Constants.RecordsKey).length());
+            assertEquals(2, stub.getWorldState().keySet().stream().filter(key -> key.startsWith(new CompositeKey("LCExpiry").toString())).count());
+
+            // An expired L/C can't be accepted or paid against
+            stub.setFunction("acceptLC", "trade-0");
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.acceptLC(ctx, "trade-0");
+            });
+            assertEquals(RejectionCode.LC_EXPIRED, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.requestPayment(ctx, "trade-1");
+            });
+            assertEquals(RejectionCode.LC_EXPIRED, ((Rejection) thrown).getCode());
+
+            // Invalid batch sizes and dates, and dates after the transaction's are rejected
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.expireLCs(ctx, "12/31/2020", 0);
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.expireLCs(ctx, "31/12/2020", 10);
+            });
+            assertEquals(RejectionCode.INVALID_EXPIRATION_DATE, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.expireLCs(ctx, ExpiryDate.of(Instant.now().plusSeconds(3 * 86400)), 10);
+            });
+            assertEquals(RejectionCode.EXPIRY_DATE_IN_FUTURE, ((Rejection) thrown).getCode());
+
+            // Test failure when the caller is not the importer's bank
+            stub.setFunction("expireLCs");
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exporterOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_BANKER_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+        }
+
+        @Test
+        public void ACLPolicyUpdate() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getChannelId()).thenReturn("aclchannel");
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            String newBankMSP = "NewBankMSP";
+
+            // Test that the built-in policy doesn't know a bank that hasn't been onboarded
+            when(clientIdentity.getMSPID()).thenReturn(newBankMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            when(stub.getFunction()).thenReturn("getLC");
+            Exception thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+            assertEquals(RejectionCode.UNKNOWN_ROLE, ((Rejection) thrown).getCode());
+
+            // Test onboarding the bank with a new policy version
+            List<ACLRule> rules = new ArrayList<ACLRule>(Arrays.asList(AccessControlUtils.defaultPolicy().getRules()));
+            rules.add(new ACLRule(newBankMSP, Constants.IMPORTER_BANKER_ROLE, new String[] { "getLC", "getLCStatus" }));
+            String policyJson = new ACLPolicy(1, rules.toArray(new ACLRule[0])).toJSONString();
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.ACL_ADMIN_ROLE);
+            when(stub.getFunction()).thenReturn("updateACLPolicy");
+            contract.beforeTransaction(ctx);    // ACL check
+            contract.updateACLPolicy(ctx, policyJson);
+            verify(stub).putState(Constants.aclPolicyKey, policyJson.getBytes(UTF_8));
+            verify(stub).putState(Constants.aclPolicyVersionKey, "1".getBytes(UTF_8));
+
+            // Test failure when the version doesn't follow the current one
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.updateACLPolicy(ctx, new ACLPolicy(2, rules.toArray(new ACLRule[0])).toJSONString());
+            });
+            assertEquals(RejectionCode.ACL_POLICY_VERSION_MISMATCH, ((Rejection) thrown).getCode());
+
+            // Test failure when the policy strips or changes the rules of another organization
+            List<ACLRule> strippedRules = new ArrayList<ACLRule>();
+            List<ACLRule> changedRules = new ArrayList<ACLRule>();
+            for (ACLRule rule : rules) {
+                if (!rule.getMspId().equals(Constants.exportingEntityOrgMSP)) {
+                    strippedRules.add(rule);
+                }
+                boolean exporterBanker = rule.getMspId().equals(exporterMSP) && rule.getRole().equals(Constants.EXPORTER_BANKER_ROLE);
+                changedRules.add(exporterBanker ? new ACLRule(exporterMSP, Constants.EXPORTER_BANKER_ROLE, new String[] { "getLC" }) : rule);
+            }
+            for (List<ACLRule> alteredRules : Arrays.asList(strippedRules, changedRules)) {
+                thrown = assertThrows(ChaincodeException.class, () -> {
+                    contract.updateACLPolicy(ctx, new ACLPolicy(1, alteredRules.toArray(new ACLRule[0])).toJSONString());
+                });
+                assertEquals(RejectionCode.ACL_POLICY_ALTERS_OTHER_MSP, ((Rejection) thrown).getCode());
+            }
+
+            // Test failure with policies that are malformed, or that nobody could update afterwards
+            for (String invalidPolicy : new String[] { "{\"version\":1", "{\"version\":1}", "{\"version\":1,\"rules\":[{\"mspId\":\"" + importerMSP + "\"}]}",
+                                                        new ACLPolicy(1, new ACLRule[] { new ACLRule(newBankMSP, Constants.IMPORTER_BANKER_ROLE, new String[] { "getLC" }) }).toJSONString() }) {
+                thrown = assertThrows(ChaincodeException.class, () -> {
+                    contract.updateACLPolicy(ctx, invalidPolicy);
+                });
+                assertEquals(RejectionCode.INVALID_ACL_POLICY, ((Rejection) thrown).getCode());
+            }
+
+            // Test that the new bank is known once the policy is recorded, and that the policy is only loaded once per version
+            when(stub.getState(Constants.aclPolicyVersionKey)).thenReturn("1".getBytes(UTF_8));
+            when(stub.getState(Constants.aclPolicyKey)).thenReturn(policyJson.getBytes(UTF_8));
+            when(clientIdentity.getMSPID()).thenReturn(newBankMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            for (String function : new String[] { "getLC", "getLCStatus", "getLC" }) {
+                when(stub.getFunction()).thenReturn(function);
+                contract.beforeTransaction(ctx);    // ACL check
+            }
+            when(stub.getFunction()).thenReturn("issueLC");
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+            verify(stub, times(1)).getState(Constants.aclPolicyKey);
+
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.ACL_ADMIN_ROLE);
+            when(stub.getFunction()).thenReturn("getACLPolicy");
+            contract.beforeTransaction(ctx);    // ACL check
+            assertEquals(1, new JSONObject(contract.getACLPolicy(ctx)).getLong("version"));
+
+            // Test failure when the caller isn't an administrator
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            when(stub.getFunction()).thenReturn("updateACLPolicy");
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+            assertEquals(RejectionCode.ACCESS_DENIED, ((Rejection) thrown).getCode());
+        }
+
+        @Test
+        public void RecordsMigration() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.ACL_ADMIN_ROLE);
+            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            List<String> tradeLookups = new ArrayList<String>();
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                tradeLookups.add(args.get(1));
+                JSONObject response = new JSONObject();
+                response.put(Constants.importerMSPAttr, importerMSP);
+                response.put(Constants.exporterMSPAttr, exporterMSP);
+                return new Response(Response.Status.SUCCESS, "OK", response.toString().getBytes(UTF_8));
+            });
+
+            // Records as written by the v1 contract, next to records already in the current format
+            String legacyIssuedLcJson = "{\"amount\":" + amount + ",\"beneficiary\":\"" + exporterMSP + "\",\"expirationDate\":\"" + expirationDate + "\",\"id\":\"lc-0\","
+                                        + "\"requiredDocs\":[" + new LCDoc(docBL).toJSONString() + "," + new LCDoc(docEL).toJSONString() + "],\"status\":\"ISSUED\"}";
+            String legacyRequestedLcJson = "{\"amount\":" + amount + ",\"beneficiary\":\"" + exporterMSP + "\",\"expirationDate\":\"\",\"id\":\"\",\"requiredDocs\":[],\"status\":\"REQUESTED\"}";
+            LetterOfCredit currentLc = new LetterOfCredit("lc-2", expirationDate, exporterMSP, amount, new LCDoc[]{}, Constants.ISSUED);
+            stub.putState(contract.getLCKey(stub, "trade-0"), legacyIssuedLcJson.getBytes(UTF_8));
+            stub.putState(contract.getLCKey(stub, "trade-1"), legacyRequestedLcJson.getBytes(UTF_8));
+            stub.putState(contract.getLCKey(stub, "trade-2"), currentLc.toJSONString().getBytes(UTF_8));
+            stub.putState(contract.getPaymentStatusKey(stub, "trade-0"), Constants.REQUESTED.getBytes(UTF_8));
+            stub.putState(contract.getPaymentStatusKey(stub, "trade-1"), Constants.REQUESTED.getBytes(UTF_8));
+            stub.putState(contract.getPendingPaymentKey(stub, importerMSP, "trade-1"), new byte[] { 0 });
+            stub.putState(contract.getEscrowKey(stub, "trade-1"), new BankAccount(importerMSP, importerBank, amount).toJSONString().getBytes(UTF_8));
+            stub.putState(contract.getPaymentStatusKey(stub, "trade-2"), Constants.REQUESTED.getBytes(UTF_8));
+            stub.putState(contract.getEscrowKey(stub, "trade-2"), new BankAccount(importerMSP, importerBank, amount).toJSONString().getBytes(UTF_8));
+
+            stub.setFunction("getMigrationBatch");
+            contract.beforeTransaction(ctx);    // ACL check
+            stub.setFunction("migrate");
+            contract.beforeTransaction(ctx);    // ACL check
+            // Batches are planned from the recorded position, and a batch that doesn't reach the last record has a bookmark
+            String plannedBatch = contract.getMigrationBatch(ctx, 2);
+            JSONObject planned = new JSONObject(plannedBatch);
+            assertEquals(1, planned.getInt(Constants.VersionKey));
+            assertEquals("", planned.getString(Constants.PositionKey));
+            assertEquals(2, planned.getJSONArray(Constants.KeysKey).length());
+            assertEquals(contract.getLCKey(stub, "trade-2"), planned.getString(Constants.BookmarkKey));
+            JSONObject batch = new JSONObject(contract.migrate(ctx, plannedBatch));
+            assertEquals(0, batch.getInt(Constants.VersionKey));
+            assertEquals(1, batch.getInt(Constants.MigratedKey));
+            assertTrue(batch.getBoolean(Constants.MoreKey));
+            assertEquals(contract.getLCKey(stub, "trade-2"), batch.getString(Constants.BookmarkKey));
+
+            // L/Cs refer to their document set, and issued L/Cs are indexed for expiry
+            JSONObject lcObj = new JSONObject(new String(stub.getState(contract.getLCKey(stub, "trade-0")), UTF_8));
+            assertFalse(lcObj.has("requiredDocs"));
+            String docsJson = LCDoc.toJSONString(new LCDoc[] { new LCDoc(docBL), new LCDoc(docEL) });
+            assertEquals(LCDoc.setRef(docsJson), lcObj.getString("documentsRef"));
+            assertEquals(Constants.ISSUED, lcObj.getString("status"));
+            assertArrayEquals(docsJson.getBytes(UTF_8), stub.getState(contract.getLCDocsKey(stub, LCDoc.setRef(docsJson))));
+            assertTrue(stub.getWorldState().containsKey(contract.getLCExpiryKey(stub, "2020-12-31", "trade-0")));
+            assertEquals(legacyRequestedLcJson, new String(stub.getState(contract.getLCKey(stub, "trade-1")), UTF_8));
+
+            // A batch must start at the position recorded on the ledger, and can only upgrade the keys of its page
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.migrate(ctx, plannedBatch);
+            });
+            assertEquals(RejectionCode.MIGRATION_BATCH_STALE, ((Rejection) thrown).getCode());
+            JSONObject forgedBatch = new JSONObject(contract.getMigrationBatch(ctx, 2));
+            forgedBatch.getJSONArray(Constants.KeysKey).put(contract.getLCKey(stub, "trade-0"));
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.migrate(ctx, forgedBatch.toString());
+            });
+            assertEquals(RejectionCode.MIGRATION_BATCH_INVALID, ((Rejection) thrown).getCode());
+            thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.getMigrationBatch(ctx, 0);
+            });
+            assertEquals(RejectionCode.INVALID_BATCH_SIZE, ((Rejection) thrown).getCode());
+
+            // Records already in the current format are left untouched. The step is complete once a page reached its last record.
+            int currentLcUpdates = history(stub, contract.getLCKey(stub, "trade-2")).size();
+            batch = new JSONObject(contract.migrate(ctx, contract.getMigrationBatch(ctx, 2)));
+            assertEquals(1, batch.getInt(Constants.VersionKey));
+            assertEquals(0, batch.getInt(Constants.MigratedKey));
+            assertEquals("", batch.getString(Constants.BookmarkKey));
+            assertTrue(batch.getBoolean(Constants.MoreKey));
+            assertEquals(currentLcUpdates, history(stub, contract.getLCKey(stub, "trade-2")).size());
+
+            // Requested payments are added to the importer's pending requests, unless they already are. The owner of the
+            // trade's escrow is its importer, so only the trade without one is looked up in the trade contract.
+            batch = new JSONObject(contract.migrate(ctx, contract.getMigrationBatch(ctx, 3)));
+            assertEquals(2, batch.getInt(Constants.VersionKey));
+            assertEquals(2, batch.getInt(Constants.MigratedKey));
+            assertFalse(batch.getBoolean(Constants.MoreKey));
+            assertArrayEquals(Constants.REQUESTED.getBytes(UTF_8), stub.getState(contract.getPaymentStatusKey(stub, "trade-0")));
+            assertTrue(stub.getWorldState().containsKey(contract.getPendingPaymentKey(stub, importerMSP, "trade-0")));
+            assertTrue(stub.getWorldState().containsKey(contract.getPendingPaymentKey(stub, importerMSP, "trade-2")));
+            assertEquals(Arrays.asList("trade-0"), tradeLookups);
+
+            // Once all steps have run, migrating does nothing
+            assertEquals(0, new JSONObject(contract.getMigrationBatch(ctx, 2)).getJSONArray(Constants.KeysKey).length());
+            batch = new JSONObject(contract.migrate(ctx, contract.getMigrationBatch(ctx, 2)));
+            assertEquals(2, batch.getInt(Constants.VersionKey));
+            assertEquals(0, batch.getInt(Constants.MigratedKey));
+            assertFalse(batch.getBoolean(Constants.MoreKey));
+        }
+
+        @Test
+        public void RecordsExport() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            Context ctx = mock(Context.class);
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(Constants.importerOrgMsp);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_BANKER_ROLE);
+            stub.setFunction("exportRecords");
+
+            for (int i = 1; i <= 5; i++) {
+                LetterOfCredit lc = new LetterOfCredit("lc-" + i, expirationDate, exporterMSP, amount, new LCDoc[]{}, Constants.ISSUED);
+                stub.putState(contract.getLCKey(stub, "trade-" + i), lc.toJSONString().getBytes(UTF_8));
+                stub.putState(contract.getPaymentKey(stub, "trade-" + i), Double.toString(i * 100.0).getBytes(UTF_8));
+            }
+            stub.putState(contract.getAccountKey(stub, importerMSP), new BankAccount(importerMSP, importerBank, importerBalance).toJSONString().getBytes(UTF_8));
+            stub.putState(contract.getEscrowKey(stub, "trade-1"), new BankAccount(importerMSP, importerBank, amount).toJSONString().getBytes(UTF_8));
+
+            // Page through the L/Cs, resuming from each bookmark
+            contract.beforeTransaction(ctx);    // ACL check
+            ArrayList<String> tradeIds = new ArrayList<String>();
+            String bookmark = "";
+            int pages = 0;
+            do {
+                JSONObject page = new JSONObject(contract.exportRecords(ctx, "LetterOfCredit", 2, bookmark));
+                JSONArray records = page.getJSONArray(Constants.RecordsKey);
+                for (int i = 0; i < records.length(); i++) {
+                    tradeIds.add(records.getJSONObject(i).getString(Constants.IdKey));
+                    assertEquals(exporterMSP, records.getJSONObject(i).getJSONObject(Constants.ValueKey).getString("beneficiary"));
+                }
+                bookmark = page.getString(Constants.BookmarkKey);
+                pages++;
+            } while (!bookmark.isEmpty());
+            assertEquals(3, pages);
+            assertEquals(Arrays.asList("trade-1", "trade-2", "trade-3", "trade-4", "trade-5"), tradeIds);
+
+            // Payments are exported as numbers, accounts as stored
+            JSONObject payments = new JSONObject(contract.exportRecords(ctx, "Payment", 10, ""));
+            assertEquals(5, payments.getJSONArray(Constants.RecordsKey).length());
+            assertEquals(500.0, payments.getJSONArray(Constants.RecordsKey).getJSONObject(4).getDouble(Constants.ValueKey));
+            JSONObject accounts = new JSONObject(contract.exportRecords(ctx, "Account", 10, ""));
+            assertEquals(importerMSP, accounts.getJSONArray(Constants.RecordsKey).getJSONObject(0).getString(Constants.IdKey));
+            assertEquals("", accounts.getString(Constants.BookmarkKey));
+
+            // Amounts reserved for issued L/Cs are exported with the trade they are held for
+            JSONObject escrows = new JSONObject(contract.exportRecords(ctx, "Escrow", 10, ""));
+            assertEquals(1, escrows.getJSONArray(Constants.RecordsKey).length());
+            assertEquals("trade-1", escrows.getJSONArray(Constants.RecordsKey).getJSONObject(0).getString(Constants.IdKey));
+            assertEquals(amount, escrows.getJSONArray(Constants.RecordsKey).getJSONObject(0).getJSONObject(Constants.ValueKey).getDouble("balance"));
+
+            // Records kept in a private data collection are paged through as well
+            stub.putState(Constants.accountsCollectionKey, accountsCollection.getBytes(UTF_8));
+            for (int i = 1; i <= 3; i++) {
+                stub.putPrivateData(accountsCollection, contract.getPaymentKey(stub, "trade-" + i), Double.toString(i * 10.0).getBytes(UTF_8));
+            }
+            JSONObject page = new JSONObject(contract.exportRecords(ctx, "Payment", 2, ""));
+            assertEquals(2, page.getJSONArray(Constants.RecordsKey).length());
+            assertEquals(contract.getPaymentKey(stub, "trade-3"), page.getString(Constants.BookmarkKey));
+            page = new JSONObject(contract.exportRecords(ctx, "Payment", 2, page.getString(Constants.BookmarkKey)));
+            assertEquals(1, page.getJSONArray(Constants.RecordsKey).length());
+            assertEquals(30.0, page.getJSONArray(Constants.RecordsKey).getJSONObject(0).getDouble(Constants.ValueKey));
+            assertEquals("", page.getString(Constants.BookmarkKey));
+
+            // Other record types and invalid page sizes are rejected
+            ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+                contract.exportRecords(ctx, "PaymentStatus", 10, "");
+            });
+            assertEquals(RejectionCode.UNKNOWN_RECORD_TYPE, ((Rejection) thrown).getCode());
+            assertThrows(ChaincodeException.class, () -> {
+                contract.exportRecords(ctx, "LetterOfCredit", 0, "");
+            });
+
+            // Test failure when the caller is not a banker
+            when(clientIdentity.getMSPID()).thenReturn(Constants.exportingEntityOrgMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.EXPORTER_ROLE);
+            assertThrows(ChaincodeException.class, () -> {
+                contract.beforeTransaction(ctx);    // ACL check
+            });
+        }
+
+        @Test
+        public void FlightRecorderEvents() throws Exception {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            InMemoryChaincodeStub ledger = new InMemoryChaincodeStub();
+            ledger.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            ledger.putState(contract.getAccountKey(ledger, importerMSP), new BankAccount(importerMSP, importerBank, importerBalance).toJSONString().getBytes(UTF_8));
+            ledger.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject tradeObj = new JSONObject();
+                tradeObj.put(Constants.tradeAmountAttr, args.get(1).equals(tradeId) ? amount : importerBalance * 2);
+                tradeObj.put(Constants.importerMSPAttr, importerMSP);
+                tradeObj.put(Constants.exporterMSPAttr, exporterMSP);
+                tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                return new Response(Response.Status.SUCCESS, "OK", tradeObj.toString().getBytes(UTF_8));
+            });
+
+            Path recordingFile = Files.createTempFile("lc-events", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable(TransactionEvent.class);
+                recording.enable(LedgerAccessEvent.class);
+                recording.enable(ChaincodeInvocationEvent.class);
+                recording.start();
+
+                // Events are only emitted through the recording stub, which is used while the events are enabled
+                ChaincodeStub stub = RecordingChaincodeStub.wrap(ledger);
+                assertTrue(stub instanceof RecordingChaincodeStub);
+                Context ctx = mock(Context.class);
+                ClientIdentity clientIdentity = mock(ClientIdentity.class);
+                when(ctx.getStub()).thenReturn(stub);
+                when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+                when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+                when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_ROLE);
+
+                ledger.setFunction("requestLC", tradeId);
+                contract.beforeTransaction(ctx);
+                contract.requestLC(ctx, tradeId);
+                contract.afterTransaction(ctx, null);
+
+                // The runtime doesn't call 'afterTransaction' for rejected transactions, so the dispatcher ends them
+                ledger.setFunction("requestLC", "trade-2");
+                Response response = new TradeChaincode(router(contract, ctx, c -> contract.requestLC(c, "trade-2"))).invoke(ledger);
+                assertEquals(Response.Status.INTERNAL_SERVER_ERROR, response.getStatus());
+
+                recording.stop();
+                recording.dump(recordingFile);
+            }
+
+            List<RecordedEvent> transactions = new ArrayList<RecordedEvent>();
+            List<RecordedEvent> ledgerAccesses = new ArrayList<RecordedEvent>();
+            List<RecordedEvent> invocations = new ArrayList<RecordedEvent>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+                switch (event.getEventType().getName()) {
+                    case "org.trade.Transaction": transactions.add(event); break;
+                    case "org.trade.LedgerAccess": ledgerAccesses.add(event); break;
+                    case "org.trade.ChaincodeInvocation": invocations.add(event); break;
+                }
+            }
+            Files.delete(recordingFile);
+
+            assertEquals(2, transactions.size());
+            assertEquals("requestLC", transactions.get(0).getString("function"));
+            assertEquals(tradeId, transactions.get(0).getString("tradeId"));
+            assertEquals(importerMSP, transactions.get(0).getString("mspId"));
+            assertEquals("OK", transactions.get(0).getString("outcome"));
+            assertEquals("trade-2", transactions.get(1).getString("tradeId"));
+            assertEquals(RejectionCode.INSUFFICIENT_BALANCE.name(), transactions.get(1).getString("outcome"));
+
+            assertEquals(1, ledgerAccesses.stream().filter(event -> event.getString("operation").equals("PUT")).count());
+            RecordedEvent lcWrite = ledgerAccesses.stream().filter(event -> event.getString("operation").equals("PUT")).findFirst().get();
+            assertEquals(contract.getLCKey(ledger, tradeId), lcWrite.getString("key"));
+            assertEquals(ledger.getWorldState().get(contract.getLCKey(ledger, tradeId)).length, lcWrite.getLong("size"));
+
+            assertEquals(2, invocations.size());
+            assertEquals(tradeContractId, invocations.get(0).getString("chaincode"));
+            assertEquals(Constants.getTradeFunc, invocations.get(0).getString("function"));
+            assertEquals("", invocations.get(0).getString("channel"));
+            assertEquals((Constants.getTradeFunc + tradeId).length(), invocations.get(0).getLong("requestSize"));
+            assertEquals(Response.Status.SUCCESS.getCode(), invocations.get(0).getInt("status"));
+        }
+
+        @Test
+        public void TraceSpans() {
+            LetterOfCreditContract contract = new LetterOfCreditContract();
+            InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+            stub.putState(Constants.tradeContractIdKey, tradeContractId.getBytes(UTF_8));
+            stub.putState(contract.getAccountKey(stub, importerMSP), new BankAccount(importerMSP, importerBank, importerBalance).toJSONString().getBytes(UTF_8));
+            stub.setInvoker((chaincodeName, args, channel) -> {
+                JSONObject tradeObj = new JSONObject();
+                tradeObj.put(Constants.tradeAmountAttr, args.get(1).equals(tradeId) ? amount : importerBalance * 2);
+                tradeObj.put(Constants.importerMSPAttr, importerMSP);
+                tradeObj.put(Constants.exporterMSPAttr, exporterMSP);
+                tradeObj.put(Constants.tradeStatusAttr, Constants.ACCEPTED);
+                return new Response(Response.Status.SUCCESS, "OK", tradeObj.toString().getBytes(UTF_8));
+            });
+            String clientTraceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+            String clientSpanId = "00f067aa0ba902b7";
+            HashMap<String, byte[]> transientData = new HashMap<String, byte[]>();
+            transientData.put(Constants.traceparentKey, ("00-" + clientTraceId + "-" + clientSpanId + "-01").getBytes(UTF_8));
+            stub.setTransient(transientData);
+            Context ctx = mock(Context.class);
+            ClientIdentity clientIdentity = mock(ClientIdentity.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getClientIdentity()).thenReturn(clientIdentity);
+            when(clientIdentity.getMSPID()).thenReturn(importerMSP);
+            when(clientIdentity.getAttributeValue(AccessControlUtils.BUSINESS_ROLE_ATTR)).thenReturn(Constants.IMPORTER_ROLE);
+
+            List<Span> spans = Collections.synchronizedList(new ArrayList<Span>());
+            Tracer.setExporter(spans::add);
+            try {
+                stub.setFunction("requestLC", tradeId);
+                contract.beforeTransaction(ctx);
+                // A rejection that isn't thrown out of the transaction leaves it running
+                RejectionCode.LC_NOT_FOUND.reject(tradeId);
+                contract.requestLC(ctx, tradeId);
+                contract.afterTransaction(ctx, null);
+
+                // Spans end innermost first: invocation, lookup, transaction
+                assertEquals(3, spans.size());
+                Span invocation = spans.get(0);
+                Span lookup = spans.get(1);
+                Span transaction = spans.get(2);
+                assertEquals(Span.Kind.SERVER, transaction.getKind());
+                assertEquals("requestLC", transaction.getName());
+                assertEquals(clientTraceId, transaction.getTraceId());
+                assertEquals(clientSpanId, transaction.getParentSpanId());
+                assertEquals(tradeId, transaction.getAttributes().get("trade.id"));
+                assertEquals("OK", transaction.getStatus());
+                // Validation stage timings are recorded on the transaction span
+                assertTrue(transaction.getAttributes().containsKey("validation.remote.us"));
+                assertFalse(transaction.getAttributes().containsKey("validation.rejected"));
+                assertEquals(Span.Kind.INTERNAL, lookup.getKind());
+                assertEquals("getTrade", lookup.getName());
+                assertEquals(transaction.getSpanId(), lookup.getParentSpanId());
+                assertEquals(Span.Kind.CLIENT, invocation.getKind());
+                assertEquals(lookup.getSpanId(), invocation.getParentSpanId());
+                assertEquals(tradeContractId, invocation.getAttributes().get("peer.chaincode"));
+                // The callee derives its parent span ID from the transaction ID, channel, function and arguments
+                assertEquals(Tracer.invocationSpanId(stub.getTxId(), stub.getChannelId(), Arrays.asList(Constants.getTradeFunc, tradeId)), invocation.getSpanId());
+                assertTrue(transaction.getStartTimeUnixNano() <= invocation.getStartTimeUnixNano());
+                assertTrue(invocation.getEndTimeUnixNano() <= transaction.getEndTimeUnixNano());
+                JSONObject exported = new JSONObject(transaction.toJSONString());
+                assertEquals(clientTraceId, exported.getString("traceId"));
+                assertEquals("SERVER", exported.getString("kind"));
+
+                // A rejection ends the transaction span with its code; without a traceparent the trace ID comes from the transaction ID
+                spans.clear();
+                stub.setTransient(new HashMap<String, byte[]>());
+                stub.setFunction("requestLC", "trade-2");
+                new TradeChaincode(router(contract, ctx, c -> contract.requestLC(c, "trade-2"))).invoke(stub);
+                transaction = spans.stream().filter(span -> span.getKind() == Span.Kind.SERVER).findFirst().get();
+                assertEquals("ERROR", transaction.getStatus());
+                assertEquals(RejectionCode.INSUFFICIENT_BALANCE.name(), transaction.getAttributes().get("outcome"));
+                assertEquals("REMOTE", transaction.getAttributes().get("validation.rejected"));
+                assertEquals("", transaction.getParentSpanId());
+                assertEquals(Tracer.traceId(stub), transaction.getTraceId());
+                assertEquals(3, spans.size());
+
+                // Failures other than rejections have no code in their payload
+                spans.clear();
+                stub.setFunction("requestLC", tradeId);
+                new TradeChaincode(router(contract, ctx, c -> {
+                    throw new IllegalStateException();
+                })).invoke(stub);
+                assertEquals(1, spans.size());
+                assertEquals(TradeChaincode.ERROR, spans.get(0).getAttributes().get("outcome"));
+            } finally {
+                Tracer.setExporter(FileSpanExporter.fromEnvironment());
+            }
+
+            // Known answers shared with the trade and shipment contracts' tracing specs
+            assertEquals("f720cc56d31bbd4b", Tracer.invocationSpanId("tx1", "tradechannel", Arrays.asList("getTrade", "trade-1")));
+            assertEquals("7762545a9be48362", Tracer.invocationSpanId("tx1", "shippingchannel", Arrays.asList("getShipmentLocation", "trade-1")));
+        }
+    }
+
+    // Stands in for the contract runtime's router, which only calls 'afterTransaction' when the transaction succeeds
+    private static Chaincode router(LetterOfCreditContract contract, Context ctx, Consumer<Context> transaction) {
+        return new Chaincode() {
+            @Override
+            public Response init(ChaincodeStub stub) {
+                return invoke(stub);
+            }
+
+            @Override
+            public Response invoke(ChaincodeStub stub) {
+                try {
+                    contract.beforeTransaction(ctx);
+                    transaction.accept(ctx);
+                    contract.afterTransaction(ctx, null);
+                    return ResponseUtils.newSuccessResponse();
+                } catch (RuntimeException e) {
+                    return ResponseUtils.newErrorResponse(e);
+                }
+            }
+        };
+    }
+
+    private static KeyModification mockModification(String txId, String value, boolean isDeleted) {
+        KeyModification modification = mock(KeyModification.class);
+        when(modification.getTxId()).thenReturn(txId);
+        when(modification.getValue()).thenReturn(value.getBytes(UTF_8));
+        when(modification.getTimestamp()).thenReturn(Instant.ofEpochSecond(Long.parseLong(txId.substring(3))));
+        when(modification.isDeleted()).thenReturn(isDeleted);
+        return modification;
+    }
+
+    private static List<KeyModification> history(ChaincodeStub stub, String key) {
+        List<KeyModification> modifications = new ArrayList<KeyModification>();
+        stub.getHistoryForKey(key).forEach(modifications::add);
+        return modifications;
     }
 
 }
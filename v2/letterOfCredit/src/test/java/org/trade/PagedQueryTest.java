@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+public final class PagedQueryTest {
+
+    @Test
+    public void ByteBudget() {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        for (int i = 0; i < 5; i++) {
+            stub.putState(new CompositeKey("Record", "r-" + i).toString(), ("{\"v\":\"0123456789\"}").getBytes(UTF_8));
+        }
+        CompositeKey partialKey = new CompositeKey("Record");
+
+        // Each record is 18 bytes, so two fit in a 40 byte budget, and the page ends before the third
+        JSONObject page = new JSONObject(PagedQuery.byPartialCompositeKey(stub, null, partialKey, 10, "").byteBudget(40).run());
+        assertEquals(2, page.getJSONArray(Constants.RecordsKey).length());
+        assertEquals(2, page.getInt(Constants.FetchedKey));
+        assertEquals(new CompositeKey("Record", "r-2").toString(), page.getString(Constants.BookmarkKey));
+
+        page = new JSONObject(PagedQuery.byPartialCompositeKey(stub, null, partialKey, 10, page.getString(Constants.BookmarkKey)).byteBudget(40).run());
+        assertEquals(2, page.getJSONArray(Constants.RecordsKey).length());
+        page = new JSONObject(PagedQuery.byPartialCompositeKey(stub, null, partialKey, 10, page.getString(Constants.BookmarkKey)).byteBudget(40).run());
+        assertEquals(1, page.getJSONArray(Constants.RecordsKey).length());
+        assertEquals("", page.getString(Constants.BookmarkKey));
+
+        // A record larger than the budget still makes a page of its own
+        page = new JSONObject(PagedQuery.byPartialCompositeKey(stub, null, partialKey, 10, "").byteBudget(1).run());
+        assertEquals(1, page.getJSONArray(Constants.RecordsKey).length());
+        assertEquals(new CompositeKey("Record", "r-1").toString(), page.getString(Constants.BookmarkKey));
+
+        ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+            PagedQuery.byPartialCompositeKey(stub, null, partialKey, 0, "");
+        });
+        assertEquals(RejectionCode.INVALID_PAGE_SIZE, ((Rejection) thrown).getCode());
+    }
+
+    @Test
+    public void FilterAndProjection() {
+        InMemoryChaincodeStub stub = new InMemoryChaincodeStub();
+        String collection = "records";
+        for (int i = 0; i < 5; i++) {
+            stub.putPrivateData(collection, new CompositeKey("Record", "r-" + i).toString(), Integer.toString(i).getBytes(UTF_8));
+        }
+
+        // Filtered records count as fetched, and private data pages resume from the key following the page
+        PagedQuery query = PagedQuery.byPartialCompositeKey(stub, collection, new CompositeKey("Record"), 3, null)
+                                     .filter((record) -> Integer.parseInt(new String(record.getValue(), UTF_8)) % 2 == 0)
+                                     .projection((record) -> "\"" + CompositeKey.parseCompositeKey(record.getKey()).getAttributes().get(0) + "\"");
+        JSONObject page = new JSONObject(query.run());
+        assertEquals(Arrays.asList("r-0", "r-2"), page.getJSONArray(Constants.RecordsKey).toList());
+        assertEquals(3, page.getInt(Constants.FetchedKey));
+        assertEquals(new CompositeKey("Record", "r-3").toString(), page.getString(Constants.BookmarkKey));
+
+        // Records projected to null are left out
+        page = new JSONObject(PagedQuery.byPartialCompositeKey(stub, collection, new CompositeKey("Record"), 3, page.getString(Constants.BookmarkKey))
+                                        .projection((record) -> record.getKey().contains("r-3") ? null : new String(record.getValue(), UTF_8))
+                                        .run());
+        assertEquals(Arrays.asList(4), page.getJSONArray(Constants.RecordsKey).toList());
+        assertEquals(2, page.getInt(Constants.FetchedKey));
+        assertEquals("", page.getString(Constants.BookmarkKey));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void IteratorClosed() throws Exception {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        KeyValue record = mock(KeyValue.class);
+        when(record.getKey()).thenReturn("r-0");
+        when(record.getValue()).thenReturn("{\"v\":\"0123456789\"}".getBytes(UTF_8));
+        QueryResultsIteratorWithMetadata<KeyValue> results = mock(QueryResultsIteratorWithMetadata.class);
+        when(results.iterator()).thenAnswer((invocation) -> Arrays.asList(record, record).iterator());
+        String query = "{\"selector\":{}}";
+        when(stub.getQueryResultWithPagination(query, 2, "")).thenReturn(results);
+
+        // Rich query bookmarks can't resume mid-page, so a page over the budget is rejected
+        ChaincodeException thrown = assertThrows(ChaincodeException.class, () -> {
+            PagedQuery.byRichQuery(stub, query, 2, "").byteBudget(20).run();
+        });
+        assertEquals(RejectionCode.PAGE_TOO_LARGE, ((Rejection) thrown).getCode());
+        verify(results).close();
+
+        assertThrows(IllegalStateException.class, () -> {
+            PagedQuery.byRichQuery(stub, query, 2, "").projection((kv) -> {
+                throw new IllegalStateException("Projection failed");
+            }).run();
+        });
+        verify(results, times(2)).close();
+    }
+}
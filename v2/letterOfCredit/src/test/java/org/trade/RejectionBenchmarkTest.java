@@ -0,0 +1,103 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.hyperledger.fabric.shim.ChaincodeException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/*
+    Compares the cost of rejecting transactions with message-concatenating ChaincodeExceptions (the previous behaviour)
+    against coded, stackless Rejections. Rejections are thrown from below a stack as deep as the one the contract
+    runs under in the peer, the way the contract routing layer would see them.
+    Run with 'gradle benchmark'.
+*/
+@Tag("benchmark")
+public final class RejectionBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int ITERATIONS = 200_000;
+    private static final int STACK_DEPTH = 64;
+
+    private interface Rejecter {
+        RuntimeException reject(int i);
+    }
+
+    // The mix of rejections seen on a busy payment channel
+    private static final Rejecter LEGACY = (i) -> {
+        String tradeId = "trade-" + (i & 1023);
+        switch (i & 3) {
+            case 0:
+                return new ChaincodeException("Payment for '" + tradeId + "' already made in full: " + 50000.5);
+            case 1:
+                return new ChaincodeException("L/C for trade '" + tradeId + "' has not been issued");
+            case 2:
+                return new ChaincodeException("'" + tradeId + "' does not belong to importer " + Constants.exporterOrgMsp);
+            default:
+                return new ChaincodeException("'" + tradeId + "' requires amount " + 50000.5 + " but importer balance is only " + 100.0);
+        }
+    };
+
+    private static final Rejecter CODED = (i) -> {
+        String tradeId = "trade-" + (i & 1023);
+        switch (i & 3) {
+            case 0:
+                return RejectionCode.PAYMENT_COMPLETE.reject(tradeId, 50000.5);
+            case 1:
+                return RejectionCode.LC_NOT_ISSUED.reject(tradeId);
+            case 2:
+                return RejectionCode.NOT_TRADE_IMPORTER.reject(tradeId, Constants.exporterOrgMsp);
+            default:
+                return RejectionCode.INSUFFICIENT_BALANCE.reject(tradeId, 50000.5, 100.0);
+        }
+    };
+
+    @Test
+    public void RejectionHeavyWorkload() {
+        // Rejections must not carry a stack trace, but must render the same messages as before
+        for (int i = 0; i < 4; i++) {
+            RuntimeException coded = CODED.reject(i);
+            assertEquals(0, coded.getStackTrace().length);
+            assertEquals(LEGACY.reject(i).getMessage(), coded.getMessage());
+        }
+
+        run("ChaincodeException, message rendered", LEGACY, true, WARMUP_ITERATIONS);
+        run("Rejection, code only", CODED, false, WARMUP_ITERATIONS);
+        run("Rejection, message rendered", CODED, true, WARMUP_ITERATIONS);
+
+        double legacy = run("ChaincodeException, message rendered", LEGACY, true, ITERATIONS);
+        double codeOnly = run("Rejection, code only", CODED, false, ITERATIONS);
+        double rendered = run("Rejection, message rendered", CODED, true, ITERATIONS);
+        System.out.println(String.format("Speedup: %.1fx (code only), %.1fx (message rendered)", legacy / codeOnly, legacy / rendered));
+    }
+
+    private static double run(String label, Rejecter rejecter, boolean renderMessage, int iterations) {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            try {
+                throwFromDepth(rejecter, i, STACK_DEPTH);
+            } catch (Rejection e) {
+                checksum += renderMessage ? e.getMessage().length() : e.getCode().ordinal();
+            } catch (ChaincodeException e) {
+                checksum += e.getMessage().length();
+            }
+        }
+        double nsPerOp = (double) (System.nanoTime() - start) / iterations;
+        if (iterations == ITERATIONS) {
+            System.out.println(String.format("%-40s %8.1f ns/rejection (checksum %d)", label, nsPerOp, checksum));
+        }
+        return nsPerOp;
+    }
+
+    private static void throwFromDepth(Rejecter rejecter, int i, int depth) {
+        if (depth == 0) {
+            throw rejecter.reject(i);
+        }
+        throwFromDepth(rejecter, i, depth - 1);
+    }
+}
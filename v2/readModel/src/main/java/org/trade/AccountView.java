@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+/*
+    Bank account balance of an organization, as last written to the ledger.
+*/
+
+public class AccountView {
+
+    private String ownerMSP;
+
+    private String bank;
+
+    private double balance;
+
+    private long lastBlock;
+
+    public AccountView() {
+    }
+
+    public AccountView(String ownerMSP, String bank, double balance, long lastBlock) {
+        this.ownerMSP = ownerMSP;
+        this.bank = bank;
+        this.balance = balance;
+        this.lastBlock = lastBlock;
+    }
+
+    public String getOwnerMSP() {
+        return ownerMSP;
+    }
+
+    public void setOwnerMSP(String ownerMSP) {
+        this.ownerMSP = ownerMSP;
+    }
+
+    public String getBank() {
+        return bank;
+    }
+
+    public void setBank(String bank) {
+        this.bank = bank;
+    }
+
+    public double getBalance() {
+        return balance;
+    }
+
+    public void setBalance(double balance) {
+        this.balance = balance;
+    }
+
+    public long getLastBlock() {
+        return lastBlock;
+    }
+
+    public void setLastBlock(long lastBlock) {
+        this.lastBlock = lastBlock;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    The part of a committed block the read model needs: its number, and for each transaction the chaincode it
+    invoked, whether the peer validated it, and the keys it wrote to world state.
+*/
+
+public class Block {
+
+    private long number;
+
+    private List<Transaction> transactions = new ArrayList<Transaction>();
+
+    public Block() {
+    }
+
+    public Block(long number) {
+        this.number = number;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public void setNumber(long number) {
+        this.number = number;
+    }
+
+    public List<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    public void setTransactions(List<Transaction> transactions) {
+        this.transactions = transactions;
+    }
+
+    public Transaction addTransaction(String txId, String chaincode, boolean valid) {
+        Transaction tx = new Transaction();
+        tx.setTxId(txId);
+        tx.setChaincode(chaincode);
+        tx.setValid(valid);
+        transactions.add(tx);
+        return tx;
+    }
+
+    public static class Transaction {
+
+        private String txId;
+
+        private String chaincode;
+
+        private boolean valid;
+
+        private List<Write> writes = new ArrayList<Write>();
+
+        public String getTxId() {
+            return txId;
+        }
+
+        public void setTxId(String txId) {
+            this.txId = txId;
+        }
+
+        public String getChaincode() {
+            return chaincode;
+        }
+
+        public void setChaincode(String chaincode) {
+            this.chaincode = chaincode;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public void setValid(boolean valid) {
+            this.valid = valid;
+        }
+
+        public List<Write> getWrites() {
+            return writes;
+        }
+
+        public void setWrites(List<Write> writes) {
+            this.writes = writes;
+        }
+
+        public Transaction put(String key, byte[] value) {
+            writes.add(new Write(key, value, false));
+            return this;
+        }
+
+        public Transaction delete(String key) {
+            writes.add(new Write(key, null, true));
+            return this;
+        }
+    }
+
+    // A single world state write. Values are base64 encoded in the JSON form of a block.
+    public static class Write {
+
+        private String key;
+
+        private byte[] value;
+
+        private boolean isDelete;
+
+        public Write() {
+        }
+
+        public Write(String key, byte[] value, boolean isDelete) {
+            this.key = key;
+            this.value = value;
+            this.isDelete = isDelete;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public void setValue(byte[] value) {
+            this.value = value;
+        }
+
+        public boolean getIsDelete() {
+            return isDelete;
+        }
+
+        public void setIsDelete(boolean isDelete) {
+            this.isDelete = isDelete;
+        }
+    }
+}
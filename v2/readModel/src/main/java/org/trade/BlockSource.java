@@ -0,0 +1,23 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+    A stream of committed blocks, delivered in block number order.
+    A peer event service or gateway block listener would implement this by starting its subscription at the requested
+    block number; FileBlockSource replays blocks recorded in a file.
+*/
+
+public interface BlockSource extends Closeable {
+
+    // Positions the stream so that the first block returned is the given block, or the first one after it
+    void start(long fromBlock) throws IOException;
+
+    // Returns the next block, or null once the stream is exhausted
+    Block next() throws IOException;
+}
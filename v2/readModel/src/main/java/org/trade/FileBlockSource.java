@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.owlike.genson.Genson;
+
+/*
+    Block stream stand-in for testing and offline replays: a file holding one JSON-encoded Block per line,
+    in increasing block number order. Blank lines are ignored.
+*/
+
+public class FileBlockSource implements BlockSource {
+
+    private static final Genson genson = new Genson();
+
+    private final Path file;
+
+    private BufferedReader reader;
+
+    private long fromBlock;
+
+    private long lastBlock = -1;
+
+    public FileBlockSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void start(long fromBlock) throws IOException {
+        close();
+        this.fromBlock = fromBlock;
+        this.lastBlock = -1;
+        this.reader = Files.newBufferedReader(file, UTF_8);
+    }
+
+    @Override
+    public Block next() throws IOException {
+        if (reader == null) {
+            throw new IllegalStateException("Block source not started");
+        }
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            Block block = genson.deserialize(line, Block.class);
+            if (block.getNumber() <= lastBlock) {
+                throw new IOException("Block " + block.getNumber() + " out of order in " + file + ", after block " + lastBlock);
+            }
+            lastBlock = block.getNumber();
+            if (block.getNumber() >= fromBlock) {
+                return block;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    // Records a block at the end of a block file, as a test fixture or for capturing a live stream
+    public static void append(Path file, Block block) throws IOException {
+        Files.write(file, (genson.serialize(block) + "\n").getBytes(UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
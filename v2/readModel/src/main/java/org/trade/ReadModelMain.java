@@ -0,0 +1,76 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import com.owlike.genson.GensonBuilder;
+
+/*
+    Command line entry point:
+        project <block file> <journal> [chaincode ...]   Projects the blocks after the journal's checkpoint
+        query <journal> trade <tradeId>
+        query <journal> lcStatus|elStatus|beneficiary|approver <value>
+        query <journal> expiring <from> <to>             Dates as MM/dd/yyyy or yyyy-MM-dd
+*/
+
+public final class ReadModelMain {
+
+    private ReadModelMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals("project")) {
+            try (ReadModelStore store = ReadModelStore.open(Paths.get(args[2])); FileBlockSource source = new FileBlockSource(Paths.get(args[1]))) {
+                ReadModelProjector projector = args.length > 3
+                                                ? new ReadModelProjector(store, Arrays.asList(args).subList(3, args.length), ReadModelProjector.DEFAULT_CHECKPOINT_INTERVAL)
+                                                : new ReadModelProjector(store);
+                projector.run(source);
+            }
+            return;
+        }
+        if (args.length >= 4 && args[0].equals("query")) {
+            try (ReadModelStore store = ReadModelStore.open(Paths.get(args[1]))) {
+                System.out.println(new GensonBuilder().setSkipNull(true).useIndentation(true).create().serialize(query(store, args)));
+            }
+            return;
+        }
+        System.out.println("Usage: project <block file> <journal> [chaincode ...]");
+        System.out.println("       query <journal> trade <tradeId>");
+        System.out.println("       query <journal> lcStatus|elStatus|beneficiary|approver <value>");
+        System.out.println("       query <journal> expiring <from> <to>");
+        System.exit(1);
+    }
+
+    private static Object query(ReadModelStore store, String[] args) {
+        String value = args[3];
+        switch (args[2]) {
+            case "trade":
+                return store.getTrade(value);
+            case "lcStatus":
+                return store.getTradesByLCStatus(value);
+            case "elStatus":
+                return store.getTradesByELStatus(value);
+            case "beneficiary":
+                return store.getTradesByBeneficiary(value);
+            case "approver":
+                return store.getTradesByApprover(value);
+            case "expiring":
+                return store.getTradesExpiringBetween(date(value), date(args.length > 4 ? args[4] : value));
+            default:
+                throw new IllegalArgumentException("Unknown query '" + args[2] + "'");
+        }
+    }
+
+    private static LocalDate date(String date) {
+        LocalDate parsed = TradeView.parseDate(date);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Invalid date '" + date + "'");
+        }
+        return parsed;
+    }
+}
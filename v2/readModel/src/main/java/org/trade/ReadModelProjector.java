@@ -0,0 +1,215 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.owlike.genson.Genson;
+
+/*
+    Projects the world state writes of the letterOfCredit and exportLicense contracts into a ReadModelStore.
+    Only transactions the peers validated are projected, and every write carries the full record, so replaying
+    blocks already projected is harmless. L/Cs that refer to a document set are resolved against the sets projected so
+    far; a transaction writes the set ahead of the L/C, as the peer orders writes by key.
+    Account and payment records kept in a private data collection only reach the block as hashes, and are not projected.
+*/
+
+public class ReadModelProjector {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    private static final Genson genson = new Genson();
+
+    private final ReadModelStore store;
+
+    private final Set<String> chaincodes;
+
+    private final int checkpointInterval;
+
+    public ReadModelProjector(ReadModelStore store, Collection<String> chaincodes, int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive");
+        }
+        this.store = store;
+        this.chaincodes = new HashSet<String>(chaincodes);
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public ReadModelProjector(ReadModelStore store) {
+        this(store, Arrays.asList("letterOfCredit", "exportLicense"), DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    // Projects blocks from the one after the last checkpoint until the source is exhausted, checkpointing every
+    // 'checkpointInterval' blocks and at the end. Returns the number of blocks projected.
+    public long run(BlockSource source) throws IOException {
+        long lastBlock = store.getCheckpoint();
+        long projected = 0;
+        source.start(lastBlock + 1);
+        Block block;
+        while ((block = source.next()) != null) {
+            if (block.getNumber() <= lastBlock) {
+                continue;
+            }
+            apply(block);
+            lastBlock = block.getNumber();
+            if (++projected % checkpointInterval == 0) {
+                store.checkpoint(lastBlock);
+            }
+        }
+        if (lastBlock > store.getCheckpoint()) {
+            store.checkpoint(lastBlock);
+        }
+        System.out.println("Projected " + projected + " blocks, checkpoint at block " + store.getCheckpoint());
+        return projected;
+    }
+
+    public void apply(Block block) {
+        for (Block.Transaction tx : block.getTransactions()) {
+            if (!tx.isValid() || !chaincodes.contains(tx.getChaincode())) {
+                continue;
+            }
+            for (Block.Write write : tx.getWrites()) {
+                try {
+                    apply(block.getNumber(), tx.getTxId(), write);
+                } catch (RuntimeException e) {
+                    // A record we can't decode mustn't stall the projection; log it and move on
+                    System.out.println("Skipping write to '" + printable(write.getKey()) + "' in block " + block.getNumber() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void apply(long blockNumber, String txId, Block.Write write) {
+        // Composite keys are laid out as \u0000<object type>\u0000<attribute>\u0000
+        String key = write.getKey();
+        if (key == null || key.isEmpty() || key.charAt(0) != '\u0000') {
+            return;
+        }
+        String[] parts = key.substring(1).split("\u0000");
+        if (parts.length < 2) {
+            return;
+        }
+        String objectType = parts[0];
+        String id = parts[1];
+        byte[] value = write.getIsDelete() ? null : write.getValue();
+
+        if (objectType.equals("Account")) {
+            if (value != null) {
+                Map<String, Object> account = decode(value);
+                store.putAccount(new AccountView(id, (String) account.get("bank"), toDouble(account.get("balance")), blockNumber));
+            }
+            return;
+        }
+        if (objectType.equals("LCDocs")) {
+            if (value != null) {
+                store.putDocumentSet(id, documentTypes(decodeArray(value)));
+            }
+            return;
+        }
+
+        TradeView trade = store.getTrade(id);
+        if (trade == null) {
+            trade = new TradeView(id);
+        }
+        switch (objectType) {
+            case "LetterOfCredit":
+                trade.clearLC();
+                if (value != null) {
+                    Map<String, Object> lc = decode(value);
+                    trade.setLcId((String) lc.get("id"));
+                    trade.setLcStatus((String) lc.get("status"));
+                    trade.setBeneficiary((String) lc.get("beneficiary"));
+                    trade.setLcAmount(toDouble(lc.get("amount")));
+                    trade.setLcExpirationDate((String) lc.get("expirationDate"));
+                    String documentsRef = (String) lc.get("documentsRef");
+                    if (documentsRef == null) {
+                        trade.setRequiredDocs(documentTypes(lc.get("requiredDocs")));
+                    } else {
+                        trade.setRequiredDocs(store.getDocumentSet(documentsRef));
+                        if (trade.getRequiredDocs() == null) {
+                            System.out.println("L/C for trade '" + id + "' refers to document set '" + documentsRef + "', which hasn't been projected");
+                        }
+                    }
+                }
+                break;
+            case "ExportLicense":
+                trade.clearEL();
+                if (value != null) {
+                    Map<String, Object> el = decode(value);
+                    trade.setElId((String) el.get("id"));
+                    trade.setElStatus((String) el.get("status"));
+                    trade.setExporter((String) el.get("exporter"));
+                    trade.setCarrier((String) el.get("carrier"));
+                    trade.setApprover((String) el.get("approver"));
+                    trade.setElExpirationDate((String) el.get("expirationDate"));
+                }
+                break;
+            case "Payment":
+                trade.setAmountPaid(value == null ? null : Double.valueOf(new String(value, UTF_8)));
+                break;
+            case "PaymentStatus":
+                trade.setPaymentStatus(value == null ? null : new String(value, UTF_8));
+                break;
+            case "Escrow":
+                trade.setEscrowBalance(value == null ? null : toDouble(decode(value).get("balance")));
+                break;
+            case "PaymentObligation":
+                // Keyed by trade and paying transaction, and deleted once settled
+                if (parts.length < 3) {
+                    return;
+                }
+                if (value == null) {
+                    trade.getPaymentObligations().remove(parts[2]);
+                } else {
+                    trade.getPaymentObligations().put(parts[2], toDouble(decode(value).get("amount")));
+                }
+                break;
+            default:
+                return;
+        }
+        trade.setLastBlock(blockNumber);
+        trade.setLastTxId(txId);
+        store.putTrade(trade);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> decode(byte[] value) {
+        return genson.deserialize(new String(value, UTF_8), Map.class);
+    }
+
+    private static Object decodeArray(byte[] value) {
+        return genson.deserialize(new String(value, UTF_8), List.class);
+    }
+
+    // Document types of a JSON array of L/C documents
+    @SuppressWarnings("unchecked")
+    private static String[] documentTypes(Object value) {
+        if (value == null) {
+            return null;
+        }
+        List<Object> docs = (List<Object>) value;
+        String[] documentTypes = new String[docs.size()];
+        for (int i = 0; i < documentTypes.length; i++) {
+            documentTypes[i] = (String) ((Map<String, Object>) docs.get(i)).get("docType");
+        }
+        return documentTypes;
+    }
+
+    private static double toDouble(Object number) {
+        return number == null ? 0 : ((Number) number).doubleValue();
+    }
+
+    private static String printable(String key) {
+        return key == null ? null : key.replace('\u0000', '~');
+    }
+}
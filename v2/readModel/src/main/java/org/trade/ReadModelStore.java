@@ -0,0 +1,480 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.owlike.genson.Genson;
+import com.owlike.genson.GensonBuilder;
+import com.owlike.genson.JsonBindingException;
+import com.owlike.genson.stream.JsonStreamException;
+
+/*
+    Embedded store for the read model: trade and account views held in memory, with secondary indexes on
+    L/C status, E/L status, beneficiary, approver and expiration date. L/C document sets are kept by reference, so that
+    L/Cs written after the set can be resolved.
+
+    Durability comes from an append-only journal of JSON lines. Changes made since the last checkpoint are appended
+    in one write followed by a checkpoint line carrying the last projected block number, and the journal is synced.
+    On open, the journal is replayed up to its last checkpoint line; anything after it (a torn write, or changes whose
+    checkpoint never made it to disk) is truncated, and projection resumes from the block after the checkpoint.
+    Once the journal holds several times as many lines as there are live views, it is rewritten as a snapshot.
+*/
+
+public class ReadModelStore implements Closeable {
+
+    public static final long NO_CHECKPOINT = -1;
+
+    private static final int COMPACTION_FACTOR = 4;
+
+    private static final int MIN_COMPACTION_LINES = 1024;
+
+    private static final Genson genson = new GensonBuilder().setSkipNull(true).create();
+
+    private final Path journal;
+
+    private FileChannel journalChannel;
+
+    private long journalLines;
+
+    private long checkpoint = NO_CHECKPOINT;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, TradeView> trades = new HashMap<String, TradeView>();
+
+    private final Map<String, AccountView> accounts = new HashMap<String, AccountView>();
+
+    private final Map<String, String[]> documentSets = new HashMap<String, String[]>();
+
+    private final Map<String, NavigableSet<String>> byLCStatus = new HashMap<String, NavigableSet<String>>();
+
+    private final Map<String, NavigableSet<String>> byELStatus = new HashMap<String, NavigableSet<String>>();
+
+    private final Map<String, NavigableSet<String>> byBeneficiary = new HashMap<String, NavigableSet<String>>();
+
+    private final Map<String, NavigableSet<String>> byApprover = new HashMap<String, NavigableSet<String>>();
+
+    private final TreeMap<LocalDate, NavigableSet<String>> byExpiry = new TreeMap<LocalDate, NavigableSet<String>>();
+
+    // Changes not yet journaled, keyed so that only the latest change to a view is written
+    private final Map<String, JournalEntry> pending = new LinkedHashMap<String, JournalEntry>();
+
+    private ReadModelStore(Path journal) {
+        this.journal = journal;
+    }
+
+    public static ReadModelStore open(Path journal) throws IOException {
+        ReadModelStore store = new ReadModelStore(journal);
+        long validLength = Files.exists(journal) ? store.replay(Files.readAllBytes(journal)) : 0;
+        store.journalChannel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (store.journalChannel.size() > validLength) {
+            System.out.println("Discarding " + (store.journalChannel.size() - validLength) + " journal bytes written after the last checkpoint");
+            store.journalChannel.truncate(validLength);
+        }
+        store.journalChannel.position(validLength);
+        return store;
+    }
+
+    // Applies journal lines in checkpointed groups, and returns the length of the journal up to its last checkpoint
+    private long replay(byte[] journalBytes) {
+        List<JournalEntry> group = new ArrayList<JournalEntry>();
+        long validLength = 0;
+        long lines = 0;
+        int start = 0;
+        for (int i = 0; i < journalBytes.length; i++) {
+            if (journalBytes[i] != '\n') {
+                continue;
+            }
+            JournalEntry entry;
+            try {
+                entry = genson.deserialize(new String(journalBytes, start, i - start, UTF_8), JournalEntry.class);
+            } catch (JsonBindingException | JsonStreamException e) {
+                break;
+            }
+            start = i + 1;
+            lines++;
+            if (entry.getCheckpoint() == null) {
+                group.add(entry);
+                continue;
+            }
+            for (JournalEntry change : group) {
+                apply(change);
+            }
+            group.clear();
+            checkpoint = entry.getCheckpoint();
+            validLength = start;
+            journalLines = lines;
+        }
+        return validLength;
+    }
+
+    public long getCheckpoint() {
+        lock.readLock().lock();
+        try {
+            return checkpoint;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Journals every change made since the previous checkpoint, and records the block they were projected up to
+    public void checkpoint(long blockNumber) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            for (JournalEntry change : pending.values()) {
+                writeLine(lines, change);
+            }
+            JournalEntry marker = new JournalEntry();
+            marker.setCheckpoint(blockNumber);
+            writeLine(lines, marker);
+            journalChannel.write(ByteBuffer.wrap(lines.toByteArray()));
+            journalChannel.force(false);
+            journalLines += pending.size() + 1;
+            pending.clear();
+            checkpoint = blockNumber;
+
+            if (journalLines > MIN_COMPACTION_LINES && journalLines > COMPACTION_FACTOR * (trades.size() + accounts.size() + documentSets.size())) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Rewrites the journal as a snapshot of the views as of the last checkpoint, replacing the old file atomically
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!pending.isEmpty()) {
+                throw new IllegalStateException("Cannot compact the journal with changes pending a checkpoint");
+            }
+            Path snapshot = journal.resolveSibling(journal.getFileName() + ".tmp");
+            long lines = 0;
+            try (FileChannel out = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                for (TradeView trade : trades.values()) {
+                    writeLine(buffer, JournalEntry.of(trade));
+                    lines++;
+                }
+                for (AccountView account : accounts.values()) {
+                    writeLine(buffer, JournalEntry.of(account));
+                    lines++;
+                }
+                for (Map.Entry<String, String[]> documentSet : documentSets.entrySet()) {
+                    writeLine(buffer, JournalEntry.of(documentSet.getKey(), documentSet.getValue()));
+                    lines++;
+                }
+                JournalEntry marker = new JournalEntry();
+                marker.setCheckpoint(checkpoint);
+                writeLine(buffer, marker);
+                out.write(ByteBuffer.wrap(buffer.toByteArray()));
+                out.force(true);
+            }
+            journalChannel.close();
+            Files.move(snapshot, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journalChannel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            journalLines = lines + 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            journalChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Updates take effect for queries immediately, and become durable at the next checkpoint
+    public void putTrade(TradeView trade) {
+        lock.writeLock().lock();
+        try {
+            JournalEntry change = trade.isEmpty() ? JournalEntry.removed(trade.getTradeId()) : JournalEntry.of(trade.copy());
+            apply(change);
+            pending.put("T" + trade.getTradeId(), change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAccount(AccountView account) {
+        lock.writeLock().lock();
+        try {
+            JournalEntry change = JournalEntry.of(account);
+            apply(change);
+            pending.put("A" + account.getOwnerMSP(), change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Document sets are never rewritten, as their reference is derived from their content
+    public void putDocumentSet(String documentsRef, String[] documentTypes) {
+        lock.writeLock().lock();
+        try {
+            JournalEntry change = JournalEntry.of(documentsRef, documentTypes.clone());
+            apply(change);
+            pending.put("D" + documentsRef, change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public TradeView getTrade(String tradeId) {
+        lock.readLock().lock();
+        try {
+            TradeView trade = trades.get(tradeId);
+            return trade == null ? null : trade.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public AccountView getAccount(String ownerMSP) {
+        lock.readLock().lock();
+        try {
+            AccountView account = accounts.get(ownerMSP);
+            return account == null ? null : new AccountView(account.getOwnerMSP(), account.getBank(), account.getBalance(), account.getLastBlock());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Returns the document types of the set, or null if it hasn't been projected
+    public String[] getDocumentSet(String documentsRef) {
+        lock.readLock().lock();
+        try {
+            String[] documentTypes = documentSets.get(documentsRef);
+            return documentTypes == null ? null : documentTypes.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTradeCount() {
+        lock.readLock().lock();
+        try {
+            return trades.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Query results are ordered by trade ID
+    public List<TradeView> getTradesByLCStatus(String status) {
+        return lookup(byLCStatus, status);
+    }
+
+    public List<TradeView> getTradesByELStatus(String status) {
+        return lookup(byELStatus, status);
+    }
+
+    public List<TradeView> getTradesByBeneficiary(String beneficiaryMSP) {
+        return lookup(byBeneficiary, beneficiaryMSP);
+    }
+
+    public List<TradeView> getTradesByApprover(String approverMSP) {
+        return lookup(byApprover, approverMSP);
+    }
+
+    // Trades whose L/C or E/L expires between the two dates, inclusive, ordered by expiration date
+    public List<TradeView> getTradesExpiringBetween(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            List<TradeView> results = new ArrayList<TradeView>();
+            NavigableSet<String> seen = new TreeSet<String>();
+            for (NavigableSet<String> tradeIds : byExpiry.subMap(from, true, to, true).values()) {
+                for (String tradeId : tradeIds) {
+                    if (seen.add(tradeId)) {
+                        results.add(trades.get(tradeId).copy());
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<TradeView> lookup(Map<String, NavigableSet<String>> index, String value) {
+        lock.readLock().lock();
+        try {
+            List<TradeView> results = new ArrayList<TradeView>();
+            NavigableSet<String> tradeIds = index.get(value);
+            if (tradeIds != null) {
+                for (String tradeId : tradeIds) {
+                    results.add(trades.get(tradeId).copy());
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(JournalEntry change) {
+        if (change.getAccount() != null) {
+            accounts.put(change.getAccount().getOwnerMSP(), change.getAccount());
+            return;
+        }
+        if (change.getDocumentsRef() != null) {
+            documentSets.put(change.getDocumentsRef(), change.getDocumentTypes());
+            return;
+        }
+        String tradeId = change.getTrade() != null ? change.getTrade().getTradeId() : change.getRemovedTrade();
+        TradeView previous = change.getTrade() != null ? trades.put(tradeId, change.getTrade()) : trades.remove(tradeId);
+        if (previous != null) {
+            index(previous, false);
+        }
+        if (change.getTrade() != null) {
+            index(change.getTrade(), true);
+        }
+    }
+
+    private void index(TradeView trade, boolean add) {
+        String tradeId = trade.getTradeId();
+        update(byLCStatus, trade.getLcStatus(), tradeId, add);
+        update(byELStatus, trade.getElStatus(), tradeId, add);
+        update(byBeneficiary, trade.getBeneficiary(), tradeId, add);
+        update(byApprover, trade.getApprover(), tradeId, add);
+        update(byExpiry, TradeView.parseDate(trade.getLcExpirationDate()), tradeId, add);
+        update(byExpiry, TradeView.parseDate(trade.getElExpirationDate()), tradeId, add);
+    }
+
+    private static <K> void update(Map<K, NavigableSet<String>> index, K value, String tradeId, boolean add) {
+        if (value == null) {
+            return;
+        }
+        if (add) {
+            index.computeIfAbsent(value, k -> new TreeSet<String>()).add(tradeId);
+            return;
+        }
+        NavigableSet<String> tradeIds = index.get(value);
+        if (tradeIds != null && tradeIds.remove(tradeId) && tradeIds.isEmpty()) {
+            index.remove(value);
+        }
+    }
+
+    private static void writeLine(ByteArrayOutputStream out, JournalEntry entry) {
+        byte[] line = genson.serialize(entry).getBytes(UTF_8);
+        out.write(line, 0, line.length);
+        out.write('\n');
+    }
+
+    // One journal line: a trade or account view, an L/C document set, the removal of a trade, or a checkpoint marker
+    public static class JournalEntry {
+
+        private TradeView trade;
+
+        private String removedTrade;
+
+        private AccountView account;
+
+        private String documentsRef;
+
+        private String[] documentTypes;
+
+        private Long checkpoint;
+
+        static JournalEntry of(TradeView trade) {
+            JournalEntry entry = new JournalEntry();
+            entry.trade = trade;
+            return entry;
+        }
+
+        static JournalEntry of(AccountView account) {
+            JournalEntry entry = new JournalEntry();
+            entry.account = account;
+            return entry;
+        }
+
+        static JournalEntry of(String documentsRef, String[] documentTypes) {
+            JournalEntry entry = new JournalEntry();
+            entry.documentsRef = documentsRef;
+            entry.documentTypes = documentTypes;
+            return entry;
+        }
+
+        static JournalEntry removed(String tradeId) {
+            JournalEntry entry = new JournalEntry();
+            entry.removedTrade = tradeId;
+            return entry;
+        }
+
+        public TradeView getTrade() {
+            return trade;
+        }
+
+        public void setTrade(TradeView trade) {
+            this.trade = trade;
+        }
+
+        public String getRemovedTrade() {
+            return removedTrade;
+        }
+
+        public void setRemovedTrade(String removedTrade) {
+            this.removedTrade = removedTrade;
+        }
+
+        public AccountView getAccount() {
+            return account;
+        }
+
+        public void setAccount(AccountView account) {
+            this.account = account;
+        }
+
+        public String getDocumentsRef() {
+            return documentsRef;
+        }
+
+        public void setDocumentsRef(String documentsRef) {
+            this.documentsRef = documentsRef;
+        }
+
+        public String[] getDocumentTypes() {
+            return documentTypes;
+        }
+
+        public void setDocumentTypes(String[] documentTypes) {
+            this.documentTypes = documentTypes;
+        }
+
+        public Long getCheckpoint() {
+            return checkpoint;
+        }
+
+        public void setCheckpoint(Long checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+}
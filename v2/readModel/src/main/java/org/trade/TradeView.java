@@ -0,0 +1,288 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+    Denormalized view of a trade, combining its L/C, E/L and payment records as last written to the ledger.
+    Fields of a document that hasn't been recorded are null.
+*/
+
+public class TradeView {
+
+    private static final DateTimeFormatter usDate = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+
+    private String tradeId;
+
+    private String lcId;
+
+    private String lcStatus;
+
+    private String beneficiary;
+
+    private Double lcAmount;
+
+    private String lcExpirationDate;
+
+    private String[] requiredDocs;
+
+    private String elId;
+
+    private String elStatus;
+
+    private String exporter;
+
+    private String carrier;
+
+    private String approver;
+
+    private String elExpirationDate;
+
+    private String paymentStatus;
+
+    private Double amountPaid;
+
+    // Balance held in the trade's escrow, from the L/C's issuance until it is paid out or returned to the importer
+    private Double escrowBalance;
+
+    // Amounts of the payments recorded for net settlement and not settled yet, by the ID of the paying transaction
+    private Map<String, Double> paymentObligations = new TreeMap<String, Double>();
+
+    private long lastBlock;
+
+    private String lastTxId;
+
+    public TradeView() {
+    }
+
+    public TradeView(String tradeId) {
+        this.tradeId = tradeId;
+    }
+
+    public TradeView copy() {
+        TradeView view = new TradeView(tradeId);
+        view.lcId = lcId;
+        view.lcStatus = lcStatus;
+        view.beneficiary = beneficiary;
+        view.lcAmount = lcAmount;
+        view.lcExpirationDate = lcExpirationDate;
+        view.requiredDocs = requiredDocs == null ? null : requiredDocs.clone();
+        view.elId = elId;
+        view.elStatus = elStatus;
+        view.exporter = exporter;
+        view.carrier = carrier;
+        view.approver = approver;
+        view.elExpirationDate = elExpirationDate;
+        view.paymentStatus = paymentStatus;
+        view.amountPaid = amountPaid;
+        view.escrowBalance = escrowBalance;
+        view.paymentObligations = new TreeMap<String, Double>(paymentObligations);
+        view.lastBlock = lastBlock;
+        view.lastTxId = lastTxId;
+        return view;
+    }
+
+    public void clearLC() {
+        lcId = null;
+        lcStatus = null;
+        beneficiary = null;
+        lcAmount = null;
+        lcExpirationDate = null;
+        requiredDocs = null;
+    }
+
+    public void clearEL() {
+        elId = null;
+        elStatus = null;
+        exporter = null;
+        carrier = null;
+        approver = null;
+        elExpirationDate = null;
+    }
+
+    // True once every record of the trade has been deleted
+    public boolean isEmpty() {
+        return lcStatus == null && elStatus == null && paymentStatus == null && amountPaid == null && escrowBalance == null && paymentObligations.isEmpty();
+    }
+
+    // Expiration dates are free text on the ledger; those that aren't MM/dd/yyyy or ISO dates are not indexed
+    public static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date.trim(), date.indexOf('/') >= 0 ? usDate : DateTimeFormatter.ISO_LOCAL_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public String getTradeId() {
+        return tradeId;
+    }
+
+    public void setTradeId(String tradeId) {
+        this.tradeId = tradeId;
+    }
+
+    public String getLcId() {
+        return lcId;
+    }
+
+    public void setLcId(String lcId) {
+        this.lcId = lcId;
+    }
+
+    public String getLcStatus() {
+        return lcStatus;
+    }
+
+    public void setLcStatus(String lcStatus) {
+        this.lcStatus = lcStatus;
+    }
+
+    public String getBeneficiary() {
+        return beneficiary;
+    }
+
+    public void setBeneficiary(String beneficiary) {
+        this.beneficiary = beneficiary;
+    }
+
+    public Double getLcAmount() {
+        return lcAmount;
+    }
+
+    public void setLcAmount(Double lcAmount) {
+        this.lcAmount = lcAmount;
+    }
+
+    public String getLcExpirationDate() {
+        return lcExpirationDate;
+    }
+
+    public void setLcExpirationDate(String lcExpirationDate) {
+        this.lcExpirationDate = lcExpirationDate;
+    }
+
+    // Document types the L/C requires, whether embedded in the L/C or stored as a document set it refers to
+    public String[] getRequiredDocs() {
+        return requiredDocs;
+    }
+
+    public void setRequiredDocs(String[] requiredDocs) {
+        this.requiredDocs = requiredDocs;
+    }
+
+    public String getElId() {
+        return elId;
+    }
+
+    public void setElId(String elId) {
+        this.elId = elId;
+    }
+
+    public String getElStatus() {
+        return elStatus;
+    }
+
+    public void setElStatus(String elStatus) {
+        this.elStatus = elStatus;
+    }
+
+    public String getExporter() {
+        return exporter;
+    }
+
+    public void setExporter(String exporter) {
+        this.exporter = exporter;
+    }
+
+    public String getCarrier() {
+        return carrier;
+    }
+
+    public void setCarrier(String carrier) {
+        this.carrier = carrier;
+    }
+
+    public String getApprover() {
+        return approver;
+    }
+
+    public void setApprover(String approver) {
+        this.approver = approver;
+    }
+
+    public String getElExpirationDate() {
+        return elExpirationDate;
+    }
+
+    public void setElExpirationDate(String elExpirationDate) {
+        this.elExpirationDate = elExpirationDate;
+    }
+
+    public String getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public void setPaymentStatus(String paymentStatus) {
+        this.paymentStatus = paymentStatus;
+    }
+
+    public Double getAmountPaid() {
+        return amountPaid;
+    }
+
+    public void setAmountPaid(Double amountPaid) {
+        this.amountPaid = amountPaid;
+    }
+
+    public Double getEscrowBalance() {
+        return escrowBalance;
+    }
+
+    public void setEscrowBalance(Double escrowBalance) {
+        this.escrowBalance = escrowBalance;
+    }
+
+    public Map<String, Double> getPaymentObligations() {
+        return paymentObligations;
+    }
+
+    public void setPaymentObligations(Map<String, Double> paymentObligations) {
+        this.paymentObligations = new TreeMap<String, Double>(paymentObligations);
+    }
+
+    // Total of the payments paid but not settled yet
+    public double unsettledAmount() {
+        double total = 0;
+        for (double amount : paymentObligations.values()) {
+            total += amount;
+        }
+        return total;
+    }
+
+    public long getLastBlock() {
+        return lastBlock;
+    }
+
+    public void setLastBlock(long lastBlock) {
+        this.lastBlock = lastBlock;
+    }
+
+    public String getLastTxId() {
+        return lastTxId;
+    }
+
+    public void setLastTxId(String lastTxId) {
+        this.lastTxId = lastTxId;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public final class ReadModelProjectorTest {
+
+    private static final String lcChaincode = "letterOfCredit";
+    private static final String elChaincode = "exportLicense";
+    private static final String exporterMSP = "ExporterOrgMSP";
+    private static final String regulatorMSP = "RegulatorOrgMSP";
+    private static final String[] lcStatuses = { "REQUESTED", "ISSUED", "ACCEPTED" };
+
+    @Nested
+    class Projection {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        public void projectsTradesAndAnswersQueries() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            FileBlockSource.append(blocks, new Block(0));
+
+            Block block = new Block(1);
+            block.addTransaction("tx1", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-1"), lc("lc-1", "12/31/2020", "REQUESTED"))
+                 .put(key("Account", "ImporterOrgMSP"), "{\"ownerMSP\":\"ImporterOrgMSP\",\"bank\":\"ToyBank\",\"balance\":100000.0}".getBytes(UTF_8));
+            block.addTransaction("tx2", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-2"), lc("lc-2", "06/30/2021", "REQUESTED"));
+            block.addTransaction("tx3", elChaincode, true)
+                 .put(key("ExportLicense", "trade-1"), el("el-1", "01/15/2021", "REQUESTED"));
+            FileBlockSource.append(blocks, block);
+
+            block = new Block(2);
+            block.addTransaction("tx4", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-1"), lc("lc-1", "12/31/2020", "ACCEPTED"))
+                 .put(key("PaymentStatus", "trade-1"), "REQUESTED".getBytes(UTF_8));
+            // Invalidated transactions and other chaincodes are not projected
+            block.addTransaction("tx5", lcChaincode, false)
+                 .put(key("LetterOfCredit", "trade-2"), lc("lc-2", "06/30/2021", "ISSUED"));
+            block.addTransaction("tx6", "trade", true)
+                 .put(key("LetterOfCredit", "trade-3"), lc("lc-3", "06/30/2021", "ISSUED"));
+            block.addTransaction("tx7", elChaincode, true)
+                 .put(key("ExportLicense", "trade-1"), el("el-1", "01/15/2021", "ISSUED"));
+            FileBlockSource.append(blocks, block);
+
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                assertEquals(3, project(store, blocks));
+                assertEquals(2, store.getCheckpoint());
+                assertEquals(2, store.getTradeCount());
+
+                TradeView trade = store.getTrade("trade-1");
+                assertEquals("lc-1", trade.getLcId());
+                assertEquals("ACCEPTED", trade.getLcStatus());
+                assertEquals("ISSUED", trade.getElStatus());
+                assertEquals("REQUESTED", trade.getPaymentStatus());
+                assertEquals(1500.0, trade.getLcAmount());
+                assertEquals("tx7", trade.getLastTxId());
+
+                assertEquals(tradeIds("trade-1"), tradeIds(store.getTradesByLCStatus("ACCEPTED")));
+                assertEquals(tradeIds("trade-2"), tradeIds(store.getTradesByLCStatus("REQUESTED")));
+                assertEquals(tradeIds("trade-1"), tradeIds(store.getTradesByELStatus("ISSUED")));
+                assertEquals(tradeIds("trade-1", "trade-2"), tradeIds(store.getTradesByBeneficiary(exporterMSP)));
+                assertEquals(tradeIds("trade-1"), tradeIds(store.getTradesByApprover(regulatorMSP)));
+                assertEquals(tradeIds("trade-1"), tradeIds(store.getTradesExpiringBetween(LocalDate.of(2020, 12, 1), LocalDate.of(2021, 1, 31))));
+                assertEquals(tradeIds("trade-1", "trade-2"), tradeIds(store.getTradesExpiringBetween(LocalDate.of(2020, 1, 1), LocalDate.of(2021, 12, 31))));
+                assertEquals(0, store.getTradesByLCStatus("ISSUED").size());
+                assertEquals(100000.0, store.getAccount("ImporterOrgMSP").getBalance());
+            }
+        }
+
+        @Test
+        public void paymentClearsStatusAndRecordsAmount() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            Block block = new Block(5);
+            block.addTransaction("tx1", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-1"), lc("lc-1", "12/31/2020", "ACCEPTED"))
+                 .put(key("PaymentStatus", "trade-1"), "REQUESTED".getBytes(UTF_8));
+            FileBlockSource.append(blocks, block);
+            block = new Block(6);
+            block.addTransaction("tx2", lcChaincode, true)
+                 .put(key("Payment", "trade-1"), "750.0".getBytes(UTF_8))
+                 .delete(key("PaymentStatus", "trade-1"));
+            FileBlockSource.append(blocks, block);
+
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                project(store, blocks);
+                TradeView trade = store.getTrade("trade-1");
+                assertNull(trade.getPaymentStatus());
+                assertEquals(750.0, trade.getAmountPaid());
+            }
+        }
+
+        @Test
+        public void escrowIsHeldUntilPaidOut() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            Block block = new Block(1);
+            block.addTransaction("tx1", lcChaincode, true)
+                 .put(key("Escrow", "trade-1"), escrow(1500.0))
+                 .put(key("LetterOfCredit", "trade-1"), lc("lc-1", "12/31/2020", "ISSUED"));
+            FileBlockSource.append(blocks, block);
+            block = new Block(2);
+            block.addTransaction("tx2", lcChaincode, true)
+                 .put(key("Escrow", "trade-1"), escrow(750.0))
+                 .put(key("Payment", "trade-1"), "750.0".getBytes(UTF_8));
+            FileBlockSource.append(blocks, block);
+
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                project(store, blocks);
+                assertEquals(750.0, store.getTrade("trade-1").getEscrowBalance());
+            }
+
+            // The escrow is removed once paid out; a trade left with only an escrow is still projected
+            block = new Block(3);
+            block.addTransaction("tx3", lcChaincode, true)
+                 .delete(key("Escrow", "trade-1"))
+                 .put(key("Payment", "trade-1"), "1500.0".getBytes(UTF_8));
+            block.addTransaction("tx4", lcChaincode, true).put(key("Escrow", "trade-2"), escrow(500.0));
+            FileBlockSource.append(blocks, block);
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                project(store, blocks);
+                assertNull(store.getTrade("trade-1").getEscrowBalance());
+                assertEquals(1500.0, store.getTrade("trade-1").getAmountPaid());
+                assertEquals(500.0, store.getTrade("trade-2").getEscrowBalance());
+            }
+        }
+
+        @Test
+        public void paymentObligationsAreUnsettledUntilDeleted() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            String obligation = "{\"amount\":750.0,\"payeeMSP\":\"" + exporterMSP + "\",\"payerMSP\":\"ImporterOrgMSP\"}";
+            Block block = new Block(1);
+            block.addTransaction("tx1", lcChaincode, true)
+                 .put(key("Payment", "trade-1"), "750.0".getBytes(UTF_8))
+                 .put(key("PaymentObligation", "trade-1", "tx1"), obligation.getBytes(UTF_8));
+            block.addTransaction("tx2", lcChaincode, true)
+                 .put(key("Payment", "trade-1"), "1500.0".getBytes(UTF_8))
+                 .put(key("PaymentObligation", "trade-1", "tx2"), obligation.getBytes(UTF_8));
+            FileBlockSource.append(blocks, block);
+
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                project(store, blocks);
+                TradeView trade = store.getTrade("trade-1");
+                assertEquals(1500.0, trade.getAmountPaid());
+                assertEquals(tradeIds("tx1", "tx2"), new ArrayList<String>(trade.getPaymentObligations().keySet()));
+                assertEquals(1500.0, trade.unsettledAmount());
+            }
+
+            // Settlement deletes the obligations it settled
+            block = new Block(2);
+            block.addTransaction("tx3", lcChaincode, true).delete(key("PaymentObligation", "trade-1", "tx1"));
+            FileBlockSource.append(blocks, block);
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                assertEquals(1500.0, store.getTrade("trade-1").unsettledAmount());
+                project(store, blocks);
+                assertEquals(tradeIds("tx2"), new ArrayList<String>(store.getTrade("trade-1").getPaymentObligations().keySet()));
+                assertEquals(750.0, store.getTrade("trade-1").unsettledAmount());
+            }
+        }
+    }
+
+    @Nested
+    class DocumentSets {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        public void resolvesRequiredDocsOfLCs() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            String docSet = "[{\"docType\":\"B/L\"},{\"docType\":\"E/L\"}]";
+            Block block = new Block(1);
+            block.addTransaction("tx1", lcChaincode, true)
+                 .put(key("LCDocs", "docs-1"), docSet.getBytes(UTF_8))
+                 .put(key("LetterOfCredit", "trade-1"), lcWithDocumentsRef("lc-1", "docs-1"));
+            // Small document sets stay in the L/C
+            block.addTransaction("tx2", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-2"), ("{\"amount\":1500.0,\"id\":\"lc-2\",\"requiredDocs\":[{\"docType\":\"B/L\"}],\"status\":\"ISSUED\"}").getBytes(UTF_8));
+            FileBlockSource.append(blocks, block);
+            block = new Block(2);
+            // Sets already on the ledger aren't written again
+            block.addTransaction("tx3", lcChaincode, true)
+                 .put(key("LetterOfCredit", "trade-3"), lcWithDocumentsRef("lc-3", "docs-1"))
+                 .put(key("LetterOfCredit", "trade-4"), lcWithDocumentsRef("lc-4", "docs-unknown"));
+            FileBlockSource.append(blocks, block);
+
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                project(store, blocks);
+                assertArrayEquals(new String[] { "B/L", "E/L" }, store.getTrade("trade-1").getRequiredDocs());
+                assertArrayEquals(new String[] { "B/L" }, store.getTrade("trade-2").getRequiredDocs());
+                assertArrayEquals(new String[] { "B/L", "E/L" }, store.getTrade("trade-3").getRequiredDocs());
+                assertNull(store.getTrade("trade-4").getRequiredDocs());
+                assertEquals(4, store.getTradeCount());
+                store.compact();
+            }
+
+            // Document sets survive a restart, for L/Cs projected later
+            block = new Block(3);
+            block.addTransaction("tx4", lcChaincode, true).put(key("LetterOfCredit", "trade-5"), lcWithDocumentsRef("lc-5", "docs-1"));
+            FileBlockSource.append(blocks, block);
+            try (ReadModelStore store = ReadModelStore.open(dir.resolve("journal"))) {
+                assertArrayEquals(new String[] { "B/L", "E/L" }, store.getDocumentSet("docs-1"));
+                assertEquals(1, project(store, blocks));
+                assertArrayEquals(new String[] { "B/L", "E/L" }, store.getTrade("trade-5").getRequiredDocs());
+            }
+        }
+    }
+
+    @Nested
+    class Checkpointing {
+
+        @TempDir
+        Path dir;
+
+        @Test
+        public void resumesAfterLastCheckpoint() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            Path journal = dir.resolve("journal");
+            for (int n = 1; n <= 3; n++) {
+                appendLC(blocks, n, "trade-" + n, "REQUESTED");
+            }
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                assertEquals(3, project(store, blocks));
+            }
+
+            appendLC(blocks, 4, "trade-1", "ISSUED");
+            appendLC(blocks, 5, "trade-4", "REQUESTED");
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                assertEquals(3, store.getCheckpoint());
+                assertEquals(3, store.getTradeCount());
+                assertEquals(2, project(store, blocks));
+                assertEquals(5, store.getCheckpoint());
+                assertEquals(tradeIds("trade-1"), tradeIds(store.getTradesByLCStatus("ISSUED")));
+                assertEquals(tradeIds("trade-2", "trade-3", "trade-4"), tradeIds(store.getTradesByLCStatus("REQUESTED")));
+            }
+        }
+
+        @Test
+        public void discardsChangesWrittenAfterLastCheckpoint() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            Path journal = dir.resolve("journal");
+            appendLC(blocks, 1, "trade-1", "REQUESTED");
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                project(store, blocks);
+            }
+            long checkpointedLength = Files.size(journal);
+
+            // A change journaled without its checkpoint, followed by a torn line
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                TradeView trade = store.getTrade("trade-1");
+                trade.setLcStatus("ISSUED");
+                store.putTrade(trade);
+                store.checkpoint(2);
+            }
+            List<String> lines = Files.readAllLines(journal, UTF_8);
+            Files.write(journal, lines.subList(0, lines.size() - 1), UTF_8);
+            Files.write(journal, "{\"trade\":{\"tradeId\":\"tra".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                assertEquals(1, store.getCheckpoint());
+                assertEquals("REQUESTED", store.getTrade("trade-1").getLcStatus());
+                assertEquals(0, store.getTradesByLCStatus("ISSUED").size());
+            }
+            assertEquals(checkpointedLength, Files.size(journal));
+        }
+
+        @Test
+        public void compactionKeepsViewsAndCheckpoint() throws IOException {
+            Path blocks = dir.resolve("blocks.ndjson");
+            Path journal = dir.resolve("journal");
+            for (int n = 1; n <= 20; n++) {
+                appendLC(blocks, n, "trade-" + (n % 4), lcStatuses[n % 3]);
+            }
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                new ReadModelProjector(store, Arrays.asList(lcChaincode), 1).run(new FileBlockSource(blocks));
+                store.compact();
+            }
+            assertEquals(4 + 1, Files.readAllLines(journal, UTF_8).size());
+
+            try (ReadModelStore store = ReadModelStore.open(journal)) {
+                assertEquals(20, store.getCheckpoint());
+                assertEquals(4, store.getTradeCount());
+                assertEquals("ACCEPTED", store.getTrade("trade-0").getLcStatus());
+                assertEquals(tradeIds("trade-0", "trade-1"), tradeIds(store.getTradesByLCStatus("ACCEPTED")));
+            }
+        }
+    }
+
+    private static long project(ReadModelStore store, Path blocks) throws IOException {
+        try (FileBlockSource source = new FileBlockSource(blocks)) {
+            return new ReadModelProjector(store).run(source);
+        }
+    }
+
+    private static void appendLC(Path blocks, long number, String tradeId, String status) throws IOException {
+        Block block = new Block(number);
+        block.addTransaction("tx" + number, lcChaincode, true).put(key("LetterOfCredit", tradeId), lc("lc-" + tradeId, "12/31/2020", status));
+        FileBlockSource.append(blocks, block);
+    }
+
+    private static String key(String objectType, String... attributes) {
+        StringBuilder key = new StringBuilder("\u0000").append(objectType).append('\u0000');
+        for (String attribute : attributes) {
+            key.append(attribute).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    private static byte[] lc(String id, String expirationDate, String status) {
+        return ("{\"amount\":1500.0,\"beneficiary\":\"" + exporterMSP + "\",\"expirationDate\":\"" + expirationDate
+                + "\",\"id\":\"" + id + "\",\"requiredDocs\":[],\"status\":\"" + status + "\"}").getBytes(UTF_8);
+    }
+
+    private static byte[] lcWithDocumentsRef(String id, String documentsRef) {
+        return ("{\"amount\":1500.0,\"beneficiary\":\"" + exporterMSP + "\",\"documentsRef\":\"" + documentsRef
+                + "\",\"expirationDate\":\"12/31/2020\",\"id\":\"" + id + "\",\"status\":\"ISSUED\"}").getBytes(UTF_8);
+    }
+
+    private static byte[] escrow(double balance) {
+        return ("{\"balance\":" + balance + ",\"bank\":\"ToyBank\",\"ownerMSP\":\"ImporterOrgMSP\"}").getBytes(UTF_8);
+    }
+
+    private static byte[] el(String id, String expirationDate, String status) {
+        return ("{\"approver\":\"" + regulatorMSP + "\",\"carrier\":\"LumberCarrierMSP\",\"descriptionOfGoods\":\"Wood\",\"expirationDate\":\"" + expirationDate
+                + "\",\"exporter\":\"" + exporterMSP + "\",\"id\":\"" + id + "\",\"status\":\"" + status + "\"}").getBytes(UTF_8);
+    }
+
+    private static List<String> tradeIds(String... tradeIds) {
+        return Arrays.asList(tradeIds);
+    }
+
+    private static List<String> tradeIds(List<TradeView> trades) {
+        List<String> tradeIds = new ArrayList<String>();
+        for (TradeView trade : trades) {
+            tradeIds.add(trade.getTradeId());
+        }
+        return tradeIds;
+    }
+}
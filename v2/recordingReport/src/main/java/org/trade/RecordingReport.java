@@ -0,0 +1,168 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/*
+    Summarizes the contract events of a Flight Recorder recording per transaction type. Events are matched by name, so
+    recordings of either contract (or both) can be read without the contract classes on the class path.
+    A ledger access or chaincode invocation is attributed to the transaction that ran on the same thread and whose
+    time span encloses it.
+*/
+
+public final class RecordingReport {
+
+    public static final String TRANSACTION_EVENT = "org.trade.Transaction";
+
+    public static final String LEDGER_ACCESS_EVENT = "org.trade.LedgerAccess";
+
+    public static final String CHAINCODE_INVOCATION_EVENT = "org.trade.ChaincodeInvocation";
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private static final class Span {
+        final long start;
+        final long end;
+        final TransactionStats stats;
+
+        Span(long start, long end, TransactionStats stats) {
+            this.start = start;
+            this.end = end;
+            this.stats = stats;
+        }
+    }
+
+    private final Map<String, TransactionStats> stats = new TreeMap<String, TransactionStats>();
+
+    private long unattributed;
+
+    private RecordingReport() {
+    }
+
+    public static RecordingReport read(Path recording) throws IOException {
+        RecordingReport report = new RecordingReport();
+        // Events aren't stored in time order, so hold on to the nested ones until all transactions are known
+        Map<Long, List<Span>> transactionsByThread = new HashMap<Long, List<Span>>();
+        List<RecordedEvent> nested = new ArrayList<RecordedEvent>();
+        try (RecordingFile events = new RecordingFile(recording)) {
+            while (events.hasMoreEvents()) {
+                RecordedEvent event = events.readEvent();
+                switch (event.getEventType().getName()) {
+                    case TRANSACTION_EVENT:
+                        String transaction = event.getString("contract") + "." + event.getString("function");
+                        TransactionStats transactionStats = report.stats.computeIfAbsent(transaction, TransactionStats::new);
+                        transactionStats.addTransaction(event.getDuration().toNanos(), event.getString("outcome"));
+                        transactionsByThread.computeIfAbsent(threadId(event), thread -> new ArrayList<Span>())
+                            .add(new Span(nanos(event.getStartTime()), nanos(event.getEndTime()), transactionStats));
+                        break;
+                    case LEDGER_ACCESS_EVENT:
+                    case CHAINCODE_INVOCATION_EVENT:
+                        nested.add(event);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        for (List<Span> spans : transactionsByThread.values()) {
+            spans.sort(Comparator.comparingLong(span -> span.start));
+        }
+        for (RecordedEvent event : nested) {
+            Span span = enclosing(transactionsByThread.get(threadId(event)), nanos(event.getStartTime()), nanos(event.getEndTime()));
+            if (span == null) {
+                report.unattributed++;
+            } else if (event.getEventType().getName().equals(LEDGER_ACCESS_EVENT)) {
+                span.stats.addLedgerAccess(event.getString("operation"), event.getLong("size"), event.getDuration().toNanos());
+            } else {
+                span.stats.addInvocation(event.getLong("requestSize"), event.getLong("responseSize"), event.getDuration().toNanos());
+            }
+        }
+        return report;
+    }
+
+    public TransactionStats getStats(String transaction) {
+        return stats.get(transaction);
+    }
+
+    public Collection<TransactionStats> getStats() {
+        return Collections.unmodifiableCollection(stats.values());
+    }
+
+    // Ledger accesses and invocations that didn't happen inside a recorded transaction
+    public long getUnattributed() {
+        return unattributed;
+    }
+
+    // One row per transaction type, the most time-consuming first
+    public void print(PrintStream out) {
+        List<TransactionStats> rows = new ArrayList<TransactionStats>(stats.values());
+        rows.sort(Comparator.comparingLong(TransactionStats::getTotalNanos).reversed());
+        out.println(String.format("%-45s %7s %8s %9s %9s %9s %9s %6s %6s %6s %6s %10s %10s %7s %10s",
+                    "Transaction", "Count", "Rejected", "Total ms", "Mean ms", "p95 ms", "Max ms", "Reads", "Writes", "Dels", "Scans",
+                    "Read B", "Written B", "Invokes", "Invoke ms"));
+        for (TransactionStats row : rows) {
+            out.println(String.format("%-45s %7d %8d %9.1f %9.3f %9.3f %9.3f %6d %6d %6d %6d %10d %10d %7d %10.1f",
+                        row.getTransaction(), row.getCount(), row.getRejected(), millis(row.getTotalNanos()), millis(row.getMeanNanos()),
+                        millis(row.getPercentileNanos(95)), millis(row.getMaxNanos()), row.getReads(), row.getWrites(), row.getDeletes(),
+                        row.getQueries(), row.getBytesRead(), row.getBytesWritten(), row.getInvocations(), millis(row.getInvocationNanos())));
+            for (Map.Entry<String, Integer> rejection : row.getRejections().entrySet()) {
+                out.println("    rejected with " + rejection.getKey() + ": " + rejection.getValue());
+            }
+        }
+        if (unattributed > 0) {
+            out.println(unattributed + " ledger accesses or chaincode invocations outside any recorded transaction");
+        }
+    }
+
+    private static Span enclosing(List<Span> spans, long start, long end) {
+        if (spans == null) {
+            return null;
+        }
+        // Last transaction that started no later than the event; transactions on one thread don't overlap
+        int low = 0;
+        int high = spans.size() - 1;
+        Span candidate = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (spans.get(mid).start <= start) {
+                candidate = spans.get(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return (candidate != null && candidate.end >= end) ? candidate : null;
+    }
+
+    private static long threadId(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        return thread == null ? -1 : thread.getJavaThreadId();
+    }
+
+    private static long nanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
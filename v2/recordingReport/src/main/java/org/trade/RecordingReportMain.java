@@ -0,0 +1,28 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.nio.file.Paths;
+
+/*
+    Command line entry point:
+        <recording.jfr>
+    Prints the per-transaction summary of a Flight Recorder recording taken from a letterOfCredit or exportLicense
+    chaincode container.
+*/
+
+public final class RecordingReportMain {
+
+    private RecordingReportMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.out.println("Usage: <recording.jfr>");
+            System.exit(1);
+        }
+        RecordingReport.read(Paths.get(args[0])).print(System.out);
+    }
+}
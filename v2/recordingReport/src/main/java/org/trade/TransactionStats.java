@@ -0,0 +1,178 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.trade;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+    Totals for one transaction type ('<contract>.<function>') across a recording. Ledger accesses and chaincode
+    invocations are counted against the transaction that enclosed them.
+*/
+
+public class TransactionStats {
+
+    private final String transaction;
+
+    private long[] durations = new long[16];
+
+    private int count;
+
+    private final Map<String, Integer> rejections = new TreeMap<String, Integer>();
+
+    private long reads;
+
+    private long writes;
+
+    private long deletes;
+
+    private long queries;
+
+    private long bytesRead;
+
+    private long bytesWritten;
+
+    private long ledgerNanos;
+
+    private long invocations;
+
+    private long invocationNanos;
+
+    private long invocationBytes;
+
+    private boolean sorted = true;
+
+    public TransactionStats(String transaction) {
+        this.transaction = transaction;
+    }
+
+    public String getTransaction() {
+        return transaction;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getRejected() {
+        int rejected = 0;
+        for (int n : rejections.values()) {
+            rejected += n;
+        }
+        return rejected;
+    }
+
+    // Rejection code -> number of transactions it ended
+    public Map<String, Integer> getRejections() {
+        return rejections;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getLedgerNanos() {
+        return ledgerNanos;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getInvocationNanos() {
+        return invocationNanos;
+    }
+
+    public long getInvocationBytes() {
+        return invocationBytes;
+    }
+
+    public long getTotalNanos() {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += durations[i];
+        }
+        return total;
+    }
+
+    public long getMeanNanos() {
+        return count == 0 ? 0 : getTotalNanos() / count;
+    }
+
+    // Nearest-rank percentile of the transaction durations, 'percentile' in (0, 100]
+    public long getPercentileNanos(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(durations, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return durations[Math.max(rank, 1) - 1];
+    }
+
+    public long getMaxNanos() {
+        return getPercentileNanos(100);
+    }
+
+    void addTransaction(long nanos, String outcome) {
+        if (count == durations.length) {
+            durations = Arrays.copyOf(durations, count * 2);
+        }
+        durations[count++] = nanos;
+        sorted = false;
+        if (outcome != null && !outcome.equals("OK")) {
+            rejections.merge(outcome, 1, Integer::sum);
+        }
+    }
+
+    void addLedgerAccess(String operation, long size, long nanos) {
+        ledgerNanos += nanos;
+        switch (operation) {
+            case "GET":
+                reads++;
+                bytesRead += size;
+                break;
+            case "PUT":
+                writes++;
+                bytesWritten += size;
+                break;
+            case "DELETE":
+                deletes++;
+                break;
+            default:
+                queries++;
+                break;
+        }
+    }
+
+    void addInvocation(long requestSize, long responseSize, long nanos) {
+        invocations++;
+        invocationNanos += nanos;
+        invocationBytes += requestSize + responseSize;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: Apache License 2.0
+ */
+
+package org.trade;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+public final class RecordingReportTest {
+
+    // Stand-ins for the contract events, which the report only knows by name and field names
+
+    @Name(RecordingReport.TRANSACTION_EVENT)
+    @StackTrace(false)
+    static class TransactionEvent extends jdk.jfr.Event {
+        String contract;
+        String function;
+        String tradeId;
+        String mspId;
+        String outcome;
+    }
+
+    @Name(RecordingReport.LEDGER_ACCESS_EVENT)
+    @StackTrace(false)
+    static class LedgerAccessEvent extends jdk.jfr.Event {
+        String operation;
+        String collection;
+        String key;
+        @DataAmount
+        long size;
+    }
+
+    @Name(RecordingReport.CHAINCODE_INVOCATION_EVENT)
+    @StackTrace(false)
+    static class ChaincodeInvocationEvent extends jdk.jfr.Event {
+        String chaincode;
+        String function;
+        String channel;
+        @DataAmount
+        long requestSize;
+        @DataAmount
+        long responseSize;
+        int status;
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void summarizesPerTransactionType() throws Exception {
+        Path recordingFile = dir.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(TransactionEvent.class);
+            recording.enable(LedgerAccessEvent.class);
+            recording.enable(ChaincodeInvocationEvent.class);
+            recording.start();
+
+            transaction("LetterOfCreditContract", "issueLC", "OK", 1, 1, 1);
+            transaction("LetterOfCreditContract", "issueLC", "OK", 1, 1, 1);
+            transaction("LetterOfCreditContract", "issueLC", "LC_EXPIRED", 1, 0, 1);
+            // Transactions on another thread get their own ledger accesses
+            Thread other = new Thread(() -> transaction("ExportLicenseContract", "getEL", "OK", 3, 0, 0));
+            other.start();
+            other.join();
+            // Outside of any transaction
+            ledgerAccess("GET", 10);
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        RecordingReport report = RecordingReport.read(recordingFile);
+        assertEquals(2, report.getStats().size());
+        assertEquals(1, report.getUnattributed());
+        assertNull(report.getStats("LetterOfCreditContract.requestLC"));
+
+        TransactionStats issueLC = report.getStats("LetterOfCreditContract.issueLC");
+        assertEquals(3, issueLC.getCount());
+        assertEquals(1, issueLC.getRejected());
+        assertEquals(1, (int) issueLC.getRejections().get("LC_EXPIRED"));
+        assertEquals(3, issueLC.getReads());
+        assertEquals(300, issueLC.getBytesRead());
+        assertEquals(2, issueLC.getWrites());
+        assertEquals(400, issueLC.getBytesWritten());
+        assertEquals(3, issueLC.getInvocations());
+        assertEquals(3 * (20 + 300), issueLC.getInvocationBytes());
+        assertTrue(issueLC.getMaxNanos() >= issueLC.getPercentileNanos(50));
+        assertTrue(issueLC.getTotalNanos() >= issueLC.getInvocationNanos() + issueLC.getLedgerNanos());
+
+        TransactionStats getEL = report.getStats("ExportLicenseContract.getEL");
+        assertEquals(1, getEL.getCount());
+        assertEquals(0, getEL.getRejected());
+        assertEquals(3, getEL.getReads());
+        assertEquals(0, getEL.getWrites());
+        assertEquals(0, getEL.getInvocations());
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        report.print(new PrintStream(printed, true, "UTF-8"));
+        String[] lines = printed.toString("UTF-8").split("\n");
+        assertTrue(lines[0].startsWith("Transaction"));
+        assertTrue(lines[1].startsWith("LetterOfCreditContract.issueLC") || lines[1].startsWith("ExportLicenseContract.getEL"));
+        assertTrue(printed.toString("UTF-8").contains("    rejected with LC_EXPIRED: 1"));
+        assertTrue(lines[lines.length - 1].startsWith("1 ledger accesses"));
+    }
+
+    private static void transaction(String contract, String function, String outcome, int reads, int writes, int invocations) {
+        TransactionEvent transaction = new TransactionEvent();
+        transaction.begin();
+        for (int i = 0; i < reads; i++) {
+            ledgerAccess("GET", 100);
+        }
+        for (int i = 0; i < invocations; i++) {
+            ChaincodeInvocationEvent invocation = new ChaincodeInvocationEvent();
+            invocation.begin();
+            invocation.chaincode = "trade";
+            invocation.function = "getTrade";
+            invocation.channel = "";
+            invocation.requestSize = 20;
+            invocation.responseSize = 300;
+            invocation.status = 200;
+            invocation.commit();
+        }
+        for (int i = 0; i < writes; i++) {
+            ledgerAccess("PUT", 200);
+        }
+        transaction.contract = contract;
+        transaction.function = function;
+        transaction.tradeId = "trade-1";
+        transaction.outcome = outcome;
+        transaction.commit();
+    }
+
+    private static void ledgerAccess(String operation, long size) {
+        LedgerAccessEvent access = new LedgerAccessEvent();
+        access.begin();
+        access.operation = operation;
+        access.collection = "";
+        access.key = "key";
+        access.size = size;
+        access.commit();
+    }
+}
@@ -7,6 +7,7 @@ import { Iterators } from 'fabric-shim-api';
 import { BillOfLading } from './billoflading';
 import { Shipment } from './shipment';
 import { ShipmentLocation } from './shipmentlocation';
+import { endTransactionSpan, startTransactionSpan } from './tracing';
 
 const ANY_ROLE = 'anyRole';
 const BUSINESS_ROLE = 'BUSINESS_ROLE';
@@ -50,6 +51,12 @@ export class ShipmentContract extends Contract {
         if (!this.aclRules[aclSubject].includes(tx)) {
             throw new Error(`The participant belonging to MSP ${mspId} and role ${role} cannot invoke transaction ${tx}`);
         }
+
+        startTransactionSpan(ctx, 'ShipmentContract');
+    }
+
+    public async afterTransaction(ctx: Context, result: any) {
+        endTransactionSpan(ctx, 'OK');
     }
 
     /**
@@ -0,0 +1,131 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import { createHash, randomBytes } from 'crypto';
+import { Context } from 'fabric-contract-api';
+import { appendFileSync } from 'fs';
+
+// Span file named by the environment, and W3C trace context passed by clients in the transient map
+export const TRACE_FILE_ENV = 'TRADE_TRACE_FILE';
+export const TRACEPARENT_KEY = 'traceparent';
+
+const TRACEPARENT_PATTERN = /^00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$/;
+
+/**
+ * Trace span in the OpenTelemetry data model, exported in the same JSON form as the Java contracts' spans.
+ */
+export class Span {
+    public readonly attributes: { [key: string]: string } = {};
+    public readonly startTimeUnixNano: string;
+    public endTimeUnixNano = '';
+    public status = 'OK';
+    private readonly startMillis: number;
+    private readonly startTime: [number, number];
+
+    constructor(public readonly traceId: string, public readonly spanId: string, public readonly parentSpanId: string,
+                public readonly name: string, public readonly kind: string) {
+        this.startMillis = Date.now();
+        this.startTime = process.hrtime();
+        this.startTimeUnixNano = `${this.startMillis}000000`;
+    }
+
+    public end(error?: string) {
+        // Epoch nanoseconds don't fit in a JavaScript number, so build the decimal string from milliseconds and the rest
+        const [seconds, nanos] = process.hrtime(this.startTime);
+        const elapsed = seconds * 1e9 + nanos;
+        this.endTimeUnixNano = `${this.startMillis + Math.floor(elapsed / 1e6)}${String(elapsed % 1e6).padStart(6, '0')}`;
+        if (error) {
+            this.status = 'ERROR';
+            this.attributes.error = error;
+        }
+    }
+
+    public toJSON() {
+        // Same field order as the Java contracts' spans
+        // tslint:disable-next-line:object-literal-sort-keys
+        return {
+            traceId: this.traceId,
+            spanId: this.spanId,
+            parentSpanId: this.parentSpanId,
+            name: this.name,
+            kind: this.kind,
+            startTimeUnixNano: this.startTimeUnixNano,
+            endTimeUnixNano: this.endTimeUnixNano,
+            status: this.status,
+            attributes: this.attributes,
+        };
+    }
+}
+
+const transactionSpans = new WeakMap<Context, Span>();
+
+function sha256Hex(value: string): string {
+    return createHash('sha256').update(value, 'utf8').digest('hex');
+}
+
+function parseTraceparent(ctx: Context): RegExpMatchArray | null {
+    const transientData = ctx.stub.getTransient();
+    const traceparent = transientData ? transientData.get(TRACEPARENT_KEY) : undefined;
+    if (!traceparent) {
+        return null;
+    }
+    return Buffer.from(traceparent).toString('utf8').trim().match(TRACEPARENT_PATTERN);
+}
+
+/**
+ * Trace ID of the client's 'traceparent' transient field if valid, else derived from the transaction ID.
+ * A chaincode invoked by another one sees the caller's transaction ID and transient map, so both get the same trace ID.
+ */
+export function traceId(ctx: Context): string {
+    const traceparent = parseTraceparent(ctx);
+    return traceparent ? traceparent[1] : sha256Hex(ctx.stub.getTxID()).substring(0, 32);
+}
+
+/**
+ * Span ID of the invocation of 'args' on 'channel' within transaction 'txId': the first 16 hex digits of
+ * SHA-256(txId + '\n' + channel + '\n' + args joined with '\n'). The Java contracts give their CLIENT span this ID.
+ */
+export function invocationSpanId(txId: string, channel: string, args: string[]): string {
+    return sha256Hex([txId, channel, ...args].join('\n')).substring(0, 16);
+}
+
+/**
+ * Starts the SERVER span of a transaction when TRADE_TRACE_FILE is set. Chaincode-to-chaincode calls can't carry
+ * extra trace fields, so the parent is the caller's CLIENT span as recomputed from this transaction's own stub.
+ * When a client invokes this contract directly no span has that ID, and the trace ID alone ties the span to its trace.
+ */
+export function startTransactionSpan(ctx: Context, contract: string) {
+    if (!process.env[TRACE_FILE_ENV]) {
+        return;
+    }
+    const { fcn, params } = ctx.stub.getFunctionAndParameters();
+    const txId = ctx.stub.getTxID();
+    const channel = ctx.stub.getChannelID();
+    const span = new Span(traceId(ctx), randomBytes(8).toString('hex'), invocationSpanId(txId, channel, [fcn, ...params]), fcn, 'SERVER');
+    span.attributes.contract = contract;
+    span.attributes['tx.id'] = txId;
+    span.attributes.channel = channel;
+    if (params.length > 0) {
+        span.attributes['trade.id'] = params[0];
+    }
+    transactionSpans.set(ctx, span);
+}
+
+/**
+ * Ends the transaction's span, if it has one, and appends it to the span file. Tracing never fails a transaction.
+ */
+export function endTransactionSpan(ctx: Context, outcome: string) {
+    const span = transactionSpans.get(ctx);
+    if (!span) {
+        return;
+    }
+    transactionSpans.delete(ctx);
+    span.attributes.outcome = outcome;
+    span.end(outcome === 'OK' ? undefined : outcome);
+    try {
+        appendFileSync(process.env[TRACE_FILE_ENV], JSON.stringify(span) + '\n');
+    } catch (err) {
+        console.log(`Unable to export span '${span.name}': ${err.message}`);
+    }
+}
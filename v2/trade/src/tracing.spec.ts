@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+/* tslint:disable:max-classes-per-file */
+import { Context } from 'fabric-contract-api';
+import { ChaincodeStub, ClientIdentity } from 'fabric-shim';
+import * as fs from 'fs';
+import * as os from 'os';
+import * as path from 'path';
+import { TradeContract } from '.';
+import { endTransactionSpan, invocationSpanId, startTransactionSpan, TRACE_FILE_ENV, traceId, TRACEPARENT_KEY } from './tracing';
+
+import * as chai from 'chai';
+import * as chaiAsPromised from 'chai-as-promised';
+import * as sinon from 'sinon';
+import * as sinonChai from 'sinon-chai';
+import winston = require('winston');
+
+chai.should();
+chai.use(chaiAsPromised);
+chai.use(sinonChai);
+
+class TestContext implements Context {
+    public stub: sinon.SinonStubbedInstance<ChaincodeStub> = sinon.createStubInstance(ChaincodeStub);
+    public clientIdentity: sinon.SinonStubbedInstance<ClientIdentity> = sinon.createStubInstance(ClientIdentity);
+    public logger = {
+        getLogger: sinon.stub().returns(sinon.createStubInstance(winston.createLogger().constructor)),
+        setLevel: sinon.stub(),
+    };
+}
+
+describe('Tracing', () => {
+    const clientTraceId = '4bf92f3577b34da6a3ce929d0e0e4736';
+    let ctx: TestContext;
+    let traceFile: string;
+
+    function readSpans(): any[] {
+        return fs.readFileSync(traceFile, 'utf8').trim().split('\n').map((line) => JSON.parse(line));
+    }
+
+    beforeEach(() => {
+        ctx = new TestContext();
+        ctx.stub.getTxID.returns('tx1');
+        ctx.stub.getChannelID.returns('tradechannel');
+        ctx.stub.getFunctionAndParameters.returns(JSON.parse('{"params":["trade-1"], "fcn":"getTrade"}'));
+        ctx.stub.getTransient.returns(new Map());
+        traceFile = path.join(fs.mkdtempSync(path.join(os.tmpdir(), 'trade-trace-')), 'spans.ndjson');
+        process.env[TRACE_FILE_ENV] = traceFile;
+    });
+
+    afterEach(() => {
+        delete process.env[TRACE_FILE_ENV];
+    });
+
+    describe('#invocationSpanId', () => {
+        it('should derive the same span IDs as the Java contracts', () => {
+            invocationSpanId('tx1', 'tradechannel', ['getTrade', 'trade-1']).should.equal('f720cc56d31bbd4b');
+            invocationSpanId('tx1', 'shippingchannel', ['getShipmentLocation', 'trade-1']).should.equal('7762545a9be48362');
+        });
+    });
+
+    describe('#traceId', () => {
+        it('should use the trace ID of the client traceparent', () => {
+            ctx.stub.getTransient.returns(new Map([[TRACEPARENT_KEY, Buffer.from(`00-${clientTraceId}-00f067aa0ba902b7-01`)]]));
+            traceId(ctx).should.equal(clientTraceId);
+        });
+
+        it('should derive the trace ID from the transaction ID without a valid traceparent', () => {
+            traceId(ctx).should.equal('709b55bd3da0f5a838125bd0ee20c5bf');
+            ctx.stub.getTransient.returns(new Map([[TRACEPARENT_KEY, Buffer.from('not-a-traceparent')]]));
+            traceId(ctx).should.equal('709b55bd3da0f5a838125bd0ee20c5bf');
+            ctx.stub.getTransient.returns(undefined);
+            traceId(ctx).should.equal('709b55bd3da0f5a838125bd0ee20c5bf');
+        });
+    });
+
+    describe('#afterTransaction', () => {
+        it('should export the span of a transaction invoked by another chaincode', async () => {
+            const contract = new TradeContract();
+            ctx.clientIdentity.getMSPID.returns('ImporterOrgMSP');
+            ctx.clientIdentity.getAttributeValue.withArgs('BUSINESS_ROLE').returns('importer_banker');
+            ctx.stub.getTransient.returns(new Map([[TRACEPARENT_KEY, Buffer.from(`00-${clientTraceId}-00f067aa0ba902b7-01`)]]));
+
+            await contract.beforeTransaction(ctx);
+            await contract.afterTransaction(ctx, null);
+
+            const spans = readSpans();
+            spans.length.should.equal(1);
+            spans[0].traceId.should.equal(clientTraceId);
+            spans[0].parentSpanId.should.equal('f720cc56d31bbd4b');
+            spans[0].spanId.should.match(/^[0-9a-f]{16}$/);
+            spans[0].name.should.equal('getTrade');
+            spans[0].kind.should.equal('SERVER');
+            spans[0].status.should.equal('OK');
+            spans[0].startTimeUnixNano.should.match(/^[0-9]+$/);
+            spans[0].endTimeUnixNano.should.match(/^[0-9]+$/);
+            spans[0].attributes.should.deep.equal({ channel: 'tradechannel', contract: 'TradeContract', outcome: 'OK', 'trade.id': 'trade-1', 'tx.id': 'tx1' });
+        });
+    });
+
+    describe('#endTransactionSpan', () => {
+        it('should record a failed outcome', () => {
+            ctx.stub.getFunctionAndParameters.returns(JSON.parse('{"params":[], "fcn":"listTrade"}'));
+            startTransactionSpan(ctx, 'TradeContract');
+            endTransactionSpan(ctx, 'NOT_FOUND');
+
+            const spans = readSpans();
+            spans[0].status.should.equal('ERROR');
+            spans[0].attributes.error.should.equal('NOT_FOUND');
+            spans[0].attributes.should.not.have.property('trade.id');
+        });
+
+        it('should export each span once', () => {
+            startTransactionSpan(ctx, 'TradeContract');
+            endTransactionSpan(ctx, 'OK');
+            endTransactionSpan(ctx, 'OK');
+            readSpans().length.should.equal(1);
+        });
+
+        it('should not trace when no span file is configured', () => {
+            delete process.env[TRACE_FILE_ENV];
+            startTransactionSpan(ctx, 'TradeContract');
+            endTransactionSpan(ctx, 'OK');
+            fs.existsSync(traceFile).should.equal(false);
+        });
+
+        it('should not fail the transaction when the span file cannot be written', () => {
+            process.env[TRACE_FILE_ENV] = path.join(path.dirname(traceFile), 'missing', 'spans.ndjson');
+            startTransactionSpan(ctx, 'TradeContract');
+            endTransactionSpan(ctx, 'OK');
+            fs.existsSync(process.env[TRACE_FILE_ENV]).should.equal(false);
+        });
+    });
+});
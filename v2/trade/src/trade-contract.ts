@@ -5,6 +5,7 @@
 import { Context, Contract, Info, Returns, Transaction } from 'fabric-contract-api';
 import { Iterators } from 'fabric-shim-api';
 import Long = require('long');
+import { endTransactionSpan, startTransactionSpan } from './tracing';
 import { TradeAgreement } from './tradeagreement';
 import { TradeAgreementHistory } from './tradeagreementhistory';
 import { TradeAgreementStatus } from './tradeagreementstatus';
@@ -52,6 +53,12 @@ export class TradeContract extends Contract {
         if (!this.aclRules[aclSubject].includes(tx)) {
             throw new Error(`The participant belonging to MSP ${mspId} and role ${role} cannot invoke transaction ${tx}`);
         }
+
+        startTransactionSpan(ctx, 'TradeContract');
+    }
+
+    public async afterTransaction(ctx: Context, result: any) {
+        endTransactionSpan(ctx, 'OK');
     }
 
     /**